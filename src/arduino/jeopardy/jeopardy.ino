@@ -9,6 +9,19 @@
 //
 // J. Peterson, Apr '12
 //
+// Every player's first press since the reset is reported to the host with
+// the time from micros(), in the framed protocol read by
+// BuzzFrameDecoder.java (version 2):
+//
+//   0xA5, version, type, sequence, length, payload, CRC-16 (high byte first)
+//
+//   'H' hello: players, micros         once at startup
+//   'P' press: player, rank, micros    rank 0 is the winner
+//   'R' reset: micros                  after every reset
+//
+// micros is 4 bytes, little-endian. The CRC is CRC-16/CCITT-FALSE over the
+// version through the payload. The host sends 'r' to reset the game.
+//
 
 // The LEDs, cathodes connected to ground
 int Lights[6] = {2, 4, 6, 8, 10, A2};
@@ -24,10 +37,18 @@ int winner;
 
 boolean SwitchPushed[6] = { false, false, false, false, false, false };
 
+// Presses since the reset, so the next press's rank.
+byte pressCount;
+
+// Framing, see BuzzFrameDecoder.java
+const byte SYNC = 0xA5;
+const byte VERSION = 2;
+byte sequence = 0;
+
 void setup()
 {
   
-  Serial.begin(9600);  // initialize serial:
+  Serial.begin(115200);  // initialize serial:
   
   int i;
   for (i = 0; i < 6; i++)
@@ -41,6 +62,11 @@ void setup()
   pinMode( Reset, INPUT );
   digitalWrite( Reset, HIGH );    // Enable pullup on analog input
 
+  byte hello[5];
+  hello[0] = 6;
+  PutMicros( hello + 1, micros() );
+  SendFrame( 'H', hello, 5 );
+
   LightsOff();
 }
 
@@ -48,16 +74,14 @@ void loop()
 {
   int i;
 
-  // If no winner selected, first button selects the winner.
-  if (winner == -1)
-  {
-    for (i = 0; i < 6; i++)
-      if (digitalRead( Switches[i] ) == LOW) {
+  // Report each player's first press; the first of all selects the winner.
+  for (i = 0; i < 6; i++)
+    if (!SwitchPushed[i] && digitalRead( Switches[i] ) == LOW) {
+      SwitchPushed[i] = true;
+      SendPress( i, micros() );
+      if (winner == -1)
         winner = i;
-        Serial.println(winner);
-        return;
-      }
-  }
+    }
   
      for (i = 0; i < 6; i++)
      {
@@ -70,15 +94,15 @@ void loop()
        }
        else
        {
-         // When switch is pushed, record it.
-         if (digitalRead( Switches[i] ) == LOW)
-           SwitchPushed[i] = true;
-
          // Display non-winner lights
         digitalWrite( Lights[i], SwitchPushed[i] ? HIGH : LOW );
        }
      }
   
+  // Reset request from the host
+  if (Serial.available() > 0 && Serial.read() == 'r')
+    LightsOff();
+
 
   // Reset button
   if (digitalRead( Reset ) == LOW) {
@@ -90,11 +114,65 @@ void loop()
 // Reset to the initial state.
 void LightsOff()
 {
-  Serial.println(-1);
   winner = -1;
+  pressCount = 0;
   for (int i = 0; i < 6; i++)
   {
     digitalWrite( Lights[i], LOW);
     SwitchPushed[i] = false;
   }
+
+  byte reset[4];
+  PutMicros( reset, micros() );
+  SendFrame( 'R', reset, 4 );
+}
+
+void SendPress(int player, unsigned long t)
+{
+  byte press[6];
+  press[0] = player;
+  press[1] = pressCount++;
+  PutMicros( press + 2, t );
+  SendFrame( 'P', press, 6 );
+}
+
+void PutMicros(byte *p, unsigned long t)
+{
+  p[0] = t;
+  p[1] = t >> 8;
+  p[2] = t >> 16;
+  p[3] = t >> 24;
+}
+
+// Send one frame. A press frame is 13 bytes, about a millisecond at 115200
+// baud; the serial transmit buffer holds four, so only a burst of presses
+// makes this wait.
+void SendFrame(byte type, byte *payload, byte length)
+{
+  byte frame[5 + 32 + 2];
+  int n = 0;
+  frame[n++] = SYNC;
+  frame[n++] = VERSION;
+  frame[n++] = type;
+  frame[n++] = sequence++;
+  frame[n++] = length;
+  for (byte i = 0; i < length; i++)
+    frame[n++] = payload[i];
+  unsigned int crc = Crc16( frame + 1, n - 1 );
+  frame[n++] = crc >> 8;
+  frame[n++] = crc;
+  Serial.write( frame, n );
+}
+
+// CRC-16/CCITT-FALSE
+unsigned int Crc16(byte *p, int n)
+{
+  unsigned int crc = 0xFFFF;
+  while (n-- > 0)
+  {
+    crc ^= (unsigned int) *p++ << 8;
+    for (int k = 0; k < 8; k++)
+      crc = (crc & 0x8000) ? (crc << 1) ^ 0x1021 : crc << 1;
+  }
+  return crc;
 }
@@ -17,9 +17,28 @@
 package org.garion.games.jeopardy;
 
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Category of entries in Jeopardy.
+ * <p>
+ * Lookups by entry and by value go through an index (entry identity to slot,
+ * and value to its first slot) instead of scanning the arrays. The index is
+ * kept up to date by the methods of this class and rebuilt whenever the
+ * arrays themselves are replaced. Code that writes into {@link #values} or
+ * {@link #entries} directly should call {@link #reindex()} afterwards.
+ * <p>
+ * The arrays hold exactly as many slots as the category uses, up to
+ * {@link #MAX_SIZE}; they are not padded, so a short category costs only
+ * what it holds and the board shows only the rows it needs.
+ * <p>
+ * Values are kept as text, which is what the game files hold (e.g.
+ * {@code "200"} or {@code "200 points"}). Each is also parsed once into a
+ * dollar amount and the short label shown on the board, see
+ * {@link #getAmount(int)} and {@link #getLabel(int)}, so nothing needs to
+ * parse or cut up the text while the game is played.
  * 
  * @author Dallin Lauritzen
  * @version 1.0 (7 May 2010)
@@ -27,7 +46,9 @@ import java.util.Arrays;
 public class Category implements Comparable<Category> {
 
 	/** The maximum number of entries in each category. */
-	public static final int MAX_SIZE = 5;
+	public static final int MAX_SIZE = 10;
+	/** The number of entries in a standard category. */
+	public static final int DEFAULT_SIZE = 5;
 
 	/** The category name */
 	public String name;
@@ -37,6 +58,17 @@ public class Category implements Comparable<Category> {
 	public Entry[] entries;
 	private int size;
 
+	// lookup index and the arrays it was built from
+	private Map<Entry, Integer> entrySlots;
+	private TreeMap<String, Integer> valueSlots;
+	private String[] indexedValues;
+	private Entry[] indexedEntries;
+
+	// parsed values, and the value string each slot was parsed from
+	private int[] amounts;
+	private String[] labels;
+	private String[] parsed;
+
 	/**
 	 * Empty constructor
 	 */
@@ -52,8 +84,8 @@ public class Category implements Comparable<Category> {
 	 */
 	public Category( String name ) {
 		setName( name );
-		entries = new Entry[ MAX_SIZE ];
-		values = new String[ MAX_SIZE ];
+		entries = new Entry[ 0 ];
+		values = new String[ 0 ];
 		size = 0;
 	}
 
@@ -86,11 +118,13 @@ public class Category implements Comparable<Category> {
 	 * manually.
 	 */
 	public void verifySize() {
-		// truncate or expand to MAX_SIZE
-		if ( size >= MAX_SIZE )
-			size = MAX_SIZE;
-		values = Arrays.copyOf( values, MAX_SIZE );
-		entries = Arrays.copyOf( entries, MAX_SIZE );
+		// truncate to MAX_SIZE, and pad the shorter list to match the longer
+		int n = Math.min( MAX_SIZE, Math.max( values.length, entries.length ) );
+		if ( values.length != n )
+			values = Arrays.copyOf( values, n );
+		if ( entries.length != n )
+			entries = Arrays.copyOf( entries, n );
+		size = Math.min( size, n );
 		if ( size == 0 ) {
 			for ( int i = 0; i < entries.length; i++ ) {
 				if ( entries[i] != null ) {
@@ -98,6 +132,7 @@ public class Category implements Comparable<Category> {
 				}
 			}
 		}
+		parseValues();
 	}
 
 	/**
@@ -120,8 +155,17 @@ public class Category implements Comparable<Category> {
 	 */
 	public boolean addEntry( String value, Entry entry ) {
 		if ( size < MAX_SIZE ) {
+			index();
+			if ( size >= entries.length || size >= values.length ) {
+				values = Arrays.copyOf( values, size + 1 );
+				entries = Arrays.copyOf( entries, size + 1 );
+				indexedValues = values;
+				indexedEntries = entries;
+			}
 			values[size] = value;
 			entries[size] = entry;
+			indexValue( value, size );
+			indexEntry( entry, size );
 			++size;
 			return true;
 		} else
@@ -156,6 +200,22 @@ public class Category implements Comparable<Category> {
 		return entries;
 	}
 
+	/**
+	 * Get the entry in a slot of a board or edit grid, which is as tall as
+	 * the round's longest category
+	 * 
+	 * @param c
+	 *            the category, may be {@code null}
+	 * @param slot
+	 *            the slot
+	 * @return the entry, or {@code null} if there is no category or it is
+	 *         shorter than the grid
+	 */
+	public static Entry entryAt( Category c, int slot ) {
+		return c == null || c.entries == null || slot >= c.entries.length ? null
+			: c.entries[slot];
+	}
+
 	/**
 	 * Get the list of values
 	 * 
@@ -166,7 +226,8 @@ public class Category implements Comparable<Category> {
 	}
 
 	/**
-	 * Set the entry of a given value
+	 * Set the entry of a given value. The value is matched as a prefix, see
+	 * {@link #findPrefix(String)}.
 	 * 
 	 * @param value
 	 *            the value
@@ -176,15 +237,14 @@ public class Category implements Comparable<Category> {
 	 *         matching value was found)
 	 */
 	public boolean setEntry( String value, Entry entry ) {
-		int e = -1;
-		for ( int i = 0; i < values.length; i++ ) {
-			if ( values[i].startsWith( value ) ) {
-				e = i;
-				break;
-			}
-		}
+		int e = findPrefix( value );
 		if ( e != -1 ) {
+			Entry old = entries[e];
 			entries[e] = entry;
+			if ( old != null
+				&& Integer.valueOf( e ).equals( entrySlots.get( old ) ) )
+				entrySlots.remove( old );
+			indexEntry( entry, e );
 			return true;
 		} else {
 			return false;
@@ -192,20 +252,15 @@ public class Category implements Comparable<Category> {
 	}
 
 	/**
-	 * Get the entry of a certain value
+	 * Get the entry of a certain value. The value is matched as a prefix, see
+	 * {@link #findPrefix(String)}.
 	 * 
 	 * @param value
 	 *            the value
 	 * @return the matching entry ({@code null} if none found)
 	 */
 	public Entry getEntry( String value ) {
-		int e = -1;
-		for ( int i = 0; i < values.length; i++ ) {
-			if ( values[i].startsWith( value ) ) {
-				e = i;
-				break;
-			}
-		}
+		int e = findPrefix( value );
 		if ( e != -1 )
 			return entries[e];
 		else
@@ -222,15 +277,22 @@ public class Category implements Comparable<Category> {
 	 * @return whether the value was set (a matching entry was found)
 	 */
 	public boolean setValue( Entry e, String value ) {
-		int v = -1;
-		for ( int i = 0; i < entries.length; i++ ) {
-			if ( entries[i].equals( e ) ) {
-				v = i;
-				break;
-			}
-		}
+		int v = indexOf( e );
 		if ( v != -1 ) {
+			String old = values[v];
 			values[v] = value;
+			if ( old != null
+				&& Integer.valueOf( v ).equals( valueSlots.get( old ) ) ) {
+				// the old value may still be held by a later slot
+				valueSlots.remove( old );
+				for ( int i = v + 1; i < values.length; i++ ) {
+					if ( old.equals( values[i] ) ) {
+						valueSlots.put( old, i );
+						break;
+					}
+				}
+			}
+			indexValue( value, v );
 			return true;
 		} else {
 			return false;
@@ -245,19 +307,219 @@ public class Category implements Comparable<Category> {
 	 * @return the value
 	 */
 	public String getValue( Entry e ) {
-		int v = -1;
-		for ( int i = 0; i < entries.length; i++ ) {
-			if ( entries[i].equals( e ) ) {
-				v = i;
-				break;
-			}
-		}
+		int v = indexOf( e );
 		if ( v != -1 )
 			return values[v];
 		else
 			return null;
 	}
 
+	/**
+	 * Get the dollar amount of a slot: the number its value starts with,
+	 * ignoring a leading {@code $} and any thousands separators. A value
+	 * without a number (such as {@code "Wager"}) is worth 0.
+	 * 
+	 * @param slot
+	 *            the slot
+	 * @return the amount
+	 */
+	public int getAmount( int slot ) {
+		int i = parsed( slot );
+		return amounts[i];
+	}
+
+	/**
+	 * Get the dollar amount of an entry, see {@link #getAmount(int)}
+	 * 
+	 * @param e
+	 *            the entry
+	 * @return the amount, or 0 if the entry is not in this category
+	 */
+	public int getAmount( Entry e ) {
+		int v = indexOf( e );
+		return v == -1 ? 0 : getAmount( v );
+	}
+
+	/**
+	 * Get the board label of a slot: its value up to the first space, so
+	 * {@code "200 points"} is shown as {@code "200"}
+	 * 
+	 * @param slot
+	 *            the slot
+	 * @return the label, or {@code null} if the slot has no value
+	 */
+	public String getLabel( int slot ) {
+		int i = parsed( slot );
+		return labels[i];
+	}
+
+	/**
+	 * Get the board label of an entry, see {@link #getLabel(int)}
+	 * 
+	 * @param e
+	 *            the entry
+	 * @return the label, or {@code null} if the entry is not in this category
+	 */
+	public String getLabel( Entry e ) {
+		int v = indexOf( e );
+		return v == -1 ? null : getLabel( v );
+	}
+
+	/**
+	 * Find the slot holding an entry. Entries are compared by identity.
+	 * 
+	 * @param e
+	 *            the entry
+	 * @return the slot, or -1 if the entry is not in this category
+	 */
+	public int indexOf( Entry e ) {
+		index();
+		Integer i = entrySlots.get( e );
+		return i != null && entries[i] == e ? i : -1;
+	}
+
+	/**
+	 * Find the first slot whose value starts with the given prefix, the
+	 * matching used by {@link #getEntry(String)} and
+	 * {@link #setEntry(String, Entry)}. For example {@code "$200"} finds a
+	 * slot valued {@code "$200 points"}.
+	 * 
+	 * @param prefix
+	 *            the value prefix
+	 * @return the lowest matching slot, or -1 if no value matches
+	 */
+	public int findPrefix( String prefix ) {
+		index();
+		return scanPrefix( prefix );
+	}
+
+	/**
+	 * Rebuild the lookup index. Needed after writing into {@link #values} or
+	 * {@link #entries} directly; replacing the arrays is noticed on its own.
+	 */
+	public void reindex() {
+		entrySlots = new IdentityHashMap<Entry, Integer>();
+		valueSlots = new TreeMap<String, Integer>();
+		indexedValues = values;
+		indexedEntries = entries;
+		for ( int i = entries.length - 1; i >= 0; i-- ) {
+			if ( entries[i] != null )
+				entrySlots.put( entries[i], i );
+		}
+		for ( int i = values.length - 1; i >= 0; i-- ) {
+			if ( values[i] != null )
+				valueSlots.put( values[i], i );
+		}
+	}
+
+	private void parseValues() {
+		amounts = new int[ values.length ];
+		labels = new String[ values.length ];
+		parsed = new String[ values.length ];
+		for ( int i = 0; i < values.length; i++ )
+			parseValue( i );
+	}
+
+	private void parseValue( int slot ) {
+		String v = values[slot];
+		parsed[slot] = v;
+		amounts[slot] = parseAmount( v );
+		if ( v == null )
+			labels[slot] = null;
+		else {
+			String t = v.trim();
+			int i = t.indexOf( ' ' );
+			labels[slot] = i == -1 ? t : t.substring( 0, i );
+		}
+	}
+
+	// bring a slot's parsed value up to date if its text was replaced
+	private int parsed( int slot ) {
+		if ( parsed == null || parsed.length != values.length )
+			parseValues();
+		else if ( parsed[slot] != values[slot] )
+			parseValue( slot );
+		return slot;
+	}
+
+	private static int parseAmount( String v ) {
+		if ( v == null )
+			return 0;
+		int i = 0;
+		int n = v.length();
+		while ( i < n && Character.isWhitespace( v.charAt( i ) ) )
+			++i;
+		if ( i < n && v.charAt( i ) == '$' )
+			++i;
+		boolean negative = i < n && v.charAt( i ) == '-';
+		if ( negative )
+			++i;
+		long amount = 0;
+		for ( ; i < n; i++ ) {
+			char ch = v.charAt( i );
+			if ( ch >= '0' && ch <= '9' )
+				amount = Math.min( Integer.MAX_VALUE, amount * 10 + (ch - '0') );
+			else if ( ch != ',' )
+				break;
+		}
+		return (int) (negative ? -amount : amount);
+	}
+
+	private void index() {
+		if ( entrySlots == null || indexedValues != values
+			|| indexedEntries != entries )
+			reindex();
+	}
+
+	// every value starting with the prefix sorts directly after it
+	private int scanPrefix( String prefix ) {
+		int slot = -1;
+		for ( Map.Entry<String, Integer> m : valueSlots.tailMap( prefix, true )
+			.entrySet() ) {
+			if ( !m.getKey().startsWith( prefix ) )
+				break;
+			if ( slot == -1 || m.getValue() < slot )
+				slot = m.getValue();
+		}
+		return slot;
+	}
+
+	private void indexValue( String value, int slot ) {
+		if ( value == null )
+			return;
+		Integer i = valueSlots.get( value );
+		if ( i == null || slot < i )
+			valueSlots.put( value, slot );
+	}
+
+	private void indexEntry( Entry entry, int slot ) {
+		if ( entry == null )
+			return;
+		Integer i = entrySlots.get( entry );
+		if ( i == null || slot < i || entries[i] != entry )
+			entrySlots.put( entry, slot );
+	}
+
+	/**
+	 * Create a deep copy of this category
+	 * 
+	 * @return the copy
+	 */
+	public Category copy() {
+		Category c = new Category( name );
+		c.values = values == null ? null : values.clone();
+		if ( entries != null ) {
+			c.entries = new Entry[ entries.length ];
+			for ( int i = 0; i < entries.length; i++ ) {
+				if ( entries[i] != null )
+					c.entries[i] = entries[i].copy();
+			}
+		} else
+			c.entries = null;
+		c.size = size;
+		return c;
+	}
+
 	public int compareTo( Category c ) {
 		return name.compareTo( c.name );
 	}
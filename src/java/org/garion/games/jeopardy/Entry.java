@@ -24,7 +24,28 @@ package org.garion.games.jeopardy;
  */
 public class Entry {
 
+	/**
+	 * Supplies entry text that is decoded only when it is first read. The
+	 * source checks its references before handing them to an entry, since
+	 * the text is decoded where it is shown and cannot fail there.
+	 */
+	public interface Source {
+
+		/**
+		 * Decode a piece of text
+		 * 
+		 * @param ref
+		 *            the source's reference to the text
+		 * @return the text
+		 */
+		String text( int ref );
+	}
+
+	private static final int RESOLVED = Integer.MIN_VALUE;
+
 	private String a, q;
+	private Source source;
+	private int aRef, qRef;
 
 	/** Empty constructor */
 	public Entry() {
@@ -44,6 +65,23 @@ public class Entry {
 		setQuestion( question );
 	}
 
+	/**
+	 * Lazy constructor. The answer and question are fetched from the source
+	 * the first time they are read.
+	 * 
+	 * @param source
+	 *            the text source
+	 * @param answer
+	 *            the source's reference to the answer
+	 * @param question
+	 *            the source's reference to the question
+	 */
+	public Entry( Source source, int answer, int question ) {
+		this.source = source;
+		aRef = answer;
+		qRef = question;
+	}
+
 	/**
 	 * Set the answer
 	 * 
@@ -52,6 +90,7 @@ public class Entry {
 	 */
 	public void setAnswer( String answer ) {
 		a = answer;
+		aRef = RESOLVED;
 	}
 
 	/**
@@ -62,6 +101,7 @@ public class Entry {
 	 */
 	public void setQuestion( String question ) {
 		q = question;
+		qRef = RESOLVED;
 	}
 
 	/**
@@ -70,6 +110,8 @@ public class Entry {
 	 * @return the answer
 	 */
 	public String getAnswer() {
+		if ( aRef != RESOLVED )
+			setAnswer( source.text( aRef ) );
 		return a;
 	}
 
@@ -79,9 +121,20 @@ public class Entry {
 	 * @return the question
 	 */
 	public String getQuestion() {
+		if ( qRef != RESOLVED )
+			setQuestion( source.text( qRef ) );
 		return q;
 	}
 
+	/**
+	 * Create a copy of this entry
+	 * 
+	 * @return the copy
+	 */
+	public Entry copy() {
+		return new Entry( getAnswer(), getQuestion() );
+	}
+
 	/**
 	 * Print this entry, YAML-style
 	 * 
@@ -95,8 +148,8 @@ public class Entry {
 			System.out.printf( "%s- ~ #Entry = null%n", indent );
 		else {
 			System.out.printf( "%s- #Entry%n", indent );
-			System.out.printf( "%s  answer: %s%n", indent, e.a );
-			System.out.printf( "%s  question: %s%n", indent, e.q );
+			System.out.printf( "%s  answer: %s%n", indent, e.getAnswer() );
+			System.out.printf( "%s  question: %s%n", indent, e.getQuestion() );
 		}
 	}
 
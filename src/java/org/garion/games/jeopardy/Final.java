@@ -69,6 +69,15 @@ public class Final {
 		entry = e;
 	}
 
+	/**
+	 * Create a deep copy of this question
+	 * 
+	 * @return the copy
+	 */
+	public Final copy() {
+		return new Final( name, entry == null ? null : entry.copy() );
+	}
+
 	/**
 	 * Print this question, YAML-style
 	 * 
@@ -20,15 +20,17 @@ import java.util.Arrays;
 import org.garion.games.jeopardy.util.Const;
 
 /**
- * A Jeopardy Game
+ * A Jeopardy Game. A game may have any number of rounds; the size of each
+ * round is up to the round itself (see {@link Round#MAX_SIZE} and
+ * {@link Category#MAX_SIZE}).
  * 
  * @author Dallin Lauritzen
  * @version 1.0 (7 May 2010)
  */
 public class Game {
 
-	/** The maximum number of rounds */
-	public static final int MAX_ROUNDS = 2;
+	/** The number of rounds in a standard game */
+	public static final int DEFAULT_ROUNDS = 2;
 
 	/** The game title */
 	public String title;
@@ -58,7 +60,7 @@ public class Game {
 	public Game( String title, String subject ) {
 		setTitle( title );
 		setSubject( subject );
-		rounds = new Round[ MAX_ROUNDS ];
+		rounds = new Round[ 0 ];
 		f = null;
 		size = 0;
 	}
@@ -67,8 +69,7 @@ public class Game {
 	 * Verify the size of the rounds list (used when rounds is edited manually)
 	 */
 	public void verifySize() {
-		size = Math.min( size, MAX_ROUNDS );
-		rounds = Arrays.copyOf( rounds, MAX_ROUNDS );
+		size = Math.min( size, rounds.length );
 		for ( int i = 0; i < rounds.length; i++ ) {
 			if ( rounds[i] != null )
 				rounds[i].verifySize();
@@ -87,15 +88,15 @@ public class Game {
 	 * 
 	 * @param r
 	 *            the round
-	 * @return whether the round was added (there was room)
+	 * @return whether the round was added (always {@code true}, as there is
+	 *         no limit on the number of rounds)
 	 */
 	public boolean addRound( Round r ) {
-		if ( size < MAX_ROUNDS ) {
-			rounds[size] = r;
-			++size;
-			return true;
-		} else
-			return false;
+		if ( size >= rounds.length )
+			rounds = Arrays.copyOf( rounds, size + 1 );
+		rounds[size] = r;
+		++size;
+		return true;
 	}
 
 	/**
@@ -107,7 +108,7 @@ public class Game {
 	 */
 	public Round getRound( String name ) {
 		for ( int i = 0; i < rounds.length; i++ ) {
-			if ( rounds[i].getName().equals( name ) )
+			if ( rounds[i] != null && rounds[i].getName().equals( name ) )
 				return rounds[i];
 		}
 		return null;
@@ -165,16 +166,60 @@ public class Game {
 		this.f = f;
 	}
 
+	/**
+	 * Create a deep copy of this game
+	 * 
+	 * @return the copy
+	 */
+	public Game copy() {
+		Game g = new Game( title, subject );
+		if ( rounds != null ) {
+			g.rounds = new Round[ rounds.length ];
+			for ( int i = 0; i < rounds.length; i++ ) {
+				if ( rounds[i] != null )
+					g.rounds[i] = rounds[i].copy();
+			}
+		} else
+			g.rounds = null;
+		g.f = f == null ? null : f.copy();
+		g.size = size;
+		return g;
+	}
+
 	/**
 	 * Create a game where all fields are default
 	 * 
 	 * @return a new game
 	 */
 	public static Game createDefaultGame() {
+		return createGame( DEFAULT_ROUNDS, Round.DEFAULT_SIZE,
+			Category.DEFAULT_SIZE );
+	}
+
+	/**
+	 * Create a game of the given size where all fields are default. Values
+	 * go up by 100 per row in the first round, 200 in the second and so on.
+	 * 
+	 * @param rounds
+	 *            the number of rounds, not counting final jeopardy
+	 * @param categories
+	 *            the number of categories in each round
+	 * @param entries
+	 *            the number of entries in each category
+	 * @return a new game
+	 * @throws IllegalArgumentException
+	 *             if a size is negative or above its maximum
+	 */
+	public static Game createGame( int rounds, int categories, int entries ) {
+		if ( rounds < 0 || categories < 0 || categories > Round.MAX_SIZE
+			|| entries < 0 || entries > Category.MAX_SIZE )
+			throw new IllegalArgumentException( String.format(
+				"Invalid game size %d x %d x %d", rounds, categories, entries ) );
 		Game g = new Game();
 		g.setTitle( "" );
 		g.setSubject( "" );
-		for ( int r = 0; r < MAX_ROUNDS; r++ ) {
+		g.rounds = new Round[ rounds ];
+		for ( int r = 0; r < rounds; r++ ) {
 			Round round = new Round();
 			switch ( r ) {
 				case Const.SINGLEROUND:
@@ -184,13 +229,17 @@ public class Game {
 					round.setName( "Double Jeopardy" );
 					break;
 				default:
-					round.setName( "Uh..." );
+					round.setName( "Round " + (r + 1) );
 			}
-			for ( int c = 0; c < Round.MAX_SIZE; c++ ) {
-				Category cat = new Category( Const.DEFAULT_CATS[r][c] );
-				for ( int ev = 0; ev < Category.MAX_SIZE; ev++ ) {
+			round.categories = new Category[ categories ];
+			for ( int c = 0; c < categories; c++ ) {
+				Category cat = new Category( defaultName( r, c ) );
+				cat.values = new String[ entries ];
+				cat.entries = new Entry[ entries ];
+				for ( int ev = 0; ev < entries; ev++ ) {
 					Entry ent = new Entry( "answer", "question" );
-					cat.addEntry( Const.DEFAULT_VALUES[r][ev], ent );
+					cat.addEntry( String.valueOf( (r + 1) * 100 * (ev + 1) ),
+						ent );
 				}
 				round.addCategory( cat );
 			}
@@ -202,6 +251,15 @@ public class Game {
 		return g;
 	}
 
+	private static String defaultName( int round, int cat ) {
+		if ( round < Const.FINALROUND
+			&& cat < Const.DEFAULT_CATS[round].length )
+			return Const.DEFAULT_CATS[round][cat];
+		String prefix = round == Const.SINGLEROUND ? "Single"
+			: round == Const.DOUBLEROUND ? "Double" : "Round " + (round + 1);
+		return prefix + " " + (char) ('A' + cat);
+	}
+
 	/**
 	 * Print the contents of a game, YAML-style
 	 * 
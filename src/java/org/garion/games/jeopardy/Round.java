@@ -17,10 +17,16 @@
 package org.garion.games.jeopardy;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
 
 /**
- * A round of Jeopardy (single/double)
+ * A round of Jeopardy (single/double). The category list holds exactly the
+ * categories of the round, up to {@link #MAX_SIZE}.
+ * <p>
+ * Categories stay in the order they were added unless the round is put in
+ * sorted mode (see {@link #sortByName(boolean)}), in which case each new
+ * category is inserted at its place by name.
  * 
  * @author Dallin Lauritzen
  * @version 1.0 (7 May 2010)
@@ -28,13 +34,16 @@ import java.util.Comparator;
 public class Round {
 
 	/** The maximum allowed number of categories */
-	public static final int MAX_SIZE = 5;
+	public static final int MAX_SIZE = 12;
+	/** The number of categories in a standard round */
+	public static final int DEFAULT_SIZE = 5;
 
 	/** the name of the round */
 	public String name;
 	/** the list of categories */
 	public Category[] categories;
 	private int size;
+	private boolean sorted;
 
 	/**
 	 * Basic empty-name round
@@ -50,7 +59,7 @@ public class Round {
 	 */
 	public Round( String name ) {
 		setName( name );
-		categories = new Category[ MAX_SIZE ];
+		categories = new Category[ 0 ];
 		size = 0;
 	}
 
@@ -74,8 +83,9 @@ public class Round {
 	 * categories is changed manually)
 	 */
 	public void verifySize() {
-		categories = Arrays.copyOf( categories, MAX_SIZE );
-		size = Math.min( MAX_SIZE, size );
+		if ( categories.length > MAX_SIZE )
+			categories = Arrays.copyOf( categories, MAX_SIZE );
+		size = Math.min( categories.length, size );
 		for ( int i = 0; i < categories.length; i++ ) {
 			if ( categories[i] != null )
 				categories[i].verifySize();
@@ -118,7 +128,31 @@ public class Round {
 	}
 
 	/**
-	 * Add a category to the round
+	 * Whether categories are kept sorted by name
+	 * 
+	 * @return {@code true} in sorted mode
+	 */
+	public boolean isSorted() {
+		return sorted;
+	}
+
+	/**
+	 * Keep the categories sorted by name, or in the order they are added
+	 * (the default). Turning sorting on sorts the current categories once;
+	 * after that each new one is inserted at its place.
+	 * 
+	 * @param sorted
+	 *            whether to sort by name
+	 */
+	public void sortByName( boolean sorted ) {
+		if ( sorted && !this.sorted )
+			Arrays.sort( categories, 0, size, COMPARATOR );
+		this.sorted = sorted;
+	}
+
+	/**
+	 * Add a category to the round, at the end or, in sorted mode, after the
+	 * categories whose names sort before or equal to its own
 	 * 
 	 * @param c
 	 *            the category
@@ -126,14 +160,71 @@ public class Round {
 	 */
 	public boolean addCategory( Category c ) {
 		if ( size < MAX_SIZE ) {
-			categories[size] = c;
+			if ( size >= categories.length )
+				categories = Arrays.copyOf( categories, size + 1 );
+			if ( sorted )
+				insert( categories, size, c );
+			else
+				categories[size] = c;
 			++size;
-			Arrays.sort( categories, 0, size, COMPARATOR );
 			return true;
 		} else
 			return false;
 	}
 
+	/**
+	 * Add several categories at once. The list is grown once, and in sorted
+	 * mode sorted once, instead of for every category.
+	 * 
+	 * @param cats
+	 *            the categories
+	 * @return how many were added; categories past {@link #MAX_SIZE} are
+	 *         left out
+	 */
+	public int addCategories( Category... cats ) {
+		return addCategories( Arrays.asList( cats ) );
+	}
+
+	/**
+	 * Add several categories at once, see {@link #addCategories(Category...)}
+	 * 
+	 * @param cats
+	 *            the categories
+	 * @return how many were added
+	 */
+	public int addCategories( Collection<? extends Category> cats ) {
+		int n = Math.min( cats.size(), MAX_SIZE - size );
+		if ( n <= 0 )
+			return 0;
+		if ( size + n > categories.length )
+			categories = Arrays.copyOf( categories, size + n );
+		int start = size;
+		for ( Category c : cats ) {
+			if ( size == start + n )
+				break;
+			categories[size++] = c;
+		}
+		if ( sorted )
+			Arrays.sort( categories, 0, size, COMPARATOR );
+		return n;
+	}
+
+	// binary insertion into a[0..size), after any equal names so that
+	// categories with the same name keep the order they were added in
+	static void insert( Category[] a, int size, Category c ) {
+		int lo = 0;
+		int hi = size;
+		while ( lo < hi ) {
+			int mid = (lo + hi) >>> 1;
+			if ( COMPARATOR.compare( a[mid], c ) <= 0 )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		System.arraycopy( a, lo, a, lo + 1, size - lo );
+		a[lo] = c;
+	}
+
 	/**
 	 * Get a category by name
 	 * 
@@ -143,12 +234,28 @@ public class Round {
 	 */
 	public Category getCategory( String name ) {
 		for ( int i = 0; i < categories.length; i++ ) {
-			if ( categories[i].getName().equals( name ) )
+			if ( categories[i] != null
+				&& categories[i].getName().equals( name ) )
 				return categories[i];
 		}
 		return null;
 	}
 
+	/**
+	 * Get the number of entry rows needed to show this round, i.e. the size
+	 * of its longest category
+	 * 
+	 * @return the number of rows
+	 */
+	public int rows() {
+		int rows = 0;
+		for ( int i = 0; i < categories.length; i++ ) {
+			if ( categories[i] != null && categories[i].entries != null )
+				rows = Math.max( rows, categories[i].entries.length );
+		}
+		return rows;
+	}
+
 	/**
 	 * Get the list of categories
 	 * 
@@ -158,6 +265,26 @@ public class Round {
 		return categories;
 	}
 
+	/**
+	 * Create a deep copy of this round
+	 * 
+	 * @return the copy
+	 */
+	public Round copy() {
+		Round r = new Round( name );
+		r.sorted = sorted;
+		if ( categories != null ) {
+			r.categories = new Category[ categories.length ];
+			for ( int i = 0; i < categories.length; i++ ) {
+				if ( categories[i] != null )
+					r.categories[i] = categories[i].copy();
+			}
+		} else
+			r.categories = null;
+		r.size = size;
+		return r;
+	}
+
 	/**
 	 * category list comparator
 	 */
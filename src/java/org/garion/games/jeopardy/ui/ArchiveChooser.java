@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.ui;
+
+import java.awt.Component;
+import java.io.File;
+import java.io.IOException;
+import javax.swing.JOptionPane;
+import org.garion.games.jeopardy.Game;
+import org.garion.games.jeopardy.util.GameArchive;
+import org.garion.games.jeopardy.util.IO;
+
+/**
+ * Lets the user pick one game out of a game archive
+ *
+ * @author martin@mbs3.org
+ */
+public final class ArchiveChooser {
+
+	private ArchiveChooser() {}
+
+	/**
+	 * Show the list of games in an archive and inflate the chosen one. An
+	 * archive holding a single game is opened without asking.
+	 *
+	 * @param caller
+	 *            the component calling this dialog
+	 * @param f
+	 *            the archive file
+	 * @return the chosen game, or {@code null} if cancelled
+	 * @throws IOException
+	 *             if the archive can't be read
+	 */
+	public static Game showDialog( Component caller, File f )
+		throws IOException {
+		GameArchive a = IO.openArchive( f );
+		try {
+			if ( a.size() == 0 )
+				throw new IOException( "No game found" );
+			if ( a.size() == 1 )
+				return a.getGame( 0 );
+			String[] titles = new String[ a.size() ];
+			for ( int i = 0; i < titles.length; i++ )
+				titles[i] = String.format( "%d. %s - %s", i + 1, a.getTitle( i ),
+					a.getSubject( i ) );
+			Object s = JOptionPane.showInputDialog( caller, "Choose a game:",
+				f.getName(), JOptionPane.QUESTION_MESSAGE, null, titles,
+				titles[0] );
+			for ( int i = 0; i < titles.length; i++ ) {
+				if ( titles[i] == s )
+					return a.getGame( i );
+			}
+			return null;
+		} finally {
+			a.close();
+		}
+	}
+
+}
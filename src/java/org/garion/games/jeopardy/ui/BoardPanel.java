@@ -19,11 +19,18 @@ package org.garion.games.jeopardy.ui;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import javax.swing.*;
 
 import org.garion.games.jeopardy.*;
+import org.garion.games.jeopardy.util.BuzzRing;
+import org.garion.games.jeopardy.util.BuzzTimeline;
 import org.garion.games.jeopardy.util.Const;
 import org.garion.games.jeopardy.util.ExternalPlayerController;
+import org.garion.games.jeopardy.util.GamePatch;
+import org.garion.games.jeopardy.util.GameSnapshot;
 
 /**
  * Panel to display a jeopardy game
@@ -42,12 +49,43 @@ public class BoardPanel extends JPanel implements ActionListener, ExternalPlayer
 	public static final String FINALPANEL = "FINAL";
 	/** Panel name for endgame panel */
 	public static final String ENDGAME = "ENDGAME";
+	/** Milliseconds between buzzer queue drains, about one per frame */
+	public static final int FRAME_MS = 16;
 
 	private Game g;
+	private volatile GameSnapshot snapshot;
 	private Category currentCategory;
 	private Entry currentEntry;
 	private int round;
 
+	// buzzer: one timeline per clue shown in this game
+	private Timer buzzTimer;
+	private BuzzTimeline timeline;
+	private final List<BuzzTimeline> timelines = new ArrayList<BuzzTimeline>();
+	// whether someone has rung in since the box was last reset
+	private boolean rungIn;
+	private final BuzzRing.Consumer buzzConsumer = new BuzzRing.Consumer() {
+
+		public void buzz( int player, long nanos, long device ) {
+			if ( timeline != null )
+				timeline.record( player, nanos, device );
+			if ( player == BuzzRing.RESET ) {
+				rungIn = false;
+				resetPlayer();
+			} else if ( !rungIn ) {
+				// later presses are only recorded, for rebounds
+				rungIn = true;
+				signalPlayer( player < PLAYER_NAMES.length ? PLAYER_NAMES[player]
+					: "Player " + (player + 1) );
+			}
+		}
+	};
+	private static final String[] PLAYER_NAMES = new String[ 8 ];
+	static {
+		for ( int i = 0; i < PLAYER_NAMES.length; i++ )
+			PLAYER_NAMES[i] = "Player " + (i + 1);
+	}
+
 	// grid
 	private JPanel grid;
 	private CPanel[] cats;
@@ -88,11 +126,32 @@ public class BoardPanel extends JPanel implements ActionListener, ExternalPlayer
 	}
 
 	private void createGridPanel() {
-		// grid panel
-		grid = new JPanel( new GridLayout( Category.MAX_SIZE + 1,
-			Round.MAX_SIZE ) );
-		cats = new CPanel[ Round.MAX_SIZE ];
-		entries = new EPanel[ cats.length ][ Category.MAX_SIZE ];
+		// grid panel, filled in by sizeGrid once a round is loaded
+		grid = new JPanel();
+		cats = new CPanel[ 0 ];
+		entries = new EPanel[ 0 ][ 0 ];
+		add( grid, GRID );
+	}
+
+	/**
+	 * Size the grid to a round: one column per category and one row per
+	 * entry of the longest category. The tiles are only rebuilt when the
+	 * size changes.
+	 * 
+	 * @param r
+	 *            the round
+	 * @return whether the grid was rebuilt
+	 */
+	private boolean sizeGrid( Round r ) {
+		int columns = r.categories.length;
+		int rows = r.rows();
+		if ( columns == cats.length
+			&& (columns == 0 || rows == entries[0].length) )
+			return false;
+		grid.removeAll();
+		grid.setLayout( new GridLayout( rows + 1, Math.max( 1, columns ) ) );
+		cats = new CPanel[ columns ];
+		entries = new EPanel[ columns ][ rows ];
 		// create
 		for ( int y = 0; y < cats.length; y++ ) {
 			cats[y] = new CPanel( this );
@@ -100,16 +159,18 @@ public class BoardPanel extends JPanel implements ActionListener, ExternalPlayer
 				entries[y][x] = new EPanel( this );
 			}
 		}
-		// layout
+		// layout, row by row
 		for ( int x = 0; x < cats.length; x++ ) {
 			grid.add( cats[x] );
 		}
-		for ( int x = 0; x < cats.length; x++ ) {
-			for ( int y = 0; y < entries[x].length; y++ ) {
-				grid.add( entries[y][x] );
+		for ( int y = 0; y < rows; y++ ) {
+			for ( int x = 0; x < cats.length; x++ ) {
+				grid.add( entries[x][y] );
 			}
 		}
-		add( grid, GRID );
+		grid.revalidate();
+		grid.repaint();
+		return true;
 	}
 
 	private void createDisplayPanel() {
@@ -208,6 +269,9 @@ public class BoardPanel extends JPanel implements ActionListener, ExternalPlayer
 	 */
 	public void loadGame( Game g ) {
 		this.g = g;
+		snapshot = GameSnapshot.of( g );
+		timeline = null;
+		timelines.clear();
 		finalCat.setText( g.f.name );
 		finalValue.setText( "Wager!" );
 		finalCat.setVisible( false );
@@ -217,27 +281,115 @@ public class BoardPanel extends JPanel implements ActionListener, ExternalPlayer
 	}
 
 	/**
-	 * Display a specific round
+	 * Load a game from a snapshot. The board plays its own copy, so the
+	 * snapshot can keep being shared with other threads.
+	 * 
+	 * @param s
+	 *            the snapshot
+	 */
+	public void loadGame( GameSnapshot s ) {
+		loadGame( s.toGame() );
+		snapshot = s;
+	}
+
+	/**
+	 * Get an immutable snapshot of the game on the board, for reading from
+	 * other threads (e.g. a scoreboard export or a network broadcast). A new
+	 * snapshot is published whenever the game is loaded or patched; parts
+	 * that did not change are shared with the previous one.
+	 * 
+	 * @return the snapshot, or {@code null} if no game is loaded
+	 */
+	public GameSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Patch the loaded game with a newer version of it, e.g. after the game
+	 * file was edited. Only changed text is updated; tiles that were already
+	 * played stay played.
+	 * 
+	 * @param fresh
+	 *            the newer version of the game
+	 * @return the number of fields that changed
+	 */
+	public int patchGame( Game fresh ) {
+		if ( g == null ) {
+			loadGame( fresh );
+			return 1;
+		}
+		int n = GamePatch.apply( g, fresh );
+		if ( n == 0 )
+			return 0;
+		snapshot = GameSnapshot.of( g, snapshot );
+		// final jeopardy, in whatever step it is showing
+		finalCat.setText( g.f.name );
+		if ( finalButton.getText().equals( "Show Answer" ) )
+			finalText.setText( g.f.name );
+		else if ( finalButton.getText().equals( "Show Question" ) )
+			finalText.setText( g.f.entry.getAnswer() );
+		else
+			finalText.setText( g.f.entry.getQuestion() );
+		// the board; if its shape changed, the round starts over
+		if ( round < g.rounds.length && g.rounds[round] != null ) {
+			Round r = g.rounds[round];
+			if ( sizeGrid( r ) )
+				loadRound( round );
+			else {
+				for ( int y = 0; y < cats.length; y++ ) {
+					Category c = r.categories[y];
+					cats[y].setCategory( c );
+					for ( int x = 0; x < entries[y].length; x++ ) {
+						entries[y][x].refresh( c, Category.entryAt( c, x ) );
+					}
+				}
+			}
+		}
+		// the entry on display
+		if ( currentCategory != null && currentEntry != null ) {
+			entryCat.setText( currentCategory.getName() );
+			entryVal.setText( "$" + currentCategory.getValue( currentEntry ) );
+			entryQu = currentEntry.getQuestion();
+			if ( respond.getText().equals( "Question" ) )
+				entryAns.setText( "<html>" + currentEntry.getAnswer()
+					+ "</html>" );
+			else
+				entryAns.setText( "<html>" + entryQu + "</html>" );
+		}
+		return n;
+	}
+
+	/**
+	 * Display a specific round. Any number past the game's last round (such
+	 * as {@link Const#FINALROUND} in a standard game) shows final jeopardy.
+	 * The grid is sized to the round.
 	 * 
 	 * @param r
 	 */
 	public void loadRound( int r ) {
 		this.round = r;
-		if ( round == Const.FINALROUND ) {
+		if ( round >= g.rounds.length || g.rounds[round] == null ) {
 			showPanel( FINALPANEL );
 		} else {
+			sizeGrid( g.rounds[r] );
 			for ( int y = 0; y < cats.length; y++ ) {
 				cats[y].setCategory( g.rounds[r].categories[y] );
 				for ( int x = 0; x < entries[y].length; x++ ) {
 					Category c = cats[y].getCategory();
-					entries[y][x].setEntry( c,
-						(c == null ? null : c.entries[x]) );
+					entries[y][x].setEntry( c, Category.entryAt( c, x ) );
 				}
 			}
 			showPanel( GRID );
 		}
 	}
 
+	/**
+	 * Display final jeopardy
+	 */
+	public void loadFinalRound() {
+		loadRound( g.rounds.length );
+	}
+
 	/**
 	 * Get the current category of the entry being displayed
 	 * 
@@ -256,6 +408,18 @@ public class BoardPanel extends JPanel implements ActionListener, ExternalPlayer
 		return currentEntry;
 	}
 
+	/**
+	 * Get the dollar amount of the entry being displayed, e.g. to add it to
+	 * a player's score
+	 * 
+	 * @return the amount, or 0 if no entry is displayed
+	 */
+	public int getCurrentAmount() {
+		if ( currentCategory == null || currentEntry == null )
+			return 0;
+		return currentCategory.getAmount( currentEntry );
+	}
+
 	/**
 	 * Display an entry
 	 * 
@@ -272,9 +436,50 @@ public class BoardPanel extends JPanel implements ActionListener, ExternalPlayer
 		entryAns.setText( "<html>" + e.getAnswer() + "</html>" );
 		playerVal.setText("");
 		entryQu = e.getQuestion();
+		timeline = new BuzzTimeline( c.getName() + " $" + c.getValue( e ),
+			System.nanoTime() );
+		timelines.add( timeline );
 		showPanel( ENTRY );
 	}
 
+	/**
+	 * Start taking buzzer events from a ring once per frame. The board is
+	 * the ring's only consumer. Each event is recorded in the timeline of
+	 * the clue on screen, and the first press after each reset is shown.
+	 * 
+	 * @param ring
+	 *            the ring the buzzer reader fills
+	 */
+	public void listen( final BuzzRing ring ) {
+		if ( buzzTimer != null )
+			buzzTimer.stop();
+		buzzTimer = new Timer( FRAME_MS, new ActionListener() {
+
+			public void actionPerformed( ActionEvent evt ) {
+				ring.drain( buzzConsumer );
+			}
+		} );
+		buzzTimer.start();
+	}
+
+	/**
+	 * Get the buzzer timeline of the clue on screen
+	 * 
+	 * @return the timeline, or {@code null} if no clue is on screen
+	 */
+	public BuzzTimeline getBuzzTimeline() {
+		return timeline;
+	}
+
+	/**
+	 * Get the buzzer timelines of every clue shown in this game, in order
+	 * 
+	 * @return the timelines
+	 */
+	public List<BuzzTimeline> getBuzzTimelines() {
+		return Collections.unmodifiableList( timelines );
+	}
+
 	private void showPanel( String name ) {
 		((CardLayout) getLayout()).show( this, name );
 	}
@@ -285,6 +490,7 @@ public class BoardPanel extends JPanel implements ActionListener, ExternalPlayer
 			respond.setText( "Return to Board" );
 		} else if ( respond.getText().equals( "Return to Board" ) ) {
 			respond.setText( "Question" );
+			timeline = null;
 			showPanel( GRID );
 		}
 	}
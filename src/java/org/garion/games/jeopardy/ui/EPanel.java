@@ -91,15 +91,31 @@ public class EPanel extends JPanel {
 			setText( "" );
 			label.setVisible( false );
 		} else {
-			String v = c.getValue( e );
-			int i = v.indexOf( " " );
-			if ( i != -1 )
-				setText( v.substring( 0, i ) );
-			else
-				setText( v );
+			setText( valueText() );
 		}
 	}
 
+	/**
+	 * Show the current text of the entry, e.g. after the game was patched.
+	 * A played entry stays hidden. If the category or entry object was
+	 * replaced, the panel is reset as by {@link #setEntry(Category, Entry)}.
+	 * 
+	 * @param c
+	 *            the category
+	 * @param e
+	 *            the entry
+	 */
+	public void refresh( Category c, Entry e ) {
+		if ( c != this.c || e != this.e )
+			setEntry( c, e );
+		else if ( e != null )
+			label.setText( valueText() );
+	}
+
+	private String valueText() {
+		return c.getLabel( e );
+	}
+
 	/**
 	 * Set the displayed text
 	 * 
@@ -19,11 +19,18 @@ package org.garion.games.jeopardy.ui;
 import java.awt.BorderLayout;
 import java.awt.event.*;
 import java.io.File;
+import java.io.IOException;
 import javax.swing.*;
 import org.garion.games.jeopardy.Game;
+import org.garion.games.jeopardy.util.BuzzFrameDecoder;
+import org.garion.games.jeopardy.util.BuzzRing;
+import org.garion.games.jeopardy.util.BuzzerAggregator;
+import org.garion.games.jeopardy.util.BuzzerSimulator;
 import org.garion.games.jeopardy.util.Const;
 import org.garion.games.jeopardy.util.ExternalPlayerReader;
+import org.garion.games.jeopardy.util.GameWatcher;
 import org.garion.games.jeopardy.util.IO;
+import org.garion.games.jeopardy.util.SerialBuzzerSource;
 import org.garion.games.jeopardy.util.builder.GameBuilder;
 import org.garion.games.scorecard.Scorecard;
 import org.garion.global.Global;
@@ -46,13 +53,14 @@ public class Jeopardy {
 	private JMenu gameMenu;
 	private JMenuItem newGame, exitMenu;
 	private JMenu roundMenu;
-	private JMenuItem showSingleRound, showDoubleRound, showFinalRound;
+	private JMenuItem showFinalRound;
 	private JMenu toolsMenu;
 	private JMenuItem scoreCardItem, builderItem;
 	private JMenu helpMenu;
 	private JMenuItem aboutItem, readmeItem, licenseItem;
 
 	private JFileChooser chooser;
+	private GameWatcher watcher;
 
 	/**
 	 * Create the jeopardy frame
@@ -66,8 +74,26 @@ public class Jeopardy {
 		main = new JPanel( new BorderLayout() );
 		boardPanel = new BoardPanel();
 		
-		// start delivering serial events to the BoardPanel (in a sep. thread)
-		new Thread(new ExternalPlayerReader(boardPanel)).start();
+		// read serial events in a sep. thread; the BoardPanel drains them.
+		// -Djeopardy.simulate=true plays a simulated buzzer box instead, and
+		// -Djeopardy.buzzers=port,port,... merges several boxes ("sim" for
+		// a simulated one).
+		BuzzRing buzzes = new BuzzRing( 256 );
+		boardPanel.listen( buzzes );
+		String ports = System.getProperty( "jeopardy.buzzers" );
+		if ( ports != null ) {
+			// each box's players are numbered by the count in its hello
+			BuzzerAggregator boxes = new BuzzerAggregator( buzzes );
+			for ( String port : ports.split( "," ) ) {
+				boxes.add( port.equals( "sim" ) ? new BuzzerSimulator()
+					: new SerialBuzzerSource( BuzzFrameDecoder.BAUD, port ) );
+			}
+			new Thread( boxes ).start();
+		} else if ( Boolean.getBoolean( "jeopardy.simulate" ) )
+			new Thread( new ExternalPlayerReader( buzzes,
+				new BuzzerSimulator(), false ) ).start();
+		else
+			new Thread(new ExternalPlayerReader(buzzes)).start();
 		
 		createMenuBar();
 		chooser = new JFileChooser();
@@ -92,12 +118,8 @@ public class Jeopardy {
 		gameMenu.add( exitMenu );
 		// Round menu
 		roundMenu = new JMenu( "Round" );
-		showSingleRound = new JMenuItem( "Show Single Jeopardy" );
-		showDoubleRound = new JMenuItem( "Show Double Jeopardy" );
 		showFinalRound = new JMenuItem( "Show Final Jeopardy" );
-		roundMenu.add( showSingleRound );
-		roundMenu.add( showDoubleRound );
-		roundMenu.add( showFinalRound );
+		fillRoundMenu();
 		// Tools menu
 		toolsMenu = new JMenu( "Tools" );
 		scoreCardItem = new JMenuItem( "Score Card" );
@@ -121,8 +143,6 @@ public class Jeopardy {
 		// listeners
 		newGame.addActionListener( menuListener );
 		exitMenu.addActionListener( menuListener );
-		showSingleRound.addActionListener( menuListener );
-		showDoubleRound.addActionListener( menuListener );
 		showFinalRound.addActionListener( menuListener );
 		scoreCardItem.addActionListener( menuListener );
 		builderItem.addActionListener( menuListener );
@@ -134,10 +154,6 @@ public class Jeopardy {
 			InputEvent.CTRL_DOWN_MASK ) );
 		exitMenu.setAccelerator( KeyStroke.getKeyStroke( 'Q',
 			InputEvent.CTRL_DOWN_MASK ) );
-		showSingleRound.setAccelerator( KeyStroke.getKeyStroke( 'S',
-			InputEvent.CTRL_DOWN_MASK ) );
-		showDoubleRound.setAccelerator( KeyStroke.getKeyStroke( 'D',
-			InputEvent.CTRL_DOWN_MASK ) );
 		showFinalRound.setAccelerator( KeyStroke.getKeyStroke( 'F',
 			InputEvent.CTRL_DOWN_MASK ) );
 		scoreCardItem.setAccelerator( KeyStroke.getKeyStroke( 'C',
@@ -150,8 +166,6 @@ public class Jeopardy {
 		newGame.setMnemonic( 'n' );
 		exitMenu.setMnemonic( 'x' );
 		roundMenu.setMnemonic( 'r' );
-		showSingleRound.setMnemonic( 's' );
-		showDoubleRound.setMnemonic( 'd' );
 		showFinalRound.setMnemonic( 'f' );
 		toolsMenu.setMnemonic( 't' );
 		scoreCardItem.setMnemonic( 'c' );
@@ -162,6 +176,47 @@ public class Jeopardy {
 		licenseItem.setMnemonic( 'l' );
 	}
 
+	/**
+	 * Fill the round menu with one item per round of the loaded game (or the
+	 * standard two rounds if no game is loaded), then final jeopardy. The
+	 * first two rounds keep their Ctrl-S and Ctrl-D shortcuts; later ones
+	 * get Ctrl and their number.
+	 */
+	private void fillRoundMenu() {
+		roundMenu.removeAll();
+		int rounds = game == null ? Game.DEFAULT_ROUNDS : game.rounds.length;
+		for ( int i = 0; i < rounds; i++ ) {
+			String name = game == null ? null : game.rounds[i] == null ? null
+				: game.rounds[i].getName();
+			if ( name == null || name.isEmpty() )
+				name = i == Const.SINGLEROUND ? "Single Jeopardy"
+					: i == Const.DOUBLEROUND ? "Double Jeopardy" : "Round "
+						+ (i + 1);
+			JMenuItem item = new JMenuItem( "Show " + name );
+			final int round = i;
+			item.addActionListener( new ActionListener() {
+
+				public void actionPerformed( ActionEvent e ) {
+					if ( game != null )
+						boardPanel.loadRound( round );
+				}
+			} );
+			if ( i == Const.SINGLEROUND ) {
+				item.setAccelerator( KeyStroke.getKeyStroke( 'S',
+					InputEvent.CTRL_DOWN_MASK ) );
+				item.setMnemonic( 's' );
+			} else if ( i == Const.DOUBLEROUND ) {
+				item.setAccelerator( KeyStroke.getKeyStroke( 'D',
+					InputEvent.CTRL_DOWN_MASK ) );
+				item.setMnemonic( 'd' );
+			} else if ( i < 9 )
+				item.setAccelerator( KeyStroke.getKeyStroke( '1' + i,
+					InputEvent.CTRL_DOWN_MASK ) );
+			roundMenu.add( item );
+		}
+		roundMenu.add( showFinalRound );
+	}
+
 	/**
 	 * Load a new game
 	 * 
@@ -170,11 +225,59 @@ public class Jeopardy {
 	 */
 	public void loadGame( Game g ) {
 		this.game = g;
+		fillRoundMenu();
 		boardPanel.loadGame( game );
 		frame.setTitle( String.format( "Jeopardy :: %s - %s", game.title,
 			game.subject ) );
 	}
 
+	/**
+	 * Load a game file and reload it whenever it changes on disk. Changes
+	 * are patched into the board without resetting played entries. For a
+	 * game archive the user picks the game, and the archive is not watched.
+	 * 
+	 * @param f
+	 *            the game file
+	 * @throws Exception
+	 *             if the file can't be loaded
+	 */
+	public void loadGame( File f ) throws Exception {
+		boolean archive = IO.isArchive( f );
+		Game g = archive ? ArchiveChooser.showDialog( frame, f ) : IO
+			.loadCached( f );
+		if ( g == null )
+			return;
+		loadGame( g );
+		if ( watcher != null )
+			watcher.close();
+		watcher = null;
+		// archives are shipped packs, so they are not watched
+		if ( archive )
+			return;
+		try {
+			watcher = new GameWatcher( f, reloadListener );
+		} catch ( IOException ioe ) {
+			// the game still plays, it just won't pick up edits
+			ioe.printStackTrace();
+		}
+	}
+
+	private GameWatcher.Listener reloadListener = new GameWatcher.Listener() {
+
+		public void reloaded( File f, Game g ) {
+			if ( boardPanel.patchGame( g ) > 0 ) {
+				frame.setTitle( String.format( "Jeopardy :: %s - %s",
+					game.title, game.subject ) );
+				fillRoundMenu();
+			}
+		}
+
+		public void failed( File f, Exception e ) {
+			// keep playing the last good version; the writer may not be done
+			System.err.println( "Could not reload " + f + ": " + e );
+		}
+	};
+
 	private ActionListener menuListener = new ActionListener() {
 
 		public void actionPerformed( ActionEvent e ) {
@@ -184,7 +287,7 @@ public class Jeopardy {
 				if ( s == JFileChooser.APPROVE_OPTION ) {
 					File f = chooser.getSelectedFile();
 					try {
-						loadGame( IO.detectAndLoad( f ) );
+						loadGame( f );
 					} catch ( Exception ex ) {
 						JOptionPane
 							.showMessageDialog( frame,
@@ -195,15 +298,9 @@ public class Jeopardy {
 				}
 			} else if ( command.equals( "Exit" ) ) {
 				System.exit( 0 );
-			} else if ( command.equals( "Show Single Jeopardy" ) ) {
-				if ( game != null )
-					boardPanel.loadRound( Const.SINGLEROUND );
-			} else if ( command.equals( "Show Double Jeopardy" ) ) {
-				if ( game != null )
-					boardPanel.loadRound( Const.DOUBLEROUND );
 			} else if ( command.equals( "Show Final Jeopardy" ) ) {
 				if ( game != null )
-					boardPanel.loadRound( Const.FINALROUND );
+					boardPanel.loadFinalRound();
 			} else if ( command.equals( "Score Card" ) ) {
 				new Scorecard( false );
 			} else if ( command.equals( "Game Builder" ) ) {
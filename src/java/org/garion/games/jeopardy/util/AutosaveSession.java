@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The autosave files of one open document. The files of a session are named
+ * {@code <prefix>-<id><suffix>}, and the session is held by a lock on its
+ * {@code .lock} file for as long as the document is open, so several game
+ * builders or score cards, in one VM or several, never write, recover or
+ * delete each other's files. The operating system drops the lock when the
+ * process dies, which is what marks a session as left behind by a crash.
+ *
+ * @author martin@mbs3.org
+ */
+public final class AutosaveSession {
+
+	private static final String LOCK = ".lock";
+	// closing any channel on a file can drop this process's locks on it, so
+	// the sessions held in this VM are never opened a second time
+	private static final Set<File> held = new HashSet<File>();
+
+	private final File dir;
+	private final String prefix;
+	private String name;
+	private FileChannel channel;
+
+	/**
+	 * Create a session, not yet held
+	 *
+	 * @param dir
+	 *            the directory holding the autosave files
+	 * @param prefix
+	 *            the name shared by this kind of document's sessions
+	 */
+	public AutosaveSession( File dir, String prefix ) {
+		this.dir = dir;
+		this.prefix = prefix + "-";
+	}
+
+	/**
+	 * Take over a session left behind by a document that did not close
+	 * cleanly. Only sessions that no open document holds and that have the
+	 * given file are taken; others left behind are deleted on the way.
+	 *
+	 * @param marker
+	 *            the suffix of the file a recoverable session has
+	 * @return whether the session now held has that file
+	 */
+	public boolean adopt( String marker ) {
+		if ( name == null ) {
+			File[] files = dir.listFiles();
+			if ( files == null )
+				return false;
+			for ( File f : files ) {
+				String n = f.getName();
+				if ( !n.startsWith( prefix ) || !n.endsWith( LOCK )
+					|| !lock( f ) )
+					continue;
+				if ( file( marker ).isFile() )
+					return true;
+				release();
+			}
+			return false;
+		}
+		return file( marker ).isFile();
+	}
+
+	/**
+	 * Start a new session, unless one is already held
+	 *
+	 * @throws IOException
+	 *             if the directory or lock file can't be created
+	 */
+	public void claim() throws IOException {
+		if ( name != null )
+			return;
+		if ( !dir.isDirectory() && !dir.mkdirs() )
+			throw new IOException( "Can't create autosave directory " + dir );
+		// another process cleaning up may take a brand new lock file first
+		for ( int tries = 0; tries < 10; tries++ ) {
+			File f = File.createTempFile( prefix, LOCK, dir );
+			if ( lock( f ) )
+				return;
+		}
+		throw new IOException( "Can't lock an autosave session in " + dir );
+	}
+
+	/**
+	 * @return whether a session is held
+	 */
+	public boolean isHeld() {
+		return name != null;
+	}
+
+	/**
+	 * Get one of the session's files
+	 *
+	 * @param suffix
+	 *            the file's suffix, such as {@code ".log"}
+	 * @return the file
+	 * @throws IllegalStateException
+	 *             if no session is held
+	 */
+	public File file( String suffix ) {
+		if ( name == null )
+			throw new IllegalStateException( "No autosave session held" );
+		return new File( dir, name + suffix );
+	}
+
+	/**
+	 * Delete the session's files and give it up. Does nothing if no session
+	 * is held.
+	 */
+	public void release() {
+		if ( name == null )
+			return;
+		File lockFile = file( LOCK );
+		File[] files = dir.listFiles();
+		if ( files != null ) {
+			for ( File f : files ) {
+				if ( f.getName().startsWith( name + "." )
+					&& !f.equals( lockFile ) )
+					f.delete();
+			}
+		}
+		// deleting before unlocking leaves nothing to take over where the
+		// platform allows it; elsewhere the file goes once unlocked
+		lockFile.delete();
+		try {
+			channel.close();
+		} catch ( IOException ioe ) {
+			ioe.printStackTrace();
+		}
+		lockFile.delete();
+		synchronized ( held ) {
+			held.remove( lockFile.getAbsoluteFile() );
+		}
+		channel = null;
+		name = null;
+	}
+
+	// hold the session of a lock file, unless someone else does
+	private boolean lock( File f ) {
+		File key = f.getAbsoluteFile();
+		synchronized ( held ) {
+			if ( !held.add( key ) )
+				return false;
+		}
+		FileChannel ch = null;
+		try {
+			ch = FileChannel.open( f.toPath(), StandardOpenOption.WRITE );
+			FileLock l;
+			try {
+				l = ch.tryLock();
+			} catch ( OverlappingFileLockException ofle ) {
+				l = null;
+			}
+			// a session released while we waited has had its file deleted
+			if ( l != null && f.isFile() ) {
+				channel = ch;
+				String n = f.getName();
+				name = n.substring( 0, n.length() - LOCK.length() );
+				return true;
+			}
+		} catch ( IOException ioe ) {
+			// gone or not ours to open; either way not a session to take
+		}
+		if ( ch != null ) {
+			try {
+				ch.close();
+			} catch ( IOException ioe ) {
+				ioe.printStackTrace();
+			}
+		}
+		synchronized ( held ) {
+			held.remove( key );
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import javax.swing.SwingUtilities;
+
+/**
+ * Saves files on a background thread so a slow disk never blocks the EDT.
+ * Each save is written to a temporary file in the target's directory,
+ * synced to disk, and then renamed over the target in one step, so a crash
+ * leaves either the old file or the new one and never a truncated mix.
+ * <p>
+ * Saves to a file that is still waiting in the queue are merged: only the
+ * newest content is written, and every caller is notified when it lands.
+ * Callers should hand in content built from a snapshot of their data, since
+ * it is serialized later on the saver thread, and should
+ * {@link #await(Future) wait} for their last save before exiting the VM.
+ *
+ * @author martin@mbs3.org
+ */
+public final class BackgroundSaver {
+
+	/** Serializes the data being saved */
+	public interface Content {
+
+		/**
+		 * Write the data. Called on the saver thread.
+		 *
+		 * @param out
+		 *            the stream to write to
+		 * @throws IOException
+		 *             if the data can't be written
+		 */
+		void write( OutputStream out ) throws IOException;
+	}
+
+	/** Receives save results on the EDT */
+	public interface Listener {
+
+		/**
+		 * The file was saved
+		 *
+		 * @param f
+		 *            the file
+		 */
+		void saved( File f );
+
+		/**
+		 * The file could not be saved; the previous contents are untouched
+		 *
+		 * @param f
+		 *            the file
+		 * @param e
+		 *            the cause
+		 */
+		void failed( File f, IOException e );
+	}
+
+	/**
+	 * The save bookkeeping of one document: it counts the edits, remembers
+	 * the last save so it can be waited for, and knows whether the last save
+	 * that landed covers every edit, since edits may come in while a save is
+	 * being written. Use it on the EDT only.
+	 */
+	public static final class Tracker {
+
+		private final BackgroundSaver saver;
+		private int edits;
+		private int savedEdits;
+		private Future<File> pending;
+
+		/**
+		 * Create a tracker
+		 *
+		 * @param saver
+		 *            the saver to queue saves on
+		 */
+		public Tracker( BackgroundSaver saver ) {
+			this.saver = saver;
+		}
+
+		/**
+		 * Count an edit to the document
+		 */
+		public void edited() {
+			++edits;
+		}
+
+		/**
+		 * Queue a save of the document as it is now
+		 *
+		 * @param target
+		 *            the file to replace
+		 * @param content
+		 *            the data to write
+		 * @param listener
+		 *            told on the EDT when the save finishes, may be
+		 *            {@code null}; during {@link Listener#saved(File)},
+		 *            {@link #isSaved()} tells whether edits came in since the
+		 *            save was asked for
+		 * @return the pending save
+		 */
+		public Future<File> save( File target, Content content,
+			final Listener listener ) {
+			final int edit = edits;
+			pending = saver.save( target, content, new Listener() {
+
+				public void saved( File f ) {
+					savedEdits = Math.max( savedEdits, edit );
+					if ( listener != null )
+						listener.saved( f );
+				}
+
+				public void failed( File f, IOException e ) {
+					if ( listener != null )
+						listener.failed( f, e );
+				}
+			} );
+			return pending;
+		}
+
+		/**
+		 * @return whether a save that landed covers every edit so far
+		 */
+		public boolean isSaved() {
+			return savedEdits == edits;
+		}
+
+		/**
+		 * Wait for the last save still in flight, for use before closing
+		 *
+		 * @return false if it failed; its listener has already been told
+		 */
+		public boolean finish() {
+			if ( pending == null )
+				return true;
+			try {
+				await( pending );
+				return true;
+			} catch ( IOException ioe ) {
+				return false;
+			}
+		}
+	}
+
+	private static final BackgroundSaver shared = new BackgroundSaver();
+
+	/** A queued save, possibly standing in for several requests */
+	private final class Job implements Callable<File> {
+
+		final File target;
+		Content content;
+		final List<Listener> listeners = new ArrayList<Listener>();
+		FutureTask<File> future;
+
+		Job( File target ) {
+			this.target = target;
+		}
+
+		public File call() throws IOException {
+			Content c;
+			List<Listener> ls;
+			synchronized ( queued ) {
+				queued.remove( target );
+				c = content;
+				ls = new ArrayList<Listener>( listeners );
+			}
+			try {
+				write( target, c );
+				notify( ls, null );
+				return target;
+			} catch ( IOException ioe ) {
+				notify( ls, ioe );
+				throw ioe;
+			} catch ( RuntimeException re ) {
+				IOException ioe = new IOException( re.toString(), re );
+				notify( ls, ioe );
+				throw ioe;
+			}
+		}
+
+		private void notify( final List<Listener> ls, final IOException e ) {
+			SwingUtilities.invokeLater( new Runnable() {
+
+				public void run() {
+					for ( Listener l : ls ) {
+						if ( e == null )
+							l.saved( target );
+						else
+							l.failed( target, e );
+					}
+				}
+			} );
+		}
+	}
+
+	private final ExecutorService worker = Executors
+		.newSingleThreadExecutor( new ThreadFactory() {
+
+			public Thread newThread( Runnable r ) {
+				Thread t = new Thread( r, "BackgroundSaver" );
+				t.setDaemon( true );
+				return t;
+			}
+		} );
+	private final Map<File, Job> queued = new HashMap<File, Job>();
+
+	/**
+	 * Get the saver shared by the game builder and score card
+	 *
+	 * @return the shared saver
+	 */
+	public static BackgroundSaver shared() {
+		return shared;
+	}
+
+	/**
+	 * Queue a save
+	 *
+	 * @param target
+	 *            the file to replace
+	 * @param content
+	 *            the data to write
+	 * @param listener
+	 *            told on the EDT when the save finishes, may be {@code null}
+	 * @return a future that completes with the file once it is on disk, or
+	 *         fails with the {@link IOException} that stopped it
+	 */
+	public Future<File> save( File target, Content content, Listener listener ) {
+		File key = target.getAbsoluteFile();
+		synchronized ( queued ) {
+			Job j = queued.get( key );
+			if ( j == null ) {
+				j = new Job( key );
+				j.future = new FutureTask<File>( j );
+				queued.put( key, j );
+				worker.execute( j.future );
+			}
+			j.content = content;
+			if ( listener != null )
+				j.listeners.add( listener );
+			return j.future;
+		}
+	}
+
+	/**
+	 * Wait for a save, for use before the program exits
+	 *
+	 * @param save
+	 *            the future from {@link #save(File, Content, Listener)}
+	 * @throws IOException
+	 *             if the save failed or the wait was interrupted
+	 */
+	public static void await( Future<File> save ) throws IOException {
+		try {
+			save.get();
+		} catch ( ExecutionException ee ) {
+			Throwable t = ee.getCause();
+			if ( t instanceof IOException )
+				throw (IOException) t;
+			throw new IOException( t.toString(), t );
+		} catch ( InterruptedException ie ) {
+			Thread.currentThread().interrupt();
+			throw new IOException( "Interrupted while saving", ie );
+		}
+	}
+
+	/**
+	 * Write a file in place of another: temporary file, sync, atomic rename
+	 *
+	 * @param target
+	 *            the file to replace
+	 * @param content
+	 *            the data to write
+	 * @throws IOException
+	 *             if the data can't be written; the target is left untouched
+	 */
+	public static void write( File target, Content content ) throws IOException {
+		// serialize first, since some serializers close their stream
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		content.write( buf );
+
+		File dir = target.getAbsoluteFile().getParentFile();
+		File tmp = File.createTempFile( "." + target.getName() + ".", ".tmp",
+			dir );
+		boolean done = false;
+		try {
+			FileOutputStream out = new FileOutputStream( tmp );
+			try {
+				buf.writeTo( out );
+				out.flush();
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+			try {
+				Files.move( tmp.toPath(), target.toPath(),
+					StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING );
+			} catch ( AtomicMoveNotSupportedException amnse ) {
+				Files.move( tmp.toPath(), target.toPath(),
+					StandardCopyOption.REPLACE_EXISTING );
+			}
+			done = true;
+			syncDirectory( dir );
+		} finally {
+			if ( !done )
+				tmp.delete();
+		}
+	}
+
+	// make the rename itself durable where the platform allows it
+	private static void syncDirectory( File dir ) {
+		try {
+			FileChannel ch = FileChannel.open( dir.toPath(),
+				StandardOpenOption.READ );
+			try {
+				ch.force( true );
+			} finally {
+				ch.close();
+			}
+		} catch ( IOException ioe ) {
+			// not supported on every platform (e.g. Windows); the data itself
+			// is already synced
+		}
+	}
+
+}
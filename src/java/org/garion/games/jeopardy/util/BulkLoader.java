@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.garion.games.jeopardy.Game;
+
+/**
+ * Loads many game files at once on a pool of worker threads. Each file goes
+ * through {@link IO#detectAndLoad(File)}, including its size verification,
+ * on a worker. Results are handed back in completion order, and a file that
+ * fails to load produces a result carrying its exception instead of
+ * stopping the batch. All files loaded by one loader share a
+ * {@link StringDedupe} table, so text repeated across the games is kept
+ * once.
+ *
+ * @author martin@mbs3.org
+ */
+public final class BulkLoader implements Closeable {
+
+	/** The outcome of loading one file */
+	public static final class Result {
+
+		/** The file that was loaded */
+		public final File file;
+		/** The loaded game, or {@code null} if loading failed */
+		public final Game game;
+		/** The failure, or {@code null} if loading succeeded */
+		public final Exception error;
+
+		Result( File file, Game game, Exception error ) {
+			this.file = file;
+			this.game = game;
+			this.error = error;
+		}
+
+		/**
+		 * @return whether the file loaded
+		 */
+		public boolean ok() {
+			return error == null;
+		}
+	}
+
+	private final StringDedupe dedupe = new StringDedupe();
+	private final ExecutorService pool;
+	private final CompletionService<Result> done;
+	private int pending;
+
+	/**
+	 * Create a loader with one worker per processor
+	 */
+	public BulkLoader() {
+		this( Runtime.getRuntime().availableProcessors() );
+	}
+
+	/**
+	 * Create a loader
+	 *
+	 * @param threads
+	 *            the number of worker threads
+	 */
+	public BulkLoader( int threads ) {
+		pool = Executors.newFixedThreadPool( Math.max( 1, threads ),
+			new ThreadFactory() {
+
+				private final AtomicInteger n = new AtomicInteger();
+
+				public Thread newThread( Runnable r ) {
+					Thread t = new Thread( r, "BulkLoader-"
+						+ n.incrementAndGet() );
+					t.setDaemon( true );
+					return t;
+				}
+			} );
+		done = new ExecutorCompletionService<Result>( pool );
+	}
+
+	/**
+	 * Queue every supported game file in a directory
+	 *
+	 * @param dir
+	 *            the directory
+	 * @return the number of files queued
+	 * @throws IOException
+	 *             if the directory can't be listed
+	 */
+	public int submit( File dir ) throws IOException {
+		return submit( dir, "*.{yaml,jgb}" );
+	}
+
+	/**
+	 * Queue the files in a directory whose names match a glob
+	 *
+	 * @param dir
+	 *            the directory
+	 * @param glob
+	 *            the file name pattern, e.g. {@code "*.yaml"}
+	 * @return the number of files queued
+	 * @throws IOException
+	 *             if the directory can't be listed
+	 * @see java.nio.file.FileSystem#getPathMatcher(String)
+	 */
+	public int submit( File dir, String glob ) throws IOException {
+		List<File> files = new ArrayList<File>();
+		DirectoryStream<Path> ds = Files.newDirectoryStream( dir.toPath(),
+			glob );
+		try {
+			for ( Path p : ds ) {
+				if ( Files.isRegularFile( p ) )
+					files.add( p.toFile() );
+			}
+		} finally {
+			ds.close();
+		}
+		return submit( files );
+	}
+
+	/**
+	 * Queue a list of files
+	 *
+	 * @param files
+	 *            the files
+	 * @return the number of files queued
+	 */
+	public int submit( Iterable<File> files ) {
+		int n = 0;
+		for ( final File f : files ) {
+			done.submit( new Callable<Result>() {
+
+				public Result call() {
+					try {
+						return new Result( f, IO.detectAndLoad( f, dedupe ),
+							null );
+					} catch ( Exception e ) {
+						return new Result( f, null, e );
+					}
+				}
+			} );
+			++n;
+		}
+		synchronized ( this ) {
+			pending += n;
+		}
+		return n;
+	}
+
+	/**
+	 * Get the number of queued files whose results have not been taken yet
+	 *
+	 * @return the pending count
+	 */
+	public synchronized int pending() {
+		return pending;
+	}
+
+	/**
+	 * Wait for the next file to finish loading
+	 *
+	 * @return the result, or {@code null} if nothing is pending
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public Result take() throws InterruptedException {
+		synchronized ( this ) {
+			if ( pending == 0 )
+				return null;
+			--pending;
+		}
+		try {
+			return done.take().get();
+		} catch ( ExecutionException ee ) {
+			// call() catches everything it can
+			throw new IllegalStateException( ee.getCause() );
+		}
+	}
+
+	/**
+	 * Get the string table shared by the loads, e.g. for its statistics
+	 * 
+	 * @return the table
+	 */
+	public StringDedupe getDedupe() {
+		return dedupe;
+	}
+
+	/**
+	 * Stop the worker threads, dropping any loads that have not started
+	 */
+	public void close() {
+		pool.shutdownNow();
+	}
+
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+/**
+ * Decodes version 2 of the buzzer box protocol: binary frames carrying
+ * every contestant's press with the box's own {@code micros()} time.
+ *
+ * <pre>
+ * frame   0xA5, version, type, sequence, length, payload, CRC-16
+ * hello   'H': players (1 byte), micros (4)     sent when the box starts
+ * press   'P': player (1), rank (1), micros (4) each player's first press
+ *                                               since the last reset
+ * reset   'R': micros (4)                       after every reset
+ * </pre>
+ *
+ * The sequence counts frames modulo 256, so lost frames show up as gaps.
+ * Multi-byte fields are little-endian; the CRC is CRC-16/CCITT-FALSE over
+ * the version through the payload, sent high byte first. The host resets
+ * the box by sending {@link #RESET_REQUEST}.
+ * <p>
+ * A frame whose CRC fails is searched for a later 0xA5 to resynchronize
+ * on, so a corrupted byte costs one frame. Frames of another version or
+ * an unknown type are skipped. Like {@link BuzzerDecoder} this keeps
+ * partial frames between calls, allocates nothing, and belongs to the
+ * thread reading the port.
+ *
+ * @author martin@mbs3.org
+ */
+public final class BuzzFrameDecoder {
+
+	/** Receives decoded frames */
+	public interface Listener {
+
+		/**
+		 * The box started
+		 *
+		 * @param players
+		 *            the number of buttons
+		 * @param micros
+		 *            the box's clock, in microseconds (wraps at 2^32)
+		 */
+		void hello( int players, long micros );
+
+		/**
+		 * A player pressed for the first time since the last reset
+		 *
+		 * @param player
+		 *            the player, counting from 0
+		 * @param rank
+		 *            the order of the press since the reset, 0 for the first
+		 * @param micros
+		 *            the box's clock at the press
+		 */
+		void pressed( int player, int rank, long micros );
+
+		/**
+		 * The box was reset, by its switch or by the host
+		 *
+		 * @param micros
+		 *            the box's clock at the reset
+		 */
+		void reset( long micros );
+	}
+
+	/** The frame start byte */
+	public static final int SYNC = 0xA5;
+	/** The protocol version decoded */
+	public static final int VERSION = 2;
+	/** Frame type: the box started */
+	public static final int HELLO = 'H';
+	/** Frame type: a press */
+	public static final int PRESS = 'P';
+	/** Frame type: a reset */
+	public static final int RESET = 'R';
+	/** The byte the host sends to reset the box */
+	public static final int RESET_REQUEST = 'r';
+	/** The bit rate the box sends at */
+	public static final int BAUD = 115200;
+
+	// sync, version, type, sequence, length
+	private static final int HEADER = 5;
+	private static final int MAX_PAYLOAD = 32;
+
+	private final byte[] frame = new byte[ HEADER + MAX_PAYLOAD + 2 ];
+	private int length;
+	private int expected = -1;
+	// bytes of a bad frame to look through again for a sync byte
+	private byte[] replay = new byte[ frame.length ];
+	private byte[] scratch = new byte[ frame.length ];
+	private int replayStart;
+	private int replayEnd;
+
+	private int lastSeq = -1;
+	private long frames;
+	private long crcErrors;
+	private long skipped;
+	private long lost;
+
+	/**
+	 * Decode a chunk of bytes, reporting each complete frame
+	 *
+	 * @param b
+	 *            the buffer
+	 * @param off
+	 *            the first byte
+	 * @param n
+	 *            the number of bytes
+	 * @param l
+	 *            the listener to report to
+	 * @return the number of frames reported
+	 */
+	public int decode( byte[] b, int off, int n, Listener l ) {
+		int events = 0;
+		for ( int i = off; i < off + n; i++ ) {
+			events += accept( b[i], l );
+			while ( replayStart < replayEnd )
+				events += accept( replay[replayStart++], l );
+		}
+		return events;
+	}
+
+	/**
+	 * Forget any partial frame and the last sequence number, e.g. after the
+	 * port was reopened
+	 */
+	public void clear() {
+		length = 0;
+		expected = -1;
+		replayStart = replayEnd = 0;
+		lastSeq = -1;
+	}
+
+	/**
+	 * @return the number of frames decoded
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return the number of frames dropped for a bad CRC
+	 */
+	public long getCrcErrors() {
+		return crcErrors;
+	}
+
+	/**
+	 * @return the number of frames skipped for an unknown version or type
+	 */
+	public long getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * @return the number of frames missing from the sequence
+	 */
+	public long getLost() {
+		return lost;
+	}
+
+	private int accept( byte c, Listener l ) {
+		if ( length == 0 ) {
+			// between frames: anything but a sync byte is noise
+			if ( (c & 0xff) == SYNC )
+				frame[length++] = c;
+			return 0;
+		}
+		frame[length++] = c;
+		if ( length == HEADER ) {
+			int payload = frame[4] & 0xff;
+			if ( payload > MAX_PAYLOAD )
+				return resync();
+			expected = HEADER + payload + 2;
+		}
+		if ( length < HEADER || length < expected )
+			return 0;
+		int crc = crc16( frame, 1, expected - 3 );
+		int sent = ((frame[expected - 2] & 0xff) << 8)
+			| (frame[expected - 1] & 0xff);
+		if ( crc != sent ) {
+			++crcErrors;
+			return resync();
+		}
+		length = 0;
+		expected = -1;
+		return dispatch( l );
+	}
+
+	// drop the first byte of a bad frame and replay the rest, ahead of any
+	// bytes still waiting to be replayed
+	private int resync() {
+		int n = length - 1;
+		int waiting = replayEnd - replayStart;
+		System.arraycopy( frame, 1, scratch, 0, n );
+		System.arraycopy( replay, replayStart, scratch, n, waiting );
+		byte[] t = replay;
+		replay = scratch;
+		scratch = t;
+		replayStart = 0;
+		replayEnd = n + waiting;
+		length = 0;
+		expected = -1;
+		return 0;
+	}
+
+	private int dispatch( Listener l ) {
+		++frames;
+		int version = frame[1] & 0xff;
+		int type = frame[2] & 0xff;
+		int seq = frame[3] & 0xff;
+		// a box that restarts numbers its frames from 0 again
+		if ( lastSeq != -1 && type != HELLO )
+			lost += (seq - lastSeq - 1) & 0xff;
+		lastSeq = seq;
+		int payload = frame[4] & 0xff;
+		int p = HEADER;
+		if ( version != VERSION ) {
+			++skipped;
+			return 0;
+		}
+		if ( type == PRESS && payload >= 6 ) {
+			l.pressed( frame[p] & 0xff, frame[p + 1] & 0xff, u32( frame, p + 2 ) );
+			return 1;
+		} else if ( type == RESET && payload >= 4 ) {
+			l.reset( u32( frame, p ) );
+			return 1;
+		} else if ( type == HELLO && payload >= 5 ) {
+			l.hello( frame[p] & 0xff, u32( frame, p + 1 ) );
+			return 1;
+		}
+		++skipped;
+		return 0;
+	}
+
+	private static long u32( byte[] b, int p ) {
+		return (b[p] & 0xffL) | (b[p + 1] & 0xffL) << 8
+			| (b[p + 2] & 0xffL) << 16 | (b[p + 3] & 0xffL) << 24;
+	}
+
+	/**
+	 * CRC-16/CCITT-FALSE (polynomial 0x1021, starting at 0xFFFF), as the
+	 * sketch computes it
+	 *
+	 * @param b
+	 *            the bytes
+	 * @param off
+	 *            the first byte
+	 * @param n
+	 *            the number of bytes
+	 * @return the CRC
+	 */
+	public static int crc16( byte[] b, int off, int n ) {
+		int crc = 0xffff;
+		for ( int i = off; i < off + n; i++ ) {
+			crc ^= (b[i] & 0xff) << 8;
+			for ( int k = 0; k < 8; k++ )
+				crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+			crc &= 0xffff;
+		}
+		return crc;
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-size queue of buzzer events between exactly one producing thread
+ * (the serial reader) and one consuming thread (the EDT), without locks.
+ * <p>
+ * Each event is a player number (or {@link #RESET}), the
+ * {@link System#nanoTime()} at which it was read, and the buzzer box's own
+ * clock if it sends one. The producer publishes a
+ * slot by advancing the tail after writing it, and the consumer frees slots
+ * by advancing the head after reading them; each side only writes its own
+ * counter, with ordered writes, so neither ever waits on the other. When
+ * the queue is full new events are dropped and counted rather than
+ * blocking the reader.
+ *
+ * @author martin@mbs3.org
+ */
+public final class BuzzRing {
+
+	/** The player number of a reset event */
+	public static final int RESET = -1;
+	/** The box time of an event from a box that sends none */
+	public static final long NO_TIME = -1;
+
+	/** Receives drained events */
+	public interface Consumer {
+
+		/**
+		 * Handle one event
+		 *
+		 * @param player
+		 *            the player, counting from 0, or {@link BuzzRing#RESET}
+		 * @param nanos
+		 *            when the event was read, from {@link System#nanoTime()}
+		 * @param device
+		 *            the box's clock at the event in microseconds, or
+		 *            {@link BuzzRing#NO_TIME}
+		 */
+		void buzz( int player, long nanos, long device );
+	}
+
+	private final int[] players;
+	private final long[] times;
+	private final long[] devices;
+	private final int mask;
+
+	// next slot to read (written by the consumer only)
+	private final AtomicLong head = new AtomicLong();
+	// next slot to write (written by the producer only)
+	private final AtomicLong tail = new AtomicLong();
+	// each side's last look at the other's counter, to skip volatile reads
+	private long headCache;
+	private long tailCache;
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Create a ring
+	 *
+	 * @param capacity
+	 *            the most events held, rounded up to a power of two
+	 */
+	public BuzzRing( int capacity ) {
+		int n = Integer.highestOneBit( Math.max( 2, capacity ) - 1 ) << 1;
+		players = new int[ n ];
+		times = new long[ n ];
+		devices = new long[ n ];
+		mask = n - 1;
+	}
+
+	/**
+	 * Add an event. Only the producer thread may call this.
+	 *
+	 * @param player
+	 *            the player, or {@link #RESET}
+	 * @param nanos
+	 *            when the event was read
+	 * @param device
+	 *            the box's clock at the event, or {@link #NO_TIME}
+	 * @return false if the ring was full and the event was dropped
+	 */
+	public boolean offer( int player, long nanos, long device ) {
+		long t = tail.get();
+		if ( t - headCache > mask ) {
+			headCache = head.get();
+			if ( t - headCache > mask ) {
+				dropped.incrementAndGet();
+				return false;
+			}
+		}
+		int i = (int) t & mask;
+		players[i] = player;
+		times[i] = nanos;
+		devices[i] = device;
+		tail.lazySet( t + 1 );
+		return true;
+	}
+
+	/**
+	 * Hand every waiting event to a consumer, oldest first. Only the
+	 * consumer thread may call this.
+	 *
+	 * @param c
+	 *            the consumer
+	 * @return the number of events handed over
+	 */
+	public int drain( Consumer c ) {
+		long h = head.get();
+		if ( h == tailCache ) {
+			tailCache = tail.get();
+			if ( h == tailCache )
+				return 0;
+		}
+		int n = 0;
+		for ( ; h < tailCache; h++, n++ ) {
+			int i = (int) h & mask;
+			c.buzz( players[i], times[i], devices[i] );
+			// free each slot as soon as it is read
+			head.lazySet( h + 1 );
+		}
+		return n;
+	}
+
+	/**
+	 * @return the number of events waiting, as seen from any thread
+	 */
+	public int size() {
+		return (int) (tail.get() - head.get());
+	}
+
+	/**
+	 * @return the most events the ring holds
+	 */
+	public int capacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * @return the number of events dropped because the ring was full
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+}
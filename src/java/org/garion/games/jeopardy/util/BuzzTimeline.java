@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.util.Arrays;
+
+/**
+ * The buzzer events of one clue, with their times relative to when the clue
+ * was shown, so the order players rang in can be checked after the fact.
+ * Times come from {@link System#nanoTime()} as stamped at the serial read.
+ * A box that sends its own clock also gives each press's time on that
+ * clock, which is exact to the microsecond between presses and so measures
+ * how far behind the first press the others came.
+ *
+ * @author martin@mbs3.org
+ */
+public final class BuzzTimeline {
+
+	private final String clue;
+	private final long shown;
+	private int[] players = new int[ 8 ];
+	private long[] times = new long[ 8 ];
+	private long[] devices = new long[ 8 ];
+	private int size;
+
+	/**
+	 * Start the timeline of a clue
+	 *
+	 * @param clue
+	 *            a description of the clue, e.g. its category and value
+	 * @param shown
+	 *            when the clue was shown, from {@link System#nanoTime()}
+	 */
+	public BuzzTimeline( String clue, long shown ) {
+		this.clue = clue;
+		this.shown = shown;
+	}
+
+	/**
+	 * Record an event
+	 *
+	 * @param player
+	 *            the player, or {@link BuzzRing#RESET}
+	 * @param nanos
+	 *            when the event was read
+	 * @param device
+	 *            the box's clock at the event, or {@link BuzzRing#NO_TIME}
+	 */
+	public void record( int player, long nanos, long device ) {
+		if ( size == players.length ) {
+			players = Arrays.copyOf( players, size * 2 );
+			times = Arrays.copyOf( times, size * 2 );
+			devices = Arrays.copyOf( devices, size * 2 );
+		}
+		players[size] = player;
+		devices[size] = device;
+		times[size++] = nanos;
+	}
+
+	/**
+	 * @return the clue's description
+	 */
+	public String getClue() {
+		return clue;
+	}
+
+	/**
+	 * @return the number of events recorded
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param i
+	 *            the event
+	 * @return the event's player, or {@link BuzzRing#RESET}
+	 */
+	public int getPlayer( int i ) {
+		return players[i];
+	}
+
+	/**
+	 * @param i
+	 *            the event
+	 * @return nanoseconds from the clue being shown to the event being read;
+	 *         negative if it was read before the clue was shown
+	 */
+	public long getOffset( int i ) {
+		return times[i] - shown;
+	}
+
+	/**
+	 * @param i
+	 *            the event
+	 * @return the box's clock at the event in microseconds, or
+	 *         {@link BuzzRing#NO_TIME}
+	 */
+	public long getDeviceTime( int i ) {
+		return devices[i];
+	}
+
+	/**
+	 * Get how long after the first press of the clue a press came, by the
+	 * box's clock
+	 * 
+	 * @param i
+	 *            the event
+	 * @return the microseconds behind the first press, or
+	 *         {@link BuzzRing#NO_TIME} if the box sent no times
+	 */
+	public long getDelay( int i ) {
+		for ( int j = 0; j < size; j++ ) {
+			if ( players[j] != BuzzRing.RESET ) {
+				if ( devices[j] == BuzzRing.NO_TIME
+					|| devices[i] == BuzzRing.NO_TIME )
+					return BuzzRing.NO_TIME;
+				// the box's 32-bit clock wraps every 71 minutes
+				return (devices[i] - devices[j]) & 0xffffffffL;
+			}
+		}
+		return BuzzRing.NO_TIME;
+	}
+
+	/**
+	 * @return the first player to ring in, or -1 if nobody did
+	 */
+	public int getFirst() {
+		for ( int i = 0; i < size; i++ ) {
+			if ( players[i] != BuzzRing.RESET )
+				return players[i];
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder( clue );
+		for ( int i = 0; i < size; i++ ) {
+			sb.append( String.format( "%n  %+10.3f ms  ", getOffset( i ) / 1e6 ) );
+			sb.append( players[i] == BuzzRing.RESET ? "reset" : "Player "
+				+ (players[i] + 1) );
+			long delay = players[i] == BuzzRing.RESET ? BuzzRing.NO_TIME
+				: getDelay( i );
+			if ( delay > 0 )
+				sb.append( String.format( " (+%.3f ms)", delay / 1e3 ) );
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Merges several buzzer boxes into one stream of events, for games with
+ * more players than one box has buttons.
+ * <p>
+ * Each box has its own {@link ExternalPlayerReader} thread and ring. The
+ * aggregator waits until every box has said hello, then numbers each box's
+ * players after those of the boxes added before it, by the button counts
+ * the boxes reported. Its thread then drains every box's ring and puts each
+ * event on the host's clock: the box's offset is the smallest difference
+ * seen between the time a frame was read and the box's time in it, since
+ * that frame was delayed least. The estimate follows a box clock that runs fast at once,
+ * and one that runs slow at up to {@link #DRIFT_PPM}. Events are held for
+ * a short window, so that a slower box's earlier press can still arrive,
+ * and then released in order of their host time; ties go to the box added
+ * first, as the sketch gives ties to the lower button, and then to the
+ * box's own order.
+ * <p>
+ * The merged stream goes into one ring, as a single box's would, with the
+ * estimated host time in microseconds as the box time so delays compare
+ * across boxes. When one box is reset the others are asked to reset too,
+ * and only the first reset reaches the stream.
+ *
+ * @author martin@mbs3.org
+ */
+public class BuzzerAggregator implements Runnable {
+
+	/** How fast a box's clock may fall behind the host's, in millionths */
+	public static final int DRIFT_PPM = 1000;
+	/** The default hold, in milliseconds */
+	public static final int HOLD_MS = 20;
+	/** How long the boxes have to say hello once opened, in milliseconds */
+	public static final int HELLO_MS = 10000;
+
+	// how often the boxes' rings are drained
+	private static final long POLL = 1000000L;
+
+	private final BuzzRing out;
+	private final List<Box> boxes = new ArrayList<Box>();
+	private final PriorityQueue<Event> held = new PriorityQueue<Event>();
+	private volatile int players = -1;
+	private long hold = HOLD_MS * 1000L;
+	private long arrivals;
+	private volatile boolean closed;
+
+	/**
+	 * Create an aggregator
+	 *
+	 * @param out
+	 *            the ring of the merged stream, such as the one
+	 *            {@link org.garion.games.jeopardy.ui.BoardPanel#listen(BuzzRing)}
+	 *            drains; the aggregator is its only producer
+	 */
+	public BuzzerAggregator( BuzzRing out ) {
+		this.out = out;
+	}
+
+	/**
+	 * Add a box. Call this before running the aggregator.
+	 *
+	 * @param source
+	 *            the box; it must speak the framed protocol, whose hello
+	 *            frame tells how many buttons it has
+	 * @return the box's index, as {@link #getOffset(int)} takes it
+	 */
+	public int add( BuzzerSource source ) {
+		BuzzRing ring = new BuzzRing( 256 );
+		boxes.add( new Box( boxes.size(), ring, new ExternalPlayerReader( ring,
+			source, false ) ) );
+		return boxes.size() - 1;
+	}
+
+	/**
+	 * @param millis
+	 *            how long to hold events for a slower box's earlier ones;
+	 *            it should cover the worst delay of a box's reads
+	 */
+	public void setHold( int millis ) {
+		this.hold = millis * 1000L;
+	}
+
+	/**
+	 * @return the number of players of all the boxes, or -1 until every box
+	 *         has said hello
+	 */
+	public int getPlayers() {
+		return players;
+	}
+
+	/**
+	 * Get a box's clock offset
+	 *
+	 * @param box
+	 *            the box, in the order added
+	 * @return the host's time minus the box's, in microseconds, as last
+	 *         estimated
+	 */
+	public long getOffset( int box ) {
+		return boxes.get( box ).offset;
+	}
+
+	/**
+	 * Stop the readers and the aggregator
+	 */
+	public void close() {
+		closed = true;
+		for ( Box b : boxes )
+			b.reader.close();
+	}
+
+	/**
+	 * Start a reader thread per box, number the players once every box has
+	 * said hello, then merge their events until closed
+	 *
+	 * @throws IllegalStateException
+	 *             if a box does not say hello within {@link #HELLO_MS}
+	 */
+	public void run() {
+		for ( Box b : boxes ) {
+			Thread t = new Thread( b.reader, "Buzzer box " + (b.index + 1) );
+			t.setDaemon( true );
+			t.start();
+		}
+		if ( !number() )
+			return;
+		while ( !closed ) {
+			for ( Box b : boxes )
+				b.ring.drain( b );
+			long now = System.nanoTime() / 1000;
+			while ( !held.isEmpty() && held.peek().time + hold <= now ) {
+				Event e = held.poll();
+				out.offer( e.player, e.time * 1000, e.time & 0xffffffffL );
+			}
+			LockSupport.parkNanos( POLL );
+		}
+	}
+
+	// the events of a box wait in its ring until its players are numbered
+	private boolean number() {
+		long deadline = System.nanoTime() + HELLO_MS * 1000000L;
+		int total = 0;
+		for ( Box b : boxes ) {
+			int buttons;
+			while ( (buttons = b.reader.getButtons()) == -1 ) {
+				if ( closed )
+					return false;
+				if ( System.nanoTime() - deadline > 0 ) {
+					close();
+					throw new IllegalStateException( "Buzzer box "
+						+ (b.index + 1) + " did not say hello" );
+				}
+				LockSupport.parkNanos( POLL );
+			}
+			b.base = total;
+			total += buttons;
+		}
+		players = total;
+		return true;
+	}
+
+	/** An event waiting to be released */
+	private static final class Event implements Comparable<Event> {
+
+		final long time;
+		final int box;
+		final long arrival;
+		final int player;
+
+		Event( long time, int box, long arrival, int player ) {
+			this.time = time;
+			this.box = box;
+			this.arrival = arrival;
+			this.player = player;
+		}
+
+		public int compareTo( Event o ) {
+			if ( time != o.time )
+				return time < o.time ? -1 : 1;
+			if ( box != o.box )
+				return box < o.box ? -1 : 1;
+			return arrival < o.arrival ? -1 : arrival > o.arrival ? 1 : 0;
+		}
+	}
+
+	/** One box: its reader, ring and clock */
+	private final class Box implements BuzzRing.Consumer {
+
+		final int index;
+		// the number of its first player in the merged stream
+		int base;
+		final BuzzRing ring;
+		final ExternalPlayerReader reader;
+
+		// the box's clock, unwrapped past 32 bits
+		private long last = -1;
+		private long high;
+		// host minus box time, and the least delayed sample it relaxes from
+		volatile long offset;
+		private long best;
+		private long bestAt = -1;
+		// the latest host time given to an event, to keep the box's order
+		private long latest = Long.MIN_VALUE;
+		// a reset we asked for, whose confirmation is dropped
+		private boolean resetPending;
+
+		Box( int index, BuzzRing ring, ExternalPlayerReader reader ) {
+			this.index = index;
+			this.ring = ring;
+			this.reader = reader;
+		}
+
+		public void buzz( int player, long nanos, long device ) {
+			long time = align( nanos / 1000, device );
+			if ( player == BuzzRing.RESET ) {
+				if ( resetPending ) {
+					resetPending = false;
+					return;
+				}
+				for ( Box b : boxes ) {
+					if ( b != this && b.reader.requestReset() )
+						b.resetPending = true;
+				}
+			} else
+				player += base;
+			held.add( new Event( time, index, arrivals++, player ) );
+		}
+
+		// estimate an event's host time in microseconds
+		private long align( long read, long device ) {
+			long time = read;
+			if ( device != BuzzRing.NO_TIME ) {
+				if ( last != -1 && device < last && last - device > 1L << 31 )
+					high += 1L << 32;
+				last = device;
+				long sample = read - (high + device);
+				long relaxed = best + (read - bestAt) * DRIFT_PPM / 1000000;
+				if ( bestAt == -1 || sample <= relaxed ) {
+					best = sample;
+					bestAt = read;
+					relaxed = sample;
+				}
+				offset = relaxed;
+				time = high + device + relaxed;
+			}
+			latest = Math.max( latest, time );
+			return latest;
+		}
+	}
+
+}
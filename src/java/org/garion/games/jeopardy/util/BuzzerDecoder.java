@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+/**
+ * Splits the buzzer box's serial output into events. The sketch prints one
+ * number per line with {@code Serial.println}: the winning player (counting
+ * from 0), or {@code -1} when the game is reset.
+ * <p>
+ * Bytes can arrive in any chunks: a line may be split across reads and one
+ * read may hold several lines. The decoder keeps the unfinished line
+ * between calls and parses numbers straight from the bytes, so decoding
+ * allocates nothing. Lines that are not a number (such as noise while the
+ * board boots) are skipped.
+ * <p>
+ * A decoder is not thread-safe; it belongs to the thread reading the port.
+ *
+ * @author martin@mbs3.org
+ */
+public final class BuzzerDecoder {
+
+	/** Receives decoded events */
+	public interface Listener {
+
+		/**
+		 * The buzzer box was reset
+		 */
+		void reset();
+
+		/**
+		 * A player buzzed in first
+		 *
+		 * @param player
+		 *            the player, counting from 0
+		 */
+		void pressed( int player );
+	}
+
+	// longer lines are noise and are skipped up to the next line end
+	private static final int MAX_LINE = 16;
+
+	private final byte[] line = new byte[ MAX_LINE ];
+	private int length;
+	private boolean overflow;
+	private long skipped;
+
+	/**
+	 * Decode a chunk of bytes, reporting each completed line
+	 *
+	 * @param b
+	 *            the buffer
+	 * @param off
+	 *            the first byte
+	 * @param n
+	 *            the number of bytes
+	 * @param l
+	 *            the listener to report to
+	 * @return the number of events reported
+	 */
+	public int decode( byte[] b, int off, int n, Listener l ) {
+		int events = 0;
+		for ( int i = off; i < off + n; i++ ) {
+			byte c = b[i];
+			if ( c == '\n' || c == '\r' ) {
+				// println ends lines with \r\n; the empty line between is
+				// ignored like any other
+				if ( !overflow && length > 0 && emit( l ) )
+					++events;
+				else if ( overflow || length > 0 )
+					++skipped;
+				length = 0;
+				overflow = false;
+			} else if ( length == MAX_LINE )
+				overflow = true;
+			else
+				line[length++] = c;
+		}
+		return events;
+	}
+
+	/**
+	 * Forget any unfinished line, e.g. after the port was reopened
+	 */
+	public void clear() {
+		length = 0;
+		overflow = false;
+	}
+
+	/**
+	 * @return the number of lines skipped as not being events
+	 */
+	public long getSkipped() {
+		return skipped;
+	}
+
+	// parse the line as an optionally negative decimal number
+	private boolean emit( Listener l ) {
+		int i = 0;
+		while ( i < length && line[i] == ' ' )
+			++i;
+		boolean negative = i < length && line[i] == '-';
+		if ( negative )
+			++i;
+		int start = i;
+		int v = 0;
+		for ( ; i < length; i++ ) {
+			int d = line[i] - '0';
+			if ( d < 0 || d > 9 )
+				break;
+			v = v * 10 + d;
+		}
+		if ( i == start || i - start > 9 )
+			return false;
+		while ( i < length && line[i] == ' ' )
+			++i;
+		if ( i != length )
+			return false;
+		if ( negative ) {
+			if ( v != 1 )
+				return false;
+			l.reset();
+		} else
+			l.pressed( v );
+		return true;
+	}
+
+}
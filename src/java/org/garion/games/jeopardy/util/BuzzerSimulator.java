@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A buzzer box in software, for trying buzzer handling without the
+ * hardware. It speaks the framed protocol of {@link BuzzFrameDecoder}
+ * through an in-process pipe, playing storms of presses: each storm is a
+ * reset followed by one press from every player, spread at random over the
+ * jitter. Storms come in bursts, with a pause after each burst, and a share
+ * of the frames can be preceded by a malformed one (a corrupted or cut-off
+ * frame, or line noise) to exercise resynchronization.
+ * <p>
+ * The box's clock is {@link System#nanoTime()} in microseconds, so the
+ * delay of a press anywhere downstream is {@link #delay(long, long)}, unless
+ * the clock is set off from it.
+ *
+ * @author martin@mbs3.org
+ */
+public class BuzzerSimulator implements BuzzerSource {
+
+	// longest wait between checks for a reset request
+	private static final long SLICE = 10000000L;
+	private static final int PIPE_SIZE = 4096;
+
+	private int players = 6;
+	private int jitter = 2000;
+	private int burst = 1;
+	private int pause = 3000;
+	private int storms;
+	private double malformed;
+	private long clock;
+	private final Random random = new Random();
+
+	private PipedInputStream input;
+	private PipedOutputStream pipe;
+	private Thread thread;
+	private volatile boolean closed;
+	private volatile boolean resetRequested;
+	private final byte[] frame = new byte[ 16 ];
+	private int sequence;
+
+	// written by the simulator thread only
+	private volatile long presses;
+	private volatile long bad;
+
+	private final OutputStream control = new OutputStream() {
+
+		@Override
+		public void write( int b ) {
+			if ( (b & 0xff) == BuzzFrameDecoder.RESET_REQUEST )
+				resetRequested = true;
+		}
+	};
+
+	/**
+	 * @param players
+	 *            the number of buttons, at most 255
+	 */
+	public void setPlayers( int players ) {
+		this.players = players;
+	}
+
+	/**
+	 * @param micros
+	 *            the spread of each storm's presses after its reset
+	 */
+	public void setJitter( int micros ) {
+		this.jitter = micros;
+	}
+
+	/**
+	 * @param storms
+	 *            the number of storms played back to back before a pause
+	 */
+	public void setBurst( int storms ) {
+		this.burst = Math.max( 1, storms );
+	}
+
+	/**
+	 * @param millis
+	 *            the pause after each burst
+	 */
+	public void setPause( int millis ) {
+		this.pause = millis;
+	}
+
+	/**
+	 * @param storms
+	 *            the number of storms to play before closing, or 0 to play
+	 *            until closed
+	 */
+	public void setStorms( int storms ) {
+		this.storms = storms;
+	}
+
+	/**
+	 * @param share
+	 *            the chance, from 0 to 1, that a frame is preceded by a
+	 *            malformed one
+	 */
+	public void setMalformed( double share ) {
+		this.malformed = share;
+	}
+
+	/**
+	 * @param micros
+	 *            how far the box's clock is ahead of the host's, to try
+	 *            clock alignment
+	 */
+	public void setClockOffset( long micros ) {
+		this.clock = micros;
+	}
+
+	/**
+	 * @param seed
+	 *            the seed of the press times and malformed frames
+	 */
+	public void setSeed( long seed ) {
+		random.setSeed( seed );
+	}
+
+	/**
+	 * @return the number of presses sent so far
+	 */
+	public long getPresses() {
+		return presses;
+	}
+
+	/**
+	 * @return the number of malformed frames sent so far
+	 */
+	public long getMalformed() {
+		return bad;
+	}
+
+	public void open() throws IOException {
+		input = new PipedInputStream( PIPE_SIZE );
+		pipe = new PipedOutputStream( input );
+		thread = new Thread( new Runnable() {
+
+			public void run() {
+				play();
+			}
+		}, "Buzzer simulator" );
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	public InputStream getInputStream() {
+		return input;
+	}
+
+	/**
+	 * @return a stream that takes reset requests
+	 */
+	public OutputStream getOutputStream() {
+		return control;
+	}
+
+	public void close() {
+		closed = true;
+		if ( thread != null )
+			LockSupport.unpark( thread );
+	}
+
+	/**
+	 * Get the delay of an event by the box's clock
+	 *
+	 * @param device
+	 *            the box's time of the event
+	 * @param nanos
+	 *            a later {@link System#nanoTime()}
+	 * @return the microseconds between them
+	 */
+	public static long delay( long device, long nanos ) {
+		return (nanos / 1000 - device) & 0xffffffffL;
+	}
+
+	private void play() {
+		try {
+			byte[] b = new byte[ 6 ];
+			b[0] = (byte) players;
+			send( BuzzFrameDecoder.HELLO, b, 5 );
+			send( BuzzFrameDecoder.RESET, b, 4 );
+			int[] order = new int[ players ];
+			long[] at = new long[ players ];
+			for ( int s = 0; !closed && (storms == 0 || s < storms); s++ ) {
+				// everyone presses once, in a random order over the jitter
+				long start = System.nanoTime();
+				for ( int i = 0; i < players; i++ )
+					at[i] = (long) random.nextInt( jitter + 1 ) << 32 | i;
+				Arrays.sort( at );
+				for ( int i = 0; i < players; i++ )
+					order[i] = (int) at[i];
+				for ( int rank = 0; rank < players && !closed; rank++ ) {
+					waitUntil( start + (at[rank] >>> 32) * 1000 );
+					b[0] = (byte) order[rank];
+					b[1] = (byte) rank;
+					send( BuzzFrameDecoder.PRESS, b, 6 );
+					++presses;
+				}
+				if ( (s + 1) % burst == 0 )
+					waitUntil( System.nanoTime() + pause * 1000000L );
+				send( BuzzFrameDecoder.RESET, b, 4 );
+			}
+		} catch ( IOException e ) {
+			// the reader went away
+		} finally {
+			try {
+				pipe.close();
+			} catch ( IOException e ) {
+			}
+		}
+	}
+
+	// wait, answering reset requests meanwhile
+	private void waitUntil( long deadline ) throws IOException {
+		long left;
+		while ( !closed && (left = deadline - System.nanoTime()) > 0 ) {
+			if ( resetRequested ) {
+				resetRequested = false;
+				send( BuzzFrameDecoder.RESET, new byte[ 4 ], 4 );
+			}
+			LockSupport.parkNanos( Math.min( left, SLICE ) );
+		}
+	}
+
+	// send a frame, stamping its time into the last 4 bytes of the payload
+	private void send( int type, byte[] payload, int length )
+		throws IOException {
+		if ( malformed > 0 && random.nextDouble() < malformed )
+			sendMalformed();
+		long t = System.nanoTime() / 1000 + clock;
+		for ( int i = 0; i < 4; i++ )
+			payload[length - 4 + i] = (byte) (t >>> (8 * i));
+		int n = frame( type, payload, length );
+		pipe.write( frame, 0, n );
+		// wakes the reader; without it a read waits up to a second
+		pipe.flush();
+	}
+
+	private void sendMalformed() throws IOException {
+		++bad;
+		byte[] noise = new byte[ 6 ];
+		random.nextBytes( noise );
+		int n = frame( BuzzFrameDecoder.PRESS, noise, noise.length );
+		switch ( random.nextInt( 3 ) ) {
+		case 0:
+			// a frame with a flipped bit
+			frame[1 + random.nextInt( n - 1 )] ^= 1 << random.nextInt( 8 );
+			break;
+		case 1:
+			// a frame cut off
+			n = 1 + random.nextInt( n - 1 );
+			break;
+		default:
+			// line noise that starts like a frame
+			System.arraycopy( noise, 0, frame, 1, noise.length );
+			n = 1 + noise.length;
+			--sequence;
+		}
+		pipe.write( frame, 0, n );
+	}
+
+	private int frame( int type, byte[] payload, int length ) {
+		int n = 0;
+		frame[n++] = (byte) BuzzFrameDecoder.SYNC;
+		frame[n++] = BuzzFrameDecoder.VERSION;
+		frame[n++] = (byte) type;
+		frame[n++] = (byte) sequence++;
+		frame[n++] = (byte) length;
+		System.arraycopy( payload, 0, frame, n, length );
+		n += length;
+		int crc = BuzzFrameDecoder.crc16( frame, 1, n - 1 );
+		frame[n++] = (byte) (crc >> 8);
+		frame[n++] = (byte) crc;
+		return n;
+	}
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Where {@link ExternalPlayerReader} gets the buzzer box's bytes from: a
+ * serial port ({@link SerialBuzzerSource}) or a simulated box
+ * ({@link BuzzerSimulator}).
+ * <p>
+ * Reads from the input stream block until at least one byte is there and
+ * then return what has arrived, and return -1 once the source is closed.
+ *
+ * @author martin@mbs3.org
+ */
+public interface BuzzerSource {
+
+	/**
+	 * Open the source. Called once, on the reader's thread.
+	 *
+	 * @throws IOException
+	 *             if there is no device or it cannot be opened
+	 */
+	public void open() throws IOException;
+
+	/**
+	 * @return the bytes the box sends
+	 */
+	public InputStream getInputStream();
+
+	/**
+	 * @return the stream to the box, or {@code null} if it takes no input
+	 */
+	public OutputStream getOutputStream();
+
+	/**
+	 * Close the source, ending any blocked read. This may be called from
+	 * any thread.
+	 */
+	public void close();
+
+}
@@ -0,0 +1,767 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import org.garion.games.jeopardy.*;
+
+/**
+ * Full-text index over the clues of many games, for finding every clue that
+ * mentions a term (e.g. to avoid repeating material between shows).
+ * <p>
+ * Every entry of every round, and the final jeopardy entry, is one
+ * document made of its answer, its question and its category name. Text is
+ * split into lower-case words of letters and digits, with accents and HTML
+ * tags dropped. Each word maps to the documents containing it (an inverted
+ * index), kept in a sorted map so that a word ending in {@code *} matches
+ * every word starting with it.
+ * <p>
+ * A query matches the clues containing all of its words. Results are ranked
+ * by BM25, with category words counting double, so rare words and short
+ * clues rank first.
+ * <p>
+ * Games are indexed under a key (usually the file path), and adding a game
+ * again replaces only that game's clues. Removed clues are dropped from the
+ * postings once they make up half the index. {@link #save(File)} writes the
+ * index with its postings, so {@link #load(File)} needs no re-indexing; each
+ * game's stamp tells {@link #update(File)} whether its file changed since.
+ * <p>
+ * All methods are synchronized; one index can be shared between threads.
+ *
+ * <pre>
+ * file    magic "JCI\0", version, game count, games, clue count, clues,
+ *         word count, words, CRC-32 of everything before it
+ * game    key, stamp
+ * clue    game number, round, category, slot, length, category name,
+ *         answer, question
+ * word    the word, posting count, then per posting the clue number
+ *         (varint, delta from the previous one) and weight (varint)
+ * </pre>
+ *
+ * @author martin@mbs3.org
+ */
+public final class ClueIndex {
+
+	/** The round number of a final jeopardy clue */
+	public static final int FINAL = -1;
+
+	/** One search result */
+	public static final class Hit {
+
+		/** The key of the game holding the clue */
+		public final String game;
+		/** The round, or {@link ClueIndex#FINAL} */
+		public final int round;
+		/** The category within the round (0 for final jeopardy) */
+		public final int category;
+		/** The slot within the category (0 for final jeopardy) */
+		public final int slot;
+		/** The category name */
+		public final String categoryName;
+		/** The clue's answer */
+		public final String answer;
+		/** The clue's question */
+		public final String question;
+		/** The relevance score; higher is better */
+		public final float score;
+
+		Hit( String game, int round, int category, int slot,
+			String categoryName, String answer, String question, float score ) {
+			this.game = game;
+			this.round = round;
+			this.category = category;
+			this.slot = slot;
+			this.categoryName = categoryName;
+			this.answer = answer;
+			this.question = question;
+			this.score = score;
+		}
+
+		@Override
+		public String toString() {
+			return String.format( "%s [%d/%d/%d] %s: %s (%.2f)", game, round,
+				category, slot, categoryName, answer, score );
+		}
+	}
+
+	private static final byte[] MAGIC = { 'J', 'C', 'I', 0 };
+	private static final int VERSION = 1;
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	// BM25 parameters and the weight of a category word
+	private static final float K1 = 1.2f;
+	private static final float B = 0.75f;
+	private static final int CATEGORY_WEIGHT = 2;
+
+	/** The clues of one word, in clue order */
+	private static final class Postings {
+
+		int[] docs = new int[ 2 ];
+		int[] weights = new int[ 2 ];
+		int n;
+
+		void add( int doc, int weight ) {
+			if ( n > 0 && docs[n - 1] == doc ) {
+				weights[n - 1] += weight;
+				return;
+			}
+			if ( n == docs.length ) {
+				docs = Arrays.copyOf( docs, n * 2 );
+				weights = Arrays.copyOf( weights, n * 2 );
+			}
+			docs[n] = doc;
+			weights[n] = weight;
+			++n;
+		}
+	}
+
+	/** An indexed game */
+	private static final class Indexed {
+
+		final String key;
+		final long stamp;
+		final int first;
+		final int count;
+
+		Indexed( String key, long stamp, int first, int count ) {
+			this.key = key;
+			this.stamp = stamp;
+			this.first = first;
+			this.count = count;
+		}
+	}
+
+	private final TreeMap<String, Postings> words = new TreeMap<String, Postings>();
+	private final Map<String, Indexed> games = new HashMap<String, Indexed>();
+
+	// clues, by number; a removed clue has a null game
+	private String[] docGame = new String[ 64 ];
+	private int[] docWhere = new int[ 64 ];
+	private int[] docLength = new int[ 64 ];
+	private String[] docCategory = new String[ 64 ];
+	private String[] docAnswer = new String[ 64 ];
+	private String[] docQuestion = new String[ 64 ];
+	private int docs;
+	private int live;
+	private long totalLength;
+
+	/**
+	 * Create an empty index
+	 */
+	public ClueIndex() {}
+
+	/**
+	 * Index a game, replacing any earlier version indexed under the same key
+	 *
+	 * @param key
+	 *            the key to index the game under, e.g. its file path
+	 * @param stamp
+	 *            a version stamp for the game's source, see
+	 *            {@link #stamp(File)}
+	 * @param g
+	 *            the game
+	 */
+	public synchronized void add( String key, long stamp, Game g ) {
+		drop( key );
+		int first = docs;
+		if ( g.f != null && g.f.entry != null )
+			addClue( key, FINAL, 0, 0, g.f.name, g.f.entry );
+		if ( g.rounds != null ) {
+			for ( int r = 0; r < g.rounds.length; r++ ) {
+				Round round = g.rounds[r];
+				if ( round == null || round.categories == null )
+					continue;
+				for ( int c = 0; c < round.categories.length; c++ ) {
+					Category cat = round.categories[c];
+					if ( cat == null || cat.entries == null )
+						continue;
+					for ( int s = 0; s < cat.entries.length; s++ ) {
+						if ( cat.entries[s] != null )
+							addClue( key, r, c, s, cat.name, cat.entries[s] );
+					}
+				}
+			}
+		}
+		games.put( key, new Indexed( key, stamp, first, docs - first ) );
+		compactIfSparse();
+	}
+
+	/**
+	 * Remove a game from the index
+	 *
+	 * @param key
+	 *            the game's key
+	 * @return whether the game was indexed
+	 */
+	public synchronized boolean remove( String key ) {
+		boolean had = drop( key );
+		compactIfSparse();
+		return had;
+	}
+
+	/**
+	 * Index a game file if it is new or changed since it was indexed. The
+	 * file's absolute path is its key.
+	 *
+	 * @param f
+	 *            the game file
+	 * @return whether the file was (re-)indexed
+	 * @throws IOException
+	 *             if the file can't be loaded
+	 * @throws UnsupportedFileTypeException
+	 *             if the file is not a game
+	 */
+	public boolean update( File f ) throws IOException,
+		UnsupportedFileTypeException {
+		String key = f.getAbsolutePath();
+		long stamp = stamp( f );
+		if ( stamp == getStamp( key ) )
+			return false;
+		add( key, stamp, IO.detectAndLoad( f ) );
+		return true;
+	}
+
+	/**
+	 * Get the stamp a game was indexed with
+	 *
+	 * @param key
+	 *            the game's key
+	 * @return the stamp, or {@link Long#MIN_VALUE} if the game is not indexed
+	 */
+	public synchronized long getStamp( String key ) {
+		Indexed i = games.get( key );
+		return i == null ? Long.MIN_VALUE : i.stamp;
+	}
+
+	/**
+	 * Get the keys of every indexed game
+	 *
+	 * @return the keys
+	 */
+	public synchronized Set<String> getGames() {
+		return new TreeSet<String>( games.keySet() );
+	}
+
+	/**
+	 * Get the number of indexed clues
+	 *
+	 * @return the clue count
+	 */
+	public synchronized int size() {
+		return live;
+	}
+
+	/**
+	 * Get the number of distinct indexed words
+	 *
+	 * @return the word count
+	 */
+	public synchronized int getWordCount() {
+		return words.size();
+	}
+
+	/**
+	 * Make a version stamp for a file from its size and modification time
+	 *
+	 * @param f
+	 *            the file
+	 * @return the stamp
+	 */
+	public static long stamp( File f ) {
+		return f.lastModified() * 31 + f.length();
+	}
+
+	/**
+	 * Find the clues containing every word of a query. A word ending in
+	 * {@code *} matches any word starting with it.
+	 *
+	 * @param query
+	 *            the query, e.g. {@code "roman emper*"}
+	 * @param limit
+	 *            the most results to return
+	 * @return the best matches, best first
+	 */
+	public synchronized List<Hit> search( String query, int limit ) {
+		List<String> terms = new ArrayList<String>();
+		List<Boolean> prefixes = new ArrayList<Boolean>();
+		for ( String part : query.trim().split( "\\s+" ) ) {
+			List<String> ws = tokenize( part );
+			for ( int i = 0; i < ws.size(); i++ ) {
+				terms.add( ws.get( i ) );
+				prefixes.add( i == ws.size() - 1 && part.endsWith( "*" ) );
+			}
+		}
+		List<Hit> hits = new ArrayList<Hit>();
+		if ( terms.isEmpty() || live == 0 || limit <= 0 )
+			return hits;
+		float avg = (float) totalLength / live;
+		float[] score = new float[ docs ];
+		int[] matched = new int[ docs ];
+		for ( int t = 0; t < terms.size(); t++ ) {
+			String term = terms.get( t );
+			Collection<Postings> ps;
+			if ( prefixes.get( t ) )
+				ps = words.subMap( term, true, term + Character.MAX_VALUE, false )
+					.values();
+			else {
+				Postings p = words.get( term );
+				ps = p == null ? Collections.<Postings> emptyList()
+					: Collections.singletonList( p );
+			}
+			boolean any = false;
+			for ( Postings p : ps ) {
+				float idf = idf( p );
+				for ( int i = 0; i < p.n; i++ ) {
+					int d = p.docs[i];
+					if ( docGame[d] == null || matched[d] < t )
+						continue;
+					float w = p.weights[i];
+					score[d] += idf * w * (K1 + 1)
+						/ (w + K1 * (1 - B + B * docLength[d] / avg));
+					matched[d] = t + 1;
+					any = true;
+				}
+			}
+			if ( !any )
+				return hits;
+		}
+		// keep the best, ties broken by clue order
+		final float[] s = score;
+		PriorityQueue<Integer> best = new PriorityQueue<Integer>( limit + 1,
+			new Comparator<Integer>() {
+
+				public int compare( Integer a, Integer b ) {
+					int c = Float.compare( s[a], s[b] );
+					return c != 0 ? c : b.compareTo( a );
+				}
+			} );
+		for ( int d = 0; d < docs; d++ ) {
+			if ( matched[d] != terms.size() )
+				continue;
+			best.add( d );
+			if ( best.size() > limit )
+				best.poll();
+		}
+		while ( !best.isEmpty() )
+			hits.add( hit( best.poll(), s ) );
+		Collections.reverse( hits );
+		return hits;
+	}
+
+	/**
+	 * Split text into index words: lower-case runs of letters and digits,
+	 * with accents removed and HTML tags skipped
+	 *
+	 * @param text
+	 *            the text, may be {@code null}
+	 * @return the words, in order
+	 */
+	public static List<String> tokenize( String text ) {
+		List<String> out = new ArrayList<String>();
+		if ( text == null )
+			return out;
+		String t = fold( text );
+		StringBuilder w = new StringBuilder();
+		boolean tag = false;
+		for ( int i = 0; i < t.length(); i++ ) {
+			char ch = t.charAt( i );
+			if ( tag ) {
+				tag = ch != '>';
+				continue;
+			}
+			if ( Character.isLetterOrDigit( ch ) ) {
+				w.append( Character.toLowerCase( ch ) );
+				continue;
+			}
+			if ( ch == '<' && i + 1 < t.length()
+				&& (Character.isLetter( t.charAt( i + 1 ) ) || t.charAt( i + 1 ) == '/') )
+				tag = true;
+			// keep words like "don't" whole
+			if ( ch == '\'' && w.length() > 0 && i + 1 < t.length()
+				&& Character.isLetter( t.charAt( i + 1 ) ) )
+				continue;
+			if ( w.length() > 0 ) {
+				out.add( w.toString() );
+				w.setLength( 0 );
+			}
+		}
+		if ( w.length() > 0 )
+			out.add( w.toString() );
+		return out;
+	}
+
+	// strip accents, only paying for normalization when there are any
+	private static String fold( String s ) {
+		for ( int i = 0; i < s.length(); i++ ) {
+			if ( s.charAt( i ) > 0x7f ) {
+				String d = Normalizer.normalize( s, Normalizer.Form.NFD );
+				return d.replaceAll( "\\p{InCombiningDiacriticalMarks}+", "" );
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Save the index, replacing the file atomically
+	 *
+	 * @param f
+	 *            the file
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public void save( File f ) throws IOException {
+		final byte[] data;
+		synchronized ( this ) {
+			compact();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			write( bytes );
+			data = bytes.toByteArray();
+		}
+		BackgroundSaver.write( f, new BackgroundSaver.Content() {
+
+			public void write( OutputStream out ) throws IOException {
+				out.write( data );
+			}
+		} );
+	}
+
+	/**
+	 * Load a saved index
+	 *
+	 * @param f
+	 *            the file
+	 * @return the index
+	 * @throws IOException
+	 *             if the file can't be read or is not a valid index
+	 */
+	public static ClueIndex load( File f ) throws IOException {
+		return read( Files.readAllBytes( f.toPath() ) );
+	}
+
+	private void addClue( String key, int round, int cat, int slot,
+		String catName, Entry e ) {
+		if ( docs == docGame.length ) {
+			int n = docs * 2;
+			docGame = Arrays.copyOf( docGame, n );
+			docWhere = Arrays.copyOf( docWhere, n );
+			docLength = Arrays.copyOf( docLength, n );
+			docCategory = Arrays.copyOf( docCategory, n );
+			docAnswer = Arrays.copyOf( docAnswer, n );
+			docQuestion = Arrays.copyOf( docQuestion, n );
+		}
+		int d = docs++;
+		docGame[d] = key;
+		docWhere[d] = where( round, cat, slot );
+		docCategory[d] = catName;
+		docAnswer[d] = e.getAnswer();
+		docQuestion[d] = e.getQuestion();
+		int length = post( d, catName, CATEGORY_WEIGHT );
+		length += post( d, docAnswer[d], 1 );
+		length += post( d, docQuestion[d], 1 );
+		docLength[d] = length;
+		totalLength += length;
+		++live;
+	}
+
+	private int post( int doc, String text, int weight ) {
+		List<String> ws = tokenize( text );
+		for ( String w : ws ) {
+			Postings p = words.get( w );
+			if ( p == null ) {
+				p = new Postings();
+				words.put( w, p );
+			}
+			p.add( doc, weight );
+		}
+		return ws.size() * weight;
+	}
+
+	// mark a game's clues removed; the postings are cleaned up by compact()
+	private boolean drop( String key ) {
+		Indexed i = games.remove( key );
+		if ( i == null )
+			return false;
+		for ( int d = i.first; d < i.first + i.count; d++ ) {
+			if ( docGame[d] != null ) {
+				docGame[d] = null;
+				docCategory[d] = docAnswer[d] = docQuestion[d] = null;
+				totalLength -= docLength[d];
+				--live;
+			}
+		}
+		return true;
+	}
+
+	private void compactIfSparse() {
+		if ( docs - live > 1024 && docs - live > live )
+			compact();
+	}
+
+	// renumber the live clues and drop removed ones from the postings
+	private void compact() {
+		if ( docs == live )
+			return;
+		int[] map = new int[ docs ];
+		int n = 0;
+		for ( int d = 0; d < docs; d++ ) {
+			if ( docGame[d] == null ) {
+				map[d] = -1;
+				continue;
+			}
+			map[d] = n;
+			docGame[n] = docGame[d];
+			docWhere[n] = docWhere[d];
+			docLength[n] = docLength[d];
+			docCategory[n] = docCategory[d];
+			docAnswer[n] = docAnswer[d];
+			docQuestion[n] = docQuestion[d];
+			++n;
+		}
+		for ( int d = n; d < docs; d++ ) {
+			docGame[d] = docCategory[d] = docAnswer[d] = docQuestion[d] = null;
+		}
+		docs = n;
+		for ( Iterator<Postings> it = words.values().iterator(); it.hasNext(); ) {
+			Postings p = it.next();
+			int k = 0;
+			for ( int i = 0; i < p.n; i++ ) {
+				int d = map[p.docs[i]];
+				if ( d == -1 )
+					continue;
+				p.docs[k] = d;
+				p.weights[k] = p.weights[i];
+				++k;
+			}
+			p.n = k;
+			if ( k == 0 )
+				it.remove();
+		}
+		// a game's clues stay together, in the same order
+		for ( Map.Entry<String, Indexed> e : games.entrySet() ) {
+			Indexed i = e.getValue();
+			int first = i.count == 0 ? 0 : map[i.first];
+			e.setValue( new Indexed( i.key, i.stamp, first, i.count ) );
+		}
+	}
+
+	private float idf( Postings p ) {
+		// documents, not postings: removed clues are not counted
+		int df = 0;
+		for ( int i = 0; i < p.n; i++ ) {
+			if ( docGame[p.docs[i]] != null )
+				++df;
+		}
+		return (float) Math.log( 1 + (live - df + 0.5) / (df + 0.5) );
+	}
+
+	private Hit hit( int d, float[] score ) {
+		int w = docWhere[d];
+		return new Hit( docGame[d], (w >> 16) - 1, (w >> 8) & 0xff, w & 0xff,
+			docCategory[d], docAnswer[d], docQuestion[d], score[d] );
+	}
+
+	private static int where( int round, int cat, int slot ) {
+		return ((round + 1) << 16) | (cat << 8) | slot;
+	}
+
+	// the caller has compacted the index, so every clue is live
+	private void write( OutputStream os ) throws IOException {
+		CheckedOutputStream checked = new CheckedOutputStream( os, new CRC32() );
+		DataOutputStream out = new DataOutputStream( checked );
+		out.write( MAGIC );
+		out.writeInt( VERSION );
+		List<Indexed> list = new ArrayList<Indexed>( games.values() );
+		Map<String, Integer> numbers = new HashMap<String, Integer>();
+		out.writeInt( list.size() );
+		for ( Indexed i : list ) {
+			numbers.put( i.key, numbers.size() );
+			writeString( out, i.key );
+			out.writeLong( i.stamp );
+		}
+		out.writeInt( docs );
+		for ( int d = 0; d < docs; d++ ) {
+			writeVarint( out, numbers.get( docGame[d] ) );
+			writeVarint( out, docWhere[d] );
+			writeVarint( out, docLength[d] );
+			writeString( out, docCategory[d] );
+			writeString( out, docAnswer[d] );
+			writeString( out, docQuestion[d] );
+		}
+		out.writeInt( words.size() );
+		for ( Map.Entry<String, Postings> e : words.entrySet() ) {
+			Postings p = e.getValue();
+			writeString( out, e.getKey() );
+			writeVarint( out, p.n );
+			int last = 0;
+			for ( int i = 0; i < p.n; i++ ) {
+				writeVarint( out, p.docs[i] - last );
+				writeVarint( out, p.weights[i] );
+				last = p.docs[i];
+			}
+		}
+		out.flush();
+		out.writeInt( (int) checked.getChecksum().getValue() );
+		out.flush();
+	}
+
+	// in.available() is what is left of the file, so no count or length is
+	// trusted further than the bytes that could hold it
+	private static ClueIndex read( byte[] data ) throws IOException {
+		CheckedInputStream checked = new CheckedInputStream(
+			new ByteArrayInputStream( data ), new CRC32() );
+		DataInputStream in = new DataInputStream( checked );
+		try {
+			byte[] magic = new byte[ MAGIC.length ];
+			in.readFully( magic );
+			if ( !Arrays.equals( magic, MAGIC ) )
+				throw new IOException( "Not a clue index" );
+			int version = in.readInt();
+			if ( version != VERSION )
+				throw new IOException( "Unsupported clue index version "
+					+ version );
+			ClueIndex x = new ClueIndex();
+			int nGames = in.readInt();
+			if ( nGames < 0 || nGames > in.available() / 9 )
+				throw new IOException( "Corrupt clue index" );
+			String[] keys = new String[ nGames ];
+			long[] stamps = new long[ nGames ];
+			for ( int i = 0; i < nGames; i++ ) {
+				keys[i] = readString( in );
+				if ( keys[i] == null )
+					throw new IOException( "Corrupt clue index" );
+				stamps[i] = in.readLong();
+			}
+			int n = in.readInt();
+			if ( n < 0 )
+				throw new IOException( "Corrupt clue index" );
+			int[] first = new int[ nGames ];
+			int[] count = new int[ nGames ];
+			for ( int d = 0; d < n; d++ ) {
+				int g = readVarint( in );
+				if ( g < 0 || g >= nGames )
+					throw new IOException( "Corrupt clue index" );
+				if ( count[g]++ == 0 )
+					first[g] = d;
+				x.grow( d + 1 );
+				x.docGame[d] = keys[g];
+				x.docWhere[d] = readVarint( in );
+				x.docLength[d] = readVarint( in );
+				if ( x.docLength[d] < 0 )
+					throw new IOException( "Corrupt clue index" );
+				x.docCategory[d] = readString( in );
+				x.docAnswer[d] = readString( in );
+				x.docQuestion[d] = readString( in );
+				x.totalLength += x.docLength[d];
+			}
+			x.docs = x.live = n;
+			for ( int i = 0; i < nGames; i++ )
+				x.games.put( keys[i], new Indexed( keys[i], stamps[i],
+					first[i], count[i] ) );
+			int nWords = in.readInt();
+			for ( int w = 0; w < nWords; w++ ) {
+				String word = readString( in );
+				if ( word == null )
+					throw new IOException( "Corrupt clue index" );
+				Postings p = new Postings();
+				int k = readVarint( in );
+				if ( k < 0 || k > in.available() / 2 )
+					throw new IOException( "Corrupt clue index" );
+				p.docs = new int[ Math.max( 1, k ) ];
+				p.weights = new int[ p.docs.length ];
+				int d = 0;
+				for ( int i = 0; i < k; i++ ) {
+					int delta = readVarint( in );
+					if ( delta < 0 || delta >= n - d )
+						throw new IOException( "Corrupt clue index" );
+					d += delta;
+					p.docs[i] = d;
+					p.weights[i] = readVarint( in );
+				}
+				p.n = k;
+				x.words.put( word, p );
+			}
+			int sum = (int) checked.getChecksum().getValue();
+			if ( in.readInt() != sum )
+				throw new IOException( "Clue index checksum mismatch" );
+			return x;
+		} catch ( EOFException eofe ) {
+			throw new IOException( "Truncated clue index", eofe );
+		}
+	}
+
+	private void grow( int n ) {
+		if ( n <= docGame.length )
+			return;
+		int size = Math.max( n, docGame.length * 2 );
+		docGame = Arrays.copyOf( docGame, size );
+		docWhere = Arrays.copyOf( docWhere, size );
+		docLength = Arrays.copyOf( docLength, size );
+		docCategory = Arrays.copyOf( docCategory, size );
+		docAnswer = Arrays.copyOf( docAnswer, size );
+		docQuestion = Arrays.copyOf( docQuestion, size );
+	}
+
+	private static void writeString( DataOutputStream out, String s )
+		throws IOException {
+		if ( s == null ) {
+			writeVarint( out, 0 );
+			return;
+		}
+		byte[] b = s.getBytes( UTF8 );
+		writeVarint( out, b.length + 1 );
+		out.write( b );
+	}
+
+	private static String readString( DataInputStream in ) throws IOException {
+		int n = readVarint( in ) - 1;
+		if ( n < 0 )
+			return null;
+		if ( n > in.available() )
+			throw new IOException( "Corrupt clue index" );
+		byte[] b = new byte[ n ];
+		in.readFully( b );
+		return new String( b, UTF8 );
+	}
+
+	private static void writeVarint( DataOutputStream out, int v )
+		throws IOException {
+		while ( (v & ~0x7f) != 0 ) {
+			out.write( (v & 0x7f) | 0x80 );
+			v >>>= 7;
+		}
+		out.write( v );
+	}
+
+	private static int readVarint( DataInputStream in ) throws IOException {
+		int v = 0;
+		for ( int shift = 0; shift < 35; shift += 7 ) {
+			int b = in.readUnsignedByte();
+			v |= (b & 0x7f) << shift;
+			if ( (b & 0x80) == 0 )
+				return v;
+		}
+		throw new IOException( "Corrupt clue index" );
+	}
+
+}
@@ -0,0 +1,537 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.util.*;
+import org.garion.games.jeopardy.*;
+
+/**
+ * Many games flattened into columns, for statistics over a whole archive
+ * (answer lengths, category frequency, value balance) without keeping an
+ * {@link Entry} and two strings per clue.
+ * <p>
+ * Each clue is one row, and each column is one primitive array: the game,
+ * round, category number in the round, slot, category name id, dollar
+ * amount, and answer and question offsets. The answer and question text of
+ * every clue sits back to back in one shared {@code char[]}. Category names
+ * and other repeated strings are stored once and referred to by id.
+ * <p>
+ * {@link #scan(Visitor)} hands the columns over in {@link Batch}es of up to
+ * {@value #BATCH} rows, as plain arrays that simple loops run through
+ * quickly. {@link #toGame(int)} rebuilds a game exactly as it was added.
+ * <p>
+ * A store only grows. It is not thread-safe: fill it first, then share it
+ * read-only.
+ *
+ * @author martin@mbs3.org
+ */
+public final class ClueStore {
+
+	/** The largest number of rows handed over in one batch */
+	public static final int BATCH = 1024;
+
+	/** Column: the game number */
+	public static final int GAME = 0;
+	/** Column: the round, or {@link ClueIndex#FINAL} */
+	public static final int ROUND = 1;
+	/** Column: the category name id */
+	public static final int CATEGORY = 2;
+	/** Column: the dollar amount, see {@link Category#getAmount(int)} */
+	public static final int VALUE = 3;
+	/** Column: the answer length in characters */
+	public static final int ANSWER_LENGTH = 4;
+	/** Column: the question length in characters */
+	public static final int QUESTION_LENGTH = 5;
+
+	/**
+	 * A window of rows. Row {@code i} of the batch is row
+	 * {@code first + i} of the store, for {@code i < size}. The arrays are
+	 * reused for the next batch, so they must not be kept.
+	 */
+	public static final class Batch {
+
+		/** The store row of the batch's first row */
+		public int first;
+		/** The number of rows in the batch */
+		public int size;
+		/** The game of each row */
+		public final int[] game = new int[ BATCH ];
+		/** The round of each row, or {@link ClueIndex#FINAL} */
+		public final int[] round = new int[ BATCH ];
+		/** The category name id of each row */
+		public final int[] category = new int[ BATCH ];
+		/** The dollar amount of each row */
+		public final int[] value = new int[ BATCH ];
+		/** The answer length of each row */
+		public final int[] answerLength = new int[ BATCH ];
+		/** The question length of each row */
+		public final int[] questionLength = new int[ BATCH ];
+
+		private Batch() {}
+
+		/**
+		 * Get a column of this batch
+		 *
+		 * @param column
+		 *            the column, e.g. {@link ClueStore#VALUE}
+		 * @return the column's array
+		 */
+		public int[] column( int column ) {
+			switch ( column ) {
+				case GAME:
+					return game;
+				case ROUND:
+					return round;
+				case CATEGORY:
+					return category;
+				case VALUE:
+					return value;
+				case ANSWER_LENGTH:
+					return answerLength;
+				case QUESTION_LENGTH:
+					return questionLength;
+				default:
+					throw new IllegalArgumentException( "No column " + column );
+			}
+		}
+	}
+
+	/** Receives the batches of a scan */
+	public interface Visitor {
+
+		/**
+		 * Handle one batch
+		 *
+		 * @param b
+		 *            the batch
+		 */
+		void visit( Batch b );
+	}
+
+	// rows
+	private int[] game = new int[ 1024 ];
+	private short[] round = new short[ 1024 ];
+	private short[] column = new short[ 1024 ];
+	private short[] slot = new short[ 1024 ];
+	private int[] category = new int[ 1024 ];
+	private int[] value = new int[ 1024 ];
+	private int[] answer = new int[ 1024 ];
+	private int[] question = new int[ 1024 ];
+	private int rows;
+
+	// text: each row's answer then question; a row's text ends where the
+	// next row's starts
+	private char[] text = new char[ 1 << 16 ];
+	private int length;
+
+	// games: first row, and the shape needed to rebuild them
+	private int[] gameFirst = new int[ 64 ];
+	private int[][] gameLayout = new int[ 64 ][];
+	private int games;
+
+	private final Dictionary names = new Dictionary();
+	private final Dictionary strings = new Dictionary();
+
+	/** Strings stored once, by id */
+	private static final class Dictionary {
+
+		final Map<String, Integer> ids = new HashMap<String, Integer>();
+		final List<String> list = new ArrayList<String>();
+		int[] counts = new int[ 64 ];
+
+		// the id of a string (null is -1), counting a use
+		int id( String s ) {
+			if ( s == null )
+				return -1;
+			Integer id = ids.get( s );
+			if ( id == null ) {
+				id = list.size();
+				ids.put( s, id );
+				list.add( s );
+				if ( id == counts.length )
+					counts = Arrays.copyOf( counts, id * 2 );
+			}
+			++counts[id];
+			return id;
+		}
+
+		String get( int id ) {
+			return id == -1 ? null : list.get( id );
+		}
+	}
+
+	/**
+	 * Create an empty store
+	 */
+	public ClueStore() {}
+
+	/**
+	 * Add a game. Null answers and questions are stored as empty text.
+	 *
+	 * @param g
+	 *            the game
+	 * @return the game's number in this store
+	 * @throws IllegalArgumentException
+	 *             if the game has more than {@link Short#MAX_VALUE} rounds,
+	 *             categories in a round or slots in a category
+	 */
+	public int add( Game g ) {
+		checkShape( g );
+		if ( games == gameFirst.length ) {
+			gameFirst = Arrays.copyOf( gameFirst, games * 2 );
+			gameLayout = Arrays.copyOf( gameLayout, games * 2 );
+		}
+		int id = games++;
+		gameFirst[id] = rows;
+		// title, subject, final name (or -2 for none), round count, then per
+		// round its name and category count, and per category its name id,
+		// slot count and each slot's value text
+		int[] layout = new int[ 16 ];
+		int n = 0;
+		layout[n++] = strings.id( g.title );
+		layout[n++] = strings.id( g.subject );
+		layout[n++] = g.f == null ? -2 : names.id( g.f.name );
+		if ( g.f != null && g.f.entry != null )
+			addRow( id, ClueIndex.FINAL, 0, 0, layout[2], 0, g.f.entry );
+		int nr = g.rounds == null ? 0 : g.rounds.length;
+		layout[n++] = nr;
+		for ( int r = 0; r < nr; r++ ) {
+			Round round = g.rounds[r];
+			int nc = round == null ? -1 : round.categories == null ? 0
+				: round.categories.length;
+			layout = fit( layout, n + 2 );
+			layout[n++] = round == null ? -1 : strings.id( round.name );
+			layout[n++] = nc;
+			for ( int c = 0; c < nc; c++ ) {
+				Category cat = round.categories[c];
+				int ns = cat == null ? -1 : Math.min( cat.values.length,
+					cat.entries.length );
+				layout = fit( layout, n + 2 + Math.max( 0, ns ) );
+				int name = cat == null ? -1 : names.id( cat.name );
+				layout[n++] = name;
+				layout[n++] = ns;
+				for ( int s = 0; s < ns; s++ ) {
+					layout[n++] = strings.id( cat.values[s] );
+					if ( cat.entries[s] != null )
+						addRow( id, r, c, s, name, cat.getAmount( s ),
+							cat.entries[s] );
+				}
+			}
+		}
+		gameLayout[id] = Arrays.copyOf( layout, n );
+		return id;
+	}
+
+	/**
+	 * Add many games
+	 *
+	 * @param gs
+	 *            the games
+	 */
+	public void addAll( Iterable<Game> gs ) {
+		for ( Game g : gs )
+			add( g );
+	}
+
+	/**
+	 * @return the number of clues (rows)
+	 */
+	public int size() {
+		return rows;
+	}
+
+	/**
+	 * @return the number of games
+	 */
+	public int getGameCount() {
+		return games;
+	}
+
+	/**
+	 * @return the number of distinct category names
+	 */
+	public int getCategoryCount() {
+		return names.list.size();
+	}
+
+	/**
+	 * @param id
+	 *            a category name id, from the {@link #CATEGORY} column
+	 * @return the category name
+	 */
+	public String getCategoryName( int id ) {
+		return names.get( id );
+	}
+
+	/**
+	 * Count how often each category name is used, by name id. Final jeopardy
+	 * categories count too.
+	 *
+	 * @return the counts, indexed by category name id
+	 */
+	public int[] getCategoryFrequencies() {
+		return Arrays.copyOf( names.counts, names.list.size() );
+	}
+
+	/**
+	 * @param row
+	 *            the row
+	 * @return the row's answer
+	 */
+	public String getAnswer( int row ) {
+		return new String( text, answer[row], question[row] - answer[row] );
+	}
+
+	/**
+	 * @param row
+	 *            the row
+	 * @return the row's question
+	 */
+	public String getQuestion( int row ) {
+		return new String( text, question[row], end( row ) - question[row] );
+	}
+
+	/**
+	 * Get one cell
+	 *
+	 * @param column
+	 *            the column, e.g. {@link #VALUE}
+	 * @param row
+	 *            the row
+	 * @return the cell's value
+	 */
+	public int get( int column, int row ) {
+		switch ( column ) {
+			case GAME:
+				return game[row];
+			case ROUND:
+				return round[row];
+			case CATEGORY:
+				return category[row];
+			case VALUE:
+				return value[row];
+			case ANSWER_LENGTH:
+				return question[row] - answer[row];
+			case QUESTION_LENGTH:
+				return end( row ) - question[row];
+			default:
+				throw new IllegalArgumentException( "No column " + column );
+		}
+	}
+
+	/**
+	 * Hand every row to a visitor, in batches, in row order
+	 *
+	 * @param v
+	 *            the visitor
+	 */
+	public void scan( Visitor v ) {
+		scan( 0, rows, v );
+	}
+
+	/**
+	 * Hand a range of rows to a visitor, in batches, in row order
+	 *
+	 * @param from
+	 *            the first row
+	 * @param to
+	 *            the row after the last
+	 * @param v
+	 *            the visitor
+	 */
+	public void scan( int from, int to, Visitor v ) {
+		if ( from < 0 || to > rows || from > to )
+			throw new IndexOutOfBoundsException( from + ".." + to );
+		Batch b = new Batch();
+		for ( int start = from; start < to; start += BATCH ) {
+			int n = Math.min( BATCH, to - start );
+			b.first = start;
+			b.size = n;
+			System.arraycopy( game, start, b.game, 0, n );
+			System.arraycopy( category, start, b.category, 0, n );
+			System.arraycopy( value, start, b.value, 0, n );
+			for ( int i = 0; i < n; i++ ) {
+				int row = start + i;
+				b.round[i] = round[row];
+				b.answerLength[i] = question[row] - answer[row];
+				b.questionLength[i] = end( row ) - question[row];
+			}
+			v.visit( b );
+		}
+	}
+
+	/**
+	 * Count the rows by the value of one column, e.g. answer lengths.
+	 * Values of {@code buckets - 1} or more are counted in the last bucket,
+	 * negative values in the first.
+	 *
+	 * @param column
+	 *            the column
+	 * @param buckets
+	 *            the number of buckets
+	 * @return the counts
+	 */
+	public int[] histogram( final int column, int buckets ) {
+		final int[] counts = new int[ buckets ];
+		final int last = buckets - 1;
+		scan( new Visitor() {
+
+			public void visit( Batch b ) {
+				int[] c = b.column( column );
+				for ( int i = 0; i < b.size; i++ ) {
+					int v = c[i];
+					++counts[v < 0 ? 0 : v > last ? last : v];
+				}
+			}
+		} );
+		return counts;
+	}
+
+	/**
+	 * Total the dollar amounts of each round across every game
+	 *
+	 * @return the totals, indexed by round; final jeopardy is not counted
+	 */
+	public long[] getValueTotals() {
+		int max = 0;
+		for ( int i = 0; i < rows; i++ )
+			max = Math.max( max, round[i] + 1 );
+		final long[] totals = new long[ max ];
+		scan( new Visitor() {
+
+			public void visit( Batch b ) {
+				for ( int i = 0; i < b.size; i++ ) {
+					if ( b.round[i] >= 0 )
+						totals[b.round[i]] += b.value[i];
+				}
+			}
+		} );
+		return totals;
+	}
+
+	/**
+	 * Rebuild a game as it was added
+	 *
+	 * @param id
+	 *            the game number
+	 * @return a new game
+	 */
+	public Game toGame( int id ) {
+		int[] layout = gameLayout[id];
+		int n = 0;
+		Game g = new Game( strings.get( layout[n++] ), strings
+			.get( layout[n++] ) );
+		int finalName = layout[n++];
+		g.f = finalName == -2 ? null : new Final( names.get( finalName ), null );
+		g.rounds = new Round[ layout[n++] ];
+		for ( int r = 0; r < g.rounds.length; r++ ) {
+			int name = layout[n++];
+			int nc = layout[n++];
+			if ( nc == -1 )
+				continue;
+			Round round = new Round( strings.get( name ) );
+			round.categories = new Category[ nc ];
+			for ( int c = 0; c < nc; c++ ) {
+				int cname = layout[n++];
+				int ns = layout[n++];
+				if ( ns == -1 )
+					continue;
+				Category cat = new Category( names.get( cname ) );
+				cat.values = new String[ ns ];
+				cat.entries = new Entry[ ns ];
+				for ( int s = 0; s < ns; s++ )
+					cat.values[s] = strings.get( layout[n++] );
+				round.categories[c] = cat;
+			}
+			g.rounds[r] = round;
+		}
+		int last = id + 1 < games ? gameFirst[id + 1] : rows;
+		for ( int row = gameFirst[id]; row < last; row++ ) {
+			Entry e = new Entry( getAnswer( row ), getQuestion( row ) );
+			if ( round[row] == ClueIndex.FINAL )
+				g.f.entry = e;
+			else
+				g.rounds[round[row]].categories[column[row]].entries[slot[row]] = e;
+		}
+		g.verifySize();
+		return g;
+	}
+
+	private void addRow( int g, int r, int c, int s, int name, int amount,
+		Entry e ) {
+		if ( rows == game.length ) {
+			int m = rows * 2;
+			game = Arrays.copyOf( game, m );
+			round = Arrays.copyOf( round, m );
+			column = Arrays.copyOf( column, m );
+			slot = Arrays.copyOf( slot, m );
+			category = Arrays.copyOf( category, m );
+			value = Arrays.copyOf( value, m );
+			answer = Arrays.copyOf( answer, m );
+			question = Arrays.copyOf( question, m );
+		}
+		int row = rows++;
+		game[row] = g;
+		round[row] = (short) r;
+		column[row] = (short) c;
+		slot[row] = (short) s;
+		category[row] = name;
+		value[row] = amount;
+		answer[row] = append( e.getAnswer() );
+		question[row] = append( e.getQuestion() );
+	}
+
+	// rounds, category numbers and slots are stored as shorts
+	private static void checkShape( Game g ) {
+		int nr = g.rounds == null ? 0 : g.rounds.length;
+		boolean large = nr > Short.MAX_VALUE;
+		for ( int r = 0; r < nr && !large; r++ ) {
+			Round round = g.rounds[r];
+			if ( round == null || round.categories == null )
+				continue;
+			large = round.categories.length > Short.MAX_VALUE;
+			for ( Category cat : round.categories ) {
+				if ( cat != null && Math.min( cat.values.length,
+					cat.entries.length ) > Short.MAX_VALUE )
+					large = true;
+			}
+		}
+		if ( large )
+			throw new IllegalArgumentException( "Game too large for a clue store" );
+	}
+
+	private int append( String s ) {
+		int at = length;
+		if ( s == null )
+			return at;
+		int n = s.length();
+		if ( length + n > text.length )
+			text = Arrays.copyOf( text, Math.max( text.length * 2, length + n ) );
+		s.getChars( 0, n, text, length );
+		length += n;
+		return at;
+	}
+
+	private int end( int row ) {
+		return row + 1 < rows ? answer[row + 1] : length;
+	}
+
+	private static int[] fit( int[] a, int n ) {
+		return n <= a.length ? a : Arrays.copyOf( a, Math.max( n, a.length * 2 ) );
+	}
+
+}
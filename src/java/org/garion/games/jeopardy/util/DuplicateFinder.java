@@ -0,0 +1,548 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+import org.garion.games.jeopardy.*;
+
+/**
+ * Finds clues whose answers are nearly the same text, across a bank of
+ * games, without comparing every pair of clues.
+ * <p>
+ * An answer is reduced to its words (see {@link ClueIndex#tokenize(String)})
+ * and then to the set of 5-character pieces of that text. The similarity of
+ * two answers is the share of pieces they have in common (their Jaccard
+ * similarity). Each answer gets a MinHash signature of {@value #HASHES}
+ * numbers, where two signatures agree in about that share of places.
+ * <p>
+ * Signatures are cut into {@value #BANDS} bands, and only clues that agree
+ * on a whole band are compared. Clues at least 70% similar share a band
+ * almost always (97%), while unrelated clues practically never do, so
+ * finding the matches of one answer costs about as much as the matches
+ * themselves.
+ * <p>
+ * Games are added under a key (usually the file path), and adding a game
+ * again replaces only that game's clues. All methods are synchronized.
+ *
+ * @author martin@mbs3.org
+ */
+public final class DuplicateFinder {
+
+	/** The similarity at which clues count as duplicates by default */
+	public static final double DEFAULT_THRESHOLD = 0.7;
+
+	/** The number of hashes in a signature */
+	public static final int HASHES = 100;
+	/** The number of bands a signature is cut into */
+	public static final int BANDS = 20;
+
+	private static final int ROWS = HASHES / BANDS;
+	private static final int SHINGLE = 5;
+
+	/** Where a clue is, and its answer */
+	public static final class Clue {
+
+		/** The key of the game holding the clue */
+		public final String game;
+		/** The round, or {@link ClueIndex#FINAL} */
+		public final int round;
+		/** The category within the round (0 for final jeopardy) */
+		public final int category;
+		/** The slot within the category (0 for final jeopardy) */
+		public final int slot;
+		/** The clue's answer */
+		public final String answer;
+
+		Clue( String game, int round, int category, int slot, String answer ) {
+			this.game = game;
+			this.round = round;
+			this.category = category;
+			this.slot = slot;
+			this.answer = answer;
+		}
+
+		@Override
+		public String toString() {
+			return String.format( "%s [%d/%d/%d] %s", game, round, category,
+				slot, answer );
+		}
+	}
+
+	/** A clue similar to a given answer */
+	public static final class Match {
+
+		/** The similar clue */
+		public final Clue clue;
+		/** The estimated similarity, from 0 to 1 */
+		public final double similarity;
+
+		Match( Clue clue, double similarity ) {
+			this.clue = clue;
+			this.similarity = similarity;
+		}
+
+		@Override
+		public String toString() {
+			return String.format( "%3.0f%% %s", similarity * 100, clue );
+		}
+	}
+
+	// the hash functions: h(x) = mix(x * A + C)
+	private static final int[] A = new int[ HASHES ];
+	private static final int[] C = new int[ HASHES ];
+	static {
+		Random r = new Random( 0x4a656f70L );
+		for ( int i = 0; i < HASHES; i++ ) {
+			A[i] = r.nextInt() | 1;
+			C[i] = r.nextInt();
+		}
+	}
+
+	private final double threshold;
+	private final Map<String, int[]> games = new HashMap<String, int[]>();
+
+	// clues by number; a removed clue has a null game
+	private Clue[] clues = new Clue[ 64 ];
+	private int[] signatures = new int[ 64 * HASHES ];
+	private int count;
+	private int live;
+
+	// bands: an open-addressed table from (band, band hash) to the latest
+	// clue in that bucket; next[] chains a bucket's earlier clues, per band
+	private long[] keys = new long[ 256 ];
+	private int[] heads = new int[ 256 ];
+	private int used;
+	private int[] next = new int[ 64 * BANDS ];
+
+	/**
+	 * Create a finder with the {@link #DEFAULT_THRESHOLD}
+	 */
+	public DuplicateFinder() {
+		this( DEFAULT_THRESHOLD );
+	}
+
+	/**
+	 * Create a finder
+	 *
+	 * @param threshold
+	 *            the similarity, from 0 to 1, at which clues count as
+	 *            duplicates
+	 */
+	public DuplicateFinder( double threshold ) {
+		if ( threshold <= 0 || threshold > 1 )
+			throw new IllegalArgumentException( "threshold " + threshold );
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Load every game file of a directory into a new finder, skipping files
+	 * that can't be loaded
+	 *
+	 * @param dir
+	 *            the directory
+	 * @param threshold
+	 *            the similarity at which clues count as duplicates
+	 * @return the finder
+	 * @throws IOException
+	 *             if the directory can't be listed
+	 * @throws InterruptedException
+	 *             if interrupted while loading
+	 */
+	public static DuplicateFinder scan( File dir, double threshold )
+		throws IOException, InterruptedException {
+		DuplicateFinder d = new DuplicateFinder( threshold );
+		BulkLoader loader = new BulkLoader();
+		try {
+			loader.submit( dir );
+			while ( loader.pending() > 0 ) {
+				BulkLoader.Result r = loader.take();
+				if ( r.ok() )
+					d.add( r.file.getAbsolutePath(), r.game );
+			}
+		} finally {
+			loader.close();
+		}
+		return d;
+	}
+
+	/**
+	 * Add the answers of a game, replacing any earlier version added under
+	 * the same key
+	 *
+	 * @param key
+	 *            the key to add the game under, e.g. its file path
+	 * @param g
+	 *            the game
+	 */
+	public synchronized void add( String key, Game g ) {
+		drop( key );
+		int first = count;
+		if ( g.f != null && g.f.entry != null )
+			addClue( new Clue( key, ClueIndex.FINAL, 0, 0, g.f.entry
+				.getAnswer() ) );
+		if ( g.rounds != null ) {
+			for ( int r = 0; r < g.rounds.length; r++ ) {
+				Round round = g.rounds[r];
+				if ( round == null || round.categories == null )
+					continue;
+				for ( int c = 0; c < round.categories.length; c++ ) {
+					Category cat = round.categories[c];
+					if ( cat == null || cat.entries == null )
+						continue;
+					for ( int s = 0; s < cat.entries.length; s++ ) {
+						Entry e = cat.entries[s];
+						if ( e != null )
+							addClue( new Clue( key, r, c, s, e.getAnswer() ) );
+					}
+				}
+			}
+		}
+		games.put( key, new int[] { first, count - first } );
+		if ( count - live > 1024 && count - live > live )
+			rebuild();
+	}
+
+	/**
+	 * Remove a game's answers
+	 *
+	 * @param key
+	 *            the game's key
+	 * @return whether the game was added
+	 */
+	public synchronized boolean remove( String key ) {
+		return drop( key );
+	}
+
+	/**
+	 * Get the number of answers added
+	 *
+	 * @return the answer count
+	 */
+	public synchronized int size() {
+		return live;
+	}
+
+	/**
+	 * Find the clues similar to an answer
+	 *
+	 * @param answer
+	 *            the answer
+	 * @return the similar clues, most similar first
+	 */
+	public List<Match> similar( String answer ) {
+		return similar( answer, null );
+	}
+
+	/**
+	 * Find the clues similar to an answer, ignoring one game (e.g. the one
+	 * the answer is being edited in)
+	 *
+	 * @param answer
+	 *            the answer
+	 * @param ignore
+	 *            the key of the game to ignore, or {@code null}
+	 * @return the similar clues, most similar first
+	 */
+	public synchronized List<Match> similar( String answer, String ignore ) {
+		List<Match> out = new ArrayList<Match>();
+		int[] sig = signature( answer );
+		if ( sig == null )
+			return out;
+		Set<Integer> seen = new HashSet<Integer>();
+		for ( int b = 0; b < BANDS; b++ ) {
+			for ( int d = head( b, sig, 0 ); d >= 0; d = next[d * BANDS + b] ) {
+				Clue c = clues[d];
+				if ( c == null || c.game.equals( ignore ) || !seen.add( d ) )
+					continue;
+				double s = agreement( sig, 0, signatures, d * HASHES );
+				if ( s >= threshold )
+					out.add( new Match( c, s ) );
+			}
+		}
+		Collections.sort( out, new Comparator<Match>() {
+
+			public int compare( Match a, Match b ) {
+				return Double.compare( b.similarity, a.similarity );
+			}
+		} );
+		return out;
+	}
+
+	/**
+	 * Find every group of near-duplicate clues. Clues are grouped when they
+	 * are similar to any clue of the group.
+	 *
+	 * @return the groups of two or more clues, largest first
+	 */
+	public synchronized List<List<Clue>> groups() {
+		int[] parent = new int[ count ];
+		for ( int d = 0; d < count; d++ )
+			parent[d] = d;
+		// each bucket keeps one clue per group found in it so far, and a new
+		// clue is only compared with those
+		List<Integer> reps = new ArrayList<Integer>();
+		for ( int i = 0; i < keys.length; i++ ) {
+			if ( heads[i] == 0 )
+				continue;
+			int b = (int) (keys[i] >>> 32);
+			reps.clear();
+			for ( int d = heads[i] - 1; d >= 0; d = next[d * BANDS + b] ) {
+				if ( clues[d] == null )
+					continue;
+				boolean joined = false;
+				for ( int k = 0; k < reps.size() && !joined; k++ ) {
+					int r = reps.get( k );
+					if ( find( parent, r ) == find( parent, d ) )
+						joined = true;
+					else if ( agreement( signatures, r * HASHES, signatures, d
+						* HASHES ) >= threshold ) {
+						parent[find( parent, d )] = find( parent, r );
+						joined = true;
+					}
+				}
+				if ( !joined )
+					reps.add( d );
+			}
+		}
+		Map<Integer, List<Clue>> byRoot = new LinkedHashMap<Integer, List<Clue>>();
+		for ( int d = 0; d < count; d++ ) {
+			if ( clues[d] == null )
+				continue;
+			int r = find( parent, d );
+			List<Clue> g = byRoot.get( r );
+			if ( g == null ) {
+				g = new ArrayList<Clue>();
+				byRoot.put( r, g );
+			}
+			g.add( clues[d] );
+		}
+		List<List<Clue>> out = new ArrayList<List<Clue>>();
+		for ( List<Clue> g : byRoot.values() ) {
+			if ( g.size() > 1 )
+				out.add( g );
+		}
+		Collections.sort( out, new Comparator<List<Clue>>() {
+
+			public int compare( List<Clue> a, List<Clue> b ) {
+				return b.size() - a.size();
+			}
+		} );
+		return out;
+	}
+
+	/**
+	 * Write a plain-text report of every group of near-duplicate clues
+	 *
+	 * @param out
+	 *            where to write the report
+	 * @return the number of groups
+	 */
+	public int report( PrintWriter out ) {
+		List<List<Clue>> groups = groups();
+		int n = 0;
+		for ( List<Clue> g : groups ) {
+			out.printf( "Group %d (%d clues)%n", ++n, g.size() );
+			for ( Clue c : g )
+				out.println( "  " + c );
+		}
+		out.printf( "%d groups of near-duplicate clues among %d answers%n",
+			groups.size(), size() );
+		out.flush();
+		return groups.size();
+	}
+
+	/**
+	 * Estimate the similarity of two answers the way the finder does
+	 *
+	 * @param a
+	 *            an answer
+	 * @param b
+	 *            another answer
+	 * @return the estimated similarity, from 0 to 1
+	 */
+	public static double similarity( String a, String b ) {
+		int[] sa = signature( a );
+		int[] sb = signature( b );
+		if ( sa == null || sb == null )
+			return sa == sb ? 1 : 0;
+		return agreement( sa, 0, sb, 0 );
+	}
+
+	private void addClue( Clue c ) {
+		int[] sig = signature( c.answer );
+		if ( sig == null )
+			return;
+		if ( count == clues.length ) {
+			clues = Arrays.copyOf( clues, count * 2 );
+			signatures = Arrays.copyOf( signatures, count * 2 * HASHES );
+			next = Arrays.copyOf( next, count * 2 * BANDS );
+		}
+		int d = count++;
+		clues[d] = c;
+		System.arraycopy( sig, 0, signatures, d * HASHES, HASHES );
+		link( d );
+		++live;
+	}
+
+	// put a clue at the head of its bucket in every band
+	private void link( int d ) {
+		if ( (used + BANDS) * 2 > keys.length )
+			grow();
+		for ( int b = 0; b < BANDS; b++ ) {
+			long key = bandKey( b, signatures, d * HASHES );
+			int i = slot( key );
+			if ( heads[i] == 0 ) {
+				keys[i] = key;
+				++used;
+			}
+			next[d * BANDS + b] = heads[i] - 1;
+			heads[i] = d + 1;
+		}
+	}
+
+	private int head( int b, int[] sig, int offset ) {
+		long key = bandKey( b, sig, offset );
+		return heads[slot( key )] - 1;
+	}
+
+	private int slot( long key ) {
+		int mask = keys.length - 1;
+		int i = mix( (int) key ^ (int) (key >>> 32) ) & mask;
+		while ( heads[i] != 0 && keys[i] != key )
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldHeads = heads;
+		keys = new long[ oldKeys.length * 2 ];
+		heads = new int[ oldKeys.length * 2 ];
+		for ( int i = 0; i < oldKeys.length; i++ ) {
+			if ( oldHeads[i] != 0 ) {
+				int j = slot( oldKeys[i] );
+				keys[j] = oldKeys[i];
+				heads[j] = oldHeads[i];
+			}
+		}
+	}
+
+	private boolean drop( String key ) {
+		int[] range = games.remove( key );
+		if ( range == null )
+			return false;
+		for ( int d = range[0]; d < range[0] + range[1]; d++ ) {
+			if ( clues[d] != null ) {
+				clues[d] = null;
+				--live;
+			}
+		}
+		return true;
+	}
+
+	// renumber the live clues and rebuild the bands without removed ones
+	private void rebuild() {
+		int[] map = new int[ count ];
+		int n = 0;
+		for ( int d = 0; d < count; d++ ) {
+			map[d] = n;
+			if ( clues[d] == null )
+				continue;
+			clues[n] = clues[d];
+			System.arraycopy( signatures, d * HASHES, signatures, n * HASHES,
+				HASHES );
+			++n;
+		}
+		Arrays.fill( clues, n, count, null );
+		for ( Map.Entry<String, int[]> e : games.entrySet() ) {
+			int[] range = e.getValue();
+			range[0] = range[1] == 0 ? 0 : map[range[0]];
+		}
+		count = n;
+		keys = new long[ 256 ];
+		heads = new int[ 256 ];
+		used = 0;
+		for ( int d = 0; d < count; d++ )
+			link( d );
+	}
+
+	private static int find( int[] parent, int d ) {
+		while ( parent[d] != d ) {
+			parent[d] = parent[parent[d]];
+			d = parent[d];
+		}
+		return d;
+	}
+
+	// the share of places where two signatures agree
+	private static double agreement( int[] a, int ao, int[] b, int bo ) {
+		int same = 0;
+		for ( int i = 0; i < HASHES; i++ ) {
+			if ( a[ao + i] == b[bo + i] )
+				++same;
+		}
+		return (double) same / HASHES;
+	}
+
+	private static long bandKey( int b, int[] sig, int offset ) {
+		int h = b;
+		for ( int i = 0; i < ROWS; i++ )
+			h = h * 0x01000193 ^ sig[offset + b * ROWS + i];
+		return ((long) b << 32) | (mix( h ) & 0xffffffffL);
+	}
+
+	// the MinHash signature of an answer's pieces; null if it has no words
+	private static int[] signature( String answer ) {
+		List<String> words = ClueIndex.tokenize( answer );
+		if ( words.isEmpty() )
+			return null;
+		StringBuilder sb = new StringBuilder();
+		for ( String w : words ) {
+			if ( sb.length() > 0 )
+				sb.append( ' ' );
+			sb.append( w );
+		}
+		int[] sig = new int[ HASHES ];
+		Arrays.fill( sig, Integer.MAX_VALUE );
+		int pieces = Math.max( 1, sb.length() - SHINGLE + 1 );
+		for ( int p = 0; p < pieces; p++ ) {
+			int x = 0;
+			for ( int i = p; i < Math.min( sb.length(), p + SHINGLE ); i++ )
+				x = x * 31 + sb.charAt( i );
+			for ( int i = 0; i < HASHES; i++ ) {
+				int h = mix( x * A[i] + C[i] );
+				if ( h < sig[i] )
+					sig[i] = h;
+			}
+		}
+		return sig;
+	}
+
+	// the MurmurHash3 finalizer
+	private static int mix( int h ) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+}
@@ -1,135 +1,166 @@
 package org.garion.games.jeopardy.util;
 
+import java.io.IOException;
 import java.io.InputStream;
-import gnu.io.CommPortIdentifier; 
-import gnu.io.SerialPort;
-import gnu.io.SerialPortEvent; 
-import gnu.io.SerialPortEventListener; 
-import java.util.Enumeration;
-
-import javax.swing.SwingUtilities;
-
-public class ExternalPlayerReader implements Runnable, SerialPortEventListener {
-
-		SerialPort serialPort;
-	        /** The port we're normally going to use. */
-		private static final String PORT_NAMES[] = { 
-				"/dev/tty.usbserial-A9007UX1", // Mac OS X
-				"/dev/tty.usbserial-A700fkGp",
-				"/dev/tty.usbmodem411",
-				"/dev/ttyUSB0", // Linux
-				"COM3", // Windows
-				};
-		/** Buffered input stream from the port */
-		private InputStream input;
-
-		/** Milliseconds to block while waiting for port open */
-		private static final int TIME_OUT = 2000;
-		/** Default bits per second for COM port. */
-		private static final int DATA_RATE = 9600;
-
-		private final ExternalPlayerController controller;
-		public ExternalPlayerReader(ExternalPlayerController controller) {
-			this.controller = controller;
+import java.io.OutputStream;
+
+public class ExternalPlayerReader implements Runnable {
+
+		/** Reused for every read from the box */
+		private final byte[] buffer = new byte[64];
+		/** Decoders for the current framed protocol and the old text lines */
+		private final BuzzFrameDecoder frames = new BuzzFrameDecoder();
+		private final BuzzerDecoder lines = new BuzzerDecoder();
+		private final Stamper stamper = new Stamper();
+
+		/** Bits per second of the old sketch, which prints text lines. */
+		private static final int LEGACY_DATA_RATE = 9600;
+
+		private final BuzzRing ring;
+		private final BuzzerSource source;
+		private final boolean legacy;
+		private volatile boolean closed;
+		private volatile int buttons = -1;
+
+		/**
+		 * Create a reader that stamps each decoded event with the time it was
+		 * read and hands it to the consumer of a ring, such as
+		 * {@link org.garion.games.jeopardy.ui.BoardPanel#listen(BuzzRing)}.
+		 * This thread is the ring's only producer.
+		 * @param ring
+		 */
+		public ExternalPlayerReader(BuzzRing ring) {
+			this(ring, false);
 		}
-		
-		private void init() {
-			CommPortIdentifier portId = null;
-			
-			@SuppressWarnings("unchecked")
-			Enumeration<CommPortIdentifier> portEnum = (Enumeration<CommPortIdentifier>)CommPortIdentifier.getPortIdentifiers();
-
-			// iterate through, looking for the port
-			while (portEnum.hasMoreElements()) {
-				CommPortIdentifier currPortId = (CommPortIdentifier) portEnum.nextElement();
-				for (String portName : PORT_NAMES) {
-					if (currPortId.getName().equals(portName)) {
-						portId = currPortId;
-						break;
-					}
-				}
-			}
 
-			if (portId == null) {
-				System.out.println("Could not find COM port, options were:");
-				while(portEnum.hasMoreElements()) {
-				  System.out.println(portEnum.nextElement());
-				}
-				return;
-			}
+		/**
+		 * Create a reader for either protocol on the usual serial ports
+		 * @param ring
+		 * @param legacy true for a box running the old sketch, which prints
+		 * only the winner at 9600 baud; false for {@link BuzzFrameDecoder}
+		 * frames at 115200
+		 */
+		public ExternalPlayerReader(BuzzRing ring, boolean legacy) {
+			this(ring, new SerialBuzzerSource(legacy ? LEGACY_DATA_RATE
+					: BuzzFrameDecoder.BAUD), legacy);
+		}
 
-			try {
-				// open serial port, and use class name for the appName.
-				serialPort = (SerialPort) portId.open(this.getClass().getName(),
-						TIME_OUT);
-
-				// set port parameters
-				serialPort.setSerialPortParams(DATA_RATE,
-						SerialPort.DATABITS_8,
-						SerialPort.STOPBITS_1,
-						SerialPort.PARITY_NONE);
-
-				// open the streams
-				input = serialPort.getInputStream();
-
-				// add event listeners
-				serialPort.addEventListener(this);
-				serialPort.notifyOnDataAvailable(true);
-			} catch (Exception e) {
-				System.err.println(e.toString());
-			}
+		/**
+		 * Create a reader of any source, such as a {@link BuzzerSimulator}
+		 * @param ring
+		 * @param source where the bytes come from; the reader opens it
+		 * @param legacy whether the source sends the old text lines
+		 */
+		public ExternalPlayerReader(BuzzRing ring, BuzzerSource source,
+				boolean legacy) {
+			this.ring = ring;
+			this.source = source;
+			this.legacy = legacy;
 		}
 
 		/**
 		 * This should be called when you stop using the port.
 		 * This will prevent port locking on platforms like Linux.
 		 */
-		public synchronized void close() {
-			if (serialPort != null) {
-				serialPort.removeEventListener();
-				serialPort.close();
+		public void close() {
+			closed = true;
+			source.close();
+		}
+
+		/**
+		 * Ask the box to reset, as its reset switch does. Only boxes speaking
+		 * the framed protocol listen; the box confirms with a reset frame.
+		 * @return false if the port is not open or is the old protocol
+		 */
+		public synchronized boolean requestReset() {
+			OutputStream output = source.getOutputStream();
+			if (output == null || legacy)
+				return false;
+			try {
+				output.write(BuzzFrameDecoder.RESET_REQUEST);
+				output.flush();
+				return true;
+			} catch (IOException e) {
+				System.err.println(e.toString());
+				return false;
 			}
 		}
 
 		/**
-		 * Handle an event on the serial port. Read the data and print it.
+		 * Read this from another thread only after the reader has stopped.
+		 * @return the number of frames that never arrived intact, as far as
+		 * the framed protocol can tell
 		 */
-		public synchronized void serialEvent(SerialPortEvent oEvent) {
-			if (oEvent.getEventType() == SerialPortEvent.DATA_AVAILABLE) {
-				try {
-					int available = input.available();
-					final byte chunk[] = new byte[available];
-					input.read(chunk, 0, available);
-
-					// Displayed results are codepage dependent
-					final String result = new String(chunk);
-					System.out.print(result);
-					SwingUtilities.invokeLater(new Runnable() {
-						@Override
-						public void run() {
-							
-							try { 
-								int r = Integer.parseInt(result);
-								if(r == -1)
-									controller.resetPlayer();
-								else
-									controller.signalPlayer("Player " + (r+1));
-							} catch (Throwable t) {
-								// there's nothing here we can do. swallow it.
-							}
-						}
-					});
-					
-				} catch (Exception e) {
-					System.err.println(e.toString());
-				}
+		public long getLost() {
+			return frames.getLost();
+		}
+
+		/**
+		 * @return the number of buttons the box reported in its hello frame,
+		 * or -1 until it has said hello (the old protocol never does)
+		 */
+		public int getButtons() {
+			return buttons;
+		}
+
+		/** Puts decoded events into the ring with the time of their read, and
+		 * the box's time if the protocol carries it */
+		private final class Stamper implements BuzzerDecoder.Listener,
+				BuzzFrameDecoder.Listener {
+
+			long now;
+
+			public void reset() {
+				ring.offer(BuzzRing.RESET, now, BuzzRing.NO_TIME);
+			}
+
+			public void pressed(int player) {
+				ring.offer(player, now, BuzzRing.NO_TIME);
+			}
+
+			public void hello(int players, long micros) {
+				buttons = players;
+			}
+
+			public void reset(long micros) {
+				ring.offer(BuzzRing.RESET, now, micros);
+			}
+
+			public void pressed(int player, int rank, long micros) {
+				// the ring keeps presses in the box's order, so the rank
+				// is implied
+				ring.offer(player, now, micros);
 			}
-			// Ignore all the other eventTypes, but you should consider the other ones.
 		}
 
+		/**
+		 * Open the source, then read it until it is closed: stamp each read,
+		 * decode whole frames and queue them.
+		 */
 		@Override
 		public void run() {
-			init();
+			try {
+				source.open();
+				InputStream input = source.getInputStream();
+				int n;
+				// RXTX returns 0 when its receive timeout passes with no
+				// data; only -1 means the stream has ended
+				while (!closed
+						&& (n = input.read(buffer, 0, buffer.length)) >= 0) {
+					if (n == 0)
+						continue;
+					stamper.now = System.nanoTime();
+					if (legacy)
+						lines.decode(buffer, 0, n, stamper);
+					else
+						frames.decode(buffer, 0, n, stamper);
+				}
+			} catch (IOException e) {
+				if (!closed)
+					System.err.println(e.toString());
+			} finally {
+				source.close();
+			}
 		}
 	
 }
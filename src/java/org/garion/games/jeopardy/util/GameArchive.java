@@ -0,0 +1,524 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.garion.games.jeopardy.*;
+
+/**
+ * Compressed archive of many games. Each game is stored as separately
+ * deflated blocks, one for its heading (title, subject, final jeopardy and
+ * round names) and one per category, and a central index at the end of the
+ * file lists every block. A single game, or a single category of it, can be
+ * inflated without touching the rest of the archive.
+ *
+ * <pre>
+ * header  magic "JGA\0", version, game count, index offset, index length
+ * blocks  deflated game headings and categories
+ * index   per game: title, subject, round count, category count per
+ *         round, then heading block and one block per category
+ *         (offset, compressed length, inflated length)
+ * </pre>
+ *
+ * Numbers are big-endian ints and strings are a byte length (-1 for
+ * {@code null}) followed by UTF-8 text. A missing round has a category count
+ * of -1 and a missing category a block offset of -1. Archives are limited to
+ * 2 GB.
+ *
+ * @author martin@mbs3.org
+ */
+public final class GameArchive implements Closeable {
+
+	/** File signature */
+	static final byte[] MAGIC = { 'J', 'G', 'A', 0 };
+	/** Current archive version */
+	static final int VERSION = 1;
+
+	private static final int HEADER = 20;
+	private static final int ABSENT = -1;
+	/** Deflate cannot expand data more than about 1032 times */
+	private static final int MAX_RATIO = 1032;
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	/** Index entry of one game */
+	private static final class Item {
+
+		String title, subject;
+		int[] categories;
+		int[] head;
+		int[][] blocks;
+	}
+
+	private final RandomAccessFile file;
+	private final ByteBuffer data;
+	private final Item[] items;
+
+	private GameArchive( RandomAccessFile file, ByteBuffer data )
+		throws IOException {
+		this.file = file;
+		this.data = data;
+		try {
+			if ( data.limit() < HEADER || !isMagic( data ) )
+				throw new IOException( "Not a game archive" );
+			int version = data.getInt( 4 );
+			if ( version != VERSION )
+				throw new IOException( "Unsupported game archive version "
+					+ version );
+			int count = data.getInt( 8 );
+			int offset = data.getInt( 12 );
+			int length = data.getInt( 16 );
+			if ( count < 0 || offset < HEADER || length < 0
+				|| offset > data.limit() - length )
+				throw new IOException( "Truncated game archive" );
+			ByteBuffer index = slice( offset, length );
+			items = new Item[ count ];
+			for ( int i = 0; i < count; i++ )
+				items[i] = readItem( index );
+		} catch ( BufferUnderflowException bue ) {
+			throw new IOException( "Corrupt game archive index", bue );
+		}
+	}
+
+	/**
+	 * Open an archive file. Only the index is read; games are inflated when
+	 * they are asked for.
+	 *
+	 * @param in
+	 *            the archive file
+	 * @return the opened archive
+	 * @throws IOException
+	 *             if the file can't be mapped or is not an archive
+	 */
+	public static GameArchive open( File in ) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile( in, "r" );
+		try {
+			long length = raf.length();
+			if ( length > Integer.MAX_VALUE )
+				throw new IOException( "Game archives are limited to 2 GB" );
+			return new GameArchive( raf, raf.getChannel().map(
+				FileChannel.MapMode.READ_ONLY, 0, length ) );
+		} catch ( IOException ioe ) {
+			raf.close();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Open an archive already read into memory
+	 *
+	 * @param data
+	 *            the archive contents
+	 * @return the opened archive
+	 * @throws IOException
+	 *             if the data is not an archive
+	 */
+	static GameArchive open( byte[] data ) throws IOException {
+		return new GameArchive( null, ByteBuffer.wrap( data ) );
+	}
+
+	/**
+	 * Write an archive file
+	 *
+	 * @param games
+	 *            the games to store, in order
+	 * @param out
+	 *            the archive file
+	 * @throws IOException
+	 *             if an error occurs while writing
+	 */
+	public static void write( final Collection<Game> games, File out )
+		throws IOException {
+		BackgroundSaver.write( out, new BackgroundSaver.Content() {
+
+			public void write( OutputStream os ) throws IOException {
+				writeArchive( games, os );
+			}
+		} );
+	}
+
+	private static void writeArchive( Collection<Game> games, OutputStream os )
+		throws IOException {
+		ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+		ByteArrayOutputStream index = new ByteArrayOutputStream();
+		DataOutputStream ix = new DataOutputStream( index );
+		Deflater deflater = new Deflater( Deflater.BEST_COMPRESSION );
+		try {
+			for ( Game g : games ) {
+				Round[] rs = g.rounds == null ? new Round[ 0 ] : g.rounds;
+				writeString( ix, g.title );
+				writeString( ix, g.subject );
+				ix.writeInt( rs.length );
+				for ( Round r : rs )
+					ix.writeInt( r == null ? ABSENT : length( r.categories ) );
+				writeBlock( ix, blocks, deflater, heading( g ) );
+				for ( Round r : rs ) {
+					if ( r == null || r.categories == null )
+						continue;
+					for ( Category c : r.categories ) {
+						if ( c == null ) {
+							ix.writeInt( ABSENT );
+							ix.writeInt( 0 );
+							ix.writeInt( 0 );
+						} else
+							writeBlock( ix, blocks, deflater, category( c ) );
+					}
+				}
+			}
+		} finally {
+			deflater.end();
+		}
+		ix.flush();
+		if ( (long) HEADER + blocks.size() + index.size() > Integer.MAX_VALUE )
+			throw new IOException( "Game archives are limited to 2 GB" );
+		DataOutputStream d = new DataOutputStream( new BufferedOutputStream(
+			os ) );
+		d.write( MAGIC );
+		d.writeInt( VERSION );
+		d.writeInt( games.size() );
+		d.writeInt( HEADER + blocks.size() );
+		d.writeInt( index.size() );
+		blocks.writeTo( d );
+		index.writeTo( d );
+		d.flush();
+	}
+
+	/**
+	 * Check for the archive signature
+	 *
+	 * @param head
+	 *            the first bytes of a file
+	 * @param n
+	 *            the number of valid bytes in {@code head}
+	 * @return whether the bytes start a game archive
+	 */
+	static boolean isMagic( byte[] head, int n ) {
+		return n >= MAGIC.length && isMagic( ByteBuffer.wrap( head ) );
+	}
+
+	private static boolean isMagic( ByteBuffer b ) {
+		for ( int i = 0; i < MAGIC.length; i++ ) {
+			if ( b.get( i ) != MAGIC[i] )
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Get the number of games in the archive
+	 *
+	 * @return the game count
+	 */
+	public int size() {
+		return items.length;
+	}
+
+	/**
+	 * Get the title of a game without inflating it
+	 *
+	 * @param i
+	 *            the game index
+	 * @return the title
+	 */
+	public String getTitle( int i ) {
+		return item( i ).title;
+	}
+
+	/**
+	 * Get the subject of a game without inflating it
+	 *
+	 * @param i
+	 *            the game index
+	 * @return the subject
+	 */
+	public String getSubject( int i ) {
+		return item( i ).subject;
+	}
+
+	/**
+	 * Inflate one game
+	 *
+	 * @param i
+	 *            the game index
+	 * @return the game, with sizes verified
+	 * @throws IOException
+	 *             if the game's blocks are corrupt
+	 */
+	public Game getGame( int i ) throws IOException {
+		Item it = item( i );
+		try {
+			ByteBuffer h = inflate( it.head );
+			Game g = new Game( readString( h ), readString( h ) );
+			if ( h.get() != 0 ) {
+				String name = readString( h );
+				g.setFinalRound( new Final( name, readEntry( h ) ) );
+			}
+			int rounds = h.getInt();
+			g.rounds = new Round[ rounds ];
+			int block = 0;
+			for ( int r = 0; r < rounds; r++ ) {
+				boolean present = h.get() != 0;
+				String name = present ? readString( h ) : null;
+				int cats = it.categories[r];
+				if ( !present || cats == ABSENT )
+					continue;
+				Round round = new Round( name );
+				round.categories = new Category[ cats ];
+				for ( int c = 0; c < cats; c++ )
+					round.categories[c] = readCategory( it.blocks[block++] );
+				g.rounds[r] = round;
+			}
+			g.verifySize();
+			return g;
+		} catch ( BufferUnderflowException bue ) {
+			throw new IOException( "Corrupt game in archive at game " + i, bue );
+		}
+	}
+
+	/**
+	 * Inflate a single category of a game
+	 *
+	 * @param game
+	 *            the game index
+	 * @param round
+	 *            the round index
+	 * @param category
+	 *            the category index within the round
+	 * @return the category, or {@code null} if the game has none there
+	 * @throws IOException
+	 *             if the category's block is corrupt
+	 */
+	public Category getCategory( int game, int round, int category )
+		throws IOException {
+		Item it = item( game );
+		if ( round < 0 || round >= it.categories.length
+			|| it.categories[round] == ABSENT || category < 0
+			|| category >= it.categories[round] )
+			return null;
+		int block = category;
+		for ( int r = 0; r < round; r++ )
+			block += Math.max( 0, it.categories[r] );
+		try {
+			Category c = readCategory( it.blocks[block] );
+			if ( c != null )
+				c.verifySize();
+			return c;
+		} catch ( BufferUnderflowException bue ) {
+			throw new IOException( "Corrupt category in archive at game "
+				+ game, bue );
+		}
+	}
+
+	/**
+	 * Close the archive file
+	 */
+	public void close() throws IOException {
+		if ( file != null )
+			file.close();
+	}
+
+	private Item item( int i ) {
+		if ( i < 0 || i >= items.length )
+			throw new IndexOutOfBoundsException( "Index: " + i + ", Size: "
+				+ items.length );
+		return items[i];
+	}
+
+	private Item readItem( ByteBuffer b ) throws IOException {
+		Item it = new Item();
+		it.title = readString( b );
+		it.subject = readString( b );
+		int rounds = b.getInt();
+		if ( rounds < 0 || rounds > b.remaining() / 4 )
+			throw new IOException( "Corrupt game archive index" );
+		it.categories = new int[ rounds ];
+		int blocks = 0;
+		for ( int r = 0; r < rounds; r++ ) {
+			it.categories[r] = b.getInt();
+			if ( it.categories[r] < ABSENT )
+				throw new IOException( "Corrupt game archive index" );
+			blocks += Math.max( 0, it.categories[r] );
+		}
+		if ( blocks > b.remaining() / 12 )
+			throw new IOException( "Corrupt game archive index" );
+		it.head = readBlock( b );
+		it.blocks = new int[ blocks ][];
+		for ( int i = 0; i < blocks; i++ )
+			it.blocks[i] = readBlock( b );
+		return it;
+	}
+
+	private int[] readBlock( ByteBuffer b ) throws IOException {
+		int[] block = { b.getInt(), b.getInt(), b.getInt() };
+		boolean bad = block[0] < HEADER || block[1] < 0 || block[2] < 0
+			|| block[0] > data.limit() - block[1]
+			|| block[2] > (long) block[1] * MAX_RATIO + 64;
+		if ( block[0] != ABSENT && bad )
+			throw new IOException( "Corrupt game archive index" );
+		return block;
+	}
+
+	private Category readCategory( int[] block ) throws IOException {
+		if ( block[0] == ABSENT )
+			return null;
+		ByteBuffer b = inflate( block );
+		Category c = new Category( readString( b ) );
+		int n = b.getInt();
+		if ( n < 0 || n > b.remaining() )
+			throw new IOException( "Corrupt category in archive" );
+		c.values = new String[ n ];
+		c.entries = new Entry[ n ];
+		for ( int i = 0; i < n; i++ ) {
+			c.values[i] = readString( b );
+			c.entries[i] = readEntry( b );
+		}
+		return c;
+	}
+
+	private ByteBuffer inflate( int[] block ) throws IOException {
+		ByteBuffer in = slice( block[0], block[1] );
+		byte[] packed = new byte[ block[1] ];
+		in.get( packed );
+		byte[] out = new byte[ block[2] ];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput( packed );
+			int n = 0;
+			while ( n < out.length && !inflater.finished() ) {
+				int r = inflater.inflate( out, n, out.length - n );
+				if ( r == 0 && (inflater.needsInput() || inflater.needsDictionary()) )
+					break;
+				n += r;
+			}
+			if ( n != out.length )
+				throw new IOException( "Truncated block in game archive" );
+		} catch ( DataFormatException dfe ) {
+			throw new IOException( "Corrupt block in game archive", dfe );
+		} finally {
+			inflater.end();
+		}
+		return ByteBuffer.wrap( out );
+	}
+
+	private ByteBuffer slice( int offset, int length ) {
+		ByteBuffer d = data.duplicate();
+		d.position( offset );
+		d.limit( offset + length );
+		return d.slice();
+	}
+
+	private static byte[] heading( Game g ) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		DataOutputStream d = new DataOutputStream( buf );
+		writeString( d, g.title );
+		writeString( d, g.subject );
+		d.writeBoolean( g.f != null );
+		if ( g.f != null ) {
+			writeString( d, g.f.name );
+			writeEntry( d, g.f.entry );
+		}
+		Round[] rs = g.rounds == null ? new Round[ 0 ] : g.rounds;
+		d.writeInt( rs.length );
+		for ( Round r : rs ) {
+			d.writeBoolean( r != null );
+			if ( r != null )
+				writeString( d, r.name );
+		}
+		d.flush();
+		return buf.toByteArray();
+	}
+
+	private static byte[] category( Category c ) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		DataOutputStream d = new DataOutputStream( buf );
+		int n = Math.max( length( c.values ), length( c.entries ) );
+		writeString( d, c.name );
+		d.writeInt( n );
+		for ( int i = 0; i < n; i++ ) {
+			writeString( d, i < length( c.values ) ? c.values[i] : null );
+			writeEntry( d, i < length( c.entries ) ? c.entries[i] : null );
+		}
+		d.flush();
+		return buf.toByteArray();
+	}
+
+	private static void writeBlock( DataOutputStream index,
+		ByteArrayOutputStream blocks, Deflater deflater, byte[] raw )
+		throws IOException {
+		deflater.reset();
+		deflater.setInput( raw );
+		deflater.finish();
+		int offset = HEADER + blocks.size();
+		byte[] buf = new byte[ 4096 ];
+		while ( !deflater.finished() ) {
+			int n = deflater.deflate( buf );
+			blocks.write( buf, 0, n );
+		}
+		index.writeInt( offset );
+		index.writeInt( HEADER + blocks.size() - offset );
+		index.writeInt( raw.length );
+	}
+
+	private static void writeEntry( DataOutputStream d, Entry e )
+		throws IOException {
+		d.writeBoolean( e != null );
+		if ( e != null ) {
+			writeString( d, e.getAnswer() );
+			writeString( d, e.getQuestion() );
+		}
+	}
+
+	private static Entry readEntry( ByteBuffer b ) {
+		if ( b.get() == 0 )
+			return null;
+		return new Entry( readString( b ), readString( b ) );
+	}
+
+	private static void writeString( DataOutputStream d, String s )
+		throws IOException {
+		if ( s == null ) {
+			d.writeInt( -1 );
+		} else {
+			byte[] t = s.getBytes( UTF8 );
+			d.writeInt( t.length );
+			d.write( t );
+		}
+	}
+
+	private static String readString( ByteBuffer b ) {
+		int n = b.getInt();
+		if ( n < 0 )
+			return null;
+		if ( n > b.remaining() )
+			throw new BufferUnderflowException();
+		byte[] t = new byte[ n ];
+		b.get( t );
+		return new String( t, UTF8 );
+	}
+
+	private static int length( Object[] a ) {
+		return a == null ? 0 : a.length;
+	}
+
+}
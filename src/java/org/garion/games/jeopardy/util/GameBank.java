@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Iterator;
+import org.garion.games.jeopardy.Game;
+
+/**
+ * A memory-mapped library of games. The bank file is a small index followed
+ * by one binary game record per game:
+ *
+ * <pre>
+ * header  magic "JGK\0", version, game count
+ * index   per game: record offset, record length
+ * records binary games (see {@link GameBinary})
+ * </pre>
+ *
+ * Opening a bank only maps the file and reads the header, so it costs the
+ * same for any bank size. {@link #getGame(int)} builds the rounds and
+ * categories of one game from its record, and the answer and question text
+ * of each entry is decoded from the mapped file the first time it is asked
+ * for. Bank files are limited to 2 GB.
+ *
+ * @author martin@mbs3.org
+ */
+public final class GameBank implements Closeable {
+
+	/** File signature */
+	static final byte[] MAGIC = { 'J', 'G', 'K', 0 };
+	/** Current bank version */
+	static final int VERSION = 1;
+
+	private static final int HEADER = 12;
+	private static final int INDEX_ENTRY = 8;
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer map;
+	private final int size;
+
+	private GameBank( RandomAccessFile file, MappedByteBuffer map, int size ) {
+		this.file = file;
+		this.map = map;
+		this.size = size;
+	}
+
+	/**
+	 * Open a bank file
+	 *
+	 * @param in
+	 *            the bank file
+	 * @return the opened bank
+	 * @throws IOException
+	 *             if the file can't be mapped or is not a bank
+	 */
+	public static GameBank open( File in ) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile( in, "r" );
+		try {
+			long length = raf.length();
+			if ( length > Integer.MAX_VALUE )
+				throw new IOException( "Bank files are limited to 2 GB" );
+			MappedByteBuffer map = raf.getChannel().map(
+				FileChannel.MapMode.READ_ONLY, 0, length );
+			if ( length < HEADER || !isMagic( map ) )
+				throw new IOException( "Not a game bank file" );
+			int version = map.getInt( 4 );
+			if ( version != VERSION )
+				throw new IOException( "Unsupported game bank version "
+					+ version );
+			int size = map.getInt( 8 );
+			if ( size < 0 || HEADER + (long) size * INDEX_ENTRY > length )
+				throw new IOException( "Truncated game bank file" );
+			return new GameBank( raf, map, size );
+		} catch ( IOException ioe ) {
+			raf.close();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Write a bank file
+	 *
+	 * @param games
+	 *            the games to store, in order
+	 * @param out
+	 *            the bank file
+	 * @throws IOException
+	 *             if an error occurs while writing
+	 */
+	public static void write( Collection<Game> games, File out )
+		throws IOException {
+		int count = games.size();
+		int[] offsets = new int[ count ];
+		int[] lengths = new int[ count ];
+		RandomAccessFile raf = new RandomAccessFile( out, "rw" );
+		try {
+			raf.setLength( 0 );
+			long pos = HEADER + (long) count * INDEX_ENTRY;
+			raf.seek( pos );
+			ByteArrayOutputStream buf = new ByteArrayOutputStream();
+			Iterator<Game> it = games.iterator();
+			for ( int i = 0; i < count; i++ ) {
+				buf.reset();
+				GameBinary.write( it.next(), buf );
+				if ( pos + buf.size() > Integer.MAX_VALUE )
+					throw new IOException( "Bank files are limited to 2 GB" );
+				raf.write( buf.toByteArray() );
+				offsets[i] = (int) pos;
+				lengths[i] = buf.size();
+				pos += buf.size();
+			}
+			ByteArrayOutputStream head = new ByteArrayOutputStream();
+			DataOutputStream d = new DataOutputStream( head );
+			d.write( MAGIC );
+			d.writeInt( VERSION );
+			d.writeInt( count );
+			for ( int i = 0; i < count; i++ ) {
+				d.writeInt( offsets[i] );
+				d.writeInt( lengths[i] );
+			}
+			raf.seek( 0 );
+			raf.write( head.toByteArray() );
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Check for the bank signature
+	 *
+	 * @param head
+	 *            the first bytes of a file
+	 * @param n
+	 *            the number of valid bytes in {@code head}
+	 * @return whether the bytes start a game bank
+	 */
+	static boolean isMagic( byte[] head, int n ) {
+		return n >= MAGIC.length && isMagic( ByteBuffer.wrap( head ) );
+	}
+
+	private static boolean isMagic( ByteBuffer b ) {
+		for ( int i = 0; i < MAGIC.length; i++ ) {
+			if ( b.get( i ) != MAGIC[i] )
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Get the number of games in the bank
+	 *
+	 * @return the game count
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get a game from the bank. Entry text is decoded on first access.
+	 *
+	 * @param i
+	 *            the game index
+	 * @return the game
+	 * @throws IOException
+	 *             if the game record is corrupt
+	 */
+	public Game getGame( int i ) throws IOException {
+		return GameBinary.read( record( i ), true );
+	}
+
+	/**
+	 * Get the title of a game without building it
+	 *
+	 * @param i
+	 *            the game index
+	 * @return the title
+	 * @throws IOException
+	 *             if the game record is corrupt
+	 */
+	public String getTitle( int i ) throws IOException {
+		return GameBinary.readHeading( record( i ) )[0];
+	}
+
+	/**
+	 * Get the subject of a game without building it
+	 *
+	 * @param i
+	 *            the game index
+	 * @return the subject
+	 * @throws IOException
+	 *             if the game record is corrupt
+	 */
+	public String getSubject( int i ) throws IOException {
+		return GameBinary.readHeading( record( i ) )[1];
+	}
+
+	private ByteBuffer record( int i ) throws IOException {
+		if ( i < 0 || i >= size )
+			throw new IndexOutOfBoundsException( "Index: " + i + ", Size: "
+				+ size );
+		int p = HEADER + i * INDEX_ENTRY;
+		int offset = map.getInt( p );
+		int length = map.getInt( p + 4 );
+		if ( offset < 0 || length < 0 || offset > map.limit() - length )
+			throw new IOException( "Corrupt game bank index at game " + i );
+		ByteBuffer d = map.duplicate();
+		d.position( offset );
+		d.limit( offset + length );
+		return d.slice();
+	}
+
+	/**
+	 * Close the bank file. The mapping itself is released when it is garbage
+	 * collected, so games already read stay usable.
+	 */
+	public void close() throws IOException {
+		file.close();
+	}
+
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.garion.games.jeopardy.*;
+
+/**
+ * Compact binary game format. All numbers are big-endian 32-bit ints and
+ * every string is an index into a shared, de-duplicated string table.
+ *
+ * <pre>
+ * header      magic "JGB\0", version, string count, round count,
+ *             category count, slot count
+ * game        title, subject, final name, final answer, final question
+ * rounds      per round: name, first category, category count
+ * categories  per category: name, first slot, slot count
+ * slots       per slot: value, answer, question
+ * strings     byte offsets (count + 1), then the UTF-8 text
+ * </pre>
+ *
+ * A string index of {@link #NONE} is a {@code null} string, and a count or
+ * answer index of {@link #ABSENT} marks a {@code null} round, category or
+ * entry.
+ *
+ * @author martin@mbs3.org
+ */
+final class GameBinary {
+
+	/** File signature */
+	static final byte[] MAGIC = { 'J', 'G', 'B', 0 };
+	/** Current format version */
+	static final int VERSION = 1;
+
+	private static final int NONE = -1;
+	private static final int ABSENT = -2;
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	private GameBinary() {}
+
+	/**
+	 * Check for the binary signature
+	 *
+	 * @param head
+	 *            the first bytes of a file
+	 * @param n
+	 *            the number of valid bytes in {@code head}
+	 * @return whether the bytes start a binary game
+	 */
+	static boolean isMagic( byte[] head, int n ) {
+		if ( n < MAGIC.length )
+			return false;
+		for ( int i = 0; i < MAGIC.length; i++ ) {
+			if ( head[i] != MAGIC[i] )
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Write a game
+	 *
+	 * @param g
+	 *            the game
+	 * @param out
+	 *            the stream (not closed)
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	static void write( Game g, OutputStream out ) throws IOException {
+		Strings strings = new Strings();
+		int title = strings.index( g.title );
+		int subject = strings.index( g.subject );
+		List<int[]> rounds = new ArrayList<int[]>();
+		List<int[]> cats = new ArrayList<int[]>();
+		List<int[]> slots = new ArrayList<int[]>();
+
+		Round[] rs = g.rounds == null ? new Round[ 0 ] : g.rounds;
+		for ( Round r : rs ) {
+			if ( r == null ) {
+				rounds.add( new int[] { NONE, cats.size(), ABSENT } );
+				continue;
+			}
+			Category[] cs = r.categories == null ? new Category[ 0 ]
+				: r.categories;
+			rounds.add( new int[] { strings.index( r.name ), cats.size(),
+				cs.length } );
+			for ( Category c : cs ) {
+				if ( c == null ) {
+					cats.add( new int[] { NONE, slots.size(), ABSENT } );
+					continue;
+				}
+				int n = Math.max( length( c.values ), length( c.entries ) );
+				cats.add( new int[] { strings.index( c.name ), slots.size(), n } );
+				for ( int i = 0; i < n; i++ ) {
+					String v = i < length( c.values ) ? c.values[i] : null;
+					Entry e = i < length( c.entries ) ? c.entries[i] : null;
+					slots.add( entry( strings, strings.index( v ), e ) );
+				}
+			}
+		}
+		Final f = g.f;
+		int[] fin = f == null ? new int[] { ABSENT, ABSENT, ABSENT }
+			: entry( strings, strings.index( f.name ), f.entry );
+
+		DataOutputStream d = new DataOutputStream( new BufferedOutputStream(
+			out ) );
+		d.write( MAGIC );
+		d.writeInt( VERSION );
+		d.writeInt( strings.list.size() );
+		d.writeInt( rounds.size() );
+		d.writeInt( cats.size() );
+		d.writeInt( slots.size() );
+		d.writeInt( title );
+		d.writeInt( subject );
+		writeInts( d, fin );
+		for ( int[] r : rounds )
+			writeInts( d, r );
+		for ( int[] c : cats )
+			writeInts( d, c );
+		for ( int[] s : slots )
+			writeInts( d, s );
+		int offset = 0;
+		d.writeInt( offset );
+		for ( byte[] b : strings.list ) {
+			offset += b.length;
+			d.writeInt( offset );
+		}
+		for ( byte[] b : strings.list )
+			d.write( b );
+		d.flush();
+	}
+
+	/**
+	 * Read a game
+	 *
+	 * @param data
+	 *            the whole file contents
+	 * @return the game, with sizes verified
+	 * @throws IOException
+	 *             if the data is not a supported binary game
+	 */
+	static Game read( byte[] data ) throws IOException {
+		return read( ByteBuffer.wrap( data ), false );
+	}
+
+	/**
+	 * Read a game from a buffer holding one game record from position 0 to
+	 * its limit
+	 *
+	 * @param b
+	 *            the buffer
+	 * @param lazy
+	 *            whether entry text should stay in the buffer until it is
+	 *            first asked for
+	 * @return the game, with sizes verified
+	 * @throws IOException
+	 *             if the data is not a supported binary game
+	 */
+	static Game read( ByteBuffer b, boolean lazy ) throws IOException {
+		try {
+			Record rec = new Record( b );
+			Game g = new Game( rec.string( b.getInt( rec.game ) ), rec
+				.string( b.getInt( rec.game + 4 ) ) );
+			g.setFinalRound( readFinal( rec, rec.game + 8, lazy ) );
+			g.rounds = new Round[ rec.nRounds ];
+			for ( int ri = 0; ri < rec.nRounds; ri++ ) {
+				int p = rec.roundTable + ri * 12;
+				int count = b.getInt( p + 8 );
+				if ( count == ABSENT )
+					continue;
+				int first = b.getInt( p + 4 );
+				checkRange( first, count, rec.nCats );
+				Round r = new Round( rec.string( b.getInt( p ) ) );
+				r.categories = new Category[ count ];
+				for ( int ci = 0; ci < count; ci++ ) {
+					r.categories[ci] = readCategory( rec, rec.catTable
+						+ (first + ci) * 12, lazy );
+				}
+				g.rounds[ri] = r;
+			}
+			g.verifySize();
+			return g;
+		} catch ( BufferUnderflowException bue ) {
+			throw new IOException( "Truncated binary game file", bue );
+		} catch ( IndexOutOfBoundsException ioobe ) {
+			throw new IOException( "Corrupt binary game file", ioobe );
+		}
+	}
+
+	/**
+	 * Read only the title and subject of a game record
+	 *
+	 * @param b
+	 *            the buffer holding the record
+	 * @return the title and subject
+	 * @throws IOException
+	 *             if the data is not a supported binary game
+	 */
+	static String[] readHeading( ByteBuffer b ) throws IOException {
+		try {
+			Record rec = new Record( b );
+			return new String[] { rec.string( b.getInt( rec.game ) ),
+				rec.string( b.getInt( rec.game + 4 ) ) };
+		} catch ( IndexOutOfBoundsException ioobe ) {
+			throw new IOException( "Corrupt binary game file", ioobe );
+		}
+	}
+
+	private static Category readCategory( Record rec, int p, boolean lazy )
+		throws IOException {
+		ByteBuffer b = rec.b;
+		int count = b.getInt( p + 8 );
+		if ( count == ABSENT )
+			return null;
+		int first = b.getInt( p + 4 );
+		checkRange( first, count, rec.nSlots );
+		Category c = new Category( rec.string( b.getInt( p ) ) );
+		c.values = new String[ count ];
+		c.entries = new Entry[ count ];
+		for ( int i = 0; i < count; i++ ) {
+			int s = rec.slotTable + (first + i) * 12;
+			c.values[i] = rec.string( b.getInt( s ) );
+			c.entries[i] = readEntry( rec, s + 4, lazy );
+		}
+		return c;
+	}
+
+	private static Final readFinal( Record rec, int p, boolean lazy )
+		throws IOException {
+		int name = rec.b.getInt( p );
+		if ( name == ABSENT )
+			return null;
+		return new Final( rec.string( name ), readEntry( rec, p + 4, lazy ) );
+	}
+
+	private static Entry readEntry( Record rec, int p, boolean lazy )
+		throws IOException {
+		int a = rec.b.getInt( p );
+		if ( a == ABSENT )
+			return null;
+		int q = rec.b.getInt( p + 4 );
+		if ( lazy )
+			return new Entry( rec, rec.check( a ), rec.check( q ) );
+		return new Entry( rec.string( a ), rec.string( q ) );
+	}
+
+	// a table range must lie inside its table before anything is sized by it
+	private static void checkRange( int first, int count, int size )
+		throws IOException {
+		if ( count < 0 || first < 0 || first > size - count )
+			throw new IOException( "Corrupt binary game file" );
+	}
+
+	private static int[] entry( Strings strings, int first, Entry e ) {
+		if ( e == null )
+			return new int[] { first, ABSENT, ABSENT };
+		return new int[] { first, strings.index( e.getAnswer() ),
+			strings.index( e.getQuestion() ) };
+	}
+
+	private static int length( Object[] a ) {
+		return a == null ? 0 : a.length;
+	}
+
+	private static void writeInts( DataOutputStream d, int[] v )
+		throws IOException {
+		for ( int i : v )
+			d.writeInt( i );
+	}
+
+	/** Table positions and decoded strings of one game record */
+	private static final class Record implements Entry.Source {
+
+		final ByteBuffer b;
+		final int nRounds, nCats, nSlots;
+		final int game, roundTable, catTable, slotTable, stringTable, text;
+		final String[] strings;
+
+		Record( ByteBuffer b ) throws IOException {
+			this.b = b;
+			if ( b.limit() < 28 )
+				throw new IOException( "Truncated binary game file" );
+			for ( int i = 0; i < MAGIC.length; i++ ) {
+				if ( b.get( i ) != MAGIC[i] )
+					throw new IOException( "Not a binary game file" );
+			}
+			int version = b.getInt( 4 );
+			if ( version != VERSION )
+				throw new IOException( "Unsupported binary game version "
+					+ version );
+			int nStrings = b.getInt( 8 );
+			nRounds = b.getInt( 12 );
+			nCats = b.getInt( 16 );
+			nSlots = b.getInt( 20 );
+			game = 24;
+			// the tables must fit in the record before any is allocated
+			if ( nStrings < 0 || nRounds < 0 || nCats < 0 || nSlots < 0
+				|| game + 5 * 4 + 12L * nRounds + 12L * nCats + 12L * nSlots
+					+ 4L * nStrings + 4 > b.limit() )
+				throw new IOException( "Truncated binary game file" );
+			roundTable = game + 5 * 4;
+			catTable = roundTable + nRounds * 3 * 4;
+			slotTable = catTable + nCats * 3 * 4;
+			stringTable = slotTable + nSlots * 3 * 4;
+			text = stringTable + (nStrings + 1) * 4;
+			strings = new String[ nStrings ];
+			// check every string's bounds now, so that decoding entry text
+			// later, outside read, cannot fail
+			int last = 0;
+			for ( int i = 0; i <= nStrings; i++ ) {
+				int offset = b.getInt( stringTable + i * 4 );
+				if ( offset < last || offset > b.limit() - text )
+					throw new IOException( "Corrupt binary game file" );
+				last = offset;
+			}
+		}
+
+		// a string reference, checked before it is kept for later
+		int check( int i ) throws IOException {
+			if ( i != NONE && (i < 0 || i >= strings.length) )
+				throw new IOException( "Corrupt binary game file" );
+			return i;
+		}
+
+		public String text( int ref ) {
+			return string( ref );
+		}
+
+		// decodes on first use; racing readers decode the same value
+		String string( int i ) {
+			if ( i == NONE )
+				return null;
+			if ( i < 0 || i >= strings.length )
+				throw new IndexOutOfBoundsException( "string " + i );
+			String s = strings[i];
+			if ( s == null ) {
+				int start = b.getInt( stringTable + i * 4 );
+				int end = b.getInt( stringTable + i * 4 + 4 );
+				if ( start < 0 || end < start || text + end > b.limit() )
+					throw new IndexOutOfBoundsException( "string " + i );
+				if ( b.hasArray() ) {
+					s = new String( b.array(), b.arrayOffset() + text + start,
+						end - start, UTF8 );
+				} else {
+					ByteBuffer d = b.duplicate();
+					d.limit( text + end );
+					d.position( text + start );
+					s = UTF8.decode( d ).toString();
+				}
+				strings[i] = s;
+			}
+			return s;
+		}
+	}
+
+	/** De-duplicating string table builder */
+	private static final class Strings {
+
+		final List<byte[]> list = new ArrayList<byte[]>();
+		final Map<String, Integer> index = new HashMap<String, Integer>();
+
+		int index( String s ) {
+			if ( s == null )
+				return NONE;
+			Integer i = index.get( s );
+			if ( i == null ) {
+				i = list.size();
+				index.put( s, i );
+				list.add( s.getBytes( UTF8 ) );
+			}
+			return i;
+		}
+	}
+
+}
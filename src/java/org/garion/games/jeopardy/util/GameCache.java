@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.garion.games.jeopardy.*;
+
+/**
+ * Bounded cache of parsed games. Entries are keyed by canonical path and
+ * only reused while the file's size, modification time and SHA-1 content
+ * hash all still match. The least recently used games are evicted once
+ * either the entry limit or the estimated retained heap limit is passed.
+ * <p>
+ * The cached games are never handed out. Each hit returns a fresh deep copy,
+ * so callers can edit their game without affecting the cache or each other.
+ *
+ * @author martin@mbs3.org
+ */
+public final class GameCache {
+
+	/** A cached game and the file state it was parsed from */
+	private static final class Item {
+
+		final long size;
+		final long modified;
+		final byte[] hash;
+		final Game game;
+		final long weight;
+
+		Item( long size, long modified, byte[] hash, Game game ) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+			this.game = game;
+			this.weight = weigh( game );
+		}
+
+		boolean matches( long size, long modified, byte[] hash ) {
+			return this.size == size && this.modified == modified
+				&& Arrays.equals( this.hash, hash );
+		}
+	}
+
+	private final int maxEntries;
+	private final long maxBytes;
+	private final LinkedHashMap<String, Item> map = new LinkedHashMap<String, Item>(
+		16, 0.75f, true );
+	private long retained;
+	private long hits, misses, evictions;
+
+	/**
+	 * Create a cache
+	 *
+	 * @param maxEntries
+	 *            the most games to keep
+	 * @param maxBytes
+	 *            the most estimated heap to retain across all games
+	 */
+	public GameCache( int maxEntries, long maxBytes ) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Load a game, reusing the cached parse if the file is unchanged
+	 *
+	 * @param in
+	 *            the file
+	 * @return a private copy of the game
+	 * @throws IOException
+	 *             If an error occurs while reading or parsing the file
+	 * @throws UnsupportedFileTypeException
+	 *             whether the file type was not supported
+	 */
+	public Game load( File in ) throws IOException,
+		UnsupportedFileTypeException {
+		String key = in.getCanonicalPath();
+		long modified = in.lastModified();
+		byte[] data = Files.readAllBytes( in.toPath() );
+		byte[] hash = sha1( data );
+		synchronized ( this ) {
+			Item it = map.get( key );
+			if ( it != null && it.matches( data.length, modified, hash ) ) {
+				++hits;
+				return it.game.copy();
+			}
+			++misses;
+		}
+		Game g = IO.detectAndLoad( data );
+		Item it = new Item( data.length, modified, hash, g.copy() );
+		synchronized ( this ) {
+			Item old = map.remove( key );
+			if ( old != null )
+				retained -= old.weight;
+			if ( it.weight <= maxBytes ) {
+				map.put( key, it );
+				retained += it.weight;
+				trim();
+			}
+		}
+		return g;
+	}
+
+	/**
+	 * Drop a file from the cache
+	 *
+	 * @param in
+	 *            the file
+	 * @throws IOException
+	 *             if the canonical path can't be resolved
+	 */
+	public synchronized void invalidate( File in ) throws IOException {
+		Item old = map.remove( in.getCanonicalPath() );
+		if ( old != null )
+			retained -= old.weight;
+	}
+
+	/**
+	 * Drop every cached game. Counters are kept.
+	 */
+	public synchronized void clear() {
+		map.clear();
+		retained = 0;
+	}
+
+	/**
+	 * @return the number of loads served from the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of loads that had to parse the file
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of games evicted to stay within the limits
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return the number of cached games
+	 */
+	public synchronized int size() {
+		return map.size();
+	}
+
+	/**
+	 * @return the estimated heap retained by the cached games, in bytes
+	 */
+	public synchronized long getRetainedBytes() {
+		return retained;
+	}
+
+	// evict least recently used until within limits
+	private void trim() {
+		Iterator<Map.Entry<String, Item>> i = map.entrySet().iterator();
+		while ( (map.size() > maxEntries || retained > maxBytes) && i.hasNext() ) {
+			retained -= i.next().getValue().weight;
+			i.remove();
+			++evictions;
+		}
+	}
+
+	private static byte[] sha1( byte[] data ) {
+		try {
+			return MessageDigest.getInstance( "SHA-1" ).digest( data );
+		} catch ( NoSuchAlgorithmException nsae ) {
+			// every Java platform is required to provide SHA-1
+			throw new IllegalStateException( nsae );
+		}
+	}
+
+	// rough heap estimate: object headers plus two bytes per character
+	private static long weigh( Game g ) {
+		long w = 32 + weigh( g.title ) + weigh( g.subject );
+		if ( g.f != null )
+			w += 24 + weigh( g.f.name ) + weigh( g.f.entry );
+		if ( g.rounds == null )
+			return w;
+		for ( Round r : g.rounds ) {
+			if ( r == null )
+				continue;
+			w += 32 + weigh( r.name );
+			if ( r.categories == null )
+				continue;
+			for ( Category c : r.categories ) {
+				if ( c == null )
+					continue;
+				w += 48 + weigh( c.name );
+				if ( c.values != null ) {
+					for ( String v : c.values )
+						w += 8 + weigh( v );
+				}
+				if ( c.entries != null ) {
+					for ( Entry e : c.entries )
+						w += 8 + weigh( e );
+				}
+			}
+		}
+		return w;
+	}
+
+	private static long weigh( Entry e ) {
+		return e == null ? 0 : 32 + weigh( e.getAnswer() )
+			+ weigh( e.getQuestion() );
+	}
+
+	private static long weigh( String s ) {
+		return s == null ? 0 : 40 + 2L * s.length();
+	}
+
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import org.garion.games.jeopardy.*;
+
+/**
+ * Builds new games at random from a bank of existing ones.
+ * <p>
+ * The bank keeps every category of the games added to it, and every final
+ * jeopardy clue. Each clue gets a difficulty from 0 to 1 from where it sat
+ * in its game: by round, then by value within its category. A generated
+ * round takes whole categories from the matching part of the bank, so the
+ * second round is harder than the first, and within a category the clues
+ * are laid out from easiest to hardest.
+ * <p>
+ * Within a game, no two categories share a topic: a word of four letters or
+ * more in their names, unless it is common to many names in the bank (like
+ * "famous" or "words"). Within a season (see {@link #newSeason()}) no clue
+ * is used twice, counting reruns of the same answer in different games as
+ * one clue.
+ * <p>
+ * Categories are filed in buckets by difficulty and picked by random
+ * probing, so making a game takes the same few milliseconds however large
+ * the bank is. The same seed, bank and requests give the same games.
+ *
+ * @author martin@mbs3.org
+ */
+public final class GameGenerator {
+
+	private static final int BUCKETS = 20;
+	// random picks from one bucket before looking at the next one
+	private static final int PROBES = 32;
+	private static final int MIN_TOPIC = 4;
+	// a word in more than 1 in this many category names is not a topic
+	private static final int COMMON = 100;
+
+	private final Random random;
+
+	// clues; canon[] numbers reruns of the same answer alike
+	private String[] answers = new String[ 256 ];
+	private String[] questions = new String[ 256 ];
+	private int[] canon = new int[ 256 ];
+	private int clues;
+	private final Map<String, Integer> canonical = new HashMap<String, Integer>();
+
+	// categories: a run of clues, easiest first
+	private String[] catNames = new String[ 64 ];
+	private int[] catFirst = new int[ 64 ];
+	private int[] catSize = new int[ 64 ];
+	private String[][] catTopics = new String[ 64 ][];
+	private int categories;
+	private final Map<String, int[]> topicCounts = new HashMap<String, int[]>();
+	private final int[][] buckets = new int[ BUCKETS ][];
+	private final int[] bucketSize = new int[ BUCKETS ];
+
+	// final jeopardy clues, with their category names
+	private int[] finals = new int[ 16 ];
+	private String[] finalNames = new String[ 16 ];
+	private int finalCount;
+
+	private final BitSet used = new BitSet();
+
+	/**
+	 * Create a generator with an empty bank and a random seed
+	 */
+	public GameGenerator() {
+		this( new Random().nextLong() );
+	}
+
+	/**
+	 * Create a generator with an empty bank
+	 *
+	 * @param seed
+	 *            the seed for picking clues
+	 */
+	public GameGenerator( long seed ) {
+		random = new Random( seed );
+		for ( int b = 0; b < BUCKETS; b++ )
+			buckets[b] = new int[ 16 ];
+	}
+
+	/**
+	 * Load every game file of a directory into a new generator's bank,
+	 * skipping files that can't be loaded. Files are added in name order so
+	 * that the bank, and so the games generated, don't depend on load order.
+	 *
+	 * @param dir
+	 *            the directory
+	 * @param seed
+	 *            the seed for picking clues
+	 * @return the generator
+	 * @throws IOException
+	 *             if the directory can't be listed
+	 * @throws InterruptedException
+	 *             if interrupted while loading
+	 */
+	public static GameGenerator scan( File dir, long seed ) throws IOException,
+		InterruptedException {
+		SortedMap<File, Game> loaded = new TreeMap<File, Game>();
+		BulkLoader loader = new BulkLoader();
+		try {
+			loader.submit( dir );
+			while ( loader.pending() > 0 ) {
+				BulkLoader.Result r = loader.take();
+				if ( r.ok() )
+					loaded.put( r.file, r.game );
+			}
+		} finally {
+			loader.close();
+		}
+		GameGenerator gen = new GameGenerator( seed );
+		for ( Game g : loaded.values() )
+			gen.add( g );
+		return gen;
+	}
+
+	/**
+	 * Reset the seed, e.g. to make the same games again
+	 *
+	 * @param seed
+	 *            the seed
+	 */
+	public synchronized void setSeed( long seed ) {
+		random.setSeed( seed );
+	}
+
+	/**
+	 * Start a new season: clues used so far may be used again
+	 */
+	public synchronized void newSeason() {
+		used.clear();
+	}
+
+	/**
+	 * Add the categories and final jeopardy clue of a game to the bank
+	 *
+	 * @param g
+	 *            the game
+	 */
+	public synchronized void add( Game g ) {
+		if ( g.f != null && g.f.entry != null ) {
+			int id = addClue( g.f.entry );
+			if ( id >= 0 ) {
+				if ( finalCount == finals.length ) {
+					finals = Arrays.copyOf( finals, finalCount * 2 );
+					finalNames = Arrays.copyOf( finalNames, finalCount * 2 );
+				}
+				finals[finalCount] = id;
+				finalNames[finalCount++] = g.f.name;
+			}
+		}
+		if ( g.rounds == null )
+			return;
+		int rounds = g.rounds.length;
+		for ( int r = 0; r < rounds; r++ ) {
+			Round round = g.rounds[r];
+			if ( round == null || round.categories == null )
+				continue;
+			for ( Category c : round.categories ) {
+				if ( c != null && c.entries != null )
+					addCategory( c, r, rounds );
+			}
+		}
+	}
+
+	/**
+	 * @return the number of clues in the bank
+	 */
+	public synchronized int getClueCount() {
+		return clues;
+	}
+
+	/**
+	 * @return the number of categories in the bank
+	 */
+	public synchronized int getCategoryCount() {
+		return categories;
+	}
+
+	/**
+	 * @return the number of clues used this season
+	 */
+	public synchronized int getUsedCount() {
+		return used.cardinality();
+	}
+
+	/**
+	 * Generate a game of the default size
+	 *
+	 * @return the game
+	 * @throws IllegalStateException
+	 *             if the bank has too few unused clues
+	 */
+	public Game generate() {
+		return generate( Game.DEFAULT_ROUNDS, Round.DEFAULT_SIZE,
+			Category.DEFAULT_SIZE );
+	}
+
+	/**
+	 * Generate a game, marking its clues used for the season. Values and
+	 * round names are the defaults of
+	 * {@link Game#createGame(int, int, int)}.
+	 *
+	 * @param rounds
+	 *            the number of rounds, not counting final jeopardy
+	 * @param perRound
+	 *            the number of categories in each round
+	 * @param entries
+	 *            the number of entries in each category
+	 * @return the game
+	 * @throws IllegalArgumentException
+	 *             if a size is out of range
+	 * @throws IllegalStateException
+	 *             if the bank has too few unused clues; no clue is marked
+	 *             used then
+	 */
+	public synchronized Game generate( int rounds, int perRound, int entries ) {
+		Game g = Game.createGame( rounds, perRound, entries );
+		g.setTitle( "Generated Game" );
+		Set<String> topics = new HashSet<String>();
+		List<Integer> taken = new ArrayList<Integer>();
+		try {
+			for ( int r = 0; r < rounds; r++ ) {
+				float target = (r + 0.5f) / rounds;
+				for ( Category cat : g.rounds[r].categories ) {
+					int c = pickCategory( target, entries, topics );
+					if ( c < 0 )
+						throw new IllegalStateException( String.format(
+							"Not enough unused categories of %d clues "
+								+ "for round %d", entries, r + 1 ) );
+					fill( cat, c, entries, taken );
+					topics.addAll( Arrays.asList( catTopics[c] ) );
+				}
+			}
+			fillFinal( g.f, topics, taken );
+		} catch ( IllegalStateException ise ) {
+			for ( int id : taken )
+				used.clear( id );
+			throw ise;
+		}
+		return g;
+	}
+
+	// probe the buckets nearest the target difficulty for a usable category
+	private int pickCategory( float target, int entries, Set<String> topics ) {
+		int home = Math.min( BUCKETS - 1, (int) (target * BUCKETS) );
+		for ( int dist = 0; dist < BUCKETS; dist++ ) {
+			for ( int side = -1; side <= 1; side += 2 ) {
+				int b = home + side * dist;
+				if ( b < 0 || b >= BUCKETS || (dist == 0 && side > 0) )
+					continue;
+				int n = bucketSize[b];
+				if ( n == 0 )
+					continue;
+				// probe at random, then sweep what's left from a random start
+				for ( int i = 0; i < Math.min( n, PROBES ); i++ ) {
+					int c = buckets[b][random.nextInt( n )];
+					if ( usable( c, entries, topics ) )
+						return c;
+				}
+				if ( n > PROBES ) {
+					int start = random.nextInt( n );
+					for ( int i = 0; i < n; i++ ) {
+						int c = buckets[b][(start + i) % n];
+						if ( usable( c, entries, topics ) )
+							return c;
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	private boolean usable( int c, int entries, Set<String> topics ) {
+		if ( catSize[c] < entries )
+			return false;
+		for ( String t : catTopics[c] ) {
+			if ( topics.contains( t ) && !common( t ) )
+				return false;
+		}
+		int free = 0;
+		for ( int i = catFirst[c]; i < catFirst[c] + catSize[c]; i++ ) {
+			if ( !used.get( canon[i] ) && ++free >= entries )
+				return true;
+		}
+		return false;
+	}
+
+	// lay out a category's unused clues from easiest to hardest, spread
+	// evenly over its range when it has more than needed
+	private void fill( Category cat, int c, int entries, List<Integer> taken ) {
+		int[] free = new int[ catSize[c] ];
+		int n = 0;
+		for ( int i = catFirst[c]; i < catFirst[c] + catSize[c]; i++ ) {
+			if ( !used.get( canon[i] ) )
+				free[n++] = i;
+		}
+		cat.setName( catNames[c] );
+		for ( int s = 0; s < entries; s++ ) {
+			int i = free[entries == 1 ? n - 1 : s * (n - 1) / (entries - 1)];
+			cat.entries[s] = new Entry( answers[i], questions[i] );
+			used.set( canon[i] );
+			taken.add( canon[i] );
+		}
+		cat.reindex();
+	}
+
+	private void fillFinal( Final f, Set<String> topics, List<Integer> taken ) {
+		for ( int i = 0; i < Math.min( finalCount, PROBES * 4 ); i++ ) {
+			int k = random.nextInt( finalCount );
+			int id = finals[k];
+			if ( used.get( canon[id] ) || sharesTopic( finalNames[k], topics ) )
+				continue;
+			f.setName( finalNames[k] );
+			f.setEntry( new Entry( answers[id], questions[id] ) );
+			used.set( canon[id] );
+			taken.add( canon[id] );
+			return;
+		}
+		// no final clue free: take the hardest unused clue of a category
+		int c = pickCategory( 1, 1, topics );
+		if ( c < 0 )
+			throw new IllegalStateException( "No unused clue for final jeopardy" );
+		for ( int i = catFirst[c] + catSize[c] - 1; i >= catFirst[c]; i-- ) {
+			if ( !used.get( canon[i] ) ) {
+				f.setName( catNames[c] );
+				f.setEntry( new Entry( answers[i], questions[i] ) );
+				used.set( canon[i] );
+				taken.add( canon[i] );
+				return;
+			}
+		}
+	}
+
+	private boolean sharesTopic( String name, Set<String> topics ) {
+		for ( String t : topics( name ) ) {
+			if ( topics.contains( t ) && !common( t ) )
+				return true;
+		}
+		return false;
+	}
+
+	private boolean common( String word ) {
+		int[] n = topicCounts.get( word );
+		return n != null && n[0] > 2 && n[0] * COMMON > categories;
+	}
+
+	private static String[] topics( String name ) {
+		Set<String> out = new LinkedHashSet<String>();
+		for ( String w : ClueIndex.tokenize( name ) ) {
+			if ( w.length() >= MIN_TOPIC )
+				out.add( w );
+		}
+		// a short name is its own topic
+		if ( out.isEmpty() && name != null )
+			out.add( name.trim().toLowerCase() );
+		return out.toArray( new String[ out.size() ] );
+	}
+
+	private void addCategory( Category c, int round, int rounds ) {
+		// slots by value, so the clues run from easiest to hardest
+		int n = Math.min( c.entries.length, c.values == null ? 0
+			: c.values.length );
+		Integer[] order = new Integer[ n ];
+		for ( int i = 0; i < n; i++ )
+			order[i] = i;
+		final Category cat = c;
+		Arrays.sort( order, new Comparator<Integer>() {
+
+			public int compare( Integer a, Integer b ) {
+				int x = cat.getAmount( a ), y = cat.getAmount( b );
+				return x != y ? (x < y ? -1 : 1) : a.compareTo( b );
+			}
+		} );
+		int first = clues;
+		int size = 0;
+		float sum = 0;
+		for ( int k = 0; k < n; k++ ) {
+			Entry e = c.entries[order[k]];
+			if ( e == null )
+				continue;
+			float d = (round + (k + 0.5f) / n) / rounds;
+			if ( addClue( e ) >= 0 ) {
+				sum += d;
+				++size;
+			}
+		}
+		if ( size == 0 )
+			return;
+		if ( categories == catNames.length ) {
+			int m = categories * 2;
+			catNames = Arrays.copyOf( catNames, m );
+			catFirst = Arrays.copyOf( catFirst, m );
+			catSize = Arrays.copyOf( catSize, m );
+			catTopics = Arrays.copyOf( catTopics, m );
+		}
+		int id = categories++;
+		catNames[id] = c.name;
+		catFirst[id] = first;
+		catSize[id] = size;
+		catTopics[id] = topics( c.name );
+		for ( String t : catTopics[id] ) {
+			int[] k = topicCounts.get( t );
+			if ( k == null )
+				topicCounts.put( t, new int[] { 1 } );
+			else
+				++k[0];
+		}
+		int b = Math.min( BUCKETS - 1, (int) (sum / size * BUCKETS) );
+		if ( bucketSize[b] == buckets[b].length )
+			buckets[b] = Arrays.copyOf( buckets[b], bucketSize[b] * 2 );
+		buckets[b][bucketSize[b]++] = id;
+	}
+
+	// add one clue; -1 if it has no answer
+	private int addClue( Entry e ) {
+		String a = e.getAnswer();
+		if ( a == null || a.trim().isEmpty() )
+			return -1;
+		if ( clues == answers.length ) {
+			int m = clues * 2;
+			answers = Arrays.copyOf( answers, m );
+			questions = Arrays.copyOf( questions, m );
+			canon = Arrays.copyOf( canon, m );
+		}
+		int id = clues++;
+		answers[id] = a;
+		questions[id] = e.getQuestion();
+		String key = a.trim().toLowerCase();
+		Integer same = canonical.get( key );
+		if ( same == null )
+			canonical.put( key, id );
+		canon[id] = same == null ? id : same;
+		return id;
+	}
+
+}
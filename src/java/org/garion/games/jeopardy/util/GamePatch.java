@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import org.garion.games.jeopardy.*;
+import org.garion.global.Global;
+
+/**
+ * Copies the changes between two versions of a game into the older one in
+ * place. Rounds, categories and entries that exist in both are kept as the
+ * same objects and only their text is updated, so anything holding on to
+ * them (such as the board panels and their played state) stays valid.
+ * Objects that only exist in the newer game are moved over as they are.
+ * <p>
+ * A category that gained or lost slots is replaced by its newer version as a
+ * whole, so it starts over unplayed, as a round whose shape changed does.
+ *
+ * @author martin@mbs3.org
+ */
+public final class GamePatch {
+
+	private GamePatch() {}
+
+	/**
+	 * Patch a game
+	 *
+	 * @param live
+	 *            the game to update
+	 * @param fresh
+	 *            the newer version of the game; parts of it may be moved into
+	 *            {@code live}
+	 * @return the number of fields that changed
+	 */
+	public static int apply( Game live, Game fresh ) {
+		int n = 0;
+		if ( !Global.same( live.title, fresh.title ) ) {
+			live.setTitle( fresh.title );
+			++n;
+		}
+		if ( !Global.same( live.subject, fresh.subject ) ) {
+			live.setSubject( fresh.subject );
+			++n;
+		}
+		if ( live.f == null || fresh.f == null ) {
+			if ( live.f != fresh.f ) {
+				live.f = fresh.f;
+				++n;
+			}
+		} else {
+			if ( !Global.same( live.f.name, fresh.f.name ) ) {
+				live.f.setName( fresh.f.name );
+				++n;
+			}
+			if ( live.f.entry == null || fresh.f.entry == null ) {
+				if ( live.f.entry != fresh.f.entry ) {
+					live.f.entry = fresh.f.entry;
+					++n;
+				}
+			} else
+				n += patch( live.f.entry, fresh.f.entry );
+		}
+		if ( live.rounds == null || fresh.rounds == null
+			|| live.rounds.length != fresh.rounds.length ) {
+			live.rounds = fresh.rounds;
+			return n + 1;
+		}
+		for ( int r = 0; r < live.rounds.length; r++ ) {
+			Round lr = live.rounds[r];
+			Round fr = fresh.rounds[r];
+			if ( lr == null || fr == null || lr.categories == null
+				|| fr.categories == null
+				|| lr.categories.length != fr.categories.length ) {
+				if ( lr != fr ) {
+					live.rounds[r] = fr;
+					++n;
+				}
+				continue;
+			}
+			if ( !Global.same( lr.name, fr.name ) ) {
+				lr.setName( fr.name );
+				++n;
+			}
+			for ( int c = 0; c < lr.categories.length; c++ ) {
+				Category lc = lr.categories[c];
+				Category fc = fr.categories[c];
+				if ( lc == null || fc == null
+					|| lc.entries.length != fc.entries.length ) {
+					if ( lc != fc ) {
+						lr.categories[c] = fc;
+						++n;
+					}
+				} else
+					n += patch( lc, fc );
+			}
+		}
+		return n;
+	}
+
+	private static int patch( Category live, Category fresh ) {
+		int n = 0;
+		boolean slots = false;
+		if ( !Global.same( live.name, fresh.name ) ) {
+			live.setName( fresh.name );
+			++n;
+		}
+		for ( int i = 0; i < live.entries.length; i++ ) {
+			if ( !Global.same( live.values[i], fresh.values[i] ) ) {
+				live.values[i] = fresh.values[i];
+				slots = true;
+				++n;
+			}
+			Entry le = live.entries[i];
+			Entry fe = fresh.entries[i];
+			if ( le == null || fe == null ) {
+				if ( le != fe ) {
+					live.entries[i] = fe;
+					slots = true;
+					++n;
+				}
+			} else
+				n += patch( le, fe );
+		}
+		if ( slots )
+			live.reindex();
+		return n;
+	}
+
+	private static int patch( Entry live, Entry fresh ) {
+		int n = 0;
+		if ( !Global.same( live.getAnswer(), fresh.getAnswer() ) ) {
+			live.setAnswer( fresh.getAnswer() );
+			++n;
+		}
+		if ( !Global.same( live.getQuestion(), fresh.getQuestion() ) ) {
+			live.setQuestion( fresh.getQuestion() );
+			++n;
+		}
+		return n;
+	}
+
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.garion.games.jeopardy.*;
+import org.garion.global.Global;
+
+/**
+ * An immutable copy of a game that can be handed to other threads. Every
+ * field is final and no array is ever exposed, so a snapshot can be read
+ * from any thread without locking while the game it was taken from keeps
+ * being edited.
+ * <p>
+ * Each category keeps its slots in flat parallel arrays, and equal strings
+ * within a snapshot are stored once. A snapshot taken with
+ * {@link #of(Game, GameSnapshot)} reuses every round and category of the
+ * previous snapshot that did not change, so readers can spot changes by
+ * comparing parts with {@code ==}.
+ * <p>
+ * A snapshot must be taken on the thread that owns the game (the EDT for
+ * the board and the game builder).
+ *
+ * @author martin@mbs3.org
+ */
+public final class GameSnapshot {
+
+	/** An immutable category: its name and its slots */
+	public static final class CategorySnapshot {
+
+		private final String name;
+		private final String[] values;
+		private final int[] amounts;
+		private final String[] labels;
+		private final boolean[] present;
+		private final String[] answers;
+		private final String[] questions;
+
+		private CategorySnapshot( Category c, CategorySnapshot old,
+			Map<String, String> pool ) {
+			int n = slots( c );
+			name = intern( pool, c.name, old == null ? null : old.name );
+			values = new String[ n ];
+			amounts = new int[ n ];
+			labels = new String[ n ];
+			present = new boolean[ n ];
+			answers = new String[ n ];
+			questions = new String[ n ];
+			for ( int i = 0; i < n; i++ ) {
+				boolean prev = old != null && i < old.size();
+				values[i] = intern( pool, c.values[i], prev ? old.values[i]
+					: null );
+				amounts[i] = c.getAmount( i );
+				labels[i] = intern( pool, c.getLabel( i ), prev ? old.labels[i]
+					: null );
+				Entry e = c.entries[i];
+				present[i] = e != null;
+				if ( e != null ) {
+					answers[i] = intern( pool, e.getAnswer(),
+						prev ? old.answers[i] : null );
+					questions[i] = intern( pool, e.getQuestion(),
+						prev ? old.questions[i] : null );
+				}
+			}
+		}
+
+		// whether this snapshot still matches the category
+		private boolean matches( Category c ) {
+			if ( !Global.same( name, c.name ) || size() != slots( c ) )
+				return false;
+			for ( int i = 0; i < values.length; i++ ) {
+				Entry e = c.entries[i];
+				if ( !Global.same( values[i], c.values[i] )
+					|| present[i] != (e != null) )
+					return false;
+				if ( e != null
+					&& (!Global.same( answers[i], e.getAnswer() ) || !Global
+						.same( questions[i], e.getQuestion() )) )
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * @return the category name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the number of slots
+		 */
+		public int size() {
+			return values.length;
+		}
+
+		/**
+		 * @param slot
+		 *            the slot
+		 * @return the value text of a slot
+		 */
+		public String getValue( int slot ) {
+			return values[slot];
+		}
+
+		/**
+		 * @param slot
+		 *            the slot
+		 * @return the dollar amount of a slot, see
+		 *         {@link Category#getAmount(int)}
+		 */
+		public int getAmount( int slot ) {
+			return amounts[slot];
+		}
+
+		/**
+		 * @param slot
+		 *            the slot
+		 * @return the board label of a slot, see
+		 *         {@link Category#getLabel(int)}
+		 */
+		public String getLabel( int slot ) {
+			return labels[slot];
+		}
+
+		/**
+		 * @param slot
+		 *            the slot
+		 * @return whether the slot holds an entry
+		 */
+		public boolean hasEntry( int slot ) {
+			return present[slot];
+		}
+
+		/**
+		 * @param slot
+		 *            the slot
+		 * @return the answer of the slot's entry
+		 */
+		public String getAnswer( int slot ) {
+			return answers[slot];
+		}
+
+		/**
+		 * @param slot
+		 *            the slot
+		 * @return the question of the slot's entry
+		 */
+		public String getQuestion( int slot ) {
+			return questions[slot];
+		}
+
+		private Category toCategory() {
+			Category c = new Category( name );
+			c.values = values.clone();
+			c.entries = new Entry[ values.length ];
+			for ( int i = 0; i < values.length; i++ ) {
+				if ( present[i] )
+					c.entries[i] = new Entry( answers[i], questions[i] );
+			}
+			c.verifySize();
+			return c;
+		}
+	}
+
+	/** An immutable round: its name and its categories */
+	public static final class RoundSnapshot {
+
+		private final String name;
+		private final CategorySnapshot[] categories;
+
+		private RoundSnapshot( String name, CategorySnapshot[] categories ) {
+			this.name = name;
+			this.categories = categories;
+		}
+
+		/**
+		 * @return the round name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the number of categories
+		 */
+		public int size() {
+			return categories.length;
+		}
+
+		/**
+		 * @param i
+		 *            the category number
+		 * @return the category, or {@code null} if that category is missing
+		 */
+		public CategorySnapshot getCategory( int i ) {
+			return categories[i];
+		}
+
+		/**
+		 * @return the number of entry rows needed to show this round, see
+		 *         {@link Round#rows()}
+		 */
+		public int rows() {
+			int rows = 0;
+			for ( CategorySnapshot c : categories ) {
+				if ( c != null )
+					rows = Math.max( rows, c.size() );
+			}
+			return rows;
+		}
+	}
+
+	private static final RoundSnapshot[] NO_ROUNDS = new RoundSnapshot[ 0 ];
+
+	private final String title;
+	private final String subject;
+	private final boolean hasFinal;
+	private final String finalName;
+	private final boolean hasFinalEntry;
+	private final String finalAnswer;
+	private final String finalQuestion;
+	private final RoundSnapshot[] rounds;
+
+	private GameSnapshot( Game g, GameSnapshot old ) {
+		Map<String, String> pool = new HashMap<String, String>();
+		title = intern( pool, g.title, old == null ? null : old.title );
+		subject = intern( pool, g.subject, old == null ? null : old.subject );
+		hasFinal = g.f != null;
+		hasFinalEntry = hasFinal && g.f.entry != null;
+		finalName = hasFinal ? intern( pool, g.f.name, old == null ? null
+			: old.finalName ) : null;
+		finalAnswer = hasFinalEntry ? intern( pool, g.f.entry.getAnswer(),
+			old == null ? null : old.finalAnswer ) : null;
+		finalQuestion = hasFinalEntry ? intern( pool, g.f.entry.getQuestion(),
+			old == null ? null : old.finalQuestion ) : null;
+		if ( g.rounds == null ) {
+			rounds = NO_ROUNDS;
+			return;
+		}
+		rounds = new RoundSnapshot[ g.rounds.length ];
+		for ( int r = 0; r < rounds.length; r++ ) {
+			Round round = g.rounds[r];
+			if ( round == null )
+				continue;
+			RoundSnapshot prev = old != null && r < old.rounds.length
+				? old.rounds[r] : null;
+			rounds[r] = snapshot( round, prev, pool );
+		}
+	}
+
+	private static RoundSnapshot snapshot( Round round, RoundSnapshot prev,
+		Map<String, String> pool ) {
+		Category[] cs = round.categories == null ? new Category[ 0 ]
+			: round.categories;
+		CategorySnapshot[] cats = new CategorySnapshot[ cs.length ];
+		boolean changed = prev == null || prev.size() != cs.length
+			|| !Global.same( prev.name, round.name );
+		for ( int c = 0; c < cs.length; c++ ) {
+			CategorySnapshot old = prev != null && c < prev.size()
+				? prev.categories[c] : null;
+			if ( cs[c] == null )
+				cats[c] = null;
+			else if ( old != null && old.matches( cs[c] ) )
+				cats[c] = old;
+			else
+				cats[c] = new CategorySnapshot( cs[c], old, pool );
+			changed |= cats[c] != old;
+		}
+		if ( !changed )
+			return prev;
+		return new RoundSnapshot( intern( pool, round.name, prev == null ? null
+			: prev.name ), cats );
+	}
+
+	/**
+	 * Take a snapshot of a game
+	 *
+	 * @param g
+	 *            the game
+	 * @return the snapshot
+	 */
+	public static GameSnapshot of( Game g ) {
+		return new GameSnapshot( g, null );
+	}
+
+	/**
+	 * Take a snapshot of a newer version of a game, sharing every round and
+	 * category that did not change with the previous snapshot
+	 *
+	 * @param g
+	 *            the game
+	 * @param previous
+	 *            an earlier snapshot of the game, or {@code null}
+	 * @return the snapshot; {@code previous} itself if nothing changed
+	 */
+	public static GameSnapshot of( Game g, GameSnapshot previous ) {
+		GameSnapshot s = new GameSnapshot( g, previous );
+		if ( previous != null && s.sameAs( previous ) )
+			return previous;
+		return s;
+	}
+
+	// every part is shared or equal
+	private boolean sameAs( GameSnapshot o ) {
+		if ( !Global.same( title, o.title )
+			|| !Global.same( subject, o.subject ) || hasFinal != o.hasFinal
+			|| !Global.same( finalName, o.finalName )
+			|| hasFinalEntry != o.hasFinalEntry
+			|| !Global.same( finalAnswer, o.finalAnswer )
+			|| !Global.same( finalQuestion, o.finalQuestion )
+			|| rounds.length != o.rounds.length )
+			return false;
+		for ( int r = 0; r < rounds.length; r++ ) {
+			if ( rounds[r] != o.rounds[r] )
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the title
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * @return the subject
+	 */
+	public String getSubject() {
+		return subject;
+	}
+
+	/**
+	 * @return whether the game has a final jeopardy round
+	 */
+	public boolean hasFinal() {
+		return hasFinal;
+	}
+
+	/**
+	 * @return the final jeopardy category, or {@code null}
+	 */
+	public String getFinalName() {
+		return finalName;
+	}
+
+	/**
+	 * @return the final jeopardy answer, or {@code null}
+	 */
+	public String getFinalAnswer() {
+		return finalAnswer;
+	}
+
+	/**
+	 * @return the final jeopardy question, or {@code null}
+	 */
+	public String getFinalQuestion() {
+		return finalQuestion;
+	}
+
+	/**
+	 * @return the number of rounds, not counting final jeopardy
+	 */
+	public int getRoundCount() {
+		return rounds.length;
+	}
+
+	/**
+	 * @param r
+	 *            the round number
+	 * @return the round, or {@code null} if that round is missing
+	 */
+	public RoundSnapshot getRound( int r ) {
+		return rounds[r];
+	}
+
+	/**
+	 * Make a new, mutable game with the contents of this snapshot
+	 *
+	 * @return the game
+	 */
+	public Game toGame() {
+		Game g = new Game( title, subject );
+		if ( hasFinal )
+			g.setFinalRound( new Final( finalName, hasFinalEntry ? new Entry(
+				finalAnswer, finalQuestion ) : null ) );
+		g.rounds = new Round[ rounds.length ];
+		for ( int r = 0; r < rounds.length; r++ ) {
+			RoundSnapshot rs = rounds[r];
+			if ( rs == null )
+				continue;
+			Round round = new Round( rs.name );
+			round.categories = new Category[ rs.categories.length ];
+			for ( int c = 0; c < rs.categories.length; c++ ) {
+				if ( rs.categories[c] != null )
+					round.categories[c] = rs.categories[c].toCategory();
+			}
+			g.rounds[r] = round;
+		}
+		g.verifySize();
+		return g;
+	}
+
+	// the usable slots of a category (verifySize makes both lists equal)
+	private static int slots( Category c ) {
+		if ( c.values == null || c.entries == null )
+			return 0;
+		return Math.min( c.values.length, c.entries.length );
+	}
+
+	// keep one copy of equal strings, preferring the previous snapshot's
+	private static String intern( Map<String, String> pool, String s,
+		String previous ) {
+		if ( s == null )
+			return null;
+		if ( s.equals( previous ) )
+			s = previous;
+		String p = pool.get( s );
+		if ( p != null )
+			return p;
+		pool.put( s, s );
+		return s;
+	}
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import org.garion.games.jeopardy.Game;
+
+/**
+ * Watches a game file and re-parses it in the background whenever it
+ * changes on disk. The file's directory is watched, so editors that save by
+ * writing a new file and renaming it over the old one are noticed too.
+ * Bursts of changes are collapsed: the file is only parsed once it has been
+ * quiet for {@link #SETTLE_MILLIS}.
+ *
+ * @author martin@mbs3.org
+ */
+public final class GameWatcher implements Closeable {
+
+	/** How long a file must stay unchanged before it is reloaded */
+	public static final int SETTLE_MILLIS = 300;
+
+	/** Receives reloaded games on the EDT */
+	public interface Listener {
+
+		/**
+		 * The file was changed and parsed
+		 *
+		 * @param f
+		 *            the file
+		 * @param g
+		 *            the newly parsed game
+		 */
+		void reloaded( File f, Game g );
+
+		/**
+		 * The file was changed but could not be parsed, e.g. because it is
+		 * still being written or has a syntax error
+		 *
+		 * @param f
+		 *            the file
+		 * @param e
+		 *            the cause
+		 */
+		void failed( File f, Exception e );
+	}
+
+	private final File file;
+	private final Path name;
+	private final Listener listener;
+	private final WatchService service;
+	private final Thread thread;
+	private volatile boolean closed;
+
+	/**
+	 * Start watching a file
+	 *
+	 * @param f
+	 *            the game file
+	 * @param listener
+	 *            told about every reload
+	 * @throws IOException
+	 *             if the file's directory can't be watched
+	 */
+	public GameWatcher( File f, Listener listener ) throws IOException {
+		this.file = f.getAbsoluteFile();
+		this.name = file.toPath().getFileName();
+		this.listener = listener;
+		Path dir = file.toPath().getParent();
+		service = dir.getFileSystem().newWatchService();
+		try {
+			dir.register( service, ENTRY_CREATE, ENTRY_MODIFY );
+		} catch ( IOException ioe ) {
+			service.close();
+			throw ioe;
+		}
+		thread = new Thread( new Runnable() {
+
+			public void run() {
+				watch();
+			}
+		}, "GameWatcher" );
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	/**
+	 * Get the watched file
+	 *
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Stop watching
+	 */
+	public void close() {
+		closed = true;
+		thread.interrupt();
+		try {
+			service.close();
+		} catch ( IOException ioe ) {
+			ioe.printStackTrace();
+		}
+	}
+
+	private void watch() {
+		try {
+			while ( true ) {
+				WatchKey key = service.take();
+				boolean changed = drain( key );
+				// wait for the writer to finish before parsing
+				while ( (key = service.poll( SETTLE_MILLIS,
+					TimeUnit.MILLISECONDS )) != null )
+					changed |= drain( key );
+				if ( changed )
+					reload();
+			}
+		} catch ( InterruptedException ie ) {
+			// closed
+		} catch ( ClosedWatchServiceException cwse ) {
+			// closed
+		}
+	}
+
+	private boolean drain( WatchKey key ) {
+		boolean changed = false;
+		for ( WatchEvent<?> e : key.pollEvents() ) {
+			if ( e.kind() == OVERFLOW || name.equals( e.context() ) )
+				changed = true;
+		}
+		key.reset();
+		return changed;
+	}
+
+	private void reload() {
+		if ( !file.isFile() )
+			return;
+		Game g = null;
+		Exception error = null;
+		try {
+			g = IO.loadCached( file );
+		} catch ( Exception e ) {
+			error = e;
+		}
+		final Game game = g;
+		final Exception failure = error;
+		SwingUtilities.invokeLater( new Runnable() {
+
+			public void run() {
+				if ( closed )
+					return;
+				if ( failure == null )
+					listener.reloaded( file, game );
+				else
+					listener.failed( file, failure );
+			}
+		} );
+	}
+
+}
@@ -17,6 +17,10 @@
 package org.garion.games.jeopardy.util;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Future;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import org.garion.games.jeopardy.Game;
 import org.ho.yaml.Yaml;
@@ -31,10 +35,18 @@ public final class IO {
 
 	/** Filter for supported file types */
 	public static final FileNameExtensionFilter ext = new FileNameExtensionFilter(
-		"Supported Files (*.yaml)", "yaml" );
+		"Supported Files (*.yaml, *.jgb, *.jga)", "yaml", "jgb", "jga" );
 	/** Filter for YAML files */
 	public static final FileNameExtensionFilter yaml = new FileNameExtensionFilter(
 		"YAML Markup Files (*.yaml)", "yaml" );
+	/** Filter for compiled binary game files */
+	public static final FileNameExtensionFilter binary = new FileNameExtensionFilter(
+		"Binary Game Files (*.jgb)", "jgb" );
+	/** Filter for compressed game archives */
+	public static final FileNameExtensionFilter archive = new FileNameExtensionFilter(
+		"Game Archives (*.jga)", "jga" );
+
+	private static final GameCache cache = new GameCache( 32, 64L << 20 );
 
 	private IO() {}
 
@@ -83,7 +95,8 @@ public final class IO {
 	}
 
 	/**
-	 * Detect the file type and load accordingly
+	 * Detect the file type and load accordingly. For a game archive this is
+	 * the first game; use {@link #openArchive(File)} to pick another.
 	 * 
 	 * @param in
 	 *            the file to load
@@ -95,16 +108,147 @@ public final class IO {
 	 */
 	public static final Game detectAndLoad( File in ) throws IOException,
 		UnsupportedFileTypeException {
-		BufferedReader reader = new BufferedReader( new FileReader( in ) );
-		String firstLine = reader.readLine();
-		if ( firstLine.startsWith( "---" ) )
-			return loadYaml( in );
+		return detectAndLoad( in, new StringDedupe() );
+	}
+
+	/**
+	 * Detect the type of a file and load accordingly, sharing repeated
+	 * strings through the given table. Passing one table to a batch of loads
+	 * also shares strings between the games.
+	 * 
+	 * @param in
+	 *            the file to load
+	 * @param dedupe
+	 *            the string table
+	 * @return the created Game
+	 * @throws IOException
+	 *             If an error occurs while parsing the file
+	 * @throws UnsupportedFileTypeException
+	 *             whether the file type was not supported
+	 */
+	public static final Game detectAndLoad( File in, StringDedupe dedupe )
+		throws IOException, UnsupportedFileTypeException {
+		byte[] head = new byte[ 4 ];
+		int n = head( in, head );
+		if ( GameBinary.isMagic( head, n ) )
+			return dedupe.dedupe( loadBinary( in ) );
+		else if ( isYaml( head, n ) )
+			return first( streamYamlAll( in, dedupe ), in );
+		else if ( GameArchive.isMagic( head, n ) ) {
+			GameArchive a = GameArchive.open( in );
+			try {
+				return dedupe.dedupe( first( a ) );
+			} finally {
+				a.close();
+			}
+		} else {
+			throw new UnsupportedFileTypeException(
+				"Only YAML, binary and archive game file types are supported." );
+		}
+	}
+
+	/**
+	 * Check whether a file is a game archive, by its contents
+	 * 
+	 * @param in
+	 *            the file
+	 * @return whether the file starts with the archive signature
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public static boolean isArchive( File in ) throws IOException {
+		byte[] head = new byte[ 4 ];
+		return GameArchive.isMagic( head, head( in, head ) );
+	}
+
+	private static int head( File in, byte[] head ) throws IOException {
+		int n = 0;
+		InputStream is = new FileInputStream( in );
+		try {
+			int r;
+			while ( n < head.length
+				&& (r = is.read( head, n, head.length - n )) != -1 )
+				n += r;
+		} finally {
+			is.close();
+		}
+		return n;
+	}
+
+	private static Game first( List<Game> games, File in ) throws IOException {
+		if ( games.isEmpty() )
+			throw new IOException( "No game found in " + in.getName() );
+		return games.get( 0 );
+	}
+
+	private static Game first( GameArchive a ) throws IOException {
+		if ( a.size() == 0 )
+			throw new IOException( "No game found" );
+		return a.getGame( 0 );
+	}
+
+	/**
+	 * Detect the type of a file already read into memory and load accordingly
+	 * 
+	 * @param data
+	 *            the file contents
+	 * @return the created Game
+	 * @throws IOException
+	 *             If an error occurs while parsing the data
+	 * @throws UnsupportedFileTypeException
+	 *             whether the file type was not supported
+	 */
+	static Game detectAndLoad( byte[] data ) throws IOException,
+		UnsupportedFileTypeException {
+		StringDedupe dedupe = new StringDedupe();
+		if ( GameBinary.isMagic( data, data.length ) )
+			return dedupe.dedupe( GameBinary.read( data ) );
+		else if ( isYaml( data, data.length ) ) {
+			List<Game> games = YamlGameReader.read( new InputStreamReader(
+				new ByteArrayInputStream( data ), "UTF-8" ), dedupe );
+			if ( games.isEmpty() )
+				throw new IOException( "No game found" );
+			return games.get( 0 );
+		} else if ( GameArchive.isMagic( data, data.length ) )
+			return dedupe.dedupe( first( GameArchive.open( data ) ) );
 		else {
 			throw new UnsupportedFileTypeException(
-				"Only YAML file types are supported." );
+				"Only YAML, binary and archive game file types are supported." );
 		}
 	}
 
+	private static boolean isYaml( byte[] head, int n ) {
+		return n >= 3 && head[0] == '-' && head[1] == '-' && head[2] == '-';
+	}
+
+	/**
+	 * Load a file through the shared game cache. Reopening an unchanged file
+	 * skips parsing; every call gets its own copy of the game, so callers may
+	 * edit it freely.
+	 * 
+	 * @param in
+	 *            the file to load
+	 * @return the created Game
+	 * @throws IOException
+	 *             If an error occurs while parsing the file
+	 * @throws UnsupportedFileTypeException
+	 *             whether the file type was not supported
+	 * @see #cache()
+	 */
+	public static final Game loadCached( File in ) throws IOException,
+		UnsupportedFileTypeException {
+		return cache.load( in );
+	}
+
+	/**
+	 * Get the shared game cache used by {@link #loadCached(File)}
+	 * 
+	 * @return the cache
+	 */
+	public static GameCache cache() {
+		return cache;
+	}
+
 	/**
 	 * Load a YAML-formatted file
 	 * 
@@ -115,9 +259,77 @@ public final class IO {
 	 *             if an error occurs while loading file
 	 */
 	public static final Game loadYaml( File in ) throws IOException {
+		return loadYaml( in, new StringDedupe() );
+	}
+
+	/**
+	 * Load a YAML-formatted file, sharing repeated strings through the given
+	 * table
+	 * 
+	 * @param in
+	 *            the file
+	 * @param dedupe
+	 *            the string table
+	 * @return the created game
+	 * @throws IOException
+	 *             if an error occurs while loading file
+	 */
+	public static final Game loadYaml( File in, StringDedupe dedupe )
+		throws IOException {
 		Game g = Yaml.loadType( in, Game.class );
 		g.verifySize();
-		return g;
+		return dedupe.dedupe( g );
+	}
+
+	/**
+	 * Load a YAML-formatted file with the streaming reader, which fills in the
+	 * game as the file is parsed instead of mapping it by reflection
+	 * 
+	 * @param in
+	 *            the file
+	 * @return the first game in the file
+	 * @throws IOException
+	 *             if an error occurs while loading file
+	 */
+	public static final Game streamYaml( File in ) throws IOException {
+		return first( streamYamlAll( in ), in );
+	}
+
+	/**
+	 * Load every game from a multi-document YAML file with the streaming
+	 * reader
+	 * 
+	 * @param in
+	 *            the file
+	 * @return the games, in file order
+	 * @throws IOException
+	 *             if an error occurs while loading file
+	 */
+	public static final List<Game> streamYamlAll( File in ) throws IOException {
+		return streamYamlAll( in, new StringDedupe() );
+	}
+
+	/**
+	 * Load every game from a multi-document YAML file with the streaming
+	 * reader, sharing repeated strings through the given table
+	 * 
+	 * @param in
+	 *            the file
+	 * @param dedupe
+	 *            the string table
+	 * @return the games, in file order
+	 * @throws IOException
+	 *             if an error occurs while loading file
+	 */
+	public static final List<Game> streamYamlAll( File in, StringDedupe dedupe )
+		throws IOException {
+		Reader r = new BufferedReader( new InputStreamReader(
+			new FileInputStream( in ), "UTF-8" ) );
+		try {
+			return YamlGameReader.read( r, dedupe );
+		} finally {
+			r.close();
+		}
 	}
 
 	/**
@@ -132,7 +344,151 @@ public final class IO {
 	 *             if an error occurs while writing
 	 */
 	public static final boolean dumpYaml( Game g, File out ) throws IOException {
-		Yaml.dump( g, out, true );
+		BackgroundSaver.write( out, yamlContent( g ) );
+		return true;
+	}
+
+	/**
+	 * Load a compiled binary game file
+	 * 
+	 * @param in
+	 *            the file
+	 * @return the created game
+	 * @throws IOException
+	 *             if an error occurs while loading file, or the file is not a
+	 *             supported binary game
+	 */
+	public static final Game loadBinary( File in ) throws IOException {
+		return GameBinary.read( Files.readAllBytes( in.toPath() ) );
+	}
+
+	/**
+	 * Save a game in the compiled binary format
+	 * 
+	 * @param g
+	 *            the game
+	 * @param out
+	 *            the output file
+	 * @return success
+	 * @throws IOException
+	 *             if an error occurs while writing
+	 */
+	public static final boolean dumpBinary( Game g, File out )
+		throws IOException {
+		BackgroundSaver.write( out, binaryContent( g ) );
+		return true;
+	}
+
+	/**
+	 * Save a game in the background, in the format given by the file
+	 * extension. The game is written later on the saver thread, so pass a
+	 * copy (see {@link Game#copy()}) that nothing edits any more.
+	 * 
+	 * @param g
+	 *            the game, left untouched from now on
+	 * @param out
+	 *            the output file
+	 * @param saves
+	 *            the game's save bookkeeping
+	 * @param listener
+	 *            told on the EDT when the save finishes, may be {@code null}
+	 * @return the pending save
+	 * @throws UnsupportedFileTypeException
+	 *             if the extension is not a supported game format
+	 */
+	public static final Future<File> saveInBackground( Game g, File out,
+		BackgroundSaver.Tracker saves, BackgroundSaver.Listener listener )
+		throws UnsupportedFileTypeException {
+		BackgroundSaver.Content c;
+		if ( extension( out, "yaml" ) )
+			c = yamlContent( g );
+		else if ( extension( out, "jgb" ) )
+			c = binaryContent( g );
+		else
+			throw new UnsupportedFileTypeException(
+				"Only YAML and binary game files are supported." );
+		return saves.save( out, c, listener );
+	}
+
+	private static BackgroundSaver.Content yamlContent( final Game g ) {
+		return new BackgroundSaver.Content() {
+
+			public void write( OutputStream out ) {
+				Yaml.dump( g, out, true );
+			}
+		};
+	}
+
+	private static BackgroundSaver.Content binaryContent( final Game g ) {
+		return new BackgroundSaver.Content() {
+
+			public void write( OutputStream out ) throws IOException {
+				GameBinary.write( g, out );
+			}
+		};
+	}
+
+	/**
+	 * Open a memory-mapped game bank. Opening costs the same regardless of
+	 * the bank size; entry text is only decoded when it is read.
+	 * 
+	 * @param in
+	 *            the bank file
+	 * @return the opened bank, which should be closed when done
+	 * @throws IOException
+	 *             if an error occurs while opening the file, or the file is not
+	 *             a game bank
+	 */
+	public static final GameBank openBank( File in ) throws IOException {
+		return GameBank.open( in );
+	}
+
+	/**
+	 * Save a collection of games as a game bank
+	 * 
+	 * @param games
+	 *            the games, in bank order
+	 * @param out
+	 *            the output file
+	 * @return success
+	 * @throws IOException
+	 *             if an error occurs while writing
+	 */
+	public static final boolean dumpBank( Collection<Game> games, File out )
+		throws IOException {
+		GameBank.write( games, out );
+		return true;
+	}
+
+	/**
+	 * Open a compressed game archive. Only its index is read; each game or
+	 * category is inflated when it is asked for.
+	 * 
+	 * @param in
+	 *            the archive file
+	 * @return the opened archive, which should be closed when done
+	 * @throws IOException
+	 *             if an error occurs while opening the file, or the file is not
+	 *             a game archive
+	 */
+	public static final GameArchive openArchive( File in ) throws IOException {
+		return GameArchive.open( in );
+	}
+
+	/**
+	 * Save a collection of games as a compressed game archive
+	 * 
+	 * @param games
+	 *            the games, in archive order
+	 * @param out
+	 *            the output file
+	 * @return success
+	 * @throws IOException
+	 *             if an error occurs while writing
+	 */
+	public static final boolean dumpArchive( Collection<Game> games, File out )
+		throws IOException {
+		GameArchive.write( games, out );
 		return true;
 	}
 
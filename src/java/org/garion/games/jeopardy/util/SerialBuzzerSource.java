@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import gnu.io.CommPortIdentifier;
+import gnu.io.SerialPort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * A buzzer box on a serial port, opened with RXTX
+ *
+ * @author martin@mbs3.org
+ */
+public class SerialBuzzerSource implements BuzzerSource {
+
+	/** The ports we're normally going to use. */
+	public static final String PORT_NAMES[] = { "/dev/tty.usbserial-A9007UX1", // Mac OS X
+		"/dev/tty.usbserial-A700fkGp", "/dev/tty.usbmodem411", "/dev/ttyUSB0", // Linux
+		"COM3", // Windows
+	};
+
+	/** Milliseconds to block while waiting for port open */
+	private static final int TIME_OUT = 2000;
+
+	private final List<String> names;
+	private final int baud;
+	private SerialPort serialPort;
+	private InputStream input;
+	private OutputStream output;
+
+	/**
+	 * Use the first of the usual ports that exists
+	 *
+	 * @param baud
+	 *            the bits per second the box sends at
+	 */
+	public SerialBuzzerSource( int baud ) {
+		this( baud, PORT_NAMES );
+	}
+
+	/**
+	 * Use the first of some ports that exists
+	 *
+	 * @param baud
+	 *            the bits per second the box sends at
+	 * @param names
+	 *            the ports to look for, in order of preference
+	 */
+	public SerialBuzzerSource( int baud, String... names ) {
+		this.baud = baud;
+		this.names = Arrays.asList( names );
+	}
+
+	public void open() throws IOException {
+		CommPortIdentifier portId = null;
+		List<String> seen = new ArrayList<String>();
+		@SuppressWarnings( "unchecked" )
+		Enumeration<CommPortIdentifier> portEnum = (Enumeration<CommPortIdentifier>) CommPortIdentifier.getPortIdentifiers();
+
+		// iterate through, looking for the port
+		while ( portEnum.hasMoreElements() ) {
+			CommPortIdentifier currPortId = portEnum.nextElement();
+			seen.add( currPortId.getName() );
+			int i = names.indexOf( currPortId.getName() );
+			if ( i != -1
+				&& (portId == null || i < names.indexOf( portId.getName() )) )
+				portId = currPortId;
+		}
+		if ( portId == null )
+			throw new IOException( "Could not find COM port, options were: "
+				+ seen );
+
+		try {
+			// open serial port, and use class name for the appName.
+			serialPort = (SerialPort) portId.open( getClass().getName(),
+				TIME_OUT );
+			serialPort.setSerialPortParams( baud, SerialPort.DATABITS_8,
+				SerialPort.STOPBITS_1, SerialPort.PARITY_NONE );
+			// return from a read as soon as any byte is there
+			serialPort.enableReceiveThreshold( 1 );
+			input = serialPort.getInputStream();
+			output = serialPort.getOutputStream();
+		} catch ( Exception e ) {
+			close();
+			throw new IOException( "Could not open " + portId.getName(), e );
+		}
+	}
+
+	public InputStream getInputStream() {
+		return input;
+	}
+
+	public OutputStream getOutputStream() {
+		return output;
+	}
+
+	/**
+	 * This should be called when you stop using the port. This will prevent
+	 * port locking on platforms like Linux.
+	 */
+	public synchronized void close() {
+		if ( serialPort != null ) {
+			serialPort.close();
+			serialPort = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return serialPort != null ? serialPort.getName() : names.toString();
+	}
+
+}
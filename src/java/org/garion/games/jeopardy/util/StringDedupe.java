@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import org.garion.games.jeopardy.*;
+
+/**
+ * A fixed-size table that makes equal strings share one instance while
+ * games are loaded. Category names, the usual values and boilerplate text
+ * repeat across a question bank, and without this every copy would be kept
+ * on the heap.
+ * <p>
+ * Strings are placed by their content hash into a table of two-slot sets.
+ * A new string goes into the first slot of its set and the older one moves
+ * to the second, so the table never grows: rare strings are pushed out
+ * while common ones keep being found. Unlike {@link String#intern()}
+ * nothing outlives the table, so one is made for each load (or batch of
+ * loads) and dropped afterwards.
+ *
+ * @author martin@mbs3.org
+ */
+public final class StringDedupe {
+
+	/** The default number of slots */
+	public static final int DEFAULT_SLOTS = 1 << 13;
+
+	private final String[] table;
+	private final int mask;
+	private long lookups;
+	private long hits;
+	private long bytesSaved;
+
+	/**
+	 * Create a table with {@link #DEFAULT_SLOTS} slots
+	 */
+	public StringDedupe() {
+		this( DEFAULT_SLOTS );
+	}
+
+	/**
+	 * Create a table
+	 *
+	 * @param slots
+	 *            the number of strings it can hold, rounded up to a power of
+	 *            two (at least 2)
+	 */
+	public StringDedupe( int slots ) {
+		int n = Integer.highestOneBit( Math.max( 2, slots ) - 1 ) << 1;
+		table = new String[ n ];
+		mask = n - 2;
+	}
+
+	/**
+	 * Get the shared instance of a string
+	 *
+	 * @param s
+	 *            the string, may be {@code null}
+	 * @return an equal string seen earlier, or {@code s} itself
+	 */
+	public synchronized String dedupe( String s ) {
+		if ( s == null )
+			return null;
+		++lookups;
+		int h = s.hashCode();
+		int i = (h ^ (h >>> 16)) & mask;
+		for ( int j = i; j < i + 2; j++ ) {
+			String t = table[j];
+			if ( t != null && t != s && t.hashCode() == h && t.equals( s ) ) {
+				++hits;
+				bytesSaved += weigh( s );
+				return t;
+			}
+			if ( t == s )
+				return t;
+		}
+		table[i + 1] = table[i];
+		table[i] = s;
+		return s;
+	}
+
+	/**
+	 * Replace every string of a game with its shared instance. This reads
+	 * all entry text, so it is meant for eagerly loaded games, not for lazy
+	 * ones from a {@link GameBank}.
+	 *
+	 * @param g
+	 *            the game
+	 * @return the game
+	 */
+	public Game dedupe( Game g ) {
+		if ( g == null )
+			return null;
+		g.title = dedupe( g.title );
+		g.subject = dedupe( g.subject );
+		if ( g.f != null ) {
+			g.f.name = dedupe( g.f.name );
+			dedupe( g.f.entry );
+		}
+		if ( g.rounds == null )
+			return g;
+		for ( Round r : g.rounds ) {
+			if ( r == null )
+				continue;
+			r.name = dedupe( r.name );
+			if ( r.categories == null )
+				continue;
+			for ( Category c : r.categories ) {
+				if ( c == null )
+					continue;
+				c.name = dedupe( c.name );
+				if ( c.values != null ) {
+					for ( int i = 0; i < c.values.length; i++ )
+						c.values[i] = dedupe( c.values[i] );
+				}
+				if ( c.entries != null ) {
+					for ( Entry e : c.entries )
+						dedupe( e );
+				}
+			}
+		}
+		return g;
+	}
+
+	private void dedupe( Entry e ) {
+		if ( e == null )
+			return;
+		e.setAnswer( dedupe( e.getAnswer() ) );
+		e.setQuestion( dedupe( e.getQuestion() ) );
+	}
+
+	/**
+	 * @return the number of strings looked up
+	 */
+	public synchronized long getLookups() {
+		return lookups;
+	}
+
+	/**
+	 * @return the number of lookups that found an equal string
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Get an estimate of the heap saved: for every duplicate dropped, the
+	 * size of a string object plus two bytes per character
+	 *
+	 * @return the bytes saved
+	 */
+	public synchronized long getBytesSaved() {
+		return bytesSaved;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format( "%d lookups, %d duplicates, ~%d KB saved",
+			lookups, hits, bytesSaved / 1024 );
+	}
+
+	private static long weigh( String s ) {
+		return 40 + 2L * s.length();
+	}
+
+}
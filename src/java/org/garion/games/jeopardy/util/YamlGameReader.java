@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.garion.games.jeopardy.*;
+import yaml.parser.ParserEvent;
+import yaml.parser.SyntaxException;
+import yaml.parser.YamlParser;
+
+/**
+ * Streaming YAML reader for games. Listens to the raw parser events from
+ * JYaml and fills in the {@link Game} model as they arrive, without the
+ * reflective bean mapping or intermediate object tree of
+ * {@link org.ho.yaml.Yaml#loadType(java.io.File, Class)}. Every document in
+ * the stream becomes one game.
+ *
+ * @author martin@mbs3.org
+ */
+public class YamlGameReader implements ParserEvent {
+
+	// frame kinds
+	private static final int GAME = 0;
+	private static final int ROUND = 1;
+	private static final int CATEGORY = 2;
+	private static final int ENTRY = 3;
+	private static final int FINAL = 4;
+	private static final int ROUNDS = 5;
+	private static final int CATEGORIES = 6;
+	private static final int ENTRIES = 7;
+	private static final int VALUES = 8;
+	private static final int SKIP = 9;
+
+	/** An object or list being filled in */
+	private static final class Frame {
+
+		final int kind;
+		final Object target;
+		final List<Object> items;
+		String key;
+		boolean separated;
+
+		Frame( int kind, Object target ) {
+			this.kind = kind;
+			this.target = target;
+			this.items = kind >= ROUNDS && kind <= VALUES ? new ArrayList<Object>()
+				: null;
+		}
+	}
+
+	private final StringDedupe dedupe;
+	private final List<Game> games = new ArrayList<Game>();
+	private final Map<String, Object> anchors = new HashMap<String, Object>();
+	private final ArrayList<Frame> stack = new ArrayList<Frame>();
+	private String anchor;
+	private int skipDepth;
+	private Exception error;
+	private int errorLine;
+
+	/**
+	 * Read every game in a YAML stream
+	 *
+	 * @param in
+	 *            the reader (not closed)
+	 * @return the games, in document order, with sizes verified
+	 * @throws IOException
+	 *             if reading fails or the document is malformed
+	 */
+	public static List<Game> read( Reader in ) throws IOException {
+		return read( in, new StringDedupe() );
+	}
+
+	/**
+	 * Read every game in a YAML stream, sharing repeated strings through the
+	 * given table as they are parsed
+	 *
+	 * @param in
+	 *            the reader (not closed)
+	 * @param dedupe
+	 *            the string table
+	 * @return the games, in document order, with sizes verified
+	 * @throws IOException
+	 *             if reading fails or the document is malformed
+	 */
+	public static List<Game> read( Reader in, StringDedupe dedupe )
+		throws IOException {
+		YamlGameReader r = new YamlGameReader( dedupe );
+		YamlParser p = new YamlParser( in, r );
+		try {
+			p.parse();
+		} catch ( SyntaxException se ) {
+			throw new IOException( "YAML syntax error at line " + se.line
+				+ ": " + se.getMessage(), se );
+		}
+		if ( r.error != null )
+			throw new IOException( "YAML error at line " + r.errorLine + ": "
+				+ r.error.getMessage(), r.error );
+		for ( Game g : r.games )
+			g.verifySize();
+		return r.games;
+	}
+
+	private YamlGameReader( StringDedupe dedupe ) {
+		this.dedupe = dedupe;
+	}
+
+	private Frame top() {
+		return stack.get( stack.size() - 1 );
+	}
+
+	private Frame pop() {
+		return stack.remove( stack.size() - 1 );
+	}
+
+	public void event( int e ) {
+		if ( skipDepth > 0 ) {
+			if ( e == YamlParser.MAP_OPEN || e == YamlParser.LIST_OPEN )
+				++skipDepth;
+			else if ( e == YamlParser.MAP_CLOSE || e == YamlParser.LIST_CLOSE )
+				--skipDepth;
+			return;
+		}
+		switch ( e ) {
+			case YamlParser.DOCUMENT_HEADER:
+				stack.clear();
+				anchors.clear();
+				anchor = null;
+				break;
+			case YamlParser.MAP_SEPARATOR:
+				if ( !stack.isEmpty() )
+					top().separated = true;
+				break;
+			case YamlParser.MAP_OPEN:
+				open( true );
+				break;
+			case YamlParser.LIST_OPEN:
+				open( false );
+				break;
+			case YamlParser.MAP_CLOSE:
+			case YamlParser.LIST_CLOSE:
+				if ( !stack.isEmpty() )
+					close( pop() );
+				break;
+		}
+	}
+
+	public void event( String s ) {}
+
+	public void property( String type, String value ) {
+		if ( skipDepth == 0 && "anchor".equals( type ) )
+			anchor = value.substring( 1 );
+	}
+
+	public void content( String type, String value ) {
+		if ( skipDepth > 0 )
+			return;
+		Object v;
+		if ( "alias".equals( type ) )
+			v = anchors.get( value.substring( 1 ) );
+		else if ( "value".equals( type )
+			&& ("~".equals( value ) || "null".equals( value )) )
+			v = null;
+		else
+			v = value;
+		if ( anchor != null ) {
+			anchors.put( anchor, v );
+			anchor = null;
+		}
+		if ( stack.isEmpty() )
+			return;
+		Frame f = top();
+		if ( f.items != null ) {
+			f.items.add( shared( v ) );
+		} else if ( f.key == null || !f.separated ) {
+			f.key = value;
+			f.separated = false;
+		} else {
+			assign( f, shared( v ) );
+			f.key = null;
+			f.separated = false;
+		}
+	}
+
+	// only strings that end up in the game go through the table, not keys
+	private Object shared( Object v ) {
+		return v instanceof String ? dedupe.dedupe( (String) v ) : v;
+	}
+
+	public void error( Exception e, int line ) {
+		if ( error == null ) {
+			error = e;
+			errorLine = line;
+		}
+	}
+
+	// start a map or list, typed by the key or list it belongs to
+	private void open( boolean map ) {
+		int kind;
+		if ( stack.isEmpty() ) {
+			kind = map ? GAME : SKIP;
+		} else {
+			Frame f = top();
+			kind = childKind( f );
+			if ( map != (kind <= FINAL) )
+				kind = SKIP;
+		}
+		if ( kind == SKIP ) {
+			anchor = null;
+			skipDepth = 1;
+			return;
+		}
+		Object target;
+		switch ( kind ) {
+			case GAME:
+				target = new Game();
+				break;
+			case ROUND:
+				target = new Round();
+				break;
+			case CATEGORY:
+				target = new Category();
+				break;
+			case ENTRY:
+				target = new Entry();
+				break;
+			case FINAL:
+				target = new Final();
+				break;
+			default:
+				target = null;
+		}
+		if ( anchor != null ) {
+			anchors.put( anchor, target );
+			anchor = null;
+		}
+		stack.add( new Frame( kind, target ) );
+	}
+
+	private static int childKind( Frame f ) {
+		switch ( f.kind ) {
+			case ROUNDS:
+				return ROUND;
+			case CATEGORIES:
+				return CATEGORY;
+			case ENTRIES:
+				return ENTRY;
+			case VALUES:
+				return SKIP;
+		}
+		String k = f.key;
+		if ( k == null )
+			return SKIP;
+		switch ( f.kind ) {
+			case GAME:
+				if ( k.equals( "rounds" ) )
+					return ROUNDS;
+				if ( k.equals( "f" ) || k.equals( "finalRound" ) )
+					return FINAL;
+				break;
+			case ROUND:
+				if ( k.equals( "categories" ) )
+					return CATEGORIES;
+				break;
+			case CATEGORY:
+				if ( k.equals( "entries" ) )
+					return ENTRIES;
+				if ( k.equals( "values" ) )
+					return VALUES;
+				break;
+			case FINAL:
+				if ( k.equals( "entry" ) )
+					return ENTRY;
+				break;
+		}
+		return SKIP;
+	}
+
+	// finish a map or list and hand it to its parent
+	private void close( Frame done ) {
+		Object v = done.target;
+		switch ( done.kind ) {
+			case ROUNDS:
+				v = done.items.toArray( new Round[ done.items.size() ] );
+				break;
+			case CATEGORIES:
+				v = done.items.toArray( new Category[ done.items.size() ] );
+				break;
+			case ENTRIES:
+				v = done.items.toArray( new Entry[ done.items.size() ] );
+				break;
+			case VALUES:
+				v = done.items.toArray( new String[ done.items.size() ] );
+				break;
+		}
+		if ( stack.isEmpty() ) {
+			if ( done.kind == GAME )
+				games.add( (Game) v );
+			return;
+		}
+		Frame parent = top();
+		if ( parent.items != null ) {
+			parent.items.add( v );
+		} else {
+			assign( parent, v );
+			parent.key = null;
+			parent.separated = false;
+		}
+	}
+
+	// set the value of the current key on a map frame
+	private void assign( Frame f, Object v ) {
+		String k = f.key;
+		try {
+			switch ( f.kind ) {
+				case GAME:
+					Game g = (Game) f.target;
+					if ( k.equals( "title" ) )
+						g.setTitle( (String) v );
+					else if ( k.equals( "subject" ) )
+						g.setSubject( (String) v );
+					else if ( k.equals( "rounds" ) )
+						g.rounds = (Round[]) v;
+					else if ( k.equals( "f" ) || k.equals( "finalRound" ) )
+						g.setFinalRound( (Final) v );
+					break;
+				case ROUND:
+					Round r = (Round) f.target;
+					if ( k.equals( "name" ) )
+						r.setName( (String) v );
+					else if ( k.equals( "categories" ) )
+						r.categories = (Category[]) v;
+					break;
+				case CATEGORY:
+					Category c = (Category) f.target;
+					if ( k.equals( "name" ) )
+						c.setName( (String) v );
+					else if ( k.equals( "values" ) )
+						c.values = (String[]) v;
+					else if ( k.equals( "entries" ) )
+						c.entries = (Entry[]) v;
+					break;
+				case ENTRY:
+					Entry e = (Entry) f.target;
+					if ( k.equals( "answer" ) )
+						e.setAnswer( (String) v );
+					else if ( k.equals( "question" ) )
+						e.setQuestion( (String) v );
+					break;
+				case FINAL:
+					Final fin = (Final) f.target;
+					if ( k.equals( "name" ) )
+						fin.setName( (String) v );
+					else if ( k.equals( "entry" ) )
+						fin.setEntry( (Entry) v );
+					break;
+			}
+		} catch ( ClassCastException cce ) {
+			error( new IOException( "Unexpected value for '" + k + "'" ), 0 );
+		}
+	}
+
+}
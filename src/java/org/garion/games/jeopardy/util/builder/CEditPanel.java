@@ -68,15 +68,20 @@ public class CEditPanel extends JPanel {
 	 */
 	public void setCategory( Category c ) {
 		this.c = c;
-		label.setText( "<html>" + c.getName() + "</html>" );
+		if ( c == null )
+			label.setText( "" );
+		else
+			label.setText( "<html>" + c.getName() + "</html>" );
 	}
 
 	private MouseAdapter listener = new MouseAdapter() {
 
 		public void mouseClicked( MouseEvent evt ) {
+			if ( c == null )
+				return;
 			String ret = CategoryEditDialog.showDialog( label, c );
-			if ( ret != null && !ret.isEmpty() ) {
-				c.setName( ret );
+			if ( ret != null && !ret.isEmpty()
+				&& ep.getBuilder().getJournal().setCategoryName( c, ret ) ) {
 				label.setText( "<html>" + c.getName() + "</html>" );
 				ep.getBuilder().setChanged( true );
 			}
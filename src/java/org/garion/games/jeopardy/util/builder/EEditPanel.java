@@ -69,6 +69,12 @@ public class EEditPanel extends JPanel {
 	public void setEntry( Category c, Entry e ) {
 		this.c = c;
 		this.e = e;
+		if ( c == null || e == null ) {
+			// a category shorter than the rest of the round
+			label.setText( "" );
+			setToolTipText( null );
+			return;
+		}
 		label.setText( "$" + c.getValue( e ) );
 		setToolTipText( "<html><b>A:</b> " + e.getAnswer() + "<br /><b>Q:</b>"
 			+ e.getQuestion() + "</html>" );
@@ -77,22 +83,28 @@ public class EEditPanel extends JPanel {
 	private MouseAdapter adapter = new MouseAdapter() {
 
 		public void mouseClicked( MouseEvent evt ) {
-			String[] values = EntryEditDialog.showDialog( ep, c, e );
+			if ( c == null || e == null )
+				return;
+			String[] values = EntryEditDialog.showDialog( ep, c, e, ep
+				.getBuilder() );
+			EditJournal journal = ep.getBuilder().getJournal();
 			for ( int i = 0; i < values.length; i++ ) {
 				if ( values[i] == null )
 					continue;
+				boolean changed = false;
 				switch ( i ) {
 					case EntryEditDialog.VALUE:
-						c.setValue( e, values[i] );
+						changed = journal.setValue( c, e, values[i] );
 						break;
 					case EntryEditDialog.ANSWER:
-						e.setAnswer( values[i] );
+						changed = journal.setAnswer( c, e, values[i] );
 						break;
 					case EntryEditDialog.QUESTION:
-						e.setQuestion( values[i] );
+						changed = journal.setQuestion( c, e, values[i] );
 						break;
 				}
-				ep.getBuilder().setChanged( true );
+				if ( changed )
+					ep.getBuilder().setChanged( true );
 			}
 			setEntry( c, e );
 		}
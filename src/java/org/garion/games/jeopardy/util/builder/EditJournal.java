@@ -0,0 +1,512 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util.builder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import org.garion.games.jeopardy.*;
+import org.garion.games.jeopardy.util.AutosaveSession;
+import org.garion.games.jeopardy.util.IO;
+import org.garion.global.Global;
+
+/**
+ * Autosave journal for the game builder. Every edit is applied to the game
+ * and appended to a journal file as one small record, so the cost of an
+ * autosave is the size of the edit rather than the size of the game.
+ * <p>
+ * The journal sits next to a full snapshot of the game. The snapshot is
+ * written on the first edit after the journal is reset and rewritten
+ * whenever the journal has grown past {@link #COMPACT_RECORDS} records or
+ * {@link #COMPACT_BYTES} bytes, after which the journal is truncated. Every
+ * record sets a field to an absolute value, so replaying records that are
+ * already part of the snapshot is harmless and a crash during compaction
+ * loses nothing.
+ * <p>
+ * Record layout, all numbers big-endian:
+ *
+ * <pre>
+ * length   payload length
+ * payload  op, round, category, slot, text length (-1 for null), UTF-8 text
+ * crc      CRC-32 of the payload
+ * </pre>
+ *
+ * A torn or corrupt record ends the replay, since nothing after it can have
+ * been acknowledged.
+ * <p>
+ * Each builder keeps its files in its own {@link AutosaveSession}, so
+ * builders open at the same time never recover or delete each other's work.
+ *
+ * @author martin@mbs3.org
+ */
+public final class EditJournal implements Closeable {
+
+	/** Records appended before the journal is compacted into a snapshot */
+	public static final int COMPACT_RECORDS = 256;
+	/** Journal size in bytes at which it is compacted into a snapshot */
+	public static final long COMPACT_BYTES = 64L << 10;
+
+	private static final byte TITLE = 1;
+	private static final byte SUBJECT = 2;
+	private static final byte FINAL_NAME = 3;
+	private static final byte FINAL_ANSWER = 4;
+	private static final byte FINAL_QUESTION = 5;
+	private static final byte CATEGORY_NAME = 6;
+	private static final byte VALUE = 7;
+	private static final byte ANSWER = 8;
+	private static final byte QUESTION = 9;
+
+	private static final int MAX_RECORD = 1 << 20;
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	private static final String SNAPSHOT = ".jgb";
+	private static final String JOURNAL = ".journal";
+
+	private final AutosaveSession session;
+	private Game game;
+	private FileChannel channel;
+	private int records;
+
+	/**
+	 * Create a journal in the default directory
+	 * ({@code ~/.jeopardy/autosave})
+	 */
+	public EditJournal() {
+		this( new File( new File( System.getProperty( "user.home" ),
+			".jeopardy" ), "autosave" ) );
+	}
+
+	/**
+	 * Create a journal
+	 *
+	 * @param dir
+	 *            the directory holding the snapshot and journal files
+	 */
+	public EditJournal( File dir ) {
+		session = new AutosaveSession( dir, "builder" );
+	}
+
+	/**
+	 * Check for edits left behind by a session that did not end cleanly. A
+	 * session found is taken over by this journal; declining it with
+	 * {@link #reset(Game)} deletes it.
+	 *
+	 * @return whether {@link #recover()} has a game to return
+	 */
+	public boolean hasRecovery() {
+		return session.adopt( SNAPSHOT );
+	}
+
+	/**
+	 * Rebuild the game of an unfinished session from its snapshot and
+	 * journal. The recovered game becomes the journaled game.
+	 *
+	 * @return the recovered game, or {@code null} if there is nothing to
+	 *         recover
+	 * @throws IOException
+	 *             if the snapshot can't be read
+	 */
+	public Game recover() throws IOException {
+		if ( !hasRecovery() )
+			return null;
+		Game g = IO.loadBinary( session.file( SNAPSHOT ) );
+		File journal = session.file( JOURNAL );
+		if ( journal.isFile() ) {
+			DataInputStream in = new DataInputStream( new BufferedInputStream(
+				new FileInputStream( journal ) ) );
+			try {
+				replay( g, in );
+			} finally {
+				in.close();
+			}
+		}
+		close();
+		game = g;
+		compact();
+		return g;
+	}
+
+	/**
+	 * Start journaling a freshly loaded or saved game. Any earlier snapshot
+	 * and journal are discarded; the next edit writes a new snapshot.
+	 *
+	 * @param g
+	 *            the game being edited
+	 */
+	public void reset( Game g ) {
+		discard();
+		game = g;
+	}
+
+	/**
+	 * Delete the snapshot and journal, e.g. once the game has been saved
+	 */
+	public void discard() {
+		close();
+		if ( session.isHeld() ) {
+			// snapshot first: a journal without a snapshot is never replayed
+			session.file( SNAPSHOT ).delete();
+			session.release();
+		}
+		records = 0;
+	}
+
+	/**
+	 * Close the journal file. Edits after this reopen it.
+	 */
+	public void close() {
+		if ( channel != null ) {
+			try {
+				channel.close();
+			} catch ( IOException ioe ) {
+				ioe.printStackTrace();
+			}
+			channel = null;
+		}
+	}
+
+	/**
+	 * Set the game title
+	 *
+	 * @param title
+	 *            the new title
+	 * @return whether the title changed
+	 */
+	public boolean setTitle( String title ) {
+		if ( Global.same( game.title, title ) )
+			return false;
+		game.setTitle( title );
+		append( TITLE, -1, -1, -1, title );
+		return true;
+	}
+
+	/**
+	 * Set the game subject
+	 *
+	 * @param subject
+	 *            the new subject
+	 * @return whether the subject changed
+	 */
+	public boolean setSubject( String subject ) {
+		if ( Global.same( game.subject, subject ) )
+			return false;
+		game.setSubject( subject );
+		append( SUBJECT, -1, -1, -1, subject );
+		return true;
+	}
+
+	/**
+	 * Set the final jeopardy category
+	 *
+	 * @param name
+	 *            the new category name
+	 * @return whether the name changed
+	 */
+	public boolean setFinalName( String name ) {
+		if ( Global.same( game.f.name, name ) )
+			return false;
+		game.f.setName( name );
+		append( FINAL_NAME, -1, -1, -1, name );
+		return true;
+	}
+
+	/**
+	 * Set the final jeopardy answer
+	 *
+	 * @param answer
+	 *            the new answer
+	 * @return whether the answer changed
+	 */
+	public boolean setFinalAnswer( String answer ) {
+		if ( Global.same( game.f.entry.getAnswer(), answer ) )
+			return false;
+		game.f.entry.setAnswer( answer );
+		append( FINAL_ANSWER, -1, -1, -1, answer );
+		return true;
+	}
+
+	/**
+	 * Set the final jeopardy question
+	 *
+	 * @param question
+	 *            the new question
+	 * @return whether the question changed
+	 */
+	public boolean setFinalQuestion( String question ) {
+		if ( Global.same( game.f.entry.getQuestion(), question ) )
+			return false;
+		game.f.entry.setQuestion( question );
+		append( FINAL_QUESTION, -1, -1, -1, question );
+		return true;
+	}
+
+	/**
+	 * Rename a category
+	 *
+	 * @param c
+	 *            a category of the journaled game
+	 * @param name
+	 *            the new name
+	 * @return whether the name changed
+	 */
+	public boolean setCategoryName( Category c, String name ) {
+		if ( Global.same( c.name, name ) )
+			return false;
+		c.setName( name );
+		int[] at = locate( c, null );
+		append( CATEGORY_NAME, at[0], at[1], -1, name );
+		return true;
+	}
+
+	/**
+	 * Set the value of an entry
+	 *
+	 * @param c
+	 *            a category of the journaled game
+	 * @param e
+	 *            an entry of that category
+	 * @param value
+	 *            the new value
+	 * @return whether the value changed
+	 */
+	public boolean setValue( Category c, Entry e, String value ) {
+		if ( Global.same( c.getValue( e ), value ) )
+			return false;
+		c.setValue( e, value );
+		int[] at = locate( c, e );
+		append( VALUE, at[0], at[1], at[2], value );
+		return true;
+	}
+
+	/**
+	 * Set the answer of an entry
+	 *
+	 * @param c
+	 *            a category of the journaled game
+	 * @param e
+	 *            an entry of that category
+	 * @param answer
+	 *            the new answer
+	 * @return whether the answer changed
+	 */
+	public boolean setAnswer( Category c, Entry e, String answer ) {
+		if ( Global.same( e.getAnswer(), answer ) )
+			return false;
+		e.setAnswer( answer );
+		int[] at = locate( c, e );
+		append( ANSWER, at[0], at[1], at[2], answer );
+		return true;
+	}
+
+	/**
+	 * Set the question of an entry
+	 *
+	 * @param c
+	 *            a category of the journaled game
+	 * @param e
+	 *            an entry of that category
+	 * @param question
+	 *            the new question
+	 * @return whether the question changed
+	 */
+	public boolean setQuestion( Category c, Entry e, String question ) {
+		if ( Global.same( e.getQuestion(), question ) )
+			return false;
+		e.setQuestion( question );
+		int[] at = locate( c, e );
+		append( QUESTION, at[0], at[1], at[2], question );
+		return true;
+	}
+
+	/**
+	 * Get the number of records in the journal since the last snapshot
+	 *
+	 * @return the record count
+	 */
+	public int getRecords() {
+		return records;
+	}
+
+	// find round, category and slot indexes by identity
+	private int[] locate( Category c, Entry e ) {
+		for ( int r = 0; r < game.rounds.length; r++ ) {
+			Category[] cs = game.rounds[r].categories;
+			for ( int ci = 0; ci < cs.length; ci++ ) {
+				if ( cs[ci] != c )
+					continue;
+				int slot = -1;
+				if ( e != null ) {
+					for ( int s = 0; s < c.entries.length; s++ ) {
+						if ( c.entries[s] == e ) {
+							slot = s;
+							break;
+						}
+					}
+				}
+				return new int[] { r, ci, slot };
+			}
+		}
+		throw new IllegalArgumentException( "Category is not part of the game" );
+	}
+
+	// autosave is best effort: a failed write must not lose the edit itself
+	private void append( byte op, int round, int cat, int slot, String text ) {
+		try {
+			if ( channel == null ) {
+				if ( session.isHeld() && session.file( SNAPSHOT ).isFile() ) {
+					channel = open( StandardOpenOption.APPEND );
+				} else {
+					compact();
+					return;
+				}
+			}
+			channel.write( encode( op, round, cat, slot, text ) );
+			channel.force( false );
+			++records;
+			if ( records >= COMPACT_RECORDS || channel.size() >= COMPACT_BYTES )
+				compact();
+		} catch ( IOException ioe ) {
+			ioe.printStackTrace();
+			close();
+		}
+	}
+
+	// write a full snapshot, then start an empty journal
+	private void compact() throws IOException {
+		close();
+		session.claim();
+		IO.dumpBinary( game, session.file( SNAPSHOT ) );
+		channel = open( StandardOpenOption.TRUNCATE_EXISTING );
+		records = 0;
+	}
+
+	private FileChannel open( StandardOpenOption mode ) throws IOException {
+		return FileChannel.open( session.file( JOURNAL ).toPath(),
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode );
+	}
+
+	private static ByteBuffer encode( byte op, int round, int cat, int slot,
+		String text ) {
+		byte[] t = text == null ? null : text.getBytes( UTF8 );
+		int length = 1 + 4 * 4 + (t == null ? 0 : t.length);
+		ByteBuffer b = ByteBuffer.allocate( 4 + length + 4 );
+		b.putInt( length );
+		b.put( op );
+		b.putInt( round );
+		b.putInt( cat );
+		b.putInt( slot );
+		if ( t == null ) {
+			b.putInt( -1 );
+		} else {
+			b.putInt( t.length );
+			b.put( t );
+		}
+		CRC32 crc = new CRC32();
+		crc.update( b.array(), 4, length );
+		b.putInt( (int) crc.getValue() );
+		b.flip();
+		return b;
+	}
+
+	private static void replay( Game g, DataInputStream in ) throws IOException {
+		CRC32 crc = new CRC32();
+		while ( true ) {
+			int length;
+			byte[] payload;
+			try {
+				length = in.readInt();
+				if ( length < 17 || length > MAX_RECORD )
+					return;
+				payload = new byte[ length ];
+				in.readFully( payload );
+				crc.reset();
+				crc.update( payload );
+				if ( in.readInt() != (int) crc.getValue() )
+					return;
+			} catch ( EOFException eofe ) {
+				// torn final record
+				return;
+			}
+			ByteBuffer b = ByteBuffer.wrap( payload );
+			byte op = b.get();
+			int round = b.getInt();
+			int cat = b.getInt();
+			int slot = b.getInt();
+			int n = b.getInt();
+			if ( n > b.remaining() )
+				return;
+			String text = n < 0 ? null : new String( payload, b.position(), n,
+				UTF8 );
+			apply( g, op, round, cat, slot, text );
+		}
+	}
+
+	// records that no longer fit the game are skipped
+	private static void apply( Game g, byte op, int round, int cat, int slot,
+		String text ) {
+		switch ( op ) {
+			case TITLE:
+				g.setTitle( text );
+				return;
+			case SUBJECT:
+				g.setSubject( text );
+				return;
+		}
+		if ( op <= FINAL_QUESTION ) {
+			if ( g.f == null )
+				return;
+			if ( op == FINAL_NAME )
+				g.f.setName( text );
+			else if ( g.f.entry != null && op == FINAL_ANSWER )
+				g.f.entry.setAnswer( text );
+			else if ( g.f.entry != null && op == FINAL_QUESTION )
+				g.f.entry.setQuestion( text );
+			return;
+		}
+		if ( g.rounds == null || round < 0 || round >= g.rounds.length
+			|| g.rounds[round] == null )
+			return;
+		Category[] cs = g.rounds[round].categories;
+		if ( cs == null || cat < 0 || cat >= cs.length || cs[cat] == null )
+			return;
+		Category c = cs[cat];
+		if ( op == CATEGORY_NAME ) {
+			c.setName( text );
+			return;
+		}
+		if ( slot < 0 || slot >= c.entries.length )
+			return;
+		switch ( op ) {
+			case VALUE:
+				c.values[slot] = text;
+				c.reindex();
+				break;
+			case ANSWER:
+				if ( c.entries[slot] != null )
+					c.entries[slot].setAnswer( text );
+				break;
+			case QUESTION:
+				if ( c.entries[slot] != null )
+					c.entries[slot].setQuestion( text );
+				break;
+		}
+	}
+
+}
@@ -19,7 +19,10 @@ package org.garion.games.jeopardy.util.builder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
 import javax.swing.*;
+import org.garion.games.jeopardy.Category;
 import org.garion.games.jeopardy.Game;
 import org.garion.games.jeopardy.Round;
 import org.garion.games.jeopardy.util.Const;
@@ -89,14 +92,23 @@ public class EditPanel extends JPanel {
 		return builder.getGame();
 	}
 
-	private void loadRound( int round ) {
+	/**
+	 * Show a round of the game for editing. The grid is sized to the round.
+	 * 
+	 * @param round
+	 *            the round number
+	 */
+	public void loadRound( int round ) {
 		this.round = round;
-		Round r = game().rounds[round];
-		for ( int y = 0; y < cats.length; y++ ) {
-			cats[y].setCategory( r.categories[y] );
-			for ( int x = 0; x < entries[y].length; x++ ) {
-				entries[y][x].setEntry( r.categories[x],
-					r.categories[x].entries[y] );
+		Round r = round < game().rounds.length ? game().rounds[round] : null;
+		if ( r == null )
+			r = new Round();
+		sizeGrid( r );
+		for ( int x = 0; x < cats.length; x++ ) {
+			Category c = r.categories[x];
+			cats[x].setCategory( c );
+			for ( int y = 0; y < entries.length; y++ ) {
+				entries[y][x].setEntry( c, Category.entryAt( c, y ) );
 			}
 		}
 	}
@@ -116,22 +128,36 @@ public class EditPanel extends JPanel {
 	}
 
 	private void createGridPanel() {
-		grid = new JPanel( new GridLayout( 6, 5 ) );
-		cats = new CEditPanel[ 5 ];
-		entries = new EEditPanel[ 5 ][ 5 ];
+		grid = new JPanel();
+		cats = new CEditPanel[ 0 ];
+		entries = new EEditPanel[ 0 ][ 0 ];
+		loadRound( round );
+	}
+
+	// rebuild the tiles if the round has a different size than the grid
+	private void sizeGrid( Round r ) {
+		int columns = r.categories.length;
+		int rows = r.rows();
+		if ( columns == cats.length && rows == entries.length )
+			return;
+		grid.removeAll();
+		grid.setLayout( new GridLayout( rows + 1, Math.max( 1, columns ) ) );
+		cats = new CEditPanel[ columns ];
+		entries = new EEditPanel[ rows ][ columns ];
 		for ( int i = 0; i < cats.length; i++ ) {
-			cats[i] = new CEditPanel(
-				game().rounds[Const.SINGLEROUND].categories[i], this );
+			cats[i] = new CEditPanel( r.categories[i], this );
 			grid.add( cats[i] );
 		}
-		Round r = game().rounds[round];
-		for ( int y = 0; y < cats.length; y++ ) {
-			for ( int x = 0; x < entries[y].length; x++ ) {
-				entries[y][x] = new EEditPanel( r.categories[x],
-					r.categories[x].entries[y], this );
+		for ( int y = 0; y < entries.length; y++ ) {
+			for ( int x = 0; x < cats.length; x++ ) {
+				Category c = r.categories[x];
+				entries[y][x] = new EEditPanel( c, Category.entryAt( c, y ),
+					this );
 				grid.add( entries[y][x] );
 			}
 		}
+		grid.revalidate();
+		grid.repaint();
 	}
 
 	/**
@@ -154,22 +180,31 @@ public class EditPanel extends JPanel {
 
 			public void actionPerformed( ActionEvent evt ) {
 				String[] values = EntryEditDialog.showDialog( fieldPanel,
-					game().f );
+					game().f, builder );
+				EditJournal journal = builder.getJournal();
 				for ( int i = 0; i < values.length; i++ ) {
 					if ( values[i] == null )
 						continue;
+					boolean changed = false;
 					switch ( i ) {
 						case EntryEditDialog.ANSWER:
-							game().f.entry.setAnswer( values[i] );
+							changed = journal.setFinalAnswer( values[i] );
 							break;
 						case EntryEditDialog.QUESTION:
-							game().f.entry.setQuestion( values[i] );
+							changed = journal.setFinalQuestion( values[i] );
 							break;
 					}
-					builder.setChanged( true );
+					if ( changed )
+						builder.setChanged( true );
 				}
 			}
 		} );
+		gameTitleField.addActionListener( fieldListener );
+		gameTitleField.addFocusListener( fieldListener );
+		gameSubjectField.addActionListener( fieldListener );
+		gameSubjectField.addFocusListener( fieldListener );
+		finalCatField.addActionListener( fieldListener );
+		finalCatField.addFocusListener( fieldListener );
 		Layout.addItem( 0, 0, 0.50, 0.25, 1, 1, 0, fieldPanel, gc, new JLabel(
 			"Game Title: " ) );
 		Layout.addItem( 0, 1, 0.50, 0.75, 1, 1, 0, fieldPanel, gc,
@@ -185,4 +220,31 @@ public class EditPanel extends JPanel {
 		Layout.addItem( 3, 0, 0.50, 1.00, 2, 1, 1, fieldPanel, gc, finalButton );
 	}
 
+	/**
+	 * Copy the title, subject and final category fields into the game
+	 */
+	public void commitFields() {
+		EditJournal journal = builder.getJournal();
+		boolean changed = journal.setTitle( gameTitleField.getText() );
+		changed |= journal.setSubject( gameSubjectField.getText() );
+		changed |= journal.setFinalName( finalCatField.getText() );
+		if ( changed )
+			builder.setChanged( true );
+	}
+
+	// commit a field when the user presses enter or leaves it
+	private class FieldListener extends FocusAdapter implements ActionListener {
+
+		public void actionPerformed( ActionEvent evt ) {
+			commitFields();
+		}
+
+		@Override
+		public void focusLost( FocusEvent evt ) {
+			commitFields();
+		}
+	}
+
+	private FieldListener fieldListener = new FieldListener();
+
 }
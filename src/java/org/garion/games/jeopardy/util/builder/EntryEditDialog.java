@@ -42,6 +42,8 @@ public class EntryEditDialog extends JDialog implements ActionListener {
 	private static EntryEditDialog dialog;
 	private static String[] values = null;
 
+	private GameBuilder builder;
+	private String original;
 	private GridBoxLayoutHandler handler;
 	private JPanel main;
 	private JTabbedPane tab;
@@ -59,9 +61,28 @@ public class EntryEditDialog extends JDialog implements ActionListener {
 	 * @return new values
 	 */
 	public static String[] showDialog( Component frameComp, Final f ) {
+		return showDialog( frameComp, f, null );
+	}
+
+	/**
+	 * Show the dialog, checking a changed answer against the builder's
+	 * question bank before accepting it
+	 * 
+	 * @param frameComp
+	 *            the component calling this dialog
+	 * @param f
+	 *            the Final entry being edited
+	 * @param builder
+	 *            the game builder, or {@code null} for no check
+	 * @return new values
+	 * @see GameBuilder#confirmAnswer(Component, String)
+	 */
+	public static String[] showDialog( Component frameComp, Final f,
+		GameBuilder builder ) {
 		values = new String[ 3 ];
 		Frame frame = JOptionPane.getFrameForComponent( frameComp );
 		dialog = new EntryEditDialog( frame, f );
+		dialog.builder = builder;
 		dialog.setVisible( true );
 		return values;
 	}
@@ -78,9 +99,30 @@ public class EntryEditDialog extends JDialog implements ActionListener {
 	 * @return the new values
 	 */
 	public static String[] showDialog( Component frameComp, Category c, Entry e ) {
+		return showDialog( frameComp, c, e, null );
+	}
+
+	/**
+	 * Show the dialog, checking a changed answer against the builder's
+	 * question bank before accepting it
+	 * 
+	 * @param frameComp
+	 *            the component calling this dialog
+	 * @param c
+	 *            the category
+	 * @param e
+	 *            the entry to edit
+	 * @param builder
+	 *            the game builder, or {@code null} for no check
+	 * @return the new values
+	 * @see GameBuilder#confirmAnswer(Component, String)
+	 */
+	public static String[] showDialog( Component frameComp, Category c,
+		Entry e, GameBuilder builder ) {
 		values = new String[ 3 ];
 		Frame frame = JOptionPane.getFrameForComponent( frameComp );
 		dialog = new EntryEditDialog( frame, c, e );
+		dialog.builder = builder;
 		dialog.setVisible( true );
 		return values;
 	}
@@ -94,7 +136,8 @@ public class EntryEditDialog extends JDialog implements ActionListener {
 		JLabel valueLabel = new JLabel( "Value: " );
 		valueField = new JTextField( value );
 		valueField.setColumns( 6 );
-		answerField = new JTextArea( e.getAnswer() );
+		original = e.getAnswer();
+		answerField = new JTextArea( original );
 		questionField = new JTextArea( e.getQuestion() );
 		answerField.setLineWrap( true );
 		answerField.setWrapStyleWord( true );
@@ -153,8 +196,16 @@ public class EntryEditDialog extends JDialog implements ActionListener {
 	@Override
 	public void actionPerformed( ActionEvent e ) {
 		if ( e.getActionCommand().equals( "OK" ) ) {
-			setValues( valueField.getText().trim(), answerField.getText()
-				.trim(), questionField.getText().trim() );
+			String answer = answerField.getText().trim();
+			// a near-duplicate answer goes back for editing unless kept
+			if ( builder != null && !answer.equals( original )
+				&& !builder.confirmAnswer( this, answer ) ) {
+				tab.setSelectedIndex( 0 );
+				answerField.requestFocusInWindow();
+				return;
+			}
+			setValues( valueField.getText().trim(), answer, questionField
+				.getText().trim() );
 		} else {
 			setValues( null, null, null );
 		}
@@ -17,11 +17,20 @@
 package org.garion.games.jeopardy.util.builder;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.GridLayout;
 import java.awt.event.*;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import javax.swing.*;
+import org.garion.games.jeopardy.Category;
 import org.garion.games.jeopardy.Game;
+import org.garion.games.jeopardy.Round;
+import org.garion.games.jeopardy.ui.ArchiveChooser;
+import org.garion.games.jeopardy.util.BackgroundSaver;
+import org.garion.games.jeopardy.util.DuplicateFinder;
+import org.garion.games.jeopardy.util.GameSnapshot;
 import org.garion.games.jeopardy.util.IO;
 import org.garion.games.jeopardy.util.UnsupportedFileTypeException;
 import org.garion.global.Global;
@@ -40,8 +49,14 @@ public class GameBuilder {
 	private static final int CANCEL = JOptionPane.CANCEL_OPTION;
 
 	private Game game;
+	private GameSnapshot snapshot;
 	private boolean changed = false;
+	private final BackgroundSaver.Tracker saves = new BackgroundSaver.Tracker(
+		BackgroundSaver.shared() );
+	private final EditJournal journal = new EditJournal();
 	private boolean standalone;
+	private File current;
+	private DuplicateFinder bank;
 
 	private JFrame frame;
 	private JPanel main;
@@ -52,9 +67,8 @@ public class GameBuilder {
 	// menu
 	JMenuBar menuBar;
 	JMenu file;
-	JMenuItem newGame, save, open, exit;
+	JMenuItem newGame, newCustom, save, open, checkBank, exit;
 	JMenu round;
-	JMenuItem singleRound, doubleRound;
 
 	/**
 	 * Create game builder
@@ -67,6 +81,7 @@ public class GameBuilder {
 		Global.setSystemUI();
 		this.standalone = standalone;
 		game = Game.createDefaultGame();
+		boolean recovered = recover();
 		chooser = new JFileChooser();
 		chooser.setFileFilter( IO.ext );
 		frame = new JFrame( "Jeopardy Game Builder" );
@@ -87,6 +102,30 @@ public class GameBuilder {
 		frame.setLocationRelativeTo( null );
 		frame.setVisible( true );
 		createMenuBar();
+		if ( recovered )
+			setChanged( true );
+	}
+
+	// offer the edits journaled by a session that did not end cleanly
+	private boolean recover() {
+		if ( journal.hasRecovery() ) {
+			int r = JOptionPane.showConfirmDialog( null,
+				"The game builder did not close cleanly last time.\n"
+					+ "Recover the unsaved game?", "Recover",
+				JOptionPane.YES_NO_OPTION );
+			if ( r == YES ) {
+				try {
+					game = journal.recover();
+					return true;
+				} catch ( IOException ioe ) {
+					JOptionPane.showMessageDialog( null,
+						"Exception recovering game. " + ioe.getMessage(),
+						"Error", JOptionPane.ERROR_MESSAGE );
+				}
+			}
+		}
+		journal.reset( game );
+		return false;
 	}
 
 	private void createMenuBar() {
@@ -94,27 +133,29 @@ public class GameBuilder {
 		menuBar = new JMenuBar();
 		file = new JMenu( "File" );
 		newGame = new JMenuItem( "New" );
+		newCustom = new JMenuItem( "New Custom Size..." );
 		open = new JMenuItem( "Open" );
 		save = new JMenuItem( "Save" );
+		checkBank = new JMenuItem( "Check Against Bank..." );
 		exit = new JMenuItem( "Exit" );
 		round = new JMenu( "Select Round" );
-		singleRound = new JMenuItem( "Single Jeopardy" );
-		doubleRound = new JMenuItem( "Double Jeopardy" );
+		fillRoundMenu();
 		// listeners
 		newGame.addActionListener( menuListener );
+		newCustom.addActionListener( menuListener );
 		open.addActionListener( menuListener );
 		save.addActionListener( menuListener );
+		checkBank.addActionListener( menuListener );
 		exit.addActionListener( menuListener );
-		singleRound.addActionListener( menuListener );
-		doubleRound.addActionListener( menuListener );
 		// add
 		file.add( newGame );
+		file.add( newCustom );
 		file.add( open );
 		file.add( save );
 		file.addSeparator();
+		file.add( checkBank );
+		file.addSeparator();
 		file.add( exit );
-		round.add( singleRound );
-		round.add( doubleRound );
 		menuBar.add( file );
 		menuBar.add( round );
 		frame.setJMenuBar( menuBar );
@@ -127,19 +168,43 @@ public class GameBuilder {
 			InputEvent.CTRL_DOWN_MASK ) );
 		exit.setAccelerator( KeyStroke.getKeyStroke( 'Q',
 			InputEvent.CTRL_DOWN_MASK ) );
-		singleRound.setAccelerator( KeyStroke.getKeyStroke( 'S',
-			InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK ) );
-		doubleRound.setAccelerator( KeyStroke.getKeyStroke( 'D',
-			InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK ) );
 		// mnemonics
 		file.setMnemonic( 'f' );
 		newGame.setMnemonic( 'n' );
 		open.setMnemonic( 'o' );
 		save.setMnemonic( 's' );
+		checkBank.setMnemonic( 'b' );
 		exit.setMnemonic( 'x' );
 		round.setMnemonic( 'r' );
-		singleRound.setMnemonic( 's' );
-		doubleRound.setMnemonic( 'd' );
+	}
+
+	// one item per round of the game; the first two keep their shortcuts
+	private void fillRoundMenu() {
+		round.removeAll();
+		for ( int i = 0; i < game.rounds.length; i++ ) {
+			String name = game.rounds[i] == null ? null : game.rounds[i]
+				.getName();
+			if ( name == null || name.isEmpty() )
+				name = "Round " + (i + 1);
+			JMenuItem item = new JMenuItem( name );
+			final int r = i;
+			item.addActionListener( new ActionListener() {
+
+				public void actionPerformed( ActionEvent evt ) {
+					ep.loadRound( r );
+				}
+			} );
+			if ( i == 0 ) {
+				item.setAccelerator( KeyStroke.getKeyStroke( 'S',
+					InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK ) );
+				item.setMnemonic( 's' );
+			} else if ( i == 1 ) {
+				item.setAccelerator( KeyStroke.getKeyStroke( 'D',
+					InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK ) );
+				item.setMnemonic( 'd' );
+			}
+			round.add( item );
+		}
 	}
 
 	/**
@@ -151,6 +216,61 @@ public class GameBuilder {
 		return game;
 	}
 
+	/**
+	 * Get an immutable snapshot of the game as edited so far, which can be
+	 * handed to other threads while editing goes on. Must be called on the
+	 * EDT. Parts that did not change since the last snapshot are shared.
+	 * 
+	 * @return the snapshot
+	 */
+	public GameSnapshot getSnapshot() {
+		snapshot = GameSnapshot.of( game, snapshot );
+		return snapshot;
+	}
+
+	/**
+	 * Get the journal that edits to the game go through
+	 * 
+	 * @return the journal
+	 */
+	public EditJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Check a new answer against the question bank chosen with "Check Against
+	 * Bank...", asking whether to keep it if near-duplicates exist. Clues of
+	 * the file being edited are not counted.
+	 * 
+	 * @param parent
+	 *            the component asking
+	 * @param answer
+	 *            the new answer
+	 * @return whether to keep the answer
+	 */
+	public boolean confirmAnswer( Component parent, String answer ) {
+		if ( bank == null )
+			return true;
+		List<DuplicateFinder.Match> matches = bank.similar( answer,
+			current == null ? null : current.getAbsolutePath() );
+		if ( matches.isEmpty() )
+			return true;
+		StringBuilder sb = new StringBuilder( "Similar clues already exist:\n" );
+		for ( int i = 0; i < Math.min( 5, matches.size() ); i++ ) {
+			DuplicateFinder.Match m = matches.get( i );
+			sb.append( String.format( "\n%.0f%% %s\n    %s\n",
+				m.similarity * 100, new File( m.clue.game ).getName(),
+				m.clue.answer ) );
+		}
+		if ( matches.size() > 5 )
+			sb.append( "\n...and " ).append( matches.size() - 5 ).append(
+				" more\n" );
+		sb.append( "\nKeep this answer?" );
+		return JOptionPane.showConfirmDialog( parent, sb.toString(),
+			"Possible Duplicate", JOptionPane.YES_NO_OPTION,
+			JOptionPane.WARNING_MESSAGE ) == YES;
+	}
+
 	/**
 	 * Save the current game to file
 	 * 
@@ -163,6 +283,8 @@ public class GameBuilder {
 		try {
 			if ( ext.equalsIgnoreCase( "yaml" ) ) {
 				return IO.dumpYaml( game, f );
+			} else if ( ext.equalsIgnoreCase( "jgb" ) ) {
+				return IO.dumpBinary( game, f );
 			} else {
 				// unsupported format
 				return false;
@@ -180,45 +302,71 @@ public class GameBuilder {
 		if ( changed ) {
 			int save = askSave();
 			if ( save == YES ) {
-				if ( showSave() )
+				if ( showSave() && saves.finish() ) {
+					journal.discard();
 					System.exit( 0 );
+				}
 			} else if ( save == NO ) {
-				if ( standalone )
-					System.exit( 0 );
-				else
-					frame.dispose();
+				close();
 			}
 		} else {
-			if ( standalone )
-				System.exit( 0 );
-			else
-				frame.dispose();
+			close();
 		}
 	}
 
+	private void close() {
+		if ( !saves.finish() )
+			return;
+		journal.discard();
+		if ( standalone )
+			System.exit( 0 );
+		else
+			frame.dispose();
+	}
+
 	private boolean showSave() {
-		game.setTitle( ep.gameTitleField.getText() );
-		game.setSubject( ep.gameSubjectField.getText() );
-		game.f.name = ep.finalCatField.getText();
+		ep.commitFields();
 		int s = chooser.showSaveDialog( frame );
 		if ( s == JFileChooser.APPROVE_OPTION ) {
 			File f = chooser.getSelectedFile();
 			if ( !IO.supported( f ) ) {
 				JOptionPane.showMessageDialog( frame,
-					"Only YAML files are supported.",
+					"Only YAML and binary game files are supported.",
 					"Unsupported File Format", JOptionPane.ERROR_MESSAGE );
 				return showSave();
 			}
+			// edits may go on while the copy is written
+			final Game saved = game.copy();
 			try {
-				if ( IO.extension( f, "yaml" ) )
-					IO.dumpYaml( game, f );
-			} catch ( IOException ioe ) {
-				JOptionPane.showMessageDialog( frame, "Exception saving file "
-					+ f.getAbsolutePath() + ". " + ioe.getMessage(), "Error",
-					JOptionPane.ERROR_MESSAGE );
+				IO.saveInBackground( saved, f, saves,
+					new BackgroundSaver.Listener() {
+
+						public void saved( File file ) {
+							current = file;
+							// the saved game is part of the bank from now on
+							if ( bank != null )
+								bank.add( file.getAbsolutePath(), saved );
+							// keep the mark if edits came in during the save
+							if ( saves.isSaved() ) {
+								journal.discard();
+								setChanged( false );
+							}
+						}
+
+						public void failed( File file, IOException ioe ) {
+							JOptionPane.showMessageDialog( frame,
+								"Exception saving file "
+									+ file.getAbsolutePath() + ". "
+									+ ioe.getMessage(), "Error",
+								JOptionPane.ERROR_MESSAGE );
+							setChanged( true );
+						}
+					} );
+			} catch ( UnsupportedFileTypeException ufte ) {
+				JOptionPane.showMessageDialog( frame, ufte.getMessage(),
+					"Unsupported File Format", JOptionPane.ERROR_MESSAGE );
 				return false;
 			}
-			setChanged( false );
 			return true;
 		} else {
 			return false;
@@ -234,8 +382,15 @@ public class GameBuilder {
 					"Could Not Open", JOptionPane.ERROR_MESSAGE );
 			} else {
 				try {
-					game = IO.detectAndLoad( f );
+					Game g = IO.isArchive( f ) ? ArchiveChooser.showDialog(
+						frame, f ) : IO.loadCached( f );
+					if ( g == null )
+						return;
+					game = g;
+					current = IO.isArchive( f ) ? null : f;
+					journal.reset( game );
 					ep.loadSingleRound();
+					fillRoundMenu();
 					ep.gameTitleField.setText( game.getTitle() );
 					ep.gameSubjectField.setText( game.getSubject() );
 					ep.finalCatField.setText( game.f.name );
@@ -253,9 +408,86 @@ public class GameBuilder {
 		}
 	}
 
+	// load a directory of games to check new answers against, off the EDT
+	private void showBank() {
+		JFileChooser dirs = new JFileChooser( chooser.getCurrentDirectory() );
+		dirs.setFileSelectionMode( JFileChooser.DIRECTORIES_ONLY );
+		if ( dirs.showOpenDialog( frame ) != JFileChooser.APPROVE_OPTION )
+			return;
+		final File dir = dirs.getSelectedFile();
+		checkBank.setEnabled( false );
+		Thread t = new Thread( new Runnable() {
+
+			public void run() {
+				DuplicateFinder d = null;
+				String error = null;
+				try {
+					d = DuplicateFinder.scan( dir,
+						DuplicateFinder.DEFAULT_THRESHOLD );
+				} catch ( IOException ioe ) {
+					error = ioe.getMessage();
+				} catch ( InterruptedException ie ) {
+					error = "Interrupted";
+				}
+				final DuplicateFinder found = d;
+				final String message = error;
+				SwingUtilities.invokeLater( new Runnable() {
+
+					public void run() {
+						checkBank.setEnabled( true );
+						if ( found == null ) {
+							JOptionPane.showMessageDialog( frame,
+								"Exception loading question bank "
+									+ dir.getAbsolutePath() + ". " + message,
+								"Error", JOptionPane.ERROR_MESSAGE );
+							return;
+						}
+						bank = found;
+						JOptionPane.showMessageDialog( frame, String.format(
+							"New answers will be checked against %d clues.",
+							found.size() ), "Question Bank",
+							JOptionPane.INFORMATION_MESSAGE );
+					}
+				} );
+			}
+		}, "QuestionBank" );
+		t.setDaemon( true );
+		t.start();
+	}
+
 	private void loadNew() {
-		game = Game.createDefaultGame();
+		loadNew( Game.createDefaultGame() );
+	}
+
+	// ask for the size of a new game; null if cancelled
+	private Game askSize() {
+		JSpinner rounds = new JSpinner( new SpinnerNumberModel(
+			Game.DEFAULT_ROUNDS, 1, 99, 1 ) );
+		JSpinner cats = new JSpinner( new SpinnerNumberModel(
+			Round.DEFAULT_SIZE, 1, Round.MAX_SIZE, 1 ) );
+		JSpinner entries = new JSpinner( new SpinnerNumberModel(
+			Category.DEFAULT_SIZE, 1, Category.MAX_SIZE, 1 ) );
+		JPanel p = new JPanel( new GridLayout( 0, 2 ) );
+		p.add( new JLabel( "Rounds: " ) );
+		p.add( rounds );
+		p.add( new JLabel( "Categories per round: " ) );
+		p.add( cats );
+		p.add( new JLabel( "Entries per category: " ) );
+		p.add( entries );
+		int s = JOptionPane.showConfirmDialog( frame, p, "New Game Size",
+			JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE );
+		if ( s != JOptionPane.OK_OPTION )
+			return null;
+		return Game.createGame( (Integer) rounds.getValue(), (Integer) cats
+			.getValue(), (Integer) entries.getValue() );
+	}
+
+	private void loadNew( Game g ) {
+		game = g;
+		current = null;
+		journal.reset( game );
 		ep.loadSingleRound();
+		fillRoundMenu();
 		ep.finalCatField.setText( game.f.name );
 		ep.gameSubjectField.setText( game.subject );
 		ep.gameTitleField.setText( game.title );
@@ -275,6 +507,8 @@ public class GameBuilder {
 	 */
 	public void setChanged( boolean c ) {
 		changed = c;
+		if ( c )
+			saves.edited();
 		frame.setTitle( String.format( "%s %s", "Jeopardy Game Builder",
 			changed ? "*" : "" ) );
 	}
@@ -293,6 +527,19 @@ public class GameBuilder {
 						loadNew();
 				} else
 					loadNew();
+			} else if ( command.equals( "New Custom Size..." ) ) {
+				Game g = askSize();
+				if ( g == null )
+					return;
+				if ( changed ) {
+					int save = askSave();
+					if ( save == YES ) {
+						if ( showSave() )
+							loadNew( g );
+					} else if ( save == NO )
+						loadNew( g );
+				} else
+					loadNew( g );
 			} else if ( command.equals( "Open" ) ) {
 				if ( changed ) {
 					int save = askSave();
@@ -305,12 +552,10 @@ public class GameBuilder {
 					showOpen();
 			} else if ( command.equals( "Save" ) ) {
 				showSave();
+			} else if ( command.equals( "Check Against Bank..." ) ) {
+				showBank();
 			} else if ( command.equals( "Exit" ) ) {
 				exit();
-			} else if ( command.equals( "Single Jeopardy" ) ) {
-				ep.loadSingleRound();
-			} else if ( command.equals( "Double Jeopardy" ) ) {
-				ep.loadDoubleRound();
 			}
 		}
 	};
@@ -37,6 +37,8 @@ public class Player implements Comparable<Player> {
 	public String name;
 	/** The player score */
 	public int score;
+	/** Where changes are logged, if anywhere */
+	ScoreLog log;
 
 	/**
 	 * Create a new player with empty name and 0 score
@@ -68,6 +70,8 @@ public class Player implements Comparable<Player> {
 	public String setName( String name ) {
 		String ret = this.name;
 		this.name = name;
+		if ( log != null )
+			log.renamed( this, name );
 		return ret;
 	}
 
@@ -81,6 +85,8 @@ public class Player implements Comparable<Player> {
 	public int setScore( int score ) {
 		int ret = this.score;
 		this.score = score;
+		if ( log != null )
+			log.scoreSet( this, score );
 		return ret;
 	}
 
@@ -110,7 +116,9 @@ public class Player implements Comparable<Player> {
 	 * @return the new score
 	 */
 	public int add( int value ) {
-		setScore( score + value );
+		score += value;
+		if ( log != null )
+			log.scoreAdded( this, value );
 		return score;
 	}
 
@@ -122,7 +130,9 @@ public class Player implements Comparable<Player> {
 	 * @return the new score
 	 */
 	public int subtract( int value ) {
-		setScore( score - value );
+		score -= value;
+		if ( log != null )
+			log.scoreAdded( this, -value );
 		return score;
 	}
 
@@ -162,6 +162,20 @@ public class PlayerList {
 		}
 	}
 
+	/**
+	 * Create a copy of this list, with copies of its players
+	 * 
+	 * @return the copy
+	 */
+	public PlayerList copy() {
+		PlayerList c = new PlayerList();
+		c.list = new Player[ list.length ];
+		for ( int i = 0; i < size; i++ )
+			c.list[i] = new Player( list[i].name, list[i].score );
+		c.size = size;
+		return c;
+	}
+
 	/**
 	 * the number of items in the list
 	 * 
@@ -0,0 +1,593 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.scorecard;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import org.garion.games.jeopardy.util.AutosaveSession;
+import org.garion.games.jeopardy.util.BackgroundSaver;
+
+/**
+ * Durable log of score changes. Every score change, rename, and player add or
+ * remove made on an attached player is recorded as a small event, so the
+ * score card can be rebuilt after a crash.
+ * <p>
+ * Events are committed in groups: a writer thread collects the events that
+ * arrive within {@link #COMMIT_MILLIS} of each other, appends them as one
+ * CRC-checked frame and syncs the file once. After every
+ * {@link #SNAPSHOT_EVENTS} events the writer saves a snapshot of all players
+ * and truncates the log, so recovery reads one snapshot plus a short tail no
+ * matter how long the tournament runs.
+ *
+ * <pre>
+ * snapshot  magic "JSS\0", version, last sequence, next id, player count,
+ *           per player: id, name, score
+ * log       frames of: payload length, CRC-32, first sequence, events
+ * event     type, id (varint), then name or score (zig-zag varint)
+ * </pre>
+ *
+ * Every event has a sequence number; events already covered by the snapshot
+ * are skipped on replay, so a crash between writing a snapshot and
+ * truncating the log is harmless. A torn or corrupt frame ends the replay.
+ * <p>
+ * Each score card keeps its files in its own {@link AutosaveSession}, so
+ * score cards open at the same time never recover or truncate each other's
+ * logs.
+ *
+ * @author martin@mbs3.org
+ */
+public final class ScoreLog implements Closeable {
+
+	/** How long the writer waits for more events before committing a group */
+	public static final int COMMIT_MILLIS = 20;
+	/** Events between snapshots */
+	public static final int SNAPSHOT_EVENTS = 1024;
+
+	private static final byte[] MAGIC = { 'J', 'S', 'S', 0 };
+	private static final int VERSION = 1;
+
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+	private static final byte NAME = 3;
+	private static final byte SET = 4;
+	private static final byte DELTA = 5;
+
+	private static final int FRAME_HEADER = 16;
+	private static final int MAX_FRAME = 16 << 20;
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	private static final String SNAPSHOT = ".snap";
+	private static final String LOG = ".log";
+
+	/** What the log knows about one player */
+	private static final class Row {
+
+		String name;
+		int score;
+
+		Row( String name, int score ) {
+			this.name = name;
+			this.score = score;
+		}
+	}
+
+	private final AutosaveSession session;
+
+	private final Object lock = new Object();
+	private final Map<Player, Integer> ids = new IdentityHashMap<Player, Integer>();
+	private Map<Integer, Row> rows = new LinkedHashMap<Integer, Row>();
+	private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private int nextId;
+	private long seq, firstPending, durable;
+	private int sinceSnapshot;
+	private boolean urgent, closed;
+	private IOException failure;
+	private Thread writer;
+	private FileChannel channel;
+
+	/**
+	 * Create a log in the default directory ({@code ~/.jeopardy/autosave})
+	 */
+	public ScoreLog() {
+		this( new File( new File( System.getProperty( "user.home" ),
+			".jeopardy" ), "autosave" ) );
+	}
+
+	/**
+	 * Create a log
+	 *
+	 * @param dir
+	 *            the directory holding the snapshot and log files
+	 */
+	public ScoreLog( File dir ) {
+		session = new AutosaveSession( dir, "scores" );
+	}
+
+	/**
+	 * Check for scores left behind by a session that did not end cleanly. A
+	 * session found is taken over by this log; declining it with
+	 * {@link #start(PlayerList)} replaces it.
+	 *
+	 * @return whether {@link #recover()} has a list to return
+	 */
+	public boolean hasRecovery() {
+		return session.adopt( SNAPSHOT );
+	}
+
+	/**
+	 * Rebuild the player list of an unfinished session from the snapshot and
+	 * log tail, and start logging it
+	 *
+	 * @return the recovered list, or {@code null} if there is nothing to
+	 *         recover
+	 * @throws IOException
+	 *             if the snapshot can't be read
+	 */
+	public PlayerList recover() throws IOException {
+		if ( !hasRecovery() )
+			return null;
+		Map<Integer, Row> state = new LinkedHashMap<Integer, Row>();
+		long last = 0;
+		File snapshot = session.file( SNAPSHOT );
+		File log = session.file( LOG );
+		if ( snapshot.isFile() ) {
+			DataInputStream in = new DataInputStream( new BufferedInputStream(
+				new FileInputStream( snapshot ) ) );
+			try {
+				byte[] magic = new byte[ MAGIC.length ];
+				in.readFully( magic );
+				if ( !Arrays.equals( magic, MAGIC ) )
+					throw new IOException( "Not a score snapshot" );
+				int version = in.readInt();
+				if ( version != VERSION )
+					throw new IOException( "Unsupported score snapshot version "
+						+ version );
+				last = in.readLong();
+				in.readInt(); // next id; ids are reassigned on start
+				int count = in.readInt();
+				for ( int i = 0; i < count; i++ ) {
+					int id = in.readInt();
+					state.put( id, new Row( in.readUTF(), in.readInt() ) );
+				}
+			} finally {
+				in.close();
+			}
+		}
+		if ( log.isFile() )
+			replay( Files.readAllBytes( log.toPath() ), state, last );
+
+		PlayerList list = new PlayerList();
+		for ( Row r : state.values() )
+			list.add( new Player( r.name, r.score ) );
+		start( list );
+		return list;
+	}
+
+	/**
+	 * Start logging a list, discarding this log's earlier contents. The
+	 * players in the list are attached, so their score changes are logged
+	 * from now on.
+	 *
+	 * @param list
+	 *            the player list
+	 * @throws IOException
+	 *             if the initial snapshot can't be written
+	 */
+	public void start( PlayerList list ) throws IOException {
+		close();
+		session.claim();
+		synchronized ( lock ) {
+			detachAll();
+			rows = new LinkedHashMap<Integer, Row>();
+			nextId = 0;
+			seq = firstPending = durable = 0;
+			sinceSnapshot = 0;
+			pending.reset();
+			failure = null;
+			closed = false;
+			urgent = false;
+			for ( int i = 0; i < list.size(); i++ )
+				attach( list.get( i ) );
+		}
+		try {
+			writeSnapshot( rows, 0, nextId );
+			channel = FileChannel.open( session.file( LOG ).toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING );
+		} catch ( IOException ioe ) {
+			synchronized ( lock ) {
+				closed = true;
+				detachAll();
+			}
+			throw ioe;
+		}
+		writer = new Thread( new Runnable() {
+
+			public void run() {
+				write();
+			}
+		}, "ScoreLog" );
+		writer.setDaemon( true );
+		writer.start();
+	}
+
+	/**
+	 * Log a player being added and attach it
+	 *
+	 * @param p
+	 *            the new player
+	 */
+	public void added( Player p ) {
+		synchronized ( lock ) {
+			if ( closed || ids.containsKey( p ) )
+				return;
+			int id = attach( p );
+			ByteArrayOutputStream b = event( ADD, id );
+			writeString( b, p.name );
+			writeVarint( b, zigzag( p.score ) );
+		}
+	}
+
+	/**
+	 * Log a player being removed and detach it
+	 *
+	 * @param p
+	 *            the removed player
+	 */
+	public void removed( Player p ) {
+		synchronized ( lock ) {
+			Integer id = ids.remove( p );
+			if ( id == null )
+				return;
+			p.log = null;
+			rows.remove( id );
+			event( REMOVE, id );
+		}
+	}
+
+	/**
+	 * Flush the events logged so far to disk
+	 *
+	 * @throws IOException
+	 *             if the log can't be written
+	 */
+	public void flush() throws IOException {
+		synchronized ( lock ) {
+			long target = seq;
+			urgent = true;
+			lock.notifyAll();
+			try {
+				while ( durable < target && failure == null && writer != null
+					&& writer.isAlive() )
+					lock.wait();
+			} catch ( InterruptedException ie ) {
+				Thread.currentThread().interrupt();
+				throw new IOException( "Interrupted while flushing", ie );
+			}
+			if ( failure != null )
+				throw failure;
+		}
+	}
+
+	/**
+	 * Flush and close the log. The files are kept for recovery.
+	 */
+	public void close() {
+		Thread w;
+		synchronized ( lock ) {
+			closed = true;
+			lock.notifyAll();
+			w = writer;
+			writer = null;
+		}
+		if ( w != null ) {
+			try {
+				w.join();
+			} catch ( InterruptedException ie ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if ( channel != null ) {
+			try {
+				channel.close();
+			} catch ( IOException ioe ) {
+				ioe.printStackTrace();
+			}
+			channel = null;
+		}
+	}
+
+	/**
+	 * Close the log and delete its files, e.g. on a clean exit
+	 */
+	public void discard() {
+		close();
+		synchronized ( lock ) {
+			detachAll();
+		}
+		if ( session.isHeld() ) {
+			session.file( SNAPSHOT ).delete();
+			session.release();
+		}
+	}
+
+	void renamed( Player p, String name ) {
+		synchronized ( lock ) {
+			Integer id = ids.get( p );
+			if ( id == null || closed )
+				return;
+			rows.get( id ).name = name;
+			writeString( event( NAME, id ), name );
+		}
+	}
+
+	void scoreSet( Player p, int score ) {
+		synchronized ( lock ) {
+			Integer id = ids.get( p );
+			if ( id == null || closed )
+				return;
+			rows.get( id ).score = score;
+			writeVarint( event( SET, id ), zigzag( score ) );
+		}
+	}
+
+	void scoreAdded( Player p, int delta ) {
+		synchronized ( lock ) {
+			Integer id = ids.get( p );
+			if ( id == null || closed )
+				return;
+			rows.get( id ).score += delta;
+			writeVarint( event( DELTA, id ), zigzag( delta ) );
+		}
+	}
+
+	// caller holds the lock
+	private int attach( Player p ) {
+		int id = nextId++;
+		ids.put( p, id );
+		rows.put( id, new Row( p.name, p.score ) );
+		p.log = this;
+		return id;
+	}
+
+	// caller holds the lock
+	private void detachAll() {
+		for ( Player p : ids.keySet() )
+			p.log = null;
+		ids.clear();
+	}
+
+	// caller holds the lock; returns the stream for the event's arguments
+	private ByteArrayOutputStream event( byte type, int id ) {
+		if ( pending.size() == 0 ) {
+			firstPending = seq + 1;
+			lock.notifyAll();
+		}
+		++seq;
+		++sinceSnapshot;
+		pending.write( type );
+		writeVarint( pending, id );
+		return pending;
+	}
+
+	// the writer thread: group commit, then snapshot and truncate when due
+	private void write() {
+		while ( true ) {
+			byte[] events;
+			long first, last;
+			Map<Integer, Row> snap = null;
+			int next = 0;
+			synchronized ( lock ) {
+				try {
+					while ( pending.size() == 0 && !closed )
+						lock.wait();
+					long deadline = System.currentTimeMillis() + COMMIT_MILLIS;
+					long left;
+					while ( !closed && !urgent
+						&& (left = deadline - System.currentTimeMillis()) > 0 )
+						lock.wait( left );
+				} catch ( InterruptedException ie ) {
+					closed = true;
+				}
+				urgent = false;
+				if ( pending.size() == 0 ) {
+					lock.notifyAll();
+					return;
+				}
+				events = pending.toByteArray();
+				pending.reset();
+				first = firstPending;
+				last = seq;
+				if ( sinceSnapshot >= SNAPSHOT_EVENTS ) {
+					snap = copy( rows );
+					next = nextId;
+					sinceSnapshot = 0;
+				}
+			}
+			try {
+				channel.write( frame( first, events ) );
+				channel.force( false );
+				if ( snap != null ) {
+					writeSnapshot( snap, last, next );
+					channel.truncate( 0 );
+					channel.force( true );
+				}
+				synchronized ( lock ) {
+					durable = last;
+					lock.notifyAll();
+				}
+			} catch ( IOException ioe ) {
+				ioe.printStackTrace();
+				synchronized ( lock ) {
+					failure = ioe;
+					lock.notifyAll();
+				}
+				return;
+			}
+		}
+	}
+
+	private void writeSnapshot( final Map<Integer, Row> state, final long last,
+		final int next ) throws IOException {
+		File snapshot = session.file( SNAPSHOT );
+		BackgroundSaver.write( snapshot, new BackgroundSaver.Content() {
+
+			public void write( OutputStream out ) throws IOException {
+				DataOutputStream d = new DataOutputStream( out );
+				d.write( MAGIC );
+				d.writeInt( VERSION );
+				d.writeLong( last );
+				d.writeInt( next );
+				d.writeInt( state.size() );
+				for ( Map.Entry<Integer, Row> e : state.entrySet() ) {
+					d.writeInt( e.getKey() );
+					String name = e.getValue().name;
+					d.writeUTF( name == null ? "" : name );
+					d.writeInt( e.getValue().score );
+				}
+				d.flush();
+			}
+		} );
+	}
+
+	private static Map<Integer, Row> copy( Map<Integer, Row> rows ) {
+		Map<Integer, Row> c = new LinkedHashMap<Integer, Row>();
+		for ( Map.Entry<Integer, Row> e : rows.entrySet() )
+			c.put( e.getKey(), new Row( e.getValue().name, e.getValue().score ) );
+		return c;
+	}
+
+	private static ByteBuffer frame( long first, byte[] events ) {
+		ByteBuffer b = ByteBuffer.allocate( FRAME_HEADER + events.length );
+		CRC32 crc = new CRC32();
+		b.putInt( 8 + events.length );
+		b.putInt( 0 );
+		b.putLong( first );
+		b.put( events );
+		crc.update( b.array(), 8, 8 + events.length );
+		b.putInt( 4, (int) crc.getValue() );
+		b.flip();
+		return b;
+	}
+
+	// applies the events after sequence number last
+	private static void replay( byte[] data, Map<Integer, Row> state, long last ) {
+		ByteBuffer b = ByteBuffer.wrap( data );
+		CRC32 crc = new CRC32();
+		while ( b.remaining() >= FRAME_HEADER ) {
+			int length = b.getInt();
+			int sum = b.getInt();
+			if ( length < 8 || length > MAX_FRAME || length > b.remaining() )
+				return;
+			crc.reset();
+			crc.update( data, b.position(), length );
+			if ( sum != (int) crc.getValue() )
+				return;
+			int end = b.position() + length;
+			long s = b.getLong();
+			try {
+				for ( ; b.position() < end; s++ ) {
+					byte type = b.get();
+					int id = readVarint( b );
+					Row r = state.get( id );
+					String name = null;
+					int value = 0;
+					if ( type == ADD || type == NAME )
+						name = readString( b );
+					if ( type == ADD || type == SET || type == DELTA )
+						value = unzigzag( readVarint( b ) );
+					if ( s <= last )
+						continue;
+					switch ( type ) {
+						case ADD:
+							state.put( id, new Row( name, value ) );
+							break;
+						case REMOVE:
+							state.remove( id );
+							break;
+						case NAME:
+							if ( r != null )
+								r.name = name;
+							break;
+						case SET:
+							if ( r != null )
+								r.score = value;
+							break;
+						case DELTA:
+							if ( r != null )
+								r.score += value;
+							break;
+						default:
+							return;
+					}
+				}
+			} catch ( RuntimeException re ) {
+				// a frame that passed its CRC but does not parse
+				return;
+			}
+			b.position( end );
+		}
+	}
+
+	private static void writeString( ByteArrayOutputStream b, String s ) {
+		byte[] t = (s == null ? "" : s).getBytes( UTF8 );
+		writeVarint( b, t.length );
+		b.write( t, 0, t.length );
+	}
+
+	private static String readString( ByteBuffer b ) {
+		int n = readVarint( b );
+		String s = new String( b.array(), b.arrayOffset() + b.position(), n,
+			UTF8 );
+		b.position( b.position() + n );
+		return s;
+	}
+
+	private static void writeVarint( ByteArrayOutputStream b, int v ) {
+		while ( (v & ~0x7f) != 0 ) {
+			b.write( (v & 0x7f) | 0x80 );
+			v >>>= 7;
+		}
+		b.write( v );
+	}
+
+	private static int readVarint( ByteBuffer b ) {
+		int v = 0;
+		for ( int shift = 0; shift < 35; shift += 7 ) {
+			int x = b.get();
+			v |= (x & 0x7f) << shift;
+			if ( (x & 0x80) == 0 )
+				return v;
+		}
+		throw new IllegalArgumentException( "Malformed varint" );
+	}
+
+	private static int zigzag( int v ) {
+		return (v << 1) ^ (v >> 31);
+	}
+
+	private static int unzigzag( int v ) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+}
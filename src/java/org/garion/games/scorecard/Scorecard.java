@@ -20,8 +20,11 @@ import java.awt.BorderLayout;
 import java.awt.event.*;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
 import javax.swing.*;
 import javax.swing.table.AbstractTableModel;
+import org.garion.games.jeopardy.util.BackgroundSaver;
 import org.garion.games.jeopardy.util.IO;
 import org.garion.global.Global;
 import org.garion.global.ui.UI;
@@ -41,6 +44,9 @@ public class Scorecard extends JFrame implements ActionListener {
 	/** The list of players */
 	public PlayerList players;
 	private boolean changed = false;
+	private final BackgroundSaver.Tracker saves = new BackgroundSaver.Tracker(
+		BackgroundSaver.shared() );
+	private final ScoreLog log = new ScoreLog();
 	private boolean standalone = false;
 
 	private JTable table;
@@ -61,6 +67,7 @@ public class Scorecard extends JFrame implements ActionListener {
 		super( "Score Card" );
 		Global.setSystemUI();
 		players = new PlayerList();
+		boolean recovered = recover();
 		this.standalone = standalone;
 		this.setDefaultCloseOperation( JFrame.DO_NOTHING_ON_CLOSE );
 		this.addWindowListener( windowListener );
@@ -91,6 +98,39 @@ public class Scorecard extends JFrame implements ActionListener {
 		this.setLocationRelativeTo( null );
 		this.setVisible( true );
 		chooser.setFileFilter( IO.yaml );
+		if ( recovered )
+			setChanged( true );
+	}
+
+	// offer the scores logged by a session that did not end cleanly
+	private boolean recover() {
+		if ( log.hasRecovery() ) {
+			int s = JOptionPane.showConfirmDialog( null,
+				"The score card did not close cleanly last time.\n"
+					+ "Recover the unsaved scores?", "Recover",
+				JOptionPane.YES_NO_OPTION );
+			if ( s == JOptionPane.YES_OPTION ) {
+				try {
+					players = log.recover();
+					return true;
+				} catch ( IOException e ) {
+					JOptionPane.showMessageDialog( null,
+						"Exception recovering scores. " + e.getMessage(),
+						"Error", JOptionPane.ERROR_MESSAGE );
+				}
+			}
+		}
+		startLog();
+		return false;
+	}
+
+	// log the current list; scores are still kept if the log can't be written
+	private void startLog() {
+		try {
+			log.start( players );
+		} catch ( IOException e ) {
+			e.printStackTrace();
+		}
 	}
 
 	private ActionListener menuListener = new ActionListener() {
@@ -103,6 +143,7 @@ public class Scorecard extends JFrame implements ActionListener {
 						return;
 				}
 				players = new PlayerList();
+				startLog();
 				model.update();
 				setChanged( false );
 			} else if ( "Save List".equals( command ) ) {
@@ -167,6 +208,7 @@ public class Scorecard extends JFrame implements ActionListener {
 	public void addPlayer( Player p ) {
 		setChanged( true );
 		players.add( p );
+		log.added( p );
 		players.sort();
 		model.update();
 	}
@@ -180,6 +222,7 @@ public class Scorecard extends JFrame implements ActionListener {
 	public void removePlayer( Player p ) {
 		setChanged( true );
 		players.remove( p );
+		log.removed( p );
 		model.update();
 	}
 
@@ -199,13 +242,30 @@ public class Scorecard extends JFrame implements ActionListener {
 		int s = chooser.showSaveDialog( this );
 		if ( s == JFileChooser.APPROVE_OPTION ) {
 			File f = chooser.getSelectedFile();
-			try {
-				Yaml.dump( players, f, true );
-				setChanged( false );
-				return true;
-			} catch ( FileNotFoundException e ) {
-				return false;
-			}
+			final PlayerList snapshot = players.copy();
+			saves.save( f,
+				new BackgroundSaver.Content() {
+
+					public void write( OutputStream out ) {
+						Yaml.dump( snapshot, out, true );
+					}
+				}, new BackgroundSaver.Listener() {
+
+					public void saved( File file ) {
+						// keep the mark if edits came in during the save
+						if ( saves.isSaved() )
+							setChanged( false );
+					}
+
+					public void failed( File file, IOException e ) {
+						JOptionPane.showMessageDialog( Scorecard.this,
+							"Exception saving file " + file.getAbsolutePath()
+								+ ". " + e.getMessage(), "Error",
+							JOptionPane.ERROR_MESSAGE );
+						setChanged( true );
+					}
+				} );
+			return true;
 		} else
 			return false;
 	}
@@ -217,6 +277,7 @@ public class Scorecard extends JFrame implements ActionListener {
 			try {
 				players = Yaml.loadType( f, PlayerList.class );
 				players.findSize();
+				startLog();
 				model.update();
 				setChanged( false );
 			} catch ( FileNotFoundException e ) {
@@ -274,18 +335,30 @@ public class Scorecard extends JFrame implements ActionListener {
 
 	private void setChanged( boolean c ) {
 		changed = c;
+		if ( c )
+			saves.edited();
 		setTitle( String.format( "Score Card %s", changed ? "*" : "" ) );
 	}
 
 	private void exit() {
 		if ( standalone ) {
 			if ( changed ) {
-				if ( askSave() )
+				if ( askSave() && saves.finish() ) {
+					log.discard();
 					System.exit( 0 );
-			} else
+				}
+			} else if ( saves.finish() ) {
+				log.discard();
 				System.exit( 0 );
-		} else
+			}
+		} else {
+			// nothing is saved here, so keep unsaved scores recoverable
+			if ( changed )
+				log.close();
+			else
+				log.discard();
 			dispose();
+		}
 	}
 
 	private WindowAdapter windowListener = new WindowAdapter() {
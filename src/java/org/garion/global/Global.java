@@ -38,4 +38,17 @@ public class Global {
 		}
 	}
 
+	/**
+	 * Compare two strings, either of which may be {@code null}
+	 * 
+	 * @param a
+	 *            a string
+	 * @param b
+	 *            another string
+	 * @return whether both are {@code null} or both hold the same text
+	 */
+	public static boolean same( String a, String b ) {
+		return a == null ? b == null : a.equals( b );
+	}
+
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy;
+
+import java.util.Random;
+
+import org.garion.global.Global;
+
+/**
+ * Compares the indexed lookups of {@link Category} with the linear scans
+ * they replaced, on categories far larger than a game uses. Each lookup is
+ * a {@link Category#getValue(Entry)} and a {@link Category#findPrefix(String)}
+ * of a 4-character prefix; a quarter of the entries looked up are not in
+ * the category, to time misses too. Both ways must agree.
+ * <p>
+ * Usage: {@code CategoryLookupBenchmark [lookups] [slots...]}, by default
+ * 200000 lookups on 5, 100, 1000 and 10000 slots.
+ *
+ * @author martin@mbs3.org
+ */
+public class CategoryLookupBenchmark {
+
+	public static void main( String[] args ) {
+		int lookups = args.length > 0 ? Integer.parseInt( args[0] ) : 200000;
+		int[] sizes = { 5, 100, 1000, 10000 };
+		if ( args.length > 1 ) {
+			sizes = new int[ args.length - 1 ];
+			for ( int i = 1; i < args.length; i++ )
+				sizes[i - 1] = Integer.parseInt( args[i] );
+		}
+		System.out.printf( "%8s %14s %14s%n", "slots", "indexed ns", "linear ns" );
+		for ( int n : sizes ) {
+			Category c = category( n );
+			Random random = new Random( n );
+			Entry[] find = new Entry[ lookups ];
+			String[] prefixes = new String[ lookups ];
+			for ( int i = 0; i < lookups; i++ ) {
+				int slot = random.nextInt( n );
+				find[i] = random.nextInt( 4 ) == 0 ? new Entry( "a", "q" )
+					: c.entries[slot];
+				prefixes[i] = c.values[random.nextInt( n )].substring( 0, 4 );
+			}
+			// warm up, and check both ways agree
+			for ( int i = 0; i < lookups; i++ ) {
+				String v = scanValue( c, find[i] );
+				int p = scanPrefix( c, prefixes[i] );
+				if ( !Global.same( c.getValue( find[i] ), v )
+					|| c.findPrefix( prefixes[i] ) != p )
+					throw new IllegalStateException( "lookup " + i + " of " + n
+						+ " slots disagrees with the scan" );
+			}
+			long start = System.nanoTime();
+			long sink = 0;
+			for ( int i = 0; i < lookups; i++ ) {
+				String v = c.getValue( find[i] );
+				sink += (v == null ? 0 : v.length())
+					+ c.findPrefix( prefixes[i] );
+			}
+			long mid = System.nanoTime();
+			for ( int i = 0; i < lookups; i++ ) {
+				String v = scanValue( c, find[i] );
+				sink -= (v == null ? 0 : v.length())
+					+ scanPrefix( c, prefixes[i] );
+			}
+			long end = System.nanoTime();
+			if ( sink != 0 )
+				throw new IllegalStateException( "results differ" );
+			System.out.printf( "%8d %14d %14d%n", n, (mid - start) / lookups,
+				(end - mid) / lookups );
+		}
+	}
+
+	// written through the arrays, since addEntry stops at MAX_SIZE
+	private static Category category( int n ) {
+		Category c = new Category( "big" );
+		c.values = new String[ n ];
+		c.entries = new Entry[ n ];
+		for ( int i = 0; i < n; i++ ) {
+			c.values[i] = String.format( "%05d points", i * 7 % 100000 );
+			c.entries[i] = new Entry( "answer " + i, "question " + i );
+		}
+		c.reindex();
+		return c;
+	}
+
+	// the lookups as they were before the index
+	private static String scanValue( Category c, Entry e ) {
+		for ( int i = 0; i < c.entries.length; i++ ) {
+			if ( c.entries[i] == e )
+				return c.values[i];
+		}
+		return null;
+	}
+
+	private static int scanPrefix( Category c, String prefix ) {
+		for ( int i = 0; i < c.values.length; i++ ) {
+			if ( c.values[i] != null && c.values[i].startsWith( prefix ) )
+				return i;
+		}
+		return -1;
+	}
+
+}
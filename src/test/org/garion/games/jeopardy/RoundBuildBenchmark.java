@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times building rounds out of many categories. A round holds at most
+ * {@link Round#MAX_SIZE} categories, so the large case runs the insertion
+ * code of {@link Round} on a plain array: a sort after every add (what
+ * {@code addCategory} used to do), binary insertion (sorted mode), appending
+ * (the default) and one sort at the end ({@code addCategories} in sorted
+ * mode). The sorted orders must agree. The capped case builds enough full
+ * rounds for the same number of categories through the public methods.
+ * <p>
+ * Usage: {@code RoundBuildBenchmark [categories] [runs]}, by default 10000
+ * categories and 5 timed runs after one warm-up run.
+ *
+ * @author martin@mbs3.org
+ */
+public class RoundBuildBenchmark {
+
+	public static void main( String[] args ) {
+		int n = args.length > 0 ? Integer.parseInt( args[0] ) : 10000;
+		int runs = args.length > 1 ? Integer.parseInt( args[1] ) : 5;
+
+		Category[] cats = new Category[ n ];
+		Random random = new Random( n );
+		for ( int i = 0; i < n; i++ )
+			cats[i] = new Category( "Category " + random.nextInt( n ) );
+
+		long[] resort = new long[ runs ];
+		long[] insert = new long[ runs ];
+		long[] append = new long[ runs ];
+		long[] bulk = new long[ runs ];
+		long[] cappedAdd = new long[ runs ];
+		long[] cappedBulk = new long[ runs ];
+		for ( int run = -1; run < runs; run++ ) {
+			Category[] a = new Category[ n ];
+			long t0 = System.nanoTime();
+			for ( int i = 0; i < n; i++ ) {
+				a[i] = cats[i];
+				Arrays.sort( a, 0, i + 1, Round.COMPARATOR );
+			}
+			long t1 = System.nanoTime();
+			Category[] b = new Category[ n ];
+			for ( int i = 0; i < n; i++ )
+				Round.insert( b, i, cats[i] );
+			long t2 = System.nanoTime();
+			Category[] c = new Category[ n ];
+			for ( int i = 0; i < n; i++ )
+				c[i] = cats[i];
+			long t3 = System.nanoTime();
+			Category[] d = new Category[ n ];
+			System.arraycopy( cats, 0, d, 0, n );
+			Arrays.sort( d, Round.COMPARATOR );
+			long t4 = System.nanoTime();
+			if ( !Arrays.equals( a, b ) || !Arrays.equals( a, d )
+				|| !Arrays.equals( c, cats ) )
+				throw new IllegalStateException( "orders differ" );
+
+			int rounds = (n + Round.MAX_SIZE - 1) / Round.MAX_SIZE;
+			long t5 = System.nanoTime();
+			for ( int r = 0; r < rounds; r++ ) {
+				Round round = new Round( "round" );
+				round.sortByName( true );
+				for ( int i = r * Round.MAX_SIZE; i < Math.min( n, (r + 1)
+					* Round.MAX_SIZE ); i++ )
+					round.addCategory( cats[i] );
+			}
+			long t6 = System.nanoTime();
+			for ( int r = 0; r < rounds; r++ ) {
+				Round round = new Round( "round" );
+				round.sortByName( true );
+				round.addCategories( Arrays.copyOfRange( cats, r
+					* Round.MAX_SIZE, Math.min( n, (r + 1) * Round.MAX_SIZE ) ) );
+			}
+			long t7 = System.nanoTime();
+			if ( run >= 0 ) {
+				resort[run] = t1 - t0;
+				insert[run] = t2 - t1;
+				append[run] = t3 - t2;
+				bulk[run] = t4 - t3;
+				cappedAdd[run] = t6 - t5;
+				cappedBulk[run] = t7 - t6;
+			}
+		}
+		System.out.printf( "%d categories in one list:%n", n );
+		report( "sort after every add", resort );
+		report( "binary insertion", insert );
+		report( "append", append );
+		report( "append, one sort", bulk );
+		System.out.printf( "%d sorted rounds of %d:%n", (n + Round.MAX_SIZE - 1)
+			/ Round.MAX_SIZE, Round.MAX_SIZE );
+		report( "addCategory", cappedAdd );
+		report( "addCategories", cappedBulk );
+	}
+
+	private static void report( String what, long[] times ) {
+		Arrays.sort( times );
+		System.out.printf( "  %-22s median %9.3f ms, best %9.3f ms%n", what,
+			times[times.length / 2] / 1e6, times[0] / 1e6 );
+	}
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * What a crash leaves behind in an autosave directory: the files of its
+ * {@link AutosaveSession}s, without their locks. Take the leftovers while a
+ * session is held, let its owner discard it cleanly, then restore them.
+ *
+ * @author martin@mbs3.org
+ */
+public final class AutosaveLeftovers {
+
+	private final File[] files;
+	private final byte[][] data;
+
+	private AutosaveLeftovers( File[] files, byte[][] data ) {
+		this.files = files;
+		this.data = data;
+	}
+
+	/**
+	 * Copy the files of an autosave directory
+	 *
+	 * @param dir
+	 *            the directory
+	 * @return the copies
+	 * @throws IOException
+	 *             if a file can't be read
+	 */
+	public static AutosaveLeftovers of( File dir ) throws IOException {
+		File[] files = dir.listFiles();
+		byte[][] data = new byte[ files.length ][];
+		for ( int i = 0; i < files.length; i++ )
+			data[i] = Files.readAllBytes( files[i].toPath() );
+		return new AutosaveLeftovers( files, data );
+	}
+
+	/**
+	 * Write the files back as they were copied
+	 *
+	 * @throws IOException
+	 *             if a file can't be written
+	 */
+	public void restore() throws IOException {
+		for ( int i = 0; i < files.length; i++ )
+			Files.write( files[i].toPath(), data[i] );
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Autosave sessions held and left behind
+ *
+ * @author martin@mbs3.org
+ */
+public class AutosaveSessionTest {
+
+	private File dir;
+
+	@Before
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory( "autosave" ).toFile();
+	}
+
+	@After
+	public void deleteDir() {
+		for ( File f : dir.listFiles() )
+			f.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void heldSessionIsNotAdopted() throws IOException {
+		AutosaveSession held = new AutosaveSession( dir, "doc" );
+		held.claim();
+		assertTrue( held.file( ".data" ).createNewFile() );
+
+		AutosaveSession other = new AutosaveSession( dir, "doc" );
+		assertFalse( other.adopt( ".data" ) );
+		assertFalse( other.isHeld() );
+		assertTrue( held.file( ".data" ).isFile() );
+		held.release();
+		assertEquals( 0, dir.listFiles().length );
+	}
+
+	@Test
+	public void leftSessionIsAdoptedOnce() throws IOException {
+		AutosaveSession crashed = new AutosaveSession( dir, "doc" );
+		crashed.claim();
+		assertTrue( crashed.file( ".data" ).createNewFile() );
+		AutosaveLeftovers leftovers = AutosaveLeftovers.of( dir );
+		crashed.release();
+		leftovers.restore();
+
+		AutosaveSession first = new AutosaveSession( dir, "doc" );
+		assertTrue( first.adopt( ".data" ) );
+		assertFalse( new AutosaveSession( dir, "doc" ).adopt( ".data" ) );
+		first.release();
+		assertEquals( 0, dir.listFiles().length );
+	}
+
+	@Test
+	public void leftSessionWithoutTheMarkerIsDeleted() throws IOException {
+		AutosaveSession crashed = new AutosaveSession( dir, "doc" );
+		crashed.claim();
+		assertTrue( crashed.file( ".other" ).createNewFile() );
+		AutosaveLeftovers leftovers = AutosaveLeftovers.of( dir );
+		crashed.release();
+		leftovers.restore();
+
+		assertFalse( new AutosaveSession( dir, "doc" ).adopt( ".data" ) );
+		assertEquals( 0, dir.listFiles().length );
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Compares a sequential {@link IO#detectAndLoad(File)} loop with
+ * {@link BulkLoader} at several pool sizes on a directory of game files.
+ * <p>
+ * Usage: {@code BulkLoadBenchmark [file] [copies] [threads...]}, by default
+ * 10000 copies of gatorlug.yaml plus one unreadable file, loaded with 1, 2,
+ * 4 and as many threads as there are processors. Each figure is the best of
+ * three runs after a warm-up run.
+ *
+ * @author martin@mbs3.org
+ */
+public class BulkLoadBenchmark {
+
+	private static final int RUNS = 3;
+
+	public static void main( String[] args ) throws Exception {
+		File in = new File( args.length > 0 ? args[0] : "gatorlug.yaml" );
+		int copies = args.length > 1 ? Integer.parseInt( args[1] ) : 10000;
+		int[] threads;
+		if ( args.length > 2 ) {
+			threads = new int[ args.length - 2 ];
+			for ( int i = 2; i < args.length; i++ )
+				threads[i - 2] = Integer.parseInt( args[i] );
+		} else
+			threads = new int[] { 1, 2, 4,
+				Runtime.getRuntime().availableProcessors() };
+
+		File dir = Files.createTempDirectory( "bulk" ).toFile();
+		try {
+			byte[] doc = Files.readAllBytes( in.toPath() );
+			for ( int i = 0; i < copies; i++ )
+				write( new File( dir, String.format( "game%05d.yaml", i ) ), doc );
+			write( new File( dir, "broken.yaml" ), "--- [".getBytes( "UTF-8" ) );
+			int files = copies + 1;
+			System.out.printf( "%d files, %d processors%n", files, Runtime
+				.getRuntime().availableProcessors() );
+
+			sequential( dir );
+			long best = Long.MAX_VALUE;
+			for ( int run = 0; run < RUNS; run++ )
+				best = Math.min( best, sequential( dir ) );
+			report( "sequential detectAndLoad", files, best );
+
+			for ( int t : threads ) {
+				bulk( dir, t, files );
+				best = Long.MAX_VALUE;
+				for ( int run = 0; run < RUNS; run++ )
+					best = Math.min( best, bulk( dir, t, files ) );
+				report( "BulkLoader, " + t + " threads", files, best );
+			}
+		} finally {
+			for ( File f : dir.listFiles() )
+				f.delete();
+			dir.delete();
+		}
+	}
+
+	private static long sequential( File dir ) {
+		long start = System.nanoTime();
+		File[] files = dir.listFiles();
+		Arrays.sort( files );
+		for ( File f : files ) {
+			try {
+				IO.detectAndLoad( f );
+			} catch ( Exception e ) {
+				// counted as a failed file, as the loader does
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long bulk( File dir, int threads, int files )
+		throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		BulkLoader loader = new BulkLoader( threads );
+		try {
+			int n = loader.submit( dir );
+			if ( n != files )
+				throw new IllegalStateException( "queued " + n + " of " + files );
+			int failed = 0;
+			while ( loader.pending() > 0 ) {
+				if ( !loader.take().ok() )
+					++failed;
+			}
+			if ( failed != 1 )
+				throw new IllegalStateException( failed + " files failed" );
+		} finally {
+			loader.close();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static void write( File f, byte[] data ) throws IOException {
+		FileOutputStream out = new FileOutputStream( f );
+		try {
+			out.write( data );
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void report( String what, int files, long nanos ) {
+		System.out.printf( "%-28s %7.0f files/s%n", what, files / (nanos / 1e9) );
+	}
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+/**
+ * Decoding the buzzer box's binary frames in arbitrary chunks
+ *
+ * @author martin@mbs3.org
+ */
+public class BuzzFrameDecoderTest {
+
+	/** Writes each frame down */
+	private static final class Events implements BuzzFrameDecoder.Listener {
+
+		final StringBuilder sb = new StringBuilder();
+
+		public void hello( int players, long micros ) {
+			sb.append( "H" ).append( players ).append( '@' ).append( micros )
+				.append( ' ' );
+		}
+
+		public void pressed( int player, int rank, long micros ) {
+			sb.append( "P" ).append( player ).append( '/' ).append( rank )
+				.append( '@' ).append( micros ).append( ' ' );
+		}
+
+		public void reset( long micros ) {
+			sb.append( "R@" ).append( micros ).append( ' ' );
+		}
+	}
+
+	@Test
+	public void crcMatchesTheCheckValue() {
+		byte[] b = "123456789".getBytes( Charset.forName( "US-ASCII" ) );
+		assertEquals( 0x29B1, BuzzFrameDecoder.crc16( b, 0, b.length ) );
+	}
+
+	@Test
+	public void frameSplitAcrossReads() {
+		byte[] b = press( 0, 3, 0, 4000000000L );
+		for ( int size = 1; size <= b.length; size++ ) {
+			BuzzFrameDecoder d = new BuzzFrameDecoder();
+			Events e = new Events();
+			int events = 0;
+			for ( int off = 0; off < b.length; off += size )
+				events += d.decode( b, off, Math.min( size, b.length - off ), e );
+			assertEquals( "chunks of " + size, 1, events );
+			assertEquals( "chunks of " + size, "P3/0@4000000000 ",
+				e.sb.toString() );
+		}
+	}
+
+	@Test
+	public void twoFramesInOneRead() {
+		BuzzFrameDecoder d = new BuzzFrameDecoder();
+		Events e = new Events();
+		byte[] b = concat( hello( 0, 4, 17 ), reset( 1, 1000 ),
+			press( 2, 1, 0, 1500 ) );
+		assertEquals( 3, d.decode( b, 0, b.length, e ) );
+		assertEquals( "H4@17 R@1000 P1/0@1500 ", e.sb.toString() );
+		assertEquals( 3, d.getFrames() );
+		assertEquals( 0, d.getLost() );
+	}
+
+	@Test
+	public void corruptByteCostsOneFrame() {
+		byte[][] frames = new byte[ 6 ][];
+		StringBuilder others = new StringBuilder();
+		for ( int i = 0; i < frames.length; i++ ) {
+			frames[i] = press( i, i, i, 1000 + i );
+			if ( i != 1 )
+				others.append( "P" + i + "/" + i + "@" + (1000 + i) + " " );
+		}
+		for ( int at = 0; at < frames[1].length; at++ ) {
+			for ( int bit = 0; bit < 8; bit++ ) {
+				byte[] b = concat( frames );
+				b[frames[0].length + at] ^= 1 << bit;
+				BuzzFrameDecoder d = new BuzzFrameDecoder();
+				Events e = new Events();
+				String what = "byte " + at + " bit " + bit;
+				assertEquals( what, 5, d.decode( b, 0, b.length, e ) );
+				assertEquals( what, others.toString(), e.sb.toString() );
+				assertEquals( what, 1, d.getLost() );
+			}
+		}
+	}
+
+	@Test
+	public void sequenceWrapsAndGapsAreCounted() {
+		BuzzFrameDecoder d = new BuzzFrameDecoder();
+		Events e = new Events();
+		decode( d, e, reset( 254, 0 ), reset( 255, 0 ), reset( 0, 0 ),
+			reset( 1, 0 ) );
+		assertEquals( 0, d.getLost() );
+		decode( d, e, reset( 5, 0 ) );
+		assertEquals( 3, d.getLost() );
+		decode( d, e, reset( 250, 0 ), reset( 3, 0 ) );
+		assertEquals( 3 + 244 + 8, d.getLost() );
+		// a restarted box numbers from 0 again
+		decode( d, e, hello( 0, 4, 0 ), reset( 1, 0 ) );
+		assertEquals( 3 + 244 + 8, d.getLost() );
+		// so does a reopened port
+		d.clear();
+		decode( d, e, reset( 100, 0 ) );
+		assertEquals( 3 + 244 + 8, d.getLost() );
+		assertEquals( 10, d.getFrames() );
+	}
+
+	private static void decode( BuzzFrameDecoder d, Events e, byte[]... frames ) {
+		byte[] b = concat( frames );
+		assertEquals( frames.length, d.decode( b, 0, b.length, e ) );
+	}
+
+	private static byte[] hello( int seq, int players, long micros ) {
+		return frame( BuzzFrameDecoder.HELLO, seq, concat(
+			new byte[] { (byte) players }, u32( micros ) ) );
+	}
+
+	private static byte[] press( int seq, int player, int rank, long micros ) {
+		return frame( BuzzFrameDecoder.PRESS, seq, concat( new byte[] {
+			(byte) player, (byte) rank }, u32( micros ) ) );
+	}
+
+	private static byte[] reset( int seq, long micros ) {
+		return frame( BuzzFrameDecoder.RESET, seq, u32( micros ) );
+	}
+
+	private static byte[] frame( int type, int seq, byte[] payload ) {
+		int n = payload.length;
+		byte[] f = new byte[ 5 + n + 2 ];
+		f[0] = (byte) BuzzFrameDecoder.SYNC;
+		f[1] = (byte) BuzzFrameDecoder.VERSION;
+		f[2] = (byte) type;
+		f[3] = (byte) seq;
+		f[4] = (byte) n;
+		System.arraycopy( payload, 0, f, 5, n );
+		int crc = BuzzFrameDecoder.crc16( f, 1, 4 + n );
+		f[5 + n] = (byte) (crc >> 8);
+		f[6 + n] = (byte) crc;
+		return f;
+	}
+
+	private static byte[] u32( long v ) {
+		return new byte[] { (byte) v, (byte) (v >> 8), (byte) (v >> 16),
+			(byte) (v >> 24) };
+	}
+
+	private static byte[] concat( byte[]... parts ) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for ( byte[] p : parts )
+			out.write( p, 0, p.length );
+		return out.toByteArray();
+	}
+
+}
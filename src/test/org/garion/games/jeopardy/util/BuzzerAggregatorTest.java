@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+/**
+ * Numbering the players of several boxes
+ *
+ * @author martin@mbs3.org
+ */
+public class BuzzerAggregatorTest {
+
+	@Test
+	public void playersAreNumberedByTheHelloCounts() throws InterruptedException {
+		BuzzRing out = new BuzzRing( 256 );
+		BuzzerAggregator boxes = new BuzzerAggregator( out );
+		assertEquals( 0, boxes.add( box( 4 ) ) );
+		assertEquals( 1, boxes.add( box( 3 ) ) );
+		assertEquals( -1, boxes.getPlayers() );
+		boxes.setHold( 5 );
+		new Thread( boxes ).start();
+
+		final BitSet seen = new BitSet();
+		long deadline = System.currentTimeMillis() + 5000;
+		try {
+			while ( seen.cardinality() < 7
+				&& System.currentTimeMillis() < deadline ) {
+				out.drain( new BuzzRing.Consumer() {
+
+					public void buzz( int player, long nanos, long device ) {
+						if ( player != BuzzRing.RESET )
+							seen.set( player );
+					}
+				} );
+				Thread.sleep( 10 );
+			}
+		} finally {
+			boxes.close();
+		}
+		assertEquals( 7, boxes.getPlayers() );
+		assertEquals( 7, seen.cardinality() );
+		assertEquals( 7, seen.length() );
+	}
+
+	private static BuzzerSimulator box( int buttons ) {
+		BuzzerSimulator s = new BuzzerSimulator();
+		s.setPlayers( buttons );
+		s.setPause( 10 );
+		s.setSeed( buttons );
+		return s;
+	}
+
+}
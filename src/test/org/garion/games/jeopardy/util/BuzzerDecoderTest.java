@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+/**
+ * Decoding the buzzer box's line output in arbitrary chunks
+ *
+ * @author martin@mbs3.org
+ */
+public class BuzzerDecoderTest {
+
+	private static final Charset LATIN1 = Charset.forName( "ISO-8859-1" );
+
+	/** Writes each event down */
+	private static final class Events implements BuzzerDecoder.Listener {
+
+		final StringBuilder sb = new StringBuilder();
+
+		public void reset() {
+			sb.append( "R " );
+		}
+
+		public void pressed( int player ) {
+			sb.append( player ).append( ' ' );
+		}
+	}
+
+	@Test
+	public void severalLinesInOneChunk() {
+		BuzzerDecoder d = new BuzzerDecoder();
+		Events e = new Events();
+		byte[] b = bytes( "3\r\n1\r\n-1\r\n12\r\n" );
+		assertEquals( 4, d.decode( b, 0, b.length, e ) );
+		assertEquals( "3 1 R 12 ", e.sb.toString() );
+	}
+
+	@Test
+	public void linesSplitAcrossChunks() {
+		byte[] b = bytes( "3\r\n-1\r\n12\r\n7\r\n" );
+		for ( int size = 1; size <= b.length; size++ ) {
+			BuzzerDecoder d = new BuzzerDecoder();
+			Events e = new Events();
+			int events = 0;
+			for ( int off = 0; off < b.length; off += size )
+				events += d.decode( b, off, Math.min( size, b.length - off ), e );
+			assertEquals( "chunks of " + size, 4, events );
+			assertEquals( "chunks of " + size, "3 R 12 7 ", e.sb.toString() );
+		}
+	}
+
+	@Test
+	public void anyLineEndingWorks() {
+		BuzzerDecoder d = new BuzzerDecoder();
+		Events e = new Events();
+		byte[] b = bytes( "1\n2\r3\r\n4\n\n5\r\r" );
+		assertEquals( 5, d.decode( b, 0, b.length, e ) );
+		assertEquals( "1 2 3 4 5 ", e.sb.toString() );
+		assertEquals( 0, d.getSkipped() );
+
+		// nothing is reported until the line ends
+		b = bytes( "6" );
+		assertEquals( 0, d.decode( b, 0, b.length, e ) );
+		b = bytes( "\n" );
+		assertEquals( 1, d.decode( b, 0, b.length, e ) );
+		assertEquals( "1 2 3 4 5 6 ", e.sb.toString() );
+	}
+
+	@Test
+	public void noiseIsSkipped() {
+		BuzzerDecoder d = new BuzzerDecoder();
+		Events e = new Events();
+		byte[] b = bytes( "booting\r\n2\r\n12x\r\n-2\r\n- 1\r\n"
+			+ "99999999999999999999\r\n1234567890\r\n 4 \r\n"
+			+ "\u00ff\u00fe\r\n5\r\n" );
+		assertEquals( 3, d.decode( b, 0, b.length, e ) );
+		assertEquals( "2 4 5 ", e.sb.toString() );
+		assertEquals( 7, d.getSkipped() );
+	}
+
+	@Test
+	public void clearDropsTheUnfinishedLine() {
+		BuzzerDecoder d = new BuzzerDecoder();
+		Events e = new Events();
+		byte[] b = bytes( "12" );
+		d.decode( b, 0, b.length, e );
+		d.clear();
+		b = bytes( "3\r\n" );
+		assertEquals( 1, d.decode( b, 0, b.length, e ) );
+		assertEquals( "3 ", e.sb.toString() );
+	}
+
+	private static byte[] bytes( String s ) {
+		return s.getBytes( LATIN1 );
+	}
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Plays {@link BuzzerSimulator} storms through an
+ * {@link ExternalPlayerReader} and a {@link BuzzRing} drained on the event
+ * thread as the board does, and reports latency and throughput: the delay
+ * from each press to its drain, and from the first press of each storm to
+ * {@code signalPlayer}. Fails if a press was lost.
+ * <p>
+ * Usage: {@code BuzzerLatencyBenchmark [players] [storms] [jitter] [burst]
+ * [pause] [malformed] [drain]}, by default 6 players, 1000 storms spread
+ * over 2000 microseconds each, in bursts of 10 with 20 ms pauses, 1% of
+ * frames preceded by a malformed one, and a drain every 16 ms (the board's
+ * {@code BoardPanel.FRAME_MS}).
+ *
+ * @author martin@mbs3.org
+ */
+public class BuzzerLatencyBenchmark {
+
+	public static void main( String[] args ) throws Exception {
+		final BuzzerSimulator sim = new BuzzerSimulator();
+		sim.setPlayers( args.length > 0 ? Integer.parseInt( args[0] ) : 6 );
+		sim.setStorms( args.length > 1 ? Integer.parseInt( args[1] ) : 1000 );
+		sim.setJitter( args.length > 2 ? Integer.parseInt( args[2] ) : 2000 );
+		sim.setBurst( args.length > 3 ? Integer.parseInt( args[3] ) : 10 );
+		sim.setPause( args.length > 4 ? Integer.parseInt( args[4] ) : 20 );
+		sim.setMalformed( args.length > 5 ? Double.parseDouble( args[5] )
+			: 0.01 );
+		int drain = args.length > 6 ? Integer.parseInt( args[6] ) : 16;
+		sim.setSeed( 1 );
+
+		final BuzzRing ring = new BuzzRing( 256 );
+		final ExternalPlayerReader reader = new ExternalPlayerReader( ring,
+			sim, false );
+		final Probe probe = new Probe();
+		final Timer timer = new Timer( drain, new ActionListener() {
+
+			public void actionPerformed( ActionEvent evt ) {
+				ring.drain( probe );
+			}
+		} );
+		Thread t = new Thread( reader, "Buzzer reader" );
+		long start = System.nanoTime();
+		timer.start();
+		t.start();
+		t.join();
+		SwingUtilities.invokeAndWait( new Runnable() {
+
+			public void run() {
+				timer.stop();
+				ring.drain( probe );
+			}
+		} );
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf( "presses sent %d, received %d, signalled %d%n",
+			sim.getPresses(), probe.presses.size(), probe.signals.size() );
+		System.out.printf( "malformed frames %d, frames lost %d, "
+			+ "ring drops %d%n", sim.getMalformed(), reader.getLost(),
+			ring.getDropped() );
+		System.out.printf( "throughput %.0f presses/s%n", probe.presses.size()
+			/ seconds );
+		probe.signals.print( "press to signalPlayer" );
+		probe.presses.print( "press to drain" );
+		if ( probe.presses.size() != sim.getPresses() )
+			throw new IllegalStateException( "presses were lost" );
+	}
+
+	/** Takes the events as the board does, noting each one's delay */
+	private static final class Probe implements BuzzRing.Consumer,
+		ExternalPlayerController {
+
+		final Delays presses = new Delays();
+		final Delays signals = new Delays();
+		private boolean rungIn;
+		private long device;
+
+		public void buzz( int player, long nanos, long device ) {
+			if ( player == BuzzRing.RESET ) {
+				rungIn = false;
+				resetPlayer();
+				return;
+			}
+			presses.add( BuzzerSimulator.delay( device, System.nanoTime() ) );
+			if ( !rungIn ) {
+				rungIn = true;
+				this.device = device;
+				signalPlayer( "Player " + (player + 1) );
+			}
+		}
+
+		public void resetPlayer() {
+		}
+
+		public void signalPlayer( String name ) {
+			signals.add( BuzzerSimulator.delay( device, System.nanoTime() ) );
+		}
+	}
+
+	/** A growing list of delays in microseconds */
+	private static final class Delays {
+
+		private long[] values = new long[ 1024 ];
+		private int size;
+
+		void add( long micros ) {
+			if ( size == values.length )
+				values = Arrays.copyOf( values, size * 2 );
+			values[size++] = micros;
+		}
+
+		int size() {
+			return size;
+		}
+
+		void print( String what ) {
+			if ( size == 0 )
+				return;
+			long[] v = Arrays.copyOf( values, size );
+			Arrays.sort( v );
+			System.out.printf( "%s: p50 %d us, p99 %d us, max %d us%n", what,
+				v[size / 2], v[(int) (size * 0.99)], v[size - 1] );
+		}
+	}
+
+}
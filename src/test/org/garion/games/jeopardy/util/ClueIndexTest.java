@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.garion.games.jeopardy.Category;
+import org.garion.games.jeopardy.Entry;
+import org.garion.games.jeopardy.Final;
+import org.garion.games.jeopardy.Game;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Saving, loading and searching clue indexes
+ *
+ * @author martin@mbs3.org
+ */
+public class ClueIndexTest {
+
+	private final List<File> files = new ArrayList<File>();
+
+	@After
+	public void cleanUp() {
+		for ( File f : files )
+			f.delete();
+	}
+
+	@Test
+	public void loadedIndexSearchesLikeTheSavedOne() throws IOException {
+		ClueIndex x = new ClueIndex();
+		x.add( "romans", 1, game( "Emperors", "Augustus", "Nero" ) );
+		x.add( "greeks", 2, game( "Philosophers", "Plato", "Aristotle" ) );
+		x.add( "more", 3, game( "Emperors", "Hadrian", "Trajan" ) );
+		x.remove( "more" );
+
+		File f = temp();
+		x.save( f );
+		ClueIndex back = ClueIndex.load( f );
+		assertEquals( x.getGames(), back.getGames() );
+		assertEquals( x.size(), back.size() );
+		assertEquals( x.getWordCount(), back.getWordCount() );
+		assertEquals( 2, back.getStamp( "greeks" ) );
+		assertEquals( Long.MIN_VALUE, back.getStamp( "more" ) );
+		for ( String q : new String[] { "nero", "emperors", "emper*", "plat*",
+			"plato philosophers", "hadrian", "final" } )
+			assertEquals( q, x.search( q, 10 ).toString(),
+				back.search( q, 10 ).toString() );
+
+		List<ClueIndex.Hit> hits = back.search( "nero", 10 );
+		assertEquals( 1, hits.size() );
+		assertEquals( "romans", hits.get( 0 ).game );
+		assertEquals( 0, hits.get( 0 ).round );
+		assertEquals( 0, hits.get( 0 ).category );
+		assertEquals( 1, hits.get( 0 ).slot );
+		assertEquals( "Emperors", hits.get( 0 ).categoryName );
+		assertEquals( 2, back.search( "emper*", 10 ).size() );
+		hits = back.search( "final", 10 );
+		assertEquals( 2, hits.size() );
+		assertEquals( ClueIndex.FINAL, hits.get( 0 ).round );
+
+		// adding a game again replaces only its clues
+		back.add( "romans", 4, game( "Emperors", "Caligula", "Claudius" ) );
+		assertEquals( 0, back.search( "nero", 10 ).size() );
+		assertEquals( 1, back.search( "caligula", 10 ).size() );
+		assertEquals( 1, back.search( "philosoph* aristotle", 10 ).size() );
+		assertEquals( 4, back.getStamp( "romans" ) );
+		assertEquals( x.size(), back.size() );
+	}
+
+	@Test
+	public void corruptIndexesFailWithIOException() throws IOException {
+		ClueIndex x = new ClueIndex();
+		x.add( "romans", 1, game( "Emperors", "Augustus", "Nero" ) );
+		x.add( "greeks", 2, game( "Philosophers", "Plato", "Aristotle" ) );
+		File f = temp();
+		x.save( f );
+		byte[] good = Files.readAllBytes( f.toPath() );
+		Random random = new Random( 1 );
+		for ( int n = 0; n < 3000; n++ ) {
+			byte[] data = good.clone();
+			if ( random.nextInt( 4 ) == 0 )
+				data = Arrays.copyOf( data, random.nextInt( data.length ) );
+			else {
+				for ( int k = random.nextInt( 3 ); k >= 0; k-- )
+					data[random.nextInt( data.length )] ^= 1 << random.nextInt( 8 );
+			}
+			write( f, data );
+			try {
+				ClueIndex.load( f );
+				fail( "corruption " + n + " was not noticed" );
+			} catch ( IOException expected ) {
+			}
+		}
+	}
+
+	@Test( expected = IOException.class )
+	public void negativeGameCountIsRejected() throws IOException {
+		File f = temp();
+		new ClueIndex().save( f );
+		byte[] data = Files.readAllBytes( f.toPath() );
+		// the game count follows the magic and the version
+		data[8] = (byte) 0x80;
+		write( f, data );
+		ClueIndex.load( f );
+	}
+
+	private static Game game( String category, String first, String second ) {
+		Game g = Game.createGame( 1, 1, 2 );
+		Category c = g.rounds[0].categories[0];
+		c.setName( category );
+		c.entries[0] = new Entry( first, "Who is " + first + "?" );
+		c.entries[1] = new Entry( second, "Who is " + second + "?" );
+		g.setFinalRound( new Final( "Final", new Entry( "final answer",
+			"final question" ) ) );
+		return g;
+	}
+
+	private static void write( File f, byte[] data ) throws IOException {
+		FileOutputStream out = new FileOutputStream( f );
+		try {
+			out.write( data );
+		} finally {
+			out.close();
+		}
+	}
+
+	private File temp() throws IOException {
+		File f = File.createTempFile( "clues", ".idx" );
+		files.add( f );
+		return f;
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.garion.games.jeopardy.Entry;
+import org.garion.games.jeopardy.Final;
+import org.garion.games.jeopardy.Game;
+import org.garion.games.jeopardy.Round;
+import org.junit.Test;
+
+/**
+ * Games flattened into a clue store and rebuilt
+ *
+ * @author martin@mbs3.org
+ */
+public class ClueStoreTest {
+
+	@Test
+	public void gamesAreRebuiltAsAdded() throws IOException {
+		Game holes = Game.createGame( 3, 2, 3 );
+		holes.rounds[1] = null;
+		holes.rounds[2].categories[0] = null;
+		holes.rounds[0].categories[1].entries[2] = null;
+		holes.rounds[0].categories[1].values[0] = null;
+		holes.setTitle( null );
+		holes.verifySize();
+
+		Game noFinal = Game.createGame( 1, 1, 1 );
+		noFinal.f = null;
+
+		Game[] games = { IO.loadYaml( new File( "gatorlug.yaml" ) ), holes,
+			noFinal, IO.loadYaml( new File( "empty.yaml" ) ) };
+		ClueStore store = new ClueStore();
+		for ( Game g : games )
+			store.add( g );
+		assertEquals( games.length, store.getGameCount() );
+		for ( int i = 0; i < games.length; i++ )
+			assertEquals( GameBinaryTest.describe( games[i] ),
+				GameBinaryTest.describe( store.toGame( i ) ) );
+	}
+
+	@Test
+	public void roundsPastAByteAreKept() {
+		Game g = Game.createGame( 300, 1, 1 );
+		g.setFinalRound( new Final( "final", new Entry( "last", "q" ) ) );
+		for ( int r = 0; r < 300; r++ )
+			g.rounds[r].categories[0].entries[0] = new Entry( "answer " + r, "q" );
+		ClueStore store = new ClueStore();
+		store.add( g );
+		assertEquals( GameBinaryTest.describe( g ),
+			GameBinaryTest.describe( store.toGame( 0 ) ) );
+		int finals = 0;
+		for ( int row = 0; row < store.size(); row++ ) {
+			if ( store.get( ClueStore.ROUND, row ) == ClueIndex.FINAL )
+				++finals;
+		}
+		assertEquals( 1, finals );
+		assertEquals( 300, store.getValueTotals().length );
+	}
+
+	@Test
+	public void tooManyRoundsAreRejected() {
+		ClueStore store = new ClueStore();
+		Game g = Game.createGame( 0, 0, 0 );
+		g.rounds = new Round[ Short.MAX_VALUE + 1 ];
+		try {
+			store.add( g );
+			fail( "too many rounds" );
+		} catch ( IllegalArgumentException expected ) {
+		}
+		assertEquals( 0, store.getGameCount() );
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.garion.games.jeopardy.Game;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Game banks and their lazily decoded entries
+ *
+ * @author martin@mbs3.org
+ */
+public class GameBankTest {
+
+	private final List<File> files = new ArrayList<File>();
+
+	@After
+	public void cleanUp() {
+		for ( File f : files )
+			f.delete();
+	}
+
+	@Test
+	public void gamesReadBackLazily() throws IOException {
+		List<Game> games = games();
+		GameBank bank = IO.openBank( bank( games ) );
+		try {
+			assertEquals( games.size(), bank.size() );
+			for ( int i = 0; i < games.size(); i++ ) {
+				assertEquals( games.get( i ).getTitle(), bank.getTitle( i ) );
+				assertEquals( GameBinaryTest.describe( games.get( i ) ),
+					GameBinaryTest.describe( bank.getGame( i ) ) );
+			}
+		} finally {
+			bank.close();
+		}
+	}
+
+	@Test
+	public void corruptBanksFailWithIOExceptionAtGetGame() throws IOException {
+		byte[] good = Files.readAllBytes( bank( games() ).toPath() );
+		File f = temp();
+		Random random = new Random( 1 );
+		for ( int n = 0; n < 3000; n++ ) {
+			byte[] data = good.clone();
+			if ( random.nextInt( 4 ) == 0 )
+				data = Arrays.copyOf( data, random.nextInt( data.length ) );
+			else {
+				for ( int k = random.nextInt( 3 ); k >= 0; k-- )
+					data[random.nextInt( data.length )] ^= 1 << random.nextInt( 8 );
+			}
+			FileOutputStream out = new FileOutputStream( f );
+			try {
+				out.write( data );
+			} finally {
+				out.close();
+			}
+			GameBank bank;
+			try {
+				bank = IO.openBank( f );
+			} catch ( IOException expected ) {
+				continue;
+			}
+			try {
+				for ( int i = 0; i < bank.size(); i++ ) {
+					Game g;
+					try {
+						g = bank.getGame( i );
+					} catch ( IOException expected ) {
+						continue;
+					}
+					// whatever was read must display without failing
+					GameBinaryTest.describe( g );
+				}
+			} finally {
+				bank.close();
+			}
+		}
+	}
+
+	private List<Game> games() throws IOException {
+		List<Game> games = new ArrayList<Game>();
+		games.add( IO.loadYaml( new File( "gatorlug.yaml" ) ) );
+		games.add( IO.loadYaml( new File( "empty.yaml" ) ) );
+		Game g = Game.createGame( 2, 3, 4 );
+		g.setTitle( "generated" );
+		g.rounds[1] = null;
+		g.verifySize();
+		games.add( g );
+		return games;
+	}
+
+	private File bank( List<Game> games ) throws IOException {
+		File f = temp();
+		assertTrue( IO.dumpBank( games, f ) );
+		return f;
+	}
+
+	private File temp() throws IOException {
+		File f = File.createTempFile( "bank", ".bank" );
+		files.add( f );
+		return f;
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.garion.games.jeopardy.Category;
+import org.garion.games.jeopardy.Entry;
+import org.garion.games.jeopardy.Final;
+import org.garion.games.jeopardy.Game;
+import org.garion.games.jeopardy.Round;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Round trips between YAML and the binary game format
+ *
+ * @author martin@mbs3.org
+ */
+public class GameBinaryTest {
+
+	private File bin;
+	private File yaml;
+
+	@After
+	public void cleanUp() {
+		if ( bin != null )
+			bin.delete();
+		if ( yaml != null )
+			yaml.delete();
+	}
+
+	@Test
+	public void yamlToBinaryToYaml() throws IOException {
+		for ( String name : new String[] { "gatorlug.yaml", "empty.yaml" } ) {
+			Game g = IO.loadYaml( new File( name ) );
+			Game back = IO.loadYaml( yaml( IO.loadBinary( binary( g ) ) ) );
+			assertEquals( name, describe( g ), describe( back ) );
+		}
+	}
+
+	@Test
+	public void streamedYamlMatchesBinary() throws IOException {
+		Game g = IO.streamYaml( new File( "gatorlug.yaml" ) );
+		assertEquals( describe( g ), describe( IO.loadBinary( binary( g ) ) ) );
+	}
+
+	@Test
+	public void absentRoundsCategoriesAndEntries() throws IOException {
+		Game g = Game.createGame( 3, 2, 3 );
+		g.rounds[1] = null;
+		g.rounds[2].categories[0] = null;
+		g.rounds[0].categories[1].entries[2] = null;
+		g.rounds[0].categories[1].values[0] = null;
+		g.setTitle( null );
+		g.verifySize();
+		Game back = IO.loadBinary( binary( g ) );
+		assertNull( back.rounds[1] );
+		assertNull( back.rounds[2].categories[0] );
+		assertNull( back.rounds[0].categories[1].entries[2] );
+		assertNull( back.rounds[0].categories[1].values[0] );
+		assertNull( back.getTitle() );
+		assertEquals( describe( g ), describe( back ) );
+	}
+
+	@Test
+	public void absentAndEmptyFinals() throws IOException {
+		Game g = Game.createGame( 1, 1, 1 );
+		g.setFinalRound( null );
+		assertNull( IO.loadBinary( binary( g ) ).getFinalRound() );
+
+		g.setFinalRound( new Final( "Final", null ) );
+		Final f = IO.loadBinary( binary( g ) ).getFinalRound();
+		assertEquals( "Final", f.name );
+		assertNull( f.entry );
+	}
+
+	@Test
+	public void noRounds() throws IOException {
+		Game g = new Game( "t", "s" );
+		g.rounds = new Round[ 0 ];
+		Game back = IO.loadBinary( binary( g ) );
+		assertEquals( 0, back.rounds.length );
+		assertEquals( "t", back.getTitle() );
+	}
+
+	@Test
+	public void textSurvives() throws IOException {
+		Game g = Game.createGame( 1, 1, 2 );
+		Category c = g.rounds[0].categories[0];
+		c.entries[0] = new Entry( "Caf\u00e9 \u2603 \"quoted\"\nnext line", "" );
+		c.entries[1] = new Entry( null, "question only" );
+		Game back = IO.loadBinary( binary( g ) );
+		assertEquals( describe( g ), describe( back ) );
+	}
+
+	@Test( expected = IOException.class )
+	public void negativeCountIsRejected() throws IOException {
+		byte[] data = encode( Game.createGame( 2, 2, 2 ) );
+		ByteBuffer.wrap( data ).putInt( 12, -5 );
+		GameBinary.read( data );
+	}
+
+	@Test( expected = IOException.class )
+	public void hugeCountIsRejected() throws IOException {
+		byte[] data = encode( Game.createGame( 2, 2, 2 ) );
+		ByteBuffer.wrap( data ).putInt( 8, Integer.MAX_VALUE );
+		GameBinary.read( data );
+	}
+
+	@Test( expected = IOException.class )
+	public void categoryRangeOutsideTableIsRejected() throws IOException {
+		byte[] data = encode( Game.createGame( 1, 1, 1 ) );
+		// the first round's category count
+		ByteBuffer.wrap( data ).putInt( 24 + 20 + 8, 1 << 28 );
+		GameBinary.read( data );
+	}
+
+	@Test
+	public void corruptFilesFailWithIOException() throws IOException {
+		byte[] good = encode( IO.loadYaml( new File( "gatorlug.yaml" ) ) );
+		Random random = new Random( 1 );
+		for ( int i = 0; i < 3000; i++ ) {
+			byte[] data = good.clone();
+			if ( random.nextInt( 4 ) == 0 )
+				data = Arrays.copyOf( data, random.nextInt( data.length ) );
+			else {
+				for ( int k = random.nextInt( 3 ); k >= 0; k-- )
+					data[random.nextInt( data.length )] ^= 1 << random.nextInt( 8 );
+			}
+			try {
+				GameBinary.read( data );
+			} catch ( IOException expected ) {
+			}
+		}
+	}
+
+	private File binary( Game g ) throws IOException {
+		bin = File.createTempFile( "round", ".jgb" );
+		assertTrue( IO.dumpBinary( g, bin ) );
+		return bin;
+	}
+
+	private File yaml( Game g ) throws IOException {
+		yaml = File.createTempFile( "round", ".yaml" );
+		assertTrue( IO.dumpYaml( g, yaml ) );
+		return yaml;
+	}
+
+	private static byte[] encode( Game g ) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GameBinary.write( g, out );
+		return out.toByteArray();
+	}
+
+	// everything the formats carry, nulls included
+	static String describe( Game g ) {
+		StringBuilder sb = new StringBuilder();
+		sb.append( g.getTitle() ).append( '|' ).append( g.getSubject() );
+		for ( Round r : g.rounds ) {
+			sb.append( "\nround " );
+			if ( r == null ) {
+				sb.append( "null" );
+				continue;
+			}
+			sb.append( r.getName() );
+			for ( Category c : r.categories ) {
+				sb.append( "\n  category " );
+				if ( c == null ) {
+					sb.append( "null" );
+					continue;
+				}
+				sb.append( c.getName() );
+				for ( int i = 0; i < c.values.length; i++ ) {
+					sb.append( "\n    " ).append( c.values[i] ).append( ' ' );
+					describe( sb, c.entries[i] );
+				}
+			}
+		}
+		Final f = g.getFinalRound();
+		sb.append( "\nfinal " );
+		if ( f != null ) {
+			sb.append( f.name ).append( ' ' );
+			describe( sb, f.entry );
+		}
+		return sb.toString();
+	}
+
+	private static void describe( StringBuilder sb, Entry e ) {
+		if ( e == null )
+			sb.append( "null" );
+		else
+			sb.append( e.getAnswer() ).append( " / " ).append( e.getQuestion() );
+	}
+
+}
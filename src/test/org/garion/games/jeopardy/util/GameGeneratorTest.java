@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.garion.games.jeopardy.Category;
+import org.garion.games.jeopardy.Entry;
+import org.garion.games.jeopardy.Final;
+import org.garion.games.jeopardy.Game;
+import org.garion.games.jeopardy.Round;
+import org.junit.Test;
+
+/**
+ * Games generated from a small bank
+ *
+ * @author martin@mbs3.org
+ */
+public class GameGeneratorTest {
+
+	// 12 games of 2 rounds of 5 categories; every topic is in two names
+	private static final int GAMES = 12;
+
+	@Test
+	public void noClueIsUsedTwiceInASeason() {
+		GameGenerator gen = generator( 1 );
+		List<Game> season = season( gen );
+		assertTrue( season.size() >= 5 );
+		Set<String> seen = new HashSet<String>();
+		for ( Game g : season ) {
+			for ( String a : answers( g ) )
+				assertTrue( a, seen.add( a.trim().toLowerCase() ) );
+		}
+		assertEquals( seen.size(), gen.getUsedCount() );
+
+		gen.newSeason();
+		assertEquals( 0, gen.getUsedCount() );
+		gen.generate();
+	}
+
+	@Test
+	public void categoriesOfAGameHaveDifferentTopics() {
+		for ( Game g : season( generator( 2 ) ) ) {
+			Set<String> topics = new HashSet<String>();
+			for ( Round r : g.rounds ) {
+				for ( Category c : r.categories )
+					assertTrue( c.getName(), topics.add( c.getName() ) );
+			}
+			assertTrue( g.f.name, topics.add( g.f.name ) );
+		}
+	}
+
+	@Test
+	public void failedGenerateReleasesItsClues() {
+		GameGenerator gen = generator( 3 );
+		gen.generate();
+		int used = gen.getUsedCount();
+		// 60 topics can't fill 70 categories of one game
+		try {
+			gen.generate( 14, 5, 5 );
+			fail( "too many categories" );
+		} catch ( IllegalStateException expected ) {
+		}
+		assertEquals( used, gen.getUsedCount() );
+		gen.generate();
+	}
+
+	@Test
+	public void sameSeedMakesTheSameGames() {
+		GameGenerator a = generator( 4 );
+		GameGenerator b = generator( 4 );
+		String first = GameBinaryTest.describe( a.generate() );
+		assertEquals( first, GameBinaryTest.describe( b.generate() ) );
+		assertEquals( GameBinaryTest.describe( a.generate() ),
+			GameBinaryTest.describe( b.generate() ) );
+
+		a.newSeason();
+		a.setSeed( 4 );
+		assertEquals( first, GameBinaryTest.describe( a.generate() ) );
+	}
+
+	private static GameGenerator generator( long seed ) {
+		GameGenerator gen = new GameGenerator( seed );
+		int cat = 0;
+		for ( int n = 0; n < GAMES; n++ ) {
+			Game g = Game.createGame( 2, 5, 5 );
+			for ( int r = 0; r < 2; r++ ) {
+				for ( int c = 0; c < 5; c++, cat++ ) {
+					Category category = g.rounds[r].categories[c];
+					category.setName( "Topic" + cat / 2 );
+					for ( int s = 0; s < 5; s++ )
+						category.entries[s] = new Entry( String.format(
+							"answer %d %d %d %d", n, r, c, s ), "question" );
+				}
+			}
+			// the same answer rerun in every game is one clue
+			g.rounds[0].categories[0].entries[0] = new Entry( n % 2 == 0
+				? "Rerun" : "RERUN ", "question" );
+			g.setFinalRound( new Final( "Final" + n, new Entry( "final " + n,
+				"question" ) ) );
+			gen.add( g );
+		}
+		assertEquals( GAMES * 10, gen.getCategoryCount() );
+		return gen;
+	}
+
+	// games until the bank runs out
+	private static List<Game> season( GameGenerator gen ) {
+		List<Game> games = new ArrayList<Game>();
+		while ( true ) {
+			try {
+				games.add( gen.generate() );
+			} catch ( IllegalStateException ise ) {
+				return games;
+			}
+		}
+	}
+
+	private static List<String> answers( Game g ) {
+		List<String> out = new ArrayList<String>();
+		for ( Round r : g.rounds ) {
+			for ( Category c : r.categories ) {
+				for ( Entry e : c.entries )
+					out.add( e.getAnswer() );
+			}
+		}
+		out.add( g.f.entry.getAnswer() );
+		return out;
+	}
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import static org.junit.Assert.*;
+
+import org.garion.games.jeopardy.Category;
+import org.garion.games.jeopardy.Entry;
+import org.garion.games.jeopardy.Game;
+import org.junit.Test;
+
+/**
+ * Patching a game in place
+ *
+ * @author martin@mbs3.org
+ */
+public class GamePatchTest {
+
+	@Test
+	public void textChangesKeepTheObjects() {
+		Game live = Game.createGame( 1, 2, 3 );
+		Game fresh = live.copy();
+		Category c = live.rounds[0].categories[1];
+		Entry e = c.entries[2];
+		fresh.rounds[0].categories[1].entries[2].setAnswer( "new answer" );
+		fresh.rounds[0].categories[1].values[2] = "900";
+
+		assertEquals( 2, GamePatch.apply( live, fresh ) );
+		assertSame( c, live.rounds[0].categories[1] );
+		assertSame( e, c.entries[2] );
+		assertEquals( "new answer", e.getAnswer() );
+		assertEquals( "900", c.getValue( e ) );
+		assertEquals( 2, c.indexOf( e ) );
+	}
+
+	@Test
+	public void grownCategoryIsReplaced() {
+		Game live = Game.createGame( 1, 2, 3 );
+		Game fresh = live.copy();
+		Category fc = fresh.rounds[0].categories[0];
+		assertTrue( fc.addEntry( "400", new Entry( "added", "?" ) ) );
+		Category other = live.rounds[0].categories[1];
+
+		assertEquals( 1, GamePatch.apply( live, fresh ) );
+		Category c = live.rounds[0].categories[0];
+		assertSame( fc, c );
+		assertEquals( 4, c.entries.length );
+		assertEquals( "added", c.getEntry( "400" ).getAnswer() );
+		assertSame( other, live.rounds[0].categories[1] );
+		assertEquals( GameBinaryTest.describe( fresh ),
+			GameBinaryTest.describe( live ) );
+	}
+
+	@Test
+	public void shrunkCategoryIsReplaced() {
+		Game live = Game.createGame( 1, 2, 3 );
+		Game fresh = live.copy();
+		Category old = fresh.rounds[0].categories[0];
+		Category fc = new Category( old.name, new String[] { old.values[0],
+			old.values[1] }, new Entry[] { old.entries[0], old.entries[1] } );
+		fresh.rounds[0].categories[0] = fc;
+
+		assertEquals( 1, GamePatch.apply( live, fresh ) );
+		Category c = live.rounds[0].categories[0];
+		assertSame( fc, c );
+		assertEquals( 2, c.entries.length );
+		assertEquals( -1, c.indexOf( old.entries[2] ) );
+		assertEquals( GameBinaryTest.describe( fresh ),
+			GameBinaryTest.describe( live ) );
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.garion.games.jeopardy.Game;
+import org.ho.yaml.Yaml;
+
+/**
+ * Compares the reflective jyaml loader with {@link YamlGameReader} on one
+ * game file repeated into a multi-document stream.
+ * <p>
+ * Usage: {@code YamlLoadBenchmark [file] [copies] [runs]}, by default
+ * gatorlug.yaml, 1000 copies and 5 timed runs after one warm-up run.
+ *
+ * @author martin@mbs3.org
+ */
+public class YamlLoadBenchmark {
+
+	public static void main( String[] args ) throws IOException {
+		File in = new File( args.length > 0 ? args[0] : "gatorlug.yaml" );
+		int copies = args.length > 1 ? Integer.parseInt( args[1] ) : 1000;
+		int runs = args.length > 2 ? Integer.parseInt( args[2] ) : 5;
+
+		File big = File.createTempFile( "bench", ".yaml" );
+		big.deleteOnExit();
+		byte[] doc = Files.readAllBytes( in.toPath() );
+		OutputStream out = new FileOutputStream( big );
+		try {
+			for ( int i = 0; i < copies; i++ ) {
+				out.write( doc );
+				out.write( '\n' );
+			}
+		} finally {
+			out.close();
+		}
+		System.out.printf( "%s x %d: %d KB%n", in.getName(), copies, big
+			.length() / 1024 );
+
+		long[] reflective = new long[ runs ];
+		long[] streaming = new long[ runs ];
+		for ( int run = -1; run < runs; run++ ) {
+			long start = System.nanoTime();
+			int n = 0;
+			for ( Object o : Yaml.loadStreamOfType( big, Game.class ) ) {
+				((Game) o).verifySize();
+				++n;
+			}
+			long mid = System.nanoTime();
+			List<Game> games = IO.streamYamlAll( big );
+			long end = System.nanoTime();
+			if ( n != copies || games.size() != copies )
+				throw new IllegalStateException( "loaded " + n + " and "
+					+ games.size() + " games, expected " + copies );
+			if ( run >= 0 ) {
+				reflective[run] = mid - start;
+				streaming[run] = end - mid;
+			}
+		}
+		report( "Yaml.loadStreamOfType + verifySize", reflective );
+		report( "IO.streamYamlAll", streaming );
+	}
+
+	private static void report( String what, long[] times ) {
+		Arrays.sort( times );
+		System.out.printf( "%-36s median %6d ms, best %6d ms%n", what,
+			times[times.length / 2] / 1000000, times[0] / 1000000 );
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.jeopardy.util.builder;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.garion.games.jeopardy.Game;
+import org.garion.games.jeopardy.util.AutosaveLeftovers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Journals of builders open at the same time
+ *
+ * @author martin@mbs3.org
+ */
+public class EditJournalTest {
+
+	private File dir;
+
+	@Before
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory( "journal" ).toFile();
+	}
+
+	@After
+	public void deleteDir() {
+		for ( File f : dir.listFiles() )
+			f.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void openJournalIsNotRecovered() throws IOException {
+		EditJournal first = new EditJournal( dir );
+		first.reset( game() );
+		first.setTitle( "first" );
+
+		// a second builder starting up declines and resets
+		EditJournal second = new EditJournal( dir );
+		assertFalse( second.hasRecovery() );
+		second.reset( game() );
+		second.setTitle( "second" );
+		second.discard();
+
+		first.setSubject( "still here" );
+		first.close();
+		EditJournal later = new EditJournal( dir );
+		assertFalse( "held until the builder is gone", later.hasRecovery() );
+		first.discard();
+	}
+
+	@Test
+	public void abandonedJournalIsRecoveredOnce() throws IOException {
+		EditJournal first = new EditJournal( dir );
+		first.reset( game() );
+		first.setTitle( "first" );
+		first.setSubject( "subject" );
+		AutosaveLeftovers crash = AutosaveLeftovers.of( dir );
+		first.discard();
+		crash.restore();
+
+		EditJournal second = new EditJournal( dir );
+		assertTrue( second.hasRecovery() );
+		EditJournal third = new EditJournal( dir );
+		assertFalse( "taken by the second", third.hasRecovery() );
+		Game g = second.recover();
+		assertEquals( "first", g.getTitle() );
+		assertEquals( "subject", g.getSubject() );
+
+		second.discard();
+		assertEquals( 0, dir.listFiles().length );
+	}
+
+	private static Game game() {
+		Game g = Game.createGame( 1, 1, 1 );
+		g.setTitle( "game" );
+		return g;
+	}
+
+}
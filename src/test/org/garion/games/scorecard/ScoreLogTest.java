@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2010 Dallin Lauritzen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu/org.licenses/>.
+ */
+package org.garion.games.scorecard;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.garion.games.jeopardy.util.AutosaveLeftovers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Score logs of score cards open at the same time
+ *
+ * @author martin@mbs3.org
+ */
+public class ScoreLogTest {
+
+	private File dir;
+
+	@Before
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory( "scores" ).toFile();
+	}
+
+	@After
+	public void deleteDir() {
+		for ( File f : dir.listFiles() )
+			f.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void secondCardLeavesTheFirstLogAlone() throws IOException {
+		ScoreLog first = new ScoreLog( dir );
+		PlayerList players = new PlayerList();
+		first.start( players );
+		Player p = new Player( "Ann", 0 );
+		players.add( p );
+		first.added( p );
+		p.add( 400 );
+		first.flush();
+
+		// a second score card starting up finds nothing and starts its own
+		ScoreLog second = new ScoreLog( dir );
+		assertFalse( second.hasRecovery() );
+		second.start( new PlayerList() );
+		second.discard();
+
+		// the first card's log still recovers once it is gone
+		first.close();
+		AutosaveLeftovers crash = AutosaveLeftovers.of( dir );
+		first.discard();
+		crash.restore();
+		ScoreLog third = new ScoreLog( dir );
+		assertTrue( third.hasRecovery() );
+		PlayerList back = third.recover();
+		assertEquals( 1, back.size() );
+		assertEquals( "Ann", back.get( 0 ).name );
+		assertEquals( 400, back.get( 0 ).score );
+		third.discard();
+		assertEquals( 0, dir.listFiles().length );
+	}
+
+}